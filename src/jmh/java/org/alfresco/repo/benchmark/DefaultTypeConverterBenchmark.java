@@ -0,0 +1,129 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link DefaultTypeConverter} conversions that the node, search and REST layers rely on.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DefaultTypeConverterBenchmark
+{
+    private Date date;
+    private String dateString;
+    private NodeRef nodeRef;
+    private String nodeRefString;
+    private List<String> longStrings;
+
+    @Setup
+    public void setUp()
+    {
+        date = new Date();
+        dateString = DefaultTypeConverter.INSTANCE.convert(String.class, date);
+        nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+        nodeRefString = nodeRef.toString();
+        longStrings = new ArrayList<String>();
+        for (int i = 0; i < 20; i++)
+        {
+            longStrings.add(Long.toString(1000000L + i));
+        }
+    }
+
+    @Benchmark
+    public Long stringToLong()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(Long.class, "1234567");
+    }
+
+    @Benchmark
+    public String longToString()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(String.class, Long.valueOf(1234567L));
+    }
+
+    @Benchmark
+    public Boolean stringToBoolean()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(Boolean.class, "true");
+    }
+
+    @Benchmark
+    public String dateToString()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(String.class, date);
+    }
+
+    @Benchmark
+    public Date stringToDate()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(Date.class, dateString);
+    }
+
+    @Benchmark
+    public NodeRef stringToNodeRef()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(NodeRef.class, nodeRefString);
+    }
+
+    @Benchmark
+    public String nodeRefToString()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(String.class, nodeRef);
+    }
+
+    @Benchmark
+    public Collection<Long> stringCollectionToLongs()
+    {
+        return DefaultTypeConverter.INSTANCE.convert(Long.class, longStrings);
+    }
+}
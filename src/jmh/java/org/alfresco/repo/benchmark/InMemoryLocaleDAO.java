@@ -0,0 +1,69 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.domain.locale.AbstractLocaleDAOImpl;
+import org.alfresco.repo.domain.locale.LocaleEntity;
+
+/**
+ * A {@link org.alfresco.repo.domain.locale.LocaleDAO} that keeps the <b>alf_locale</b> rows in memory.
+ * 
+ * @since 7.0
+ */
+public class InMemoryLocaleDAO extends AbstractLocaleDAOImpl
+{
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final Map<Long, LocaleEntity> localesById = new ConcurrentHashMap<Long, LocaleEntity>();
+    private final Map<String, LocaleEntity> localesByName = new ConcurrentHashMap<String, LocaleEntity>();
+
+    @Override
+    protected LocaleEntity getLocaleEntity(Long id)
+    {
+        return localesById.get(id);
+    }
+
+    @Override
+    protected LocaleEntity getLocaleEntity(String localeStr)
+    {
+        return localesByName.get(localeStr);
+    }
+
+    @Override
+    protected LocaleEntity createLocaleEntity(String localeStr)
+    {
+        LocaleEntity entity = new LocaleEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(LocaleEntity.CONST_LONG_ZERO);
+        entity.setLocaleStr(localeStr);
+        localesById.put(entity.getId(), entity);
+        localesByName.put(localeStr, entity);
+        return entity;
+    }
+}
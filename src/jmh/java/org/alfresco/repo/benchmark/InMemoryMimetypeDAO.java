@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.domain.mimetype.AbstractMimetypeDAOImpl;
+import org.alfresco.repo.domain.mimetype.MimetypeEntity;
+
+/**
+ * A {@link org.alfresco.repo.domain.mimetype.MimetypeDAO} that keeps the <b>alf_mimetype</b> rows in memory.
+ * 
+ * @since 7.0
+ */
+public class InMemoryMimetypeDAO extends AbstractMimetypeDAOImpl
+{
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final Map<Long, MimetypeEntity> mimetypesById = new ConcurrentHashMap<Long, MimetypeEntity>();
+    private final Map<String, MimetypeEntity> mimetypesByName = new ConcurrentHashMap<String, MimetypeEntity>();
+
+    @Override
+    protected MimetypeEntity getMimetypeEntity(Long id)
+    {
+        return mimetypesById.get(id);
+    }
+
+    @Override
+    protected MimetypeEntity getMimetypeEntity(String mimetype)
+    {
+        return mimetype == null ? null : mimetypesByName.get(mimetype.toLowerCase());
+    }
+
+    @Override
+    protected MimetypeEntity createMimetypeEntity(String mimetype)
+    {
+        MimetypeEntity entity = new MimetypeEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(MimetypeEntity.CONST_LONG_ZERO);
+        entity.setMimetype(mimetype.toLowerCase());
+        mimetypesById.put(entity.getId(), entity);
+        mimetypesByName.put(entity.getMimetype(), entity);
+        return entity;
+    }
+
+    @Override
+    protected int updateMimetypeEntity(Long id, String newMimetype)
+    {
+        MimetypeEntity entity = mimetypesById.get(id);
+        if (entity == null)
+        {
+            return 0;
+        }
+        mimetypesByName.remove(entity.getMimetype());
+        entity.incrementVersion();
+        entity.setMimetype(newMimetype);
+        mimetypesByName.put(entity.getMimetype(), entity);
+        return 1;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.domain.qname.AbstractQNameDAOImpl;
+import org.alfresco.repo.domain.qname.NamespaceEntity;
+import org.alfresco.repo.domain.qname.QNameEntity;
+import org.alfresco.util.Pair;
+
+/**
+ * A {@link org.alfresco.repo.domain.qname.QNameDAO} that keeps the <b>alf_namespace</b> and <b>alf_qname</b>
+ * rows in memory, so that benchmarks measure the DAO and cache layers rather than the database.
+ * 
+ * @since 7.0
+ */
+public class InMemoryQNameDAO extends AbstractQNameDAOImpl
+{
+    private final AtomicLong nextId = new AtomicLong(1L);
+    private final Map<Long, NamespaceEntity> namespacesById = new ConcurrentHashMap<Long, NamespaceEntity>();
+    private final Map<String, NamespaceEntity> namespacesByUri = new ConcurrentHashMap<String, NamespaceEntity>();
+    private final Map<Long, QNameEntity> qnamesById = new ConcurrentHashMap<Long, QNameEntity>();
+    private final Map<Pair<Long, String>, QNameEntity> qnamesByName = new ConcurrentHashMap<Pair<Long, String>, QNameEntity>();
+
+    @Override
+    protected NamespaceEntity findNamespaceEntityById(Long id)
+    {
+        return namespacesById.get(id);
+    }
+
+    @Override
+    protected NamespaceEntity findNamespaceEntityByUri(String uri)
+    {
+        NamespaceEntity entity = new NamespaceEntity();
+        entity.setUriSafe(uri);
+        return namespacesByUri.get(entity.getUriSafe());
+    }
+
+    @Override
+    protected NamespaceEntity createNamespaceEntity(String uri)
+    {
+        NamespaceEntity entity = new NamespaceEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(NamespaceEntity.CONST_LONG_ZERO);
+        entity.setUriSafe(uri);
+        namespacesById.put(entity.getId(), entity);
+        namespacesByUri.put(entity.getUriSafe(), entity);
+        return entity;
+    }
+
+    @Override
+    protected int updateNamespaceEntity(NamespaceEntity entity, String uri)
+    {
+        namespacesByUri.remove(entity.getUriSafe());
+        entity.setUriSafe(uri);
+        entity.incrementVersion();
+        namespacesById.put(entity.getId(), entity);
+        namespacesByUri.put(entity.getUriSafe(), entity);
+        return 1;
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityById(Long id)
+    {
+        return qnamesById.get(id);
+    }
+
+    @Override
+    protected QNameEntity findQNameEntityByNamespaceAndLocalName(Long nsId, String localName)
+    {
+        QNameEntity entity = new QNameEntity();
+        entity.setLocalNameSafe(localName);
+        return qnamesByName.get(new Pair<Long, String>(nsId, entity.getLocalNameSafe()));
+    }
+
+    @Override
+    protected QNameEntity createQNameEntity(Long nsId, String localName)
+    {
+        QNameEntity entity = new QNameEntity();
+        entity.setId(nextId.getAndIncrement());
+        entity.setVersion(QNameEntity.CONST_LONG_ZERO);
+        entity.setNamespaceId(nsId);
+        entity.setLocalNameSafe(localName);
+        qnamesById.put(entity.getId(), entity);
+        qnamesByName.put(new Pair<Long, String>(nsId, entity.getLocalNameSafe()), entity);
+        return entity;
+    }
+
+    @Override
+    protected int updateQNameEntity(QNameEntity entity, Long nsId, String localName)
+    {
+        qnamesByName.remove(new Pair<Long, String>(entity.getNamespaceId(), entity.getLocalNameSafe()));
+        entity.setNamespaceId(nsId);
+        entity.setLocalNameSafe(localName);
+        entity.incrementVersion();
+        qnamesById.put(entity.getId(), entity);
+        qnamesByName.put(new Pair<Long, String>(nsId, entity.getLocalNameSafe()), entity);
+        return 1;
+    }
+
+    @Override
+    protected int deleteQNameEntity(QNameEntity entity)
+    {
+        QNameEntity removed = qnamesById.remove(entity.getId());
+        if (removed == null)
+        {
+            return 0;
+        }
+        qnamesByName.remove(new Pair<Long, String>(removed.getNamespaceId(), removed.getLocalNameSafe()));
+        return 1;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.service.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Measures {@link TransactionalCache} reads and writes over a populated shared cache.  Each measurement iteration
+ * runs in a single simulated transaction, which is only a bound transaction synchronization: no transaction
+ * manager or database is involved.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TransactionalCacheBenchmark
+{
+    private static final int ENTRY_COUNT = 5000;
+
+    /** <tt>NONE</tt>, <tt>READ_ONLY</tt> or <tt>READ_WRITE</tt> */
+    @Param({"NONE", "READ_ONLY", "READ_WRITE"})
+    public String transaction;
+
+    /** The size of the transaction-local buffers, which is larger than the key set to avoid overflows */
+    @Param({"10000"})
+    public int maxCacheSize;
+
+    private TransactionalCache<Long, QName> cache;
+    private QName[] values;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        cache = new TransactionalCache<Long, QName>();
+        cache.setName("benchmarkTransactionalCache");
+        cache.setSharedCache(new DefaultSimpleCache<Long, ValueHolder<QName>>(ENTRY_COUNT * 2, "benchmarkSharedCache"));
+        cache.setMaxCacheSize(maxCacheSize);
+        cache.afterPropertiesSet();
+
+        values = new QName[ENTRY_COUNT];
+        for (int i = 0; i < ENTRY_COUNT; i++)
+        {
+            values[i] = QName.createQName("http://www.alfresco.org/model/benchmark/1.0", "value" + i);
+            // Outside of a transaction, this goes straight to the shared cache
+            cache.put(Long.valueOf(i), values[i]);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void beginTransaction()
+    {
+        if (!"NONE".equals(transaction))
+        {
+            TransactionSynchronizationManager.initSynchronization();
+            TransactionSynchronizationManager.setCurrentTransactionReadOnly("READ_ONLY".equals(transaction));
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void endTransaction()
+    {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+        {
+            // Discard the transaction-bound cache data along with the synchronization
+            for (Object key : TransactionSynchronizationManager.getResourceMap().keySet())
+            {
+                TransactionSynchronizationManager.unbindResource(key);
+            }
+            TransactionSynchronizationManager.clear();
+        }
+    }
+
+    private Long nextKey()
+    {
+        next = (next + 1) % ENTRY_COUNT;
+        return Long.valueOf(next);
+    }
+
+    @Benchmark
+    public QName get()
+    {
+        return cache.get(nextKey());
+    }
+
+    @Benchmark
+    public boolean contains()
+    {
+        return cache.contains(nextKey());
+    }
+
+    @Benchmark
+    public QName putThenGet()
+    {
+        Long key = nextKey();
+        cache.put(key, values[key.intValue()]);
+        return cache.get(key);
+    }
+}
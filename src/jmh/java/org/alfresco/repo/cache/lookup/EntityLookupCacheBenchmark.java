@@ -0,0 +1,146 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache.lookup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.lookup.EntityLookupCache.EntityLookupCallbackDAOAdaptor;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link EntityLookupCache} key and value lookups over an in-memory entity table.  The cache is sized
+ * either to hold every entity or a tenth of them, so that both the hit path and the miss-and-reload path are covered.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EntityLookupCacheBenchmark
+{
+    private static final int ENTITY_COUNT = 10000;
+
+    /** The percentage of the entities that fit into the cache */
+    @Param({"100", "10"})
+    public int cachedPercent;
+
+    private EntityLookupCache<Long, String, String> entityLookupCache;
+    private Long[] keys;
+    private String[] values;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        int cacheSize = Math.max(1, ENTITY_COUNT * cachedPercent / 100);
+        // Each entity takes a key and a value-key entry
+        DefaultSimpleCache<Long, Object> cache = new DefaultSimpleCache<Long, Object>(cacheSize * 2, "benchmarkCache");
+        entityLookupCache = new EntityLookupCache<Long, String, String>(cache, "Benchmark", new InMemoryCallbackDAO());
+
+        keys = new Long[ENTITY_COUNT];
+        values = new String[ENTITY_COUNT];
+        for (int i = 0; i < ENTITY_COUNT; i++)
+        {
+            values[i] = "entity-" + i;
+            keys[i] = entityLookupCache.getOrCreateByValue(values[i]).getFirst();
+        }
+    }
+
+    private int nextIndex()
+    {
+        next = (next + 1) % ENTITY_COUNT;
+        return next;
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByKey()
+    {
+        return entityLookupCache.getByKey(keys[nextIndex()]);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getByValue()
+    {
+        return entityLookupCache.getByValue(values[nextIndex()]);
+    }
+
+    /**
+     * Stands in for the DAO and its table
+     */
+    private static class InMemoryCallbackDAO extends EntityLookupCallbackDAOAdaptor<Long, String, String>
+    {
+        private final AtomicLong nextId = new AtomicLong(1L);
+        private final Map<Long, String> valuesByKey = new ConcurrentHashMap<Long, String>();
+        private final Map<String, Long> keysByValue = new ConcurrentHashMap<String, Long>();
+
+        @Override
+        public String getValueKey(String value)
+        {
+            return value;
+        }
+
+        @Override
+        public Pair<Long, String> findByKey(Long key)
+        {
+            String value = valuesByKey.get(key);
+            return value == null ? null : new Pair<Long, String>(key, value);
+        }
+
+        @Override
+        public Pair<Long, String> findByValue(String value)
+        {
+            Long key = keysByValue.get(value);
+            return key == null ? null : new Pair<Long, String>(key, value);
+        }
+
+        @Override
+        public Pair<Long, String> createValue(String value)
+        {
+            Long key = nextId.getAndIncrement();
+            valuesByKey.put(key, value);
+            keysByValue.put(value, key);
+            return new Pair<Long, String>(key, value);
+        }
+    }
+}
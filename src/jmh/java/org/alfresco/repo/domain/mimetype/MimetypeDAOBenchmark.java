@@ -0,0 +1,111 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.mimetype;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.benchmark.InMemoryMimetypeDAO;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.cache.NullCache;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link MimetypeDAO} ID and value lookups against in-memory <b>alf_mimetype</b> rows, with and without
+ * the shared cache in front of them.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MimetypeDAOBenchmark
+{
+    private static final int MIMETYPE_COUNT = 200;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private MimetypeDAO mimetypeDAO;
+    private String[] mimetypes;
+    private Long[] mimetypeIds;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        InMemoryMimetypeDAO dao = new InMemoryMimetypeDAO();
+        if (cached)
+        {
+            dao.setMimetypeEntityCache(new DefaultSimpleCache<Serializable, Serializable>(MIMETYPE_COUNT * 2, "mimetypeEntityCache"));
+        }
+        else
+        {
+            dao.setMimetypeEntityCache(NullCache.<Serializable, Serializable>getInstance());
+        }
+        mimetypeDAO = dao;
+
+        mimetypes = new String[MIMETYPE_COUNT];
+        mimetypeIds = new Long[MIMETYPE_COUNT];
+        for (int i = 0; i < MIMETYPE_COUNT; i++)
+        {
+            mimetypes[i] = "application/x-benchmark-" + i;
+            mimetypeIds[i] = mimetypeDAO.getOrCreateMimetype(mimetypes[i]).getFirst();
+        }
+    }
+
+    private int nextIndex()
+    {
+        next = (next + 1) % MIMETYPE_COUNT;
+        return next;
+    }
+
+    @Benchmark
+    public Pair<Long, String> getMimetypeById()
+    {
+        return mimetypeDAO.getMimetype(mimetypeIds[nextIndex()]);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getMimetypeByValue()
+    {
+        return mimetypeDAO.getMimetype(mimetypes[nextIndex()]);
+    }
+}
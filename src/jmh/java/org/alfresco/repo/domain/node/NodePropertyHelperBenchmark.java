@@ -0,0 +1,127 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.BenchmarkDictionary;
+import org.alfresco.repo.benchmark.InMemoryLocaleDAO;
+import org.alfresco.repo.benchmark.InMemoryQNameDAO;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.domain.contentdata.ContentDataDAO;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the conversion of a typical set of <b>cm:content</b> properties to and from the persisted form,
+ * using the real dictionary and in-memory QName and locale DAOs.  No content properties are used, so the
+ * content data DAO is never called.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class NodePropertyHelperBenchmark
+{
+    private static final QName PROP_RESIDUAL = QName.createQName("http://www.alfresco.org/model/benchmark/1.0", "residual");
+
+    private NodePropertyHelper nodePropertyHelper;
+    private Map<QName, Serializable> publicProperties;
+    private Map<NodePropertyKey, NodePropertyValue> persistentProperties;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        BenchmarkDictionary dictionary = new BenchmarkDictionary();
+        InMemoryQNameDAO qnameDAO = new InMemoryQNameDAO();
+        qnameDAO.setNamespaceCache(new DefaultSimpleCache<Long, String>(100, "namespaceEntityCache"));
+        qnameDAO.setQnameCache(new DefaultSimpleCache<Long, QName>(1000, "qnameEntityCache"));
+        InMemoryLocaleDAO localeDAO = new InMemoryLocaleDAO();
+        localeDAO.setLocaleEntityCache(new DefaultSimpleCache<Long, String>(100, "localeEntityCache"));
+        ContentDataDAO contentDataDAO = Mockito.mock(ContentDataDAO.class);
+        nodePropertyHelper = new NodePropertyHelper(dictionary.getDictionaryService(), qnameDAO, localeDAO, contentDataDAO);
+
+        Date now = new Date();
+        ArrayList<NodeRef> categories = new ArrayList<NodeRef>();
+        for (int i = 0; i < 3; i++)
+        {
+            categories.add(new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString()));
+        }
+        publicProperties = new HashMap<QName, Serializable>();
+        publicProperties.put(ContentModel.PROP_NAME, "Quarterly report.docx");
+        publicProperties.put(ContentModel.PROP_TITLE, new MLText(Locale.ENGLISH, "Quarterly report"));
+        publicProperties.put(ContentModel.PROP_DESCRIPTION, new MLText(Locale.ENGLISH, "The report for the last quarter"));
+        publicProperties.put(ContentModel.PROP_CREATED, now);
+        publicProperties.put(ContentModel.PROP_CREATOR, "admin");
+        publicProperties.put(ContentModel.PROP_MODIFIED, now);
+        publicProperties.put(ContentModel.PROP_MODIFIER, "admin");
+        publicProperties.put(ContentModel.PROP_AUTHOR, "Joe Bloggs");
+        publicProperties.put(ContentModel.PROP_VERSION_LABEL, "1.3");
+        publicProperties.put(ContentModel.PROP_AUTO_VERSION, Boolean.TRUE);
+        publicProperties.put(ContentModel.PROP_CATEGORIES, categories);
+        publicProperties.put(ContentModel.PROP_NODE_UUID, UUID.randomUUID().toString());
+        publicProperties.put(PROP_RESIDUAL, Integer.valueOf(42));
+
+        persistentProperties = nodePropertyHelper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<NodePropertyKey, NodePropertyValue> convertToPersistentProperties()
+    {
+        return nodePropertyHelper.convertToPersistentProperties(publicProperties);
+    }
+
+    @Benchmark
+    public Map<QName, Serializable> convertToPublicProperties()
+    {
+        return nodePropertyHelper.convertToPublicProperties(persistentProperties);
+    }
+}
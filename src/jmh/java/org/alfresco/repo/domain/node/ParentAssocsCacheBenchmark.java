@@ -0,0 +1,139 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the {@link ParentAssocsCache} implementations under a read-mostly load, with one and with several
+ * threads.  The node count exceeds the cache size, so eviction is part of the measurement.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParentAssocsCacheBenchmark
+{
+    private static final int NODE_COUNT = 200000;
+    private static final String TXN_ID = "benchmark-txn";
+
+    /** <tt>linked</tt> or <tt>segmented</tt> */
+    @Param({"linked", "segmented"})
+    public String implementation;
+
+    /** The defaults of <tt>system.cache.parentAssocs.*</tt> */
+    @Param({"130000"})
+    public int size;
+
+    @Param({"8"})
+    public int limitFactor;
+
+    @Param({"16"})
+    public int segments;
+
+    /** The percentage of operations that are cache writes */
+    @Param({"10"})
+    public int writePercent;
+
+    private ParentAssocsCache cache;
+    private ParentAssocsInfo[] parentAssocs;
+
+    @Setup
+    public void setUp()
+    {
+        if ("segmented".equals(implementation))
+        {
+            cache = new SegmentedParentAssocsCache(size, limitFactor, segments);
+        }
+        else
+        {
+            cache = new LinkedParentAssocsCache(size, limitFactor);
+        }
+        parentAssocs = new ParentAssocsInfo[NODE_COUNT];
+        for (int i = 0; i < NODE_COUNT; i++)
+        {
+            ChildAssocEntity parentAssoc = new ChildAssocEntity();
+            parentAssoc.setId(Long.valueOf(i));
+            parentAssoc.setPrimary(Boolean.TRUE);
+            parentAssocs[i] = new ParentAssocsInfo(false, false, parentAssoc);
+            if (i < size)
+            {
+                cache.put(i, TXN_ID, parentAssocs[i]);
+            }
+        }
+    }
+
+    private ParentAssocsInfo getOrPut()
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int nodeId = random.nextInt(NODE_COUNT);
+        if (random.nextInt(100) < writePercent)
+        {
+            cache.put(nodeId, TXN_ID, parentAssocs[nodeId]);
+            return parentAssocs[nodeId];
+        }
+        ParentAssocsInfo cached = cache.get(nodeId, TXN_ID);
+        if (cached == null)
+        {
+            // A miss is followed by a load and a put in the node DAO
+            cache.put(nodeId, TXN_ID, parentAssocs[nodeId]);
+            cached = parentAssocs[nodeId];
+        }
+        return cached;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ParentAssocsInfo singleThread()
+    {
+        return getOrPut();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ParentAssocsInfo eightThreads()
+    {
+        return getOrPut();
+    }
+}
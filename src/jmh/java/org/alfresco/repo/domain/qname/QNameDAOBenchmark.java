@@ -0,0 +1,120 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.qname;
+
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.benchmark.InMemoryQNameDAO;
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link QNameDAO} ID and value lookups against in-memory <b>alf_namespace</b> and <b>alf_qname</b> rows,
+ * with and without the shared caches in front of them.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QNameDAOBenchmark
+{
+    private static final int NAMESPACE_COUNT = 20;
+    private static final int QNAME_COUNT = 2000;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private QNameDAO qnameDAO;
+    private QName[] qnames;
+    private Long[] qnameIds;
+    private String[] namespaceUris;
+    private int next;
+
+    @Setup
+    public void setUp()
+    {
+        InMemoryQNameDAO dao = new InMemoryQNameDAO();
+        if (cached)
+        {
+            dao.setNamespaceCache(new DefaultSimpleCache<Long, String>(NAMESPACE_COUNT * 2, "namespaceEntityCache"));
+            dao.setQnameCache(new DefaultSimpleCache<Long, QName>(QNAME_COUNT * 2, "qnameEntityCache"));
+        }
+        qnameDAO = dao;
+
+        namespaceUris = new String[NAMESPACE_COUNT];
+        for (int i = 0; i < NAMESPACE_COUNT; i++)
+        {
+            namespaceUris[i] = "http://www.alfresco.org/model/benchmark/" + i + "/1.0";
+        }
+        qnames = new QName[QNAME_COUNT];
+        qnameIds = new Long[QNAME_COUNT];
+        for (int i = 0; i < QNAME_COUNT; i++)
+        {
+            qnames[i] = QName.createQName(namespaceUris[i % NAMESPACE_COUNT], "property" + i);
+            qnameIds[i] = qnameDAO.getOrCreateQName(qnames[i]).getFirst();
+        }
+    }
+
+    private int nextIndex(int length)
+    {
+        next = (next + 1) % length;
+        return next;
+    }
+
+    @Benchmark
+    public Pair<Long, QName> getQNameById()
+    {
+        return qnameDAO.getQName(qnameIds[nextIndex(QNAME_COUNT)]);
+    }
+
+    @Benchmark
+    public Pair<Long, QName> getQNameByValue()
+    {
+        return qnameDAO.getQName(qnames[nextIndex(QNAME_COUNT)]);
+    }
+
+    @Benchmark
+    public Pair<Long, String> getNamespaceByUri()
+    {
+        return qnameDAO.getNamespace(namespaceUris[nextIndex(NAMESPACE_COUNT)]);
+    }
+}
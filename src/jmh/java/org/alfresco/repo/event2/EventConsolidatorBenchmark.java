@@ -0,0 +1,215 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.io.Serializable;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.BenchmarkDictionary;
+import org.alfresco.repo.event.v1.model.NodeResource;
+import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.repo.event2.filter.EventFilterRegistry;
+import org.alfresco.repo.event2.filter.NodeAspectFilter;
+import org.alfresco.repo.event2.filter.NodePropertyFilter;
+import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.MLText;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.Path;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.PersonService;
+import org.alfresco.service.namespace.NamespaceService;
+import org.alfresco.service.namespace.QName;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long an {@link EventConsolidator} takes to collect the policy callbacks of a transaction and to build
+ * the resulting {@link RepoEvent}.  The node and person services are in-memory stand-ins serving a single
+ * <b>cm:content</b> node five levels deep; the dictionary and the event filters are real.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class EventConsolidatorBenchmark
+{
+    private static final int PATH_DEPTH = 5;
+
+    private NodeResourceHelper nodeResourceHelper;
+    private ChildAssociationRef childAssocRef;
+    private NodeRef nodeRef;
+    private Map<QName, Serializable> propertiesBefore;
+    private Map<QName, Serializable> propertiesAfter;
+    private EventInfo eventInfo;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        BenchmarkDictionary dictionary = new BenchmarkDictionary();
+        DictionaryService dictionaryService = dictionary.getDictionaryService();
+        NamespaceService namespaceService = dictionary.getNamespaceService();
+
+        // Build the node and its primary path
+        NodeRef parentRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+        final Path path = new Path();
+        path.append(new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, parentRef)));
+        for (int i = 0; i < PATH_DEPTH; i++)
+        {
+            NodeRef childRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+            childAssocRef = new ChildAssociationRef(
+                    ContentModel.ASSOC_CONTAINS,
+                    parentRef,
+                    QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "node" + i),
+                    childRef,
+                    true,
+                    -1);
+            path.append(new Path.ChildAssocElement(childAssocRef));
+            parentRef = childRef;
+        }
+        nodeRef = childAssocRef.getChildRef();
+
+        Date created = new Date(System.currentTimeMillis() - 60000L);
+        propertiesBefore = new HashMap<QName, Serializable>();
+        propertiesBefore.put(ContentModel.PROP_NAME, "Quarterly report.docx");
+        propertiesBefore.put(ContentModel.PROP_TITLE, new MLText(Locale.ENGLISH, "Quarterly report"));
+        propertiesBefore.put(ContentModel.PROP_CREATED, created);
+        propertiesBefore.put(ContentModel.PROP_CREATOR, "jbloggs");
+        propertiesBefore.put(ContentModel.PROP_MODIFIED, created);
+        propertiesBefore.put(ContentModel.PROP_MODIFIER, "jbloggs");
+        propertiesBefore.put(ContentModel.PROP_NODE_UUID, nodeRef.getId());
+        propertiesAfter = new HashMap<QName, Serializable>(propertiesBefore);
+        propertiesAfter.put(ContentModel.PROP_DESCRIPTION, new MLText(Locale.ENGLISH, "The report for the last quarter"));
+        propertiesAfter.put(ContentModel.PROP_MODIFIED, new Date());
+        propertiesAfter.put(ContentModel.PROP_MODIFIER, "admin");
+        final Map<QName, Serializable> properties = propertiesAfter;
+        final Set<QName> aspects = new HashSet<QName>();
+        aspects.add(ContentModel.ASPECT_AUDITABLE);
+        aspects.add(ContentModel.ASPECT_TITLED);
+        aspects.add(ContentModel.ASPECT_REFERENCEABLE);
+
+        NodeService nodeService = (NodeService) Proxy.newProxyInstance(
+                NodeService.class.getClassLoader(),
+                new Class<?>[] {NodeService.class},
+                (proxy, method, args) ->
+                {
+                    switch (method.getName())
+                    {
+                        case "exists":
+                            return Boolean.TRUE;
+                        case "getType":
+                            return ContentModel.TYPE_CONTENT;
+                        case "getPath":
+                            return path;
+                        case "getProperties":
+                            return new HashMap<QName, Serializable>(properties);
+                        case "getAspects":
+                            return new HashSet<QName>(aspects);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        // Every user is unknown, which takes the same path as a found person without the extra lookups
+        PersonService personService = (PersonService) Proxy.newProxyInstance(
+                PersonService.class.getClassLoader(),
+                new Class<?>[] {PersonService.class},
+                (proxy, method, args) ->
+                {
+                    if ("getPersonOrNull".equals(method.getName()))
+                    {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        NodeAspectFilter nodeAspectFilter = new NodeAspectFilter("");
+        nodeAspectFilter.setDictionaryService(dictionaryService);
+        nodeAspectFilter.setNamespaceService(namespaceService);
+        nodeAspectFilter.init();
+        NodePropertyFilter nodePropertyFilter = new NodePropertyFilter();
+        nodePropertyFilter.setDictionaryService(dictionaryService);
+        nodePropertyFilter.setNamespaceService(namespaceService);
+        nodePropertyFilter.init();
+        EventFilterRegistry eventFilterRegistry = Mockito.mock(EventFilterRegistry.class);
+        Mockito.when(eventFilterRegistry.getNodeAspectFilter()).thenReturn(nodeAspectFilter);
+        Mockito.when(eventFilterRegistry.getNodePropertyFilter()).thenReturn(nodePropertyFilter);
+
+        nodeResourceHelper = new NodeResourceHelper(
+                nodeService, namespaceService, dictionaryService, personService, eventFilterRegistry);
+
+        eventInfo = new EventInfo()
+                .setId(UUID.randomUUID().toString())
+                .setTxnId(UUID.randomUUID().toString())
+                .setPrincipal("admin")
+                .setTimestamp(ZonedDateTime.now())
+                .setSource(URI.create("/benchmark"));
+    }
+
+    @Benchmark
+    public RepoEvent<NodeResource> nodeCreated()
+    {
+        EventConsolidator consolidator = new EventConsolidator(nodeResourceHelper);
+        consolidator.onCreateNode(childAssocRef);
+        consolidator.onUpdateProperties(nodeRef, Collections.<QName, Serializable>emptyMap(), propertiesAfter);
+        consolidator.onAddAspect(nodeRef, ContentModel.ASPECT_TITLED);
+        return consolidator.getRepoEvent(eventInfo);
+    }
+
+    @Benchmark
+    public RepoEvent<NodeResource> nodeUpdated()
+    {
+        EventConsolidator consolidator = new EventConsolidator(nodeResourceHelper);
+        consolidator.onUpdateProperties(nodeRef, propertiesBefore, propertiesAfter);
+        consolidator.onAddAspect(nodeRef, ContentModel.ASPECT_TITLED);
+        return consolidator.getRepoEvent(eventInfo);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl.acegi;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.acegisecurity.ConfigAttribute;
+import net.sf.acegisecurity.ConfigAttributeDefinition;
+
+import org.alfresco.repo.benchmark.BenchmarkDictionary;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the filtering of a returned collection of nodes by {@link ACLEntryAfterInvocationProvider}, with single
+ * and bulk permission checks.  The permission service is an in-memory stand-in that denies a fixed share of the
+ * nodes, so only the cost of the provider itself is measured.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ACLEntryAfterInvocationProviderBenchmark
+{
+    private static final String CONFIG = "AFTER_ACL_NODE.sys:base.ReadProperties";
+
+    @Param({"1000"})
+    public int resultSize;
+
+    /** One node in this many is denied */
+    @Param({"10"})
+    public int denyEvery;
+
+    /** 0 checks one node at a time */
+    @Param({"0", "100"})
+    public int bulkPermissionCheckSize;
+
+    private ACLEntryAfterInvocationProvider provider;
+    private ConfigAttributeDefinition config;
+    private List<NodeRef> results;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        results = new ArrayList<NodeRef>(resultSize);
+        final Set<NodeRef> denied = new HashSet<NodeRef>();
+        for (int i = 0; i < resultSize; i++)
+        {
+            NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, UUID.randomUUID().toString());
+            results.add(nodeRef);
+            if (i % denyEvery == 0)
+            {
+                denied.add(nodeRef);
+            }
+        }
+
+        provider = new ACLEntryAfterInvocationProvider();
+        provider.setPermissionService(createPermissionService(denied));
+        provider.setNodeService(Mockito.mock(NodeService.class));
+        provider.setNamespacePrefixResolver(new BenchmarkDictionary().getNamespaceService());
+        provider.setBulkPermissionCheckSize(bulkPermissionCheckSize);
+        provider.afterPropertiesSet();
+
+        config = new ConfigAttributeDefinition();
+        config.addConfigAttribute(new ConfigAttribute()
+        {
+            private static final long serialVersionUID = 1L;
+
+            public String getAttribute()
+            {
+                return CONFIG;
+            }
+        });
+
+        // The system user is not filtered at all
+        AuthenticationUtil.setFullyAuthenticatedUser("benchmark");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    /**
+     * @return      a permission service that answers only single and bulk permission checks from the given denials
+     */
+    @SuppressWarnings("unchecked")
+    private static PermissionServiceSPI createPermissionService(final Set<NodeRef> denied)
+    {
+        return (PermissionServiceSPI) Proxy.newProxyInstance(
+                PermissionServiceSPI.class.getClassLoader(),
+                new Class<?>[] {PermissionServiceSPI.class},
+                (proxy, method, args) ->
+                {
+                    switch (method.getName())
+                    {
+                        case "hasPermission":
+                            return denied.contains(args[0]) ? AccessStatus.DENIED : AccessStatus.ALLOWED;
+                        case "hasPermissions":
+                            List<NodeRef> nodeRefs = (List<NodeRef>) args[0];
+                            BitSet allowed = new BitSet(nodeRefs.size());
+                            for (int i = 0; i < nodeRefs.size(); i++)
+                            {
+                                allowed.set(i, !denied.contains(nodeRefs.get(i)));
+                            }
+                            return allowed;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "PermissionServiceSPI stand-in";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Benchmark
+    public Object filterNodeRefs()
+    {
+        // The provider modifies the collection in place
+        return provider.decide(null, null, config, new ArrayList<NodeRef>(results));
+    }
+}
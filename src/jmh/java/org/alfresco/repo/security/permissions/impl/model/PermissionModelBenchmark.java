@@ -0,0 +1,113 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl.model;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.benchmark.BenchmarkDictionary;
+import org.alfresco.repo.security.permissions.PermissionReference;
+import org.alfresco.repo.security.permissions.impl.RequiredPermission;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the {@link PermissionModel} lookups made for every permission check, using the shipped permission
+ * definitions over the in-memory dictionary.  Only type-based lookups are measured, so the node service is not used.
+ * 
+ * @since 7.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PermissionModelBenchmark
+{
+    private PermissionModel permissionModel;
+    private PermissionReference read;
+    private PermissionReference readProperties;
+    private Set<QName> aspects;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        BenchmarkDictionary dictionary = new BenchmarkDictionary();
+        permissionModel = new PermissionModel();
+        permissionModel.setModel("alfresco/model/permissionDefinitions.xml");
+        permissionModel.setDtdSchema("alfresco/model/permissionSchema.dtd");
+        permissionModel.setDictionaryService(dictionary.getDictionaryService());
+        permissionModel.setNodeService(Mockito.mock(NodeService.class));
+        permissionModel.init();
+
+        read = permissionModel.getPermissionReference(ContentModel.TYPE_BASE, PermissionService.READ);
+        readProperties = permissionModel.getPermissionReference(ContentModel.TYPE_BASE, PermissionService.READ_PROPERTIES);
+        aspects = new HashSet<QName>();
+        aspects.add(ContentModel.ASPECT_AUDITABLE);
+        aspects.add(ContentModel.ASPECT_TITLED);
+        aspects.add(ContentModel.ASPECT_AUTHOR);
+    }
+
+    @Benchmark
+    public PermissionReference getPermissionReference()
+    {
+        return permissionModel.getPermissionReference(ContentModel.TYPE_BASE, PermissionService.WRITE);
+    }
+
+    @Benchmark
+    public Set<PermissionReference> getGrantingPermissions()
+    {
+        return permissionModel.getGrantingPermissions(read);
+    }
+
+    @Benchmark
+    public Set<PermissionReference> getRequiredPermissions()
+    {
+        return permissionModel.getRequiredPermissions(
+                readProperties, ContentModel.TYPE_CONTENT, aspects, RequiredPermission.On.NODE);
+    }
+
+    @Benchmark
+    public Set<PermissionReference> getAllPermissions()
+    {
+        return permissionModel.getAllPermissions(ContentModel.TYPE_FOLDER, aspects);
+    }
+}
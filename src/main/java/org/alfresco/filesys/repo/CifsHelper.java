@@ -29,6 +29,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
@@ -650,21 +651,36 @@ public class CifsHelper
             tokens[count] = tokenizer.nextToken();
             count++;
         }
-        Stack<String> pathElements = new Stack<String>();
-        for (int i = tokens.length - 1; i >= 0; i--)
-        {
-            pathElements.push(tokens[i]);
-        }
-        
-        // start with a single parent node
-        List<NodeRef> pathRootNodeRefs = Collections.singletonList(pathRootNodeRef);
         
         // result storage
         List<NodeRef> results = new ArrayList<NodeRef>(5);
         List<NodeRef> rubeResults = new ArrayList<NodeRef>(5);
         
-        // kick off the path walking
-        addDescendents(pathRootNodeRefs, pathElements, rubeResults); 
+        if (tokens.length > 0 && !WildCard.containsWildcards(path))
+        {
+            // a specific path is required, so resolve all of it at once
+            List<org.alfresco.service.cmr.model.FileInfo> pathInfos = fileFolderService.resolveNamePathElements(
+                    pathRootNodeRef,
+                    Arrays.asList(tokens));
+            if (pathInfos.size() == tokens.length)
+            {
+                rubeResults.add(pathInfos.get(tokens.length - 1).getNodeRef());
+            }
+        }
+        else
+        {
+            Stack<String> pathElements = new Stack<String>();
+            for (int i = tokens.length - 1; i >= 0; i--)
+            {
+                pathElements.push(tokens[i]);
+            }
+            
+            // start with a single parent node
+            List<NodeRef> pathRootNodeRefs = Collections.singletonList(pathRootNodeRef);
+            
+            // kick off the path walking
+            addDescendents(pathRootNodeRefs, pathElements, rubeResults); 
+        }
         
         for (NodeRef nodeRef : rubeResults)
         {
@@ -38,6 +38,7 @@ import java.net.URL;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -92,12 +93,23 @@ public abstract class FeedTaskProcessor
     private static final String URL_SERVICE_TEMPLATE  = "/api/activities/template";
     
     private boolean userNamesAreCaseSensitive = false;
+    private int feedInsertBatchSize = 1;
     
     public void setUserNamesAreCaseSensitive(boolean userNamesAreCaseSensitive)
     {
         this.userNamesAreCaseSensitive = userNamesAreCaseSensitive;
     }
     
+    /**
+     * @param feedInsertBatchSize   the number of feed entries written by a single insert statement.
+     *                              1 or less inserts each entry on its own (the default).
+     * @since 7.0
+     */
+    public void setFeedInsertBatchSize(int feedInsertBatchSize)
+    {
+        this.feedInsertBatchSize = feedInsertBatchSize;
+    }
+    
     public void process(int jobTaskNode, long minSeq, long maxSeq, RepoCtx ctx) throws Exception
     {
         long startTime = System.currentTimeMillis();
@@ -115,6 +127,7 @@ public abstract class FeedTaskProcessor
         
         List<ActivityPostEntity> activityPosts = null;
         int totalGenerated = 0;
+        int totalRecipients = 0;
         
         try
         {
@@ -127,6 +140,7 @@ public abstract class FeedTaskProcessor
             Map<Pair<String, String>, Set<String>> followerConnectedUsers = new HashMap<Pair<String, String>, Set<String>>(); // user -> followers
             Map<Pair<String, String>, Boolean> canUserReadSite = new HashMap<Pair<String, String>, Boolean>();                // <user, site> -> true/false (note: used when following, implied as true for site members)
             Map<String, List<FeedControlEntity>> userFeedControls = new HashMap<String, List<FeedControlEntity>>();
+            Map<Object, Boolean> readCache = new HashMap<Object, Boolean>();                                                   // see getReaders
             
             List<String> fmTemplates = Arrays.asList(new String[]{"activities/org/alfresco/generic.json.ftl"});
             
@@ -225,89 +239,86 @@ public abstract class FeedTaskProcessor
                         logger.trace("Process: " + recipients.size() + " candidate connections for activity post " + activityPost.getId());
                     }
                     
+                    // Get the feed controls of all the recipients not seen before in this run in one go
+                    cacheFeedControls(recipients, userFeedControls);
+                    
                     int excludedConnections = 0;
                     
+                    // filter based on opt-out feed controls (if any)
+                    List<String> connectedUsers = new ArrayList<String>(recipients.size());
                     for (String recipient : recipients)
                     {
-                        List<FeedControlEntity> feedControls = null;
-                        if (! recipient.equals(""))
+                        List<FeedControlEntity> feedControls = recipient.equals("") ? null : userFeedControls.get(recipient);
+                        if (acceptActivity(activityPost, feedControls))
                         {
-                            // Get user's feed controls
-                            feedControls = userFeedControls.get(recipient);
-                            if (feedControls == null)
-                            {
-                                feedControls = getFeedControls(recipient);
-                                userFeedControls.put(recipient, feedControls);
-                            }
+                            connectedUsers.add(recipient);
                         }
-                        
-                        // filter based on opt-out feed controls (if any)
-                        if (! acceptActivity(activityPost, feedControls))
+                        else
                         {
                             excludedConnections++;
                         }
-                        else
+                    }
+                    
+                    // node read permission check (if nodeRef is present)
+                    Set<String> readers = getReaders(ctx, connectedUsers, model, readCache);
+                    excludedConnections += connectedUsers.size() - readers.size();
+                    
+                    //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+                    if (! userNamesAreCaseSensitive)
+                    {
+                        postingUserId = postingUserId.toLowerCase();
+                    }
+                    
+                    // Generate activity feed summary once for all the recipients
+                    // allows JSON to simply pass straight through
+                    String activitySummary = activityPost.getActivityData();
+                    
+                    List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>(readers.size());
+                    for (String fmTemplate : fmTemplates)
+                    {
+                        String formatFound = FeedTaskProcessor.FEED_FORMAT_JSON;
+                        
+                        if (activitySummary.equals(""))
                         {
-                            // node read permission check (if nodeRef is present)
-                            if (! canRead(ctx, recipient, model))
+                            if (logger.isDebugEnabled())
                             {
-                                excludedConnections++;
-                                continue;
+                                logger.debug("Empty template result for activityType '" + activityType + "' using format '" + formatFound + "' hence skip feed entry (activity post " + activityPost.getId() + ")");
                             }
-                            
-                            for (String fmTemplate : fmTemplates)
+                        }
+                        else if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
+                        {
+                            logger.warn("Skip feed entries (activity post " + activityPost.getId() + ", template " + fmTemplate + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
+                        }
+                        else
+                        {
+                            Date feedDate = new Date();
+                            for (String recipient : connectedUsers)
                             {
-                                String formatFound = FeedTaskProcessor.FEED_FORMAT_JSON;
-                                
-                                ActivityFeedEntity feed = new ActivityFeedEntity();
-                                
-                                // Generate activity feed summary 
-                                //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
-                                if (! userNamesAreCaseSensitive)
+                                if (! readers.contains(recipient))
                                 {
-                                    recipient = recipient.toLowerCase();
-                                    postingUserId = postingUserId.toLowerCase();
+                                    continue;
                                 }
-                                feed.setFeedUserId(recipient);
+                                
+                                ActivityFeedEntity feed = new ActivityFeedEntity();
+                                feed.setFeedUserId(userNamesAreCaseSensitive ? recipient : recipient.toLowerCase());
                                 feed.setPostUserId(postingUserId);
                                 feed.setActivityType(activityType);
-                                
-                                String activitySummary = null;
-                                    // allows JSON to simply pass straight through
-                                    activitySummary = activityPost.getActivityData();
-                                
-                                if (! activitySummary.equals(""))
-                                {
-                                    if (activitySummary.length() > ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY)
-                                    {
-                                        logger.warn("Skip feed entry (activity post " + activityPost.getId() + ") since activity summary - exceeds " + ActivityFeedDAO.MAX_LEN_ACTIVITY_SUMMARY + " chars: " + activitySummary);
-                                    }
-                                    else
-                                    {
-                                        feed.setActivitySummary(activitySummary);
-                                        feed.setSiteNetwork(thisSite);
-                                        feed.setAppTool(activityPost.getAppTool());
-                                        feed.setPostDate(activityPost.getPostDate());
-                                        feed.setPostId(activityPost.getId());
-                                        feed.setFeedDate(new Date());
-                                        
-                                        // Insert activity feed
-                                        insertFeedEntry(feed); // ignore returned feedId
-                                        
-                                        totalGenerated++;
-                                    }
-                                }
-                                else
-                                {
-                                    if (logger.isDebugEnabled())
-                                    {
-                                        logger.debug("Empty template result for activityType '" + activityType + "' using format '" + formatFound + "' hence skip feed entry (activity post " + activityPost.getId() + ")");
-                                    }
-                                }
+                                feed.setActivitySummary(activitySummary);
+                                feed.setSiteNetwork(thisSite);
+                                feed.setAppTool(activityPost.getAppTool());
+                                feed.setPostDate(activityPost.getPostDate());
+                                feed.setPostId(activityPost.getId());
+                                feed.setFeedDate(feedDate);
+                                feeds.add(feed);
                             }
                         }
                     }
                     
+                    // Insert activity feeds
+                    writeFeedEntries(feeds);
+                    totalGenerated += feeds.size();
+                    totalRecipients += recipients.size();
+                    
                     updatePostStatus(activityPost.getId(), ActivityPostEntity.STATUS.PROCESSED);
                     
                     commitTransaction();
@@ -331,11 +342,17 @@ public abstract class FeedTaskProcessor
         finally
         {
             int postCnt = activityPosts == null ? 0 : activityPosts.size();
+            long duration = System.currentTimeMillis() - startTime;
             
             // TODO i18n info message
             StringBuilder sb = new StringBuilder();
             sb.append("Generated ").append(totalGenerated).append(" activity feed entr").append(totalGenerated == 1 ? "y" : "ies");
-            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(System.currentTimeMillis() - startTime).append(" msecs)");
+            sb.append(" for ").append(postCnt).append(" activity post").append(postCnt != 1 ? "s" : "").append(" (in ").append(duration).append(" msecs)");
+            if (duration > 0)
+            {
+                sb.append(". Rate: ").append(totalGenerated * 1000L / duration).append(" entries and ");
+                sb.append(totalRecipients * 1000L / duration).append(" candidate recipients per second");
+            }
             logger.info(sb.toString());
         }
     }
@@ -445,6 +462,39 @@ public abstract class FeedTaskProcessor
 
     public abstract long insertFeedEntry(ActivityFeedEntity feed) throws SQLException;
 
+    /**
+     * Select the feed controls of several users at once. By default, the users are selected one at a time.
+     * 
+     * @param userIds       the users
+     * @return              the feed controls of all the given users
+     * @since 7.0
+     */
+    public List<FeedControlEntity> selectUserFeedControls(Collection<String> userIds) throws SQLException
+    {
+        List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        for (String userId : userIds)
+        {
+            feedControls.addAll(selectUserFeedControls(userId));
+        }
+        return feedControls;
+    }
+
+    /**
+     * Insert several feed entries at once. By default, the entries are inserted one at a time.
+     * 
+     * @param feeds         the feed entries
+     * @return              the number of entries inserted
+     * @since 7.0
+     */
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        for (ActivityFeedEntity feed : feeds)
+        {
+            insertFeedEntry(feed); // ignore returned feedId
+        }
+        return feeds.size();
+    }
+
     public abstract int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException;
 
     protected String callWebScript(String urlString, String ticket) throws MalformedURLException, URISyntaxException, IOException
@@ -547,6 +597,88 @@ public abstract class FeedTaskProcessor
     protected abstract boolean canReadSite(final RepoCtx ctx, String siteIdIn, String connectedUser, final String tenantDomain) throws Exception;
     protected abstract boolean canRead(RepoCtx ctx, final String connectedUser, Map<String, Object> model) throws Exception;
     
+    /**
+     * Get the connected users that can read the node of an activity (if any). By default, each user is checked with
+     * {@link #canRead(RepoCtx, String, Map)}.
+     * 
+     * @param readCache     a cache that lives for one run of activity posts, that implementations can use to share
+     *                      permission checks between posts
+     * @since 7.0
+     */
+    protected Set<String> getReaders(RepoCtx ctx, List<String> connectedUsers, Map<String, Object> model, Map<Object, Boolean> readCache) throws Exception
+    {
+        Set<String> readers = new HashSet<String>(connectedUsers.size() * 2);
+        for (String connectedUser : connectedUsers)
+        {
+            if (canRead(ctx, connectedUser, model))
+            {
+                readers.add(connectedUser);
+            }
+        }
+        return readers;
+    }
+    
+    /**
+     * Add the feed controls of the recipients that are not in the cache yet, selecting them all at once
+     */
+    private void cacheFeedControls(Set<String> recipients, Map<String, List<FeedControlEntity>> userFeedControls) throws SQLException
+    {
+        // feed control user id -> recipients
+        Map<String, List<String>> recipientsByUserId = new HashMap<String, List<String>>();
+        for (String recipient : recipients)
+        {
+            if (recipient.equals("") || userFeedControls.containsKey(recipient))
+            {
+                continue;
+            }
+            //MNT-9104 If username contains uppercase letters the action of joining a site will not be displayed in "My activities" 
+            String userId = userNamesAreCaseSensitive ? recipient : recipient.toLowerCase();
+            List<String> userRecipients = recipientsByUserId.get(userId);
+            if (userRecipients == null)
+            {
+                userRecipients = new ArrayList<String>(1);
+                recipientsByUserId.put(userId, userRecipients);
+            }
+            userRecipients.add(recipient);
+            userFeedControls.put(recipient, new ArrayList<FeedControlEntity>(0));
+        }
+        if (recipientsByUserId.isEmpty())
+        {
+            return;
+        }
+        
+        for (FeedControlEntity feedControl : selectUserFeedControls(recipientsByUserId.keySet()))
+        {
+            String userId = feedControl.getFeedUserId();
+            List<String> userRecipients = recipientsByUserId.get(userNamesAreCaseSensitive ? userId : userId.toLowerCase());
+            if (userRecipients != null)
+            {
+                for (String recipient : userRecipients)
+                {
+                    userFeedControls.get(recipient).add(feedControl);
+                }
+            }
+        }
+    }
+    
+    private void writeFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        if (feedInsertBatchSize <= 1)
+        {
+            for (ActivityFeedEntity feed : feeds)
+            {
+                insertFeedEntry(feed); // ignore returned feedId
+            }
+        }
+        else
+        {
+            for (int i = 0; i < feeds.size(); i += feedInsertBatchSize)
+            {
+                insertFeedEntries(feeds.subList(i, Math.min(i + feedInsertBatchSize, feeds.size())));
+            }
+        }
+    }
+    
     protected Map<String, List<String>> getActivityTypeTemplates(String repoEndPoint, String ticket, String subPath) throws Exception
     {
         StringBuffer sbUrl = new StringBuffer();
@@ -28,6 +28,8 @@ package org.alfresco.repo.activities.feed.local;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -57,6 +59,7 @@ import org.alfresco.service.cmr.repository.StoreRef;
 import org.alfresco.service.cmr.security.AccessPermission;
 import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.cmr.security.PermissionContext;
 import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.cmr.site.SiteInfo;
 import org.alfresco.service.cmr.site.SiteService;
@@ -86,6 +89,8 @@ import freemarker.template.Version;
 public class LocalFeedTaskProcessor extends FeedTaskProcessor implements ApplicationContextAware
 {
     private static final Log logger = LogFactory.getLog(LocalFeedTaskProcessor.class);
+    
+    private static final String DYNAMIC_AUTHORITIES_KEY = "dynamicAuthorities";
 
     private ActivityPostDAO postDAO;
     private ActivityFeedDAO feedDAO;
@@ -215,6 +220,16 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         return feedDAO.insertFeedEntry(feed);
     }
 
+    @Override
+    public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Inserting " + feeds.size() + " feed entries");
+        }
+        return feedDAO.insertFeedEntries(feeds);
+    }
+
     public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
     {
         if (logger.isDebugEnabled())
@@ -224,6 +239,16 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         return postDAO.updatePostStatus(id, status);
     }
 
+    @Override
+    public List<FeedControlEntity> selectUserFeedControls(Collection<String> userIds) throws SQLException
+    {
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Selecting feed controls for " + userIds.size() + " users");
+        }
+        return feedControlDAO.selectFeedControls(userIds);
+    }
+
     public List<FeedControlEntity> selectUserFeedControls(String userId) throws SQLException
     {
         if (logger.isDebugEnabled())
@@ -399,6 +424,126 @@ public class LocalFeedTaskProcessor extends FeedTaskProcessor implements Applica
         }
     }
     
+    @Override
+    protected Set<String> getReaders(RepoCtx ctx, final List<String> connectedUsers, Map<String, Object> model, final Map<Object, Boolean> readCache) throws Exception
+    {
+        if (useRemoteCallbacks || permissionService == null)
+        {
+            return super.getReaders(ctx, connectedUsers, model, readCache);
+        }
+        
+        String nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF);
+        if (nodeRefStr == null)
+        {
+            nodeRefStr = (String) model.get(PostLookup.JSON_NODEREF_PARENT);
+        }
+        if (nodeRefStr == null)
+        {
+            // no nodeRef
+            return new HashSet<String>(connectedUsers);
+        }
+        
+        final NodeRef nodeRef = new NodeRef(nodeRefStr);
+        
+        // MT share
+        String tenantDomain = (String)model.get(PostLookup.JSON_TENANT_DOMAIN);
+        if (tenantDomain == null) { tenantDomain = TenantService.DEFAULT_DOMAIN; }
+        
+        return TenantUtil.runAsSystemTenant(new TenantUtil.TenantRunAsWork<Set<String>>()
+        {
+            public Set<String> doWork() throws Exception
+            {
+                return getReadersImpl(connectedUsers, nodeRef, readCache);
+            }
+        }, tenantDomain);
+    }
+    
+    private Set<String> getReadersImpl(List<String> connectedUsers, NodeRef nodeRef, Map<Object, Boolean> readCache) throws Exception
+    {
+        Set<String> readers = new HashSet<String>(connectedUsers.size() * 2);
+        
+        // the node is resolved once for all the users, deleted nodes are left to canReadImpl
+        Long aclId = null;
+        PermissionContext context = null;
+        if (nodeService.exists(nodeRef))
+        {
+            aclId = nodeService.getNodeAclId(nodeRef);
+            if (aclId != null && hasDynamicAuthorityEntries(nodeRef, aclId, readCache))
+            {
+                // the ACL check cannot evaluate these, so every user gets the full node check
+                aclId = null;
+            }
+            if (aclId != null)
+            {
+                context = new PermissionContext(nodeService.getType(nodeRef));
+                context.getAspects().addAll(nodeService.getAspects(nodeRef));
+            }
+        }
+        
+        for (String connectedUser : connectedUsers)
+        {
+            if (aclId != null && !connectedUser.equals(""))
+            {
+                // nodes sharing an ACL, type and aspects get the same answer for a user, so the check is shared between posts
+                List<Object> key = Arrays.<Object>asList(connectedUser, aclId, context.getType(), context.getAspects());
+                Boolean allowed = readCache.get(key);
+                if (allowed == null)
+                {
+                    allowed = canReadAcl(connectedUser, aclId, context);
+                    readCache.put(key, allowed);
+                }
+                if (allowed)
+                {
+                    readers.add(connectedUser);
+                    continue;
+                }
+            }
+            
+            // fall back to the node check (eg. owner or other dynamic authorities)
+            if (canReadImpl(connectedUser, nodeRef))
+            {
+                readers.add(connectedUser);
+            }
+        }
+        return readers;
+    }
+    
+    /**
+     * The ACL level check has no node to evaluate dynamic authorities (eg. the owner) against, so it can only stand
+     * in for the node check when none of the ACL's entries are for a dynamic authority.
+     */
+    private boolean hasDynamicAuthorityEntries(NodeRef nodeRef, Long aclId, Map<Object, Boolean> readCache)
+    {
+        List<Object> key = Arrays.<Object>asList(DYNAMIC_AUTHORITIES_KEY, aclId);
+        Boolean dynamic = readCache.get(key);
+        if (dynamic == null)
+        {
+            dynamic = false;
+            for (AccessPermission perm : permissionService.getAllSetPermissions(nodeRef))
+            {
+                AuthorityType authorityType = perm.getAuthorityType();
+                if (authorityType != AuthorityType.USER && authorityType != AuthorityType.GROUP && authorityType != AuthorityType.EVERYONE)
+                {
+                    dynamic = true;
+                    break;
+                }
+            }
+            readCache.put(key, dynamic);
+        }
+        return dynamic;
+    }
+    
+    private boolean canReadAcl(String connectedUser, final Long aclId, final PermissionContext context)
+    {
+        return AuthenticationUtil.runAs(new AuthenticationUtil.RunAsWork<Boolean>()
+        {
+            public Boolean doWork() throws Exception
+            {
+                return (permissionService.hasPermission(aclId, context, PermissionService.READ) == AccessStatus.ALLOWED);
+            }
+        }, connectedUser);
+    }
+    
     private boolean canReadImpl(final String connectedUser, final NodeRef nodeRef) throws Exception
     {
         // check for read permission
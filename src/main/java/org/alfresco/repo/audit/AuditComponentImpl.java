@@ -81,6 +81,7 @@ public class AuditComponentImpl implements AuditComponent
     private TransactionService transactionService;
     private AuditFilter auditFilter;
     private UserAuditFilter userAuditFilter;
+    private AuditWriteBehindQueue auditWriteBehindQueue;
     
     /**
      * Default constructor
@@ -137,6 +138,20 @@ public class AuditComponentImpl implements AuditComponent
         this.userAuditFilter = userAuditFilter;
     }
 
+    /**
+     * Set the optional queue that writes audit entries once the recording transaction has committed
+     * @since 7.0
+     */
+    public void setAuditWriteBehindQueue(AuditWriteBehindQueue auditWriteBehindQueue)
+    {
+        this.auditWriteBehindQueue = auditWriteBehindQueue;
+    }
+
+    private boolean isWriteBehind()
+    {
+        return auditWriteBehindQueue != null && auditWriteBehindQueue.isEnabled();
+    }
+
     /**
      * {@inheritDoc}
      * @since 3.2
@@ -578,6 +593,12 @@ public class AuditComponentImpl implements AuditComponent
         
         // We have something to record.  Start a transaction, if necessary
         TxnReadState txnState = AlfrescoTransactionSupport.getTransactionReadState();
+        if (txnState == TxnReadState.TXN_READ_ONLY && isWriteBehind())
+        {
+            // Nothing is written in this transaction.  As with the new transaction, the entries are kept
+            // even if this transaction rolls back.
+            return auditWriteBehindQueue.recordDetached(() -> recordAuditValuesImpl(mappedValues));
+        }
         switch (txnState)
         {
         case TXN_NONE:
@@ -749,7 +770,14 @@ public class AuditComponentImpl implements AuditComponent
             boolean justGatherPreCallData = application.isApplicationJustGeneratingPreCallData();
             if (!justGatherPreCallData)
             {
-                entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                if (isWriteBehind())
+                {
+                    auditWriteBehindQueue.addAuditEntry(applicationId, time, username, auditData);
+                }
+                else
+                {
+                    entryId = auditDAO.createAuditEntry(applicationId, time, username, auditData);
+                }
             }
             // Done
             if (logger.isDebugEnabled())
@@ -0,0 +1,457 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.audit;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.alfresco.repo.domain.audit.AuditDAO;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.repo.transaction.TransactionalResourceHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Writes audit entries behind the transactions that record them.
+ * <p/>
+ * Audit values are still generated and extracted in the recording transaction, but the resulting entries
+ * are only held against that transaction.  When it commits, they are handed to a bounded queue; when it
+ * rolls back, they are discarded, exactly as the synchronously written rows would have been.  A single
+ * writer thread drains the queue in batches of up to {@link #setBatchSize(int) batchSize} entries and
+ * persists each batch in one transaction, so that the property values and audit rows of many entries
+ * share one round of commits.
+ * <p/>
+ * When the queue stays full for {@link #setOfferTimeoutMs(long) offerTimeoutMs}, the committing thread
+ * writes its own entries in a new transaction rather than lose them.  Entries are only lost if they cannot
+ * be written at all; these are counted as {@link #getDroppedCount() dropped}.  Queued entries live in
+ * memory only, so entries that have not been written when the server stops abruptly are lost.
+ *
+ * @since 7.0
+ */
+public class AuditWriteBehindQueue implements InitializingBean, DisposableBean
+{
+    private static final Log logger = LogFactory.getLog(AuditWriteBehindQueue.class);
+
+    private static final long POLL_INTERVAL_MS = 500L;
+    private static final String KEY_PENDING_ENTRIES = AuditWriteBehindQueue.class.getName() + ".pendingEntries";
+
+    private AuditDAO auditDAO;
+    private TransactionService transactionService;
+    private boolean enabled = false;
+    private int queueCapacity = 10000;
+    private int batchSize = 200;
+    private long offerTimeoutMs = 1000L;
+    private long shutdownTimeoutMs = 30000L;
+
+    private BlockingQueue<PendingAuditEntry> queue;
+    private ExecutorService executor;
+    private volatile boolean running;
+    private final AuditWriteBehindListener transactionListener = new AuditWriteBehindListener();
+    private final ThreadLocal<List<PendingAuditEntry>> detachedEntries = new ThreadLocal<>();
+
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong overflowCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public void setAuditDAO(AuditDAO auditDAO)
+    {
+        this.auditDAO = auditDAO;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param enabled <tt>true</tt> to write audit entries from the background writer
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param queueCapacity the number of committed audit entries that may be waiting to be written
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param batchSize the maximum number of audit entries written in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param offerTimeoutMs how long a committing thread waits for space in the queue before writing its
+     *                       entries itself
+     */
+    public void setOfferTimeoutMs(long offerTimeoutMs)
+    {
+        this.offerTimeoutMs = offerTimeoutMs;
+    }
+
+    /**
+     * @param shutdownTimeoutMs how long to wait for queued entries to be written when shutting down
+     */
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs)
+    {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "auditDAO", auditDAO);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+
+        if (!enabled)
+        {
+            return;
+        }
+        if (queueCapacity < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("Both 'queueCapacity' and 'batchSize' must be at least 1.");
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("AuditWriter");
+        threadFactory.setThreadDaemon(true);
+        executor = Executors.newSingleThreadExecutor(threadFactory);
+        running = true;
+        executor.execute(this::drain);
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        if (executor == null)
+        {
+            return;
+        }
+        // Let the writer empty the queue
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS))
+        {
+            logger.warn("Shut down with " + queue.size() + " audit entries still waiting to be written.");
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if audit entries are written by the background writer
+     */
+    public boolean isEnabled()
+    {
+        return enabled && running;
+    }
+
+    /**
+     * Hold an audit entry against the current transaction.  It is queued for writing when the transaction commits.
+     *
+     * @param applicationId     the audit application
+     * @param time              the time of the audit event
+     * @param username          the user that caused the event (may be <tt>null</tt>)
+     * @param values            the audited values, keyed by full path
+     */
+    public void addAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+    {
+        PendingAuditEntry entry = new PendingAuditEntry(applicationId, time, username, new HashMap<String, Serializable>(values));
+        List<PendingAuditEntry> detached = detachedEntries.get();
+        if (detached != null)
+        {
+            detached.add(entry);
+            return;
+        }
+        List<PendingAuditEntry> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+        pendingEntries.add(entry);
+        AlfrescoTransactionSupport.bindListener(transactionListener);
+    }
+
+    /**
+     * Record audit entries that do not depend on the current transaction.  The entries added while the work runs
+     * are queued as soon as it completes, whether or not the current transaction goes on to commit, just as if
+     * they had been written in a transaction of their own.  If the work fails, its entries are discarded.
+     *
+     * @param work              the work that adds the audit entries
+     * @return                  the result of the work
+     */
+    public <R> R recordDetached(Supplier<R> work)
+    {
+        List<PendingAuditEntry> outer = detachedEntries.get();
+        List<PendingAuditEntry> entries = new ArrayList<>();
+        detachedEntries.set(entries);
+        R result;
+        try
+        {
+            result = work.get();
+        }
+        finally
+        {
+            if (outer == null)
+            {
+                detachedEntries.remove();
+            }
+            else
+            {
+                detachedEntries.set(outer);
+            }
+        }
+        if (!entries.isEmpty())
+        {
+            enqueue(entries);
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of audit entries waiting to be written
+     */
+    public int getQueueDepth()
+    {
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * @return how long (ms) the oldest waiting audit entry has been queued, or 0 if none are waiting
+     */
+    public long getLagMs()
+    {
+        PendingAuditEntry oldest = (queue == null) ? null : queue.peek();
+        return (oldest == null) ? 0L : Math.max(0L, System.currentTimeMillis() - oldest.queuedAt);
+    }
+
+    /**
+     * @return the number of audit entries handed to the queue
+     */
+    public long getQueuedCount()
+    {
+        return queuedCount.get();
+    }
+
+    /**
+     * @return the number of audit entries written, by the writer or by committing threads
+     */
+    public long getWrittenCount()
+    {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return the number of batches written by the writer
+     */
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the number of audit entries that committing threads wrote themselves because the queue was full
+     */
+    public long getOverflowCount()
+    {
+        return overflowCount.get();
+    }
+
+    /**
+     * @return the number of audit entries that could not be written
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount.get();
+    }
+
+    private void enqueue(List<PendingAuditEntry> entries)
+    {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < entries.size(); i++)
+        {
+            PendingAuditEntry entry = entries.get(i);
+            entry.queuedAt = now;
+            boolean queued = false;
+            if (running)
+            {
+                try
+                {
+                    queued = queue.offer(entry, offerTimeoutMs, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!queued)
+            {
+                // Keep the entries rather than wait any longer
+                List<PendingAuditEntry> remaining = entries.subList(i, entries.size());
+                overflowCount.addAndGet(remaining.size());
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Audit queue is full; writing " + remaining.size() + " audit entries directly.");
+                }
+                write(remaining);
+                return;
+            }
+            queuedCount.incrementAndGet();
+        }
+    }
+
+    private void drain()
+    {
+        final List<PendingAuditEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty())
+        {
+            try
+            {
+                PendingAuditEntry entry = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (entry == null)
+                {
+                    continue;
+                }
+                batch.add(entry);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            }
+            catch (InterruptedException e)
+            {
+                // Forced shutdown
+                logger.warn("Audit writer interrupted with " + queue.size() + " audit entries waiting.");
+                return;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Write the entries in one transaction.  If that fails, each entry is written on its own so that one
+     * bad entry does not lose the rest.
+     */
+    private void write(final List<PendingAuditEntry> entries)
+    {
+        RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.setForceWritable(true);
+        try
+        {
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (PendingAuditEntry entry : entries)
+                    {
+                        auditDAO.createAuditEntry(entry.applicationId, entry.time, entry.username, entry.values);
+                    }
+                    return null;
+                }
+            }, false, true);
+            writtenCount.addAndGet(entries.size());
+            batchCount.incrementAndGet();
+            if (logger.isTraceEnabled())
+            {
+                logger.trace("Wrote " + entries.size() + " audit entries, " + getQueueDepth() + " waiting.");
+            }
+        }
+        catch (Exception e)
+        {
+            if (entries.size() == 1)
+            {
+                // Must consume the exception to keep writing
+                droppedCount.incrementAndGet();
+                logger.error("Failed to write audit entry for application " + entries.get(0).applicationId + ": " + entries.get(0).values, e);
+                return;
+            }
+            logger.warn("Failed to write a batch of " + entries.size() + " audit entries; writing them one at a time.", e);
+            for (PendingAuditEntry entry : entries)
+            {
+                List<PendingAuditEntry> single = new ArrayList<>(1);
+                single.add(entry);
+                write(single);
+            }
+        }
+    }
+
+    /**
+     * Hands the transaction's audit entries to the queue once they are committed.
+     */
+    private class AuditWriteBehindListener extends TransactionListenerAdapter
+    {
+        @Override
+        public void afterCommit()
+        {
+            List<PendingAuditEntry> pendingEntries = TransactionalResourceHelper.getList(KEY_PENDING_ENTRIES);
+            if (!pendingEntries.isEmpty())
+            {
+                enqueue(new ArrayList<PendingAuditEntry>(pendingEntries));
+            }
+        }
+    }
+
+    private static class PendingAuditEntry
+    {
+        private final Long applicationId;
+        private final long time;
+        private final String username;
+        private final Map<String, Serializable> values;
+        private volatile long queuedAt;
+
+        private PendingAuditEntry(Long applicationId, long time, String username, Map<String, Serializable> values)
+        {
+            this.applicationId = applicationId;
+            this.time = time;
+            this.username = username;
+            this.values = values;
+        }
+    }
+}
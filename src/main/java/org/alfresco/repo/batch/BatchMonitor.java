@@ -103,4 +103,26 @@ public interface BatchMonitor
      * @return the end time
      */
     public Date getEndTime();
+
+    /**
+     * Gets the average number of entries processed per second since the start.
+     * 
+     * @return the throughput in entries per second
+     */
+    public double getThroughput();
+
+    /**
+     * Gets the average time taken by a batch transaction, including retries.
+     * 
+     * @return the average batch duration in milliseconds
+     */
+    public long getAverageBatchDuration();
+
+    /**
+     * Gets the number of entries currently put into each batch. This only changes over time when batch sizes are
+     * adaptive.
+     * 
+     * @return the current batch size
+     */
+    public int getCurrentBatchSize();
 }
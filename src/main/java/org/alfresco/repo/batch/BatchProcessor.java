@@ -40,8 +40,13 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.alfresco.api.AlfrescoPublicApi;
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -64,6 +69,10 @@ import org.springframework.context.ApplicationEventPublisher;
  * ERROR level. Each individual error is logged at WARN level and progress information is logged at INFO level. Through
  * the {@link BatchMonitor} interface, it also supports the real-time monitoring of batch metrics (e.g. over JMX in the
  * Enterprise Edition).
+ * <p/>
+ * When {@link #setWorkStealing(boolean) work stealing} is enabled, batches are run on a fork-join pool instead. The
+ * size of each new batch is then adapted to the observed transaction durations and retries, and a batch that fails
+ * after exhausting its retries is split in half and re-run until the failing entries are isolated.
  * 
  * @author dward
  */
@@ -121,6 +130,24 @@ public class BatchProcessor<T> implements BatchMonitor
     /** The end time. */
     private Date endTime;
 
+    /** Run batches on a work-stealing pool with adaptive batch sizes? */
+    private boolean workStealing;
+
+    /** The batch transaction duration that adaptive batch sizing aims for. */
+    private long targetBatchDurationMs = 1000L;
+
+    /** The upper limit for adaptive batch sizes. */
+    private int maxBatchSize;
+
+    /** The number of entries put into the next batch. */
+    private int currentBatchSize;
+
+    /** The number of batch transactions that have completed. */
+    private long completedBatches;
+
+    /** The total time spent in completed batch transactions. */
+    private long totalBatchDurationMs;
+
     /**
      * Instantiates a new batch processor.
      * 
@@ -220,6 +247,8 @@ public class BatchProcessor<T> implements BatchMonitor
         this.workProvider = workProvider;
         this.workerThreads = workerThreads;
         this.batchSize = batchSize;
+        this.currentBatchSize = batchSize;
+        this.maxBatchSize = batchSize * 8;
         if (logger == null)
         {
             this.logger = LogFactory.getLog(this.getClass());
@@ -237,6 +266,43 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Run batches on a {@link ForkJoinPool} and adapt the batch size to the observed transaction durations. A batch
+     * that fails after exhausting its retries is split and re-run so that only the failing entries are reported as
+     * errors. This only applies when transactions are split and there is more than one worker thread.
+     * 
+     * @param workStealing
+     *            <tt>true</tt> to use work stealing and adaptive batch sizes (default: <tt>false</tt>)
+     * 
+     * @since 7.0
+     */
+    public synchronized void setWorkStealing(boolean workStealing)
+    {
+        this.workStealing = workStealing;
+    }
+
+    /**
+     * @param targetBatchDurationMs
+     *            the batch transaction duration that adaptive batch sizing aims for (default: 1000ms)
+     * 
+     * @since 7.0
+     */
+    public synchronized void setTargetBatchDurationMs(long targetBatchDurationMs)
+    {
+        this.targetBatchDurationMs = targetBatchDurationMs;
+    }
+
+    /**
+     * @param maxBatchSize
+     *            the upper limit for adaptive batch sizes (default: eight times the initial batch size)
+     * 
+     * @since 7.0
+     */
+    public synchronized void setMaxBatchSize(int maxBatchSize)
+    {
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -328,6 +394,37 @@ public class BatchProcessor<T> implements BatchMonitor
         return this.startTime;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized double getThroughput()
+    {
+        if (this.startTime == null)
+        {
+            return 0.0;
+        }
+        long end = this.endTime == null ? System.currentTimeMillis() : this.endTime.getTime();
+        long duration = end - this.startTime.getTime();
+        int processed = this.successfullyProcessedEntries + this.totalErrors;
+        return duration > 0 ? processed * 1000.0 / duration : 0.0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized long getAverageBatchDuration()
+    {
+        return this.completedBatches == 0 ? 0L : this.totalBatchDurationMs / this.completedBatches;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized int getCurrentBatchSize()
+    {
+        return this.currentBatchSize;
+    }
+
     /**
      * Invokes the worker for each entry in the collection, managing transactions and collating success / failure
      * information.
@@ -364,7 +461,12 @@ public class BatchProcessor<T> implements BatchMonitor
         }
 
         // Create a thread pool executor with the specified number of threads and a finite blocking queue of jobs
-        ExecutorService executorService = splitTxns && this.workerThreads > 1 ?
+        boolean useWorkStealing;
+        synchronized (this)
+        {
+            useWorkStealing = this.workStealing;
+        }
+        ExecutorService executorService = splitTxns && this.workerThreads > 1 && !useWorkStealing ?
                 new ThreadPoolExecutor(
                         this.workerThreads, this.workerThreads, 0L, TimeUnit.MILLISECONDS,
                         new ArrayBlockingQueue<Runnable>(this.workerThreads * this.batchSize * 10)
@@ -386,8 +488,26 @@ public class BatchProcessor<T> implements BatchMonitor
 
                 },
                 threadFactory) : null;
+        ForkJoinPool forkJoinPool = null;
+        if (splitTxns && this.workerThreads > 1 && useWorkStealing)
+        {
+            forkJoinPool = new ForkJoinPool(this.workerThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+            {
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+                {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName(processName + "-" + thread.getPoolIndex());
+                    return thread;
+                }
+            }, null, true);
+        }
         try
         {
+            if (forkJoinPool != null)
+            {
+                submitBatches(forkJoinPool, worker);
+                return count;
+            }
             Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
             int id=0;
             List<T> batch = new ArrayList<T>(this.batchSize);
@@ -428,6 +548,17 @@ public class BatchProcessor<T> implements BatchMonitor
                 {
                 }
             }
+            if (forkJoinPool != null)
+            {
+                forkJoinPool.shutdown();
+                try
+                {
+                    forkJoinPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                }
+            }
             synchronized (this)
             {
                 reportProgress(true);
@@ -454,6 +585,64 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * Feeds batches sized by {@link #getCurrentBatchSize()} to the work-stealing pool. The number of queued batches is
+     * limited so that the work provider is not drained faster than the batches can be processed.
+     */
+    private void submitBatches(ForkJoinPool pool, BatchProcessWorker<T> worker)
+    {
+        Semaphore queuedBatches = new Semaphore(this.workerThreads * 10);
+        AtomicInteger nextId = new AtomicInteger();
+        Iterator<T> iterator = new WorkProviderIterator<T>(this.workProvider);
+        List<T> batch = new ArrayList<T>(getCurrentBatchSize());
+        while (iterator.hasNext())
+        {
+            batch.add(iterator.next());
+            boolean hasNext = iterator.hasNext();
+            if (batch.size() >= getCurrentBatchSize() || !hasNext)
+            {
+                queuedBatches.acquireUninterruptibly();
+                pool.execute(new BatchTask(nextId, worker, batch, queuedBatches));
+                if (hasNext)
+                {
+                    batch = new ArrayList<T>(getCurrentBatchSize());
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the duration of a completed batch transaction and, when work stealing, adapts the size of the following
+     * batches. The size moves halfway towards the size that would take {@link #targetBatchDurationMs} at the observed
+     * rate, and is halved when the transaction had to be retried.
+     */
+    private synchronized void batchCompleted(int size, long durationMs, boolean retried)
+    {
+        this.completedBatches++;
+        this.totalBatchDurationMs += durationMs;
+        if (!this.workStealing || size == 0)
+        {
+            return;
+        }
+        int newBatchSize;
+        if (retried)
+        {
+            newBatchSize = this.currentBatchSize / 2;
+        }
+        else
+        {
+            long idealBatchSize = durationMs <= 0 ? this.maxBatchSize : this.targetBatchDurationMs * size / durationMs;
+            newBatchSize = (int) ((this.currentBatchSize + Math.min(idealBatchSize, this.maxBatchSize)) / 2);
+        }
+        newBatchSize = Math.max(1, Math.min(newBatchSize, this.maxBatchSize));
+        if (newBatchSize != this.currentBatchSize && this.logger.isDebugEnabled())
+        {
+            this.logger.debug(getProcessName() + ": Batch size changed from " + this.currentBatchSize + " to "
+                    + newBatchSize + " after a batch of " + size + " took " + durationMs + "ms");
+        }
+        this.currentBatchSize = newBatchSize;
+    }
+
     /**
      * Reports the current progress.
      * 
@@ -626,6 +815,52 @@ public class BatchProcessor<T> implements BatchMonitor
         }
     }
 
+    /**
+     * A fork-join task that runs a batch in its own transaction. If the batch fails, it is split in half and the halves
+     * are forked, so that idle workers can steal them.
+     */
+    @SuppressWarnings("serial")
+    private class BatchTask extends RecursiveAction
+    {
+        private final AtomicInteger nextId;
+        private final BatchProcessWorker<T> worker;
+        private final List<T> batch;
+        /** Released when a top-level batch is complete, or <tt>null</tt> for split batches */
+        private final Semaphore queuedBatches;
+
+        private BatchTask(AtomicInteger nextId, BatchProcessWorker<T> worker, List<T> batch, Semaphore queuedBatches)
+        {
+            this.nextId = nextId;
+            this.worker = worker;
+            this.batch = batch;
+            this.queuedBatches = queuedBatches;
+        }
+
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                TxnCallback callback = new TxnCallback(nextId.getAndIncrement(), worker, batch, true, batch.size() > 1);
+                callback.run();
+                if (callback.splitRequired)
+                {
+                    int middle = batch.size() / 2;
+                    invokeAll(
+                            new BatchTask(nextId, worker, new ArrayList<T>(batch.subList(0, middle)), null),
+                            new BatchTask(nextId, worker, new ArrayList<T>(batch.subList(middle, batch.size())), null));
+                }
+            }
+            finally
+            {
+                if (queuedBatches != null)
+                {
+                    queuedBatches.release();
+                }
+            }
+        }
+    }
+
     /**
      * A callback that invokes a worker on a batch, optionally in a new transaction.
      */
@@ -643,11 +878,24 @@ public class BatchProcessor<T> implements BatchMonitor
          *            If <code>true</code>, the worker invocation is made in a new transaction.
          */
         public TxnCallback(int id, BatchProcessWorker<T> worker, List<T> batch, boolean splitTxns)
+        {
+            this(id, worker, batch, splitTxns, false);
+        }
+
+        /**
+         * Instantiates a new callback.
+         * 
+         * @param splitOnFailure
+         *            If <code>true</code>, a transaction that runs out of retries is not reported as an error but
+         *            flags the batch for {@link #splitRequired splitting} instead.
+         */
+        public TxnCallback(int id, BatchProcessWorker<T> worker, List<T> batch, boolean splitTxns, boolean splitOnFailure)
         {
             this.id = id;
             this.worker = worker;
             this.batch = batch;
             this.splitTxns = splitTxns;
+            this.splitOnFailure = splitOnFailure;
         }
 
         private final int id;
@@ -661,6 +909,15 @@ public class BatchProcessor<T> implements BatchMonitor
         /** If <code>true</code>, the worker invocation is made in a new transaction. */
         private final boolean splitTxns;
 
+        /** If <code>true</code>, a failed transaction is flagged for splitting instead of being reported. */
+        private final boolean splitOnFailure;
+
+        /** Set when the transaction failed and the batch must be split and processed again. */
+        private boolean splitRequired;
+
+        /** The number of times the transaction has been attempted. */
+        private int attempts;
+
         /** The total number of errors. */
         private int txnErrors;
 
@@ -676,9 +933,27 @@ public class BatchProcessor<T> implements BatchMonitor
         /** The last error entry id. */
         private String txnLastErrorEntryId;
         
+        /**
+         * Waits on the processor's lock, which must be held, until retried batches have completed.
+         */
+        private final ForkJoinPool.ManagedBlocker retryBlocker = new ForkJoinPool.ManagedBlocker()
+        {
+            public boolean block() throws InterruptedException
+            {
+                BatchProcessor.this.wait();
+                return !mustWaitForRetries();
+            }
+
+            public boolean isReleasable()
+            {
+                return !mustWaitForRetries();
+            }
+        };
+        
         public Object execute() throws Throwable
         {
             reset();
+            this.attempts++;
             if (this.batch.isEmpty())
             {
                 return null;
@@ -695,17 +970,15 @@ public class BatchProcessor<T> implements BatchMonitor
                 }
                 // If we are retrying after failure, assume there are cross-dependencies and wait for other
                 // executing batches to complete
-                while (!BatchProcessor.this.retryTxns.isEmpty()
-                        && (BatchProcessor.this.retryTxns.first() < this.id || BatchProcessor.this.retryTxns.first() == this.id
-                                && BatchProcessor.this.executingCount > 0)
-                        && BatchProcessor.this.retryTxns.last() >= this.id)
+                while (mustWaitForRetries())
                 {
                     if (BatchProcessor.this.logger.isDebugEnabled())
                     {
                         BatchProcessor.this.logger.debug(Thread.currentThread().getName()
                                 + " Recoverable failure: waiting for other batches to complete");
                     }
-                    BatchProcessor.this.wait();
+                    // Let a fork join pool compensate for the blocked worker
+                    ForkJoinPool.managedBlock(this.retryBlocker);
                 }
                 if (BatchProcessor.this.logger.isDebugEnabled())
                 {
@@ -758,6 +1031,7 @@ public class BatchProcessor<T> implements BatchMonitor
 
             
             final BatchProcessor<T>.TxnCallback callback = this;
+            long startMs = System.currentTimeMillis();
             try
             {
                 Throwable tt = null;
@@ -780,6 +1054,24 @@ public class BatchProcessor<T> implements BatchMonitor
             }
             catch (Throwable t)
             {
+                // Let the caller retry the entries in smaller batches to isolate the failing ones
+                if (this.splitOnFailure)
+                {
+                    if (BatchProcessor.this.logger.isDebugEnabled())
+                    {
+                        BatchProcessor.this.logger.debug(getProcessName() + ": Splitting failed batch of "
+                                + this.batch.size() + " entries.", t);
+                    }
+                    this.splitRequired = true;
+                    synchronized (BatchProcessor.this)
+                    {
+                        batchCompleted(this.batch.size(), System.currentTimeMillis() - startMs, true);
+                        reset();
+                        BatchProcessor.this.retryTxns.remove(this.id);
+                        BatchProcessor.this.notifyAll();
+                    }
+                    return;
+                }
                 // If the callback was in its own transaction, it must have run out of retries
                 if (this.splitTxns)
                 {
@@ -808,9 +1100,21 @@ public class BatchProcessor<T> implements BatchMonitor
                 }
             }
 
+            batchCompleted(this.batch.size(), System.currentTimeMillis() - startMs, this.attempts > 1);
             commitProgress();
         }
 
+        /**
+         * Whether this batch has to wait for retried batches to complete.  Called holding the processor's lock.
+         */
+        private boolean mustWaitForRetries()
+        {
+            return !BatchProcessor.this.retryTxns.isEmpty()
+                    && (BatchProcessor.this.retryTxns.first() < this.id || BatchProcessor.this.retryTxns.first() == this.id
+                            && BatchProcessor.this.executingCount > 0)
+                    && BatchProcessor.this.retryTxns.last() >= this.id;
+        }
+
         /**
          * Resets the callback state for a retry.
          */
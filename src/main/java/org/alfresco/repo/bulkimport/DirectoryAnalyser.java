@@ -54,5 +54,33 @@ public interface DirectoryAnalyser
      * @return An <code>AnalysedDirectory</code> object <i>(will not be null)</i>.
      */
     public AnalysedDirectory analyseDirectory(ImportableItem directory, DirectoryStream.Filter<Path> filter);
+
+    /**
+     * Analyses the given directory, optionally leaving the validation of metadata files to the caller.
+     * The default implementation always validates metadata, as {@link #analyseDirectory(ImportableItem, DirectoryStream.Filter)} does.
+     * 
+     * @param directory The directory to analyse (note: <u>must</u> be a directory) <i>(must not be null)</i>.
+     * @param validateMetadata <tt>false</tt> to keep items without parsing their metadata files; callers are then
+     *                         expected to use {@link #isMetadataValid(ImportableItem, MetadataLoader.Metadata)}.
+     * @return An <code>AnalysedDirectory</code> object <i>(will not be null)</i>.
+     */
+    public default AnalysedDirectory analyseDirectory(ImportableItem directory, DirectoryStream.Filter<Path> filter, boolean validateMetadata)
+    {
+        return analyseDirectory(directory, filter);
+    }
+
+    /**
+     * Checks the metadata loaded for an importable item against the constraints of its properties.
+     * The default implementation accepts the metadata, as the default
+     * {@link #analyseDirectory(ImportableItem, DirectoryStream.Filter, boolean)} has already dropped invalid items.
+     * 
+     * @param importableItem The item the metadata was loaded for.
+     * @param metadata The loaded metadata.
+     * @return <tt>true</tt> if the item has no metadata file or all of its properties are valid.
+     */
+    public default boolean isMetadataValid(ImportableItem importableItem, MetadataLoader.Metadata metadata)
+    {
+        return true;
+    }
     
 }
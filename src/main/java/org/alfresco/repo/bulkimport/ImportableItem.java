@@ -160,6 +160,7 @@ public final class ImportableItem
         private Date     contentFileModified   = null;
         private Path     metadataFile          = null;
         private long     metadataFileSize      = -1;
+        private MetadataLoader.Metadata metadata = null;
 
         
         public final Path getContentFile()
@@ -297,6 +298,19 @@ public final class ImportableItem
             return(metadataFileSize);
         }
         
+        /**
+         * @return the metadata loaded ahead of the import of this item, or <tt>null</tt> if it hasn't been loaded yet
+         */
+        public final MetadataLoader.Metadata getMetadata()
+        {
+            return metadata;
+        }
+        
+        public final void setMetadata(final MetadataLoader.Metadata metadata)
+        {
+            this.metadata = metadata;
+        }
+        
         public final int weight()
         {
             return((contentFile   == null || !contentFileExists ? 0 : 1) +
@@ -39,4 +39,14 @@ public interface NodeImporter
 {
     public NodeRef importImportableItem(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode);
     public File getSourceFolder();
+
+    /**
+     * Loads the metadata of the given item ahead of {@link #importImportableItem}, so that metadata files can be
+     * parsed outside of the transaction that writes the node. Importers that don't support this ignore the call.
+     *
+     * @param importableItem the item whose metadata should be loaded
+     */
+    public default void preloadMetadata(ImportableItem importableItem)
+    {
+    }
 }
@@ -418,6 +418,12 @@ public abstract class AbstractNodeImporter implements NodeImporter
 
     protected final MetadataLoader.Metadata loadMetadata(ImportableItem.ContentAndMetadata contentAndMetadata)
     {
+        if (contentAndMetadata != null && contentAndMetadata.getMetadata() != null)
+        {
+            // Already loaded by preloadMetadata
+            return contentAndMetadata.getMetadata();
+        }
+
         MetadataLoader.Metadata result = new MetadataLoader.Metadata();
         
         // Load "standard" metadata from the filesystem
@@ -442,6 +448,20 @@ public abstract class AbstractNodeImporter implements NodeImporter
         return(result);
     }
 
+    @Override
+    public void preloadMetadata(ImportableItem importableItem)
+    {
+        importableItem.getHeadRevision().setMetadata(loadMetadata(importableItem.getHeadRevision()));
+
+        if (importableItem.hasVersionEntries())
+        {
+            for (ImportableItem.VersionedContentAndMetadata versionEntry : importableItem.getVersionEntries())
+            {
+                versionEntry.setMetadata(loadMetadata(versionEntry));
+            }
+        }
+    }
+
     public NodeRef importImportableItem(ImportableItem importableItem, BulkImportParameters.ExistingFileMode existingFileMode)
     {
         if(logger.isDebugEnabled())
@@ -0,0 +1,477 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.bulkimport.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.error.AlfrescoRuntimeException;
+import org.alfresco.repo.batch.BatchProcessor;
+import org.alfresco.repo.bulkimport.AnalysedDirectory;
+import org.alfresco.repo.bulkimport.BulkFilesystemImporter;
+import org.alfresco.repo.bulkimport.DirectoryAnalyser;
+import org.alfresco.repo.bulkimport.ImportableItem;
+import org.alfresco.repo.bulkimport.NodeImporter;
+import org.alfresco.repo.tenant.TenantUtil;
+import org.alfresco.repo.tenant.TenantUtil.TenantRunAsWork;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Runs a single bulk import as three stages connected by bounded queues, so that filesystem and database I/O overlap:
+ * <ul>
+ * <li>walker threads list directories and stat their entries,</li>
+ * <li>metadata threads load and validate the metadata of each item,</li>
+ * <li>writer threads create the nodes, a batch per transaction.</li>
+ * </ul>
+ * A directory is only handed to the walkers once its node has been committed, so items never reach the writers
+ * before their parent exists. The backlog of directories waiting to be walked is unbounded; it only holds
+ * directory references, whereas the items of a walked directory are subject to the queue capacity.
+ * 
+ * @since 7.0
+ */
+class BulkImportPipeline
+{
+    private static final Log logger = LogFactory.getLog(BulkFilesystemImporter.class);
+
+    private static final long POLL_MS = 100L;
+
+    private final BulkImportStatusImpl importStatus;
+    private final DirectoryAnalyser directoryAnalyser;
+    private final NodeImporter nodeImporter;
+    private final RetryingTransactionHelper transactionHelper;
+    private final BatchProcessor.BatchProcessWorker<ImportableItem> worker;
+    private final int walkerThreads;
+    private final int metadataThreads;
+    private final int writerThreads;
+    private final int batchSize;
+    private final String currentUser;
+    private final String currentDomain;
+
+    private final BlockingQueue<ImportableItem> metadataQueue;
+    private final BlockingQueue<ImportableItem> writeQueue;
+    private final Object outstandingLock = new Object();
+    // Directories still to walk plus items that haven't left the writer stage yet
+    private long outstanding = 0;
+    private volatile boolean finished = false;
+    private volatile Throwable failure = null;
+    private ExecutorService walkers;
+
+    BulkImportPipeline(BulkImportStatusImpl importStatus, DirectoryAnalyser directoryAnalyser, NodeImporter nodeImporter,
+            RetryingTransactionHelper transactionHelper, BatchProcessor.BatchProcessWorker<ImportableItem> worker,
+            int walkerThreads, int metadataThreads, int writerThreads, int batchSize, int queueCapacity,
+            String currentUser, String currentDomain)
+    {
+        this.importStatus = importStatus;
+        this.directoryAnalyser = directoryAnalyser;
+        this.nodeImporter = nodeImporter;
+        this.transactionHelper = transactionHelper;
+        this.worker = worker;
+        this.walkerThreads = Math.max(1, walkerThreads);
+        this.metadataThreads = Math.max(1, metadataThreads);
+        this.writerThreads = Math.max(1, writerThreads);
+        this.batchSize = Math.max(1, batchSize);
+        this.currentUser = currentUser;
+        this.currentDomain = currentDomain;
+
+        int capacity = Math.max(this.batchSize, queueCapacity);
+        this.metadataQueue = new ArrayBlockingQueue<ImportableItem>(capacity);
+        this.writeQueue = new ArrayBlockingQueue<ImportableItem>(capacity);
+    }
+
+    /**
+     * Imports everything below the given root directory, returning once all stages are idle.
+     * 
+     * @param rootDirectory the source directory, carrying the target node as its node reference
+     */
+    void run(ImportableItem rootDirectory)
+    {
+        importStatus.setNumWalkerThreads(walkerThreads);
+        importStatus.setNumMetadataThreads(metadataThreads);
+
+        walkers = new ThreadPoolExecutor(walkerThreads, walkerThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), newThreadFactory("BulkImportWalker"));
+
+        List<Thread> threads = new ArrayList<Thread>(metadataThreads + writerThreads);
+        TraceableThreadFactory metadataThreadFactory = newThreadFactory("BulkImportMetadata");
+        for (int i = 0; i < metadataThreads; i++)
+        {
+            threads.add(metadataThreadFactory.newThread(new Runnable()
+            {
+                public void run()
+                {
+                    loadMetadata();
+                }
+            }));
+        }
+        TraceableThreadFactory writerThreadFactory = newThreadFactory("BulkImportWriter");
+        for (int i = 0; i < writerThreads; i++)
+        {
+            threads.add(writerThreadFactory.newThread(new Runnable()
+            {
+                public void run()
+                {
+                    write();
+                }
+            }));
+        }
+
+        try
+        {
+            submitWalk(rootDirectory);
+            for (Thread thread : threads)
+            {
+                thread.start();
+            }
+            awaitCompletion();
+        }
+        finally
+        {
+            finished = true;
+            walkers.shutdownNow();
+            for (Thread thread : threads)
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        if (failure != null)
+        {
+            throw new AlfrescoRuntimeException("Bulk import pipeline failed", failure);
+        }
+    }
+
+    private TraceableThreadFactory newThreadFactory(String namePrefix)
+    {
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix(namePrefix);
+        threadFactory.setThreadDaemon(true);
+        return threadFactory;
+    }
+
+    private void submitWalk(final ImportableItem directory)
+    {
+        if (isStopped())
+        {
+            return;
+        }
+        adjustOutstanding(1);
+        walkers.execute(new Runnable()
+        {
+            public void run()
+            {
+                walk(directory);
+            }
+        });
+    }
+
+    private void walk(final ImportableItem directory)
+    {
+        try
+        {
+            if (isStopped())
+            {
+                return;
+            }
+
+            AnalysedDirectory analysedDirectory = runInTransaction(new RetryingTransactionCallback<AnalysedDirectory>()
+            {
+                public AnalysedDirectory execute() throws Throwable
+                {
+                    return directoryAnalyser.analyseDirectory(directory, null, false);
+                }
+            }, true);
+            importStatus.incrementNumberOfDirectoriesWalked();
+
+            // Directories first, so that the walk of the next level can start as early as possible
+            List<ImportableItem> items = new ArrayList<ImportableItem>(analysedDirectory.getImportableDirectories());
+            items.addAll(analysedDirectory.getImportableItems());
+            adjustOutstanding(items.size());
+            for (ImportableItem item : items)
+            {
+                enqueue(metadataQueue, item);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable e)
+        {
+            fail(e);
+        }
+        finally
+        {
+            adjustOutstanding(-1);
+        }
+    }
+
+    private void loadMetadata()
+    {
+        try
+        {
+            List<ImportableItem> batch;
+            while ((batch = nextBatch(metadataQueue)) != null)
+            {
+                final List<ImportableItem> items = batch;
+                List<ImportableItem> validItems = runInTransaction(new RetryingTransactionCallback<List<ImportableItem>>()
+                {
+                    public List<ImportableItem> execute() throws Throwable
+                    {
+                        List<ImportableItem> result = new ArrayList<ImportableItem>(items.size());
+                        for (ImportableItem item : items)
+                        {
+                            nodeImporter.preloadMetadata(item);
+                            if (isDirectory(item) ||
+                                directoryAnalyser.isMetadataValid(item, item.getHeadRevision().getMetadata()))
+                            {
+                                result.add(item);
+                            }
+                        }
+                        return result;
+                    }
+                }, true);
+                importStatus.incrementNumberOfItemsLoaded(items.size());
+                adjustOutstanding(validItems.size() - items.size());
+
+                for (ImportableItem item : validItems)
+                {
+                    enqueue(writeQueue, item);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Throwable e)
+        {
+            fail(e);
+        }
+    }
+
+    private void write()
+    {
+        try
+        {
+            List<ImportableItem> batch;
+            while ((batch = nextBatch(writeQueue)) != null)
+            {
+                List<ImportableItem> written = batch;
+                try
+                {
+                    writeBatch(batch);
+                }
+                catch (Throwable e)
+                {
+                    // Isolate the failing entries, as the batch processor does, then stop the import like
+                    // the striping importer does when a level reports an error
+                    Throwable lastError = e;
+                    written = new ArrayList<ImportableItem>(batch.size());
+                    for (ImportableItem item : batch)
+                    {
+                        try
+                        {
+                            if (batch.size() > 1)
+                            {
+                                writeBatch(Collections.singletonList(item));
+                                written.add(item);
+                                continue;
+                            }
+                        }
+                        catch (Throwable itemError)
+                        {
+                            lastError = itemError;
+                        }
+                        logger.warn("Bulk Filesystem Import: Failed to process entry \"" + item + "\".", lastError);
+                    }
+                    if (written.size() < batch.size())
+                    {
+                        fail(lastError);
+                    }
+                }
+
+                for (ImportableItem item : written)
+                {
+                    if (isDirectory(item) && item.getNodeRef() != null)
+                    {
+                        submitWalk(item);
+                    }
+                }
+                importStatus.incrementNumberOfItemsWritten(batch.size());
+                adjustOutstanding(-batch.size());
+            }
+        }
+        catch (Throwable e)
+        {
+            fail(e);
+        }
+    }
+
+    private void writeBatch(final List<ImportableItem> batch) throws Throwable
+    {
+        Throwable processingFailure = null;
+        worker.beforeProcess();
+        try
+        {
+            transactionHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (ImportableItem item : batch)
+                    {
+                        worker.process(item);
+                    }
+                    return null;
+                }
+            }, false, true);
+        }
+        catch (Throwable e)
+        {
+            processingFailure = e;
+        }
+        worker.afterProcess();
+
+        if (processingFailure != null)
+        {
+            throw processingFailure;
+        }
+    }
+
+    private <R> R runInTransaction(final RetryingTransactionCallback<R> callback, final boolean readOnly)
+    {
+        return TenantUtil.runAsUserTenant(new TenantRunAsWork<R>()
+        {
+            public R doWork() throws Exception
+            {
+                return transactionHelper.doInTransaction(callback, readOnly, true);
+            }
+        }, currentUser, currentDomain);
+    }
+
+    /**
+     * @return the next items of the given queue, or <tt>null</tt> once the pipeline has been stopped
+     */
+    private List<ImportableItem> nextBatch(BlockingQueue<ImportableItem> queue) throws InterruptedException
+    {
+        while (!isStopped())
+        {
+            ImportableItem item = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+            if (item != null)
+            {
+                List<ImportableItem> batch = new ArrayList<ImportableItem>(batchSize);
+                batch.add(item);
+                queue.drainTo(batch, batchSize - 1);
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    private void enqueue(BlockingQueue<ImportableItem> queue, ImportableItem item) throws InterruptedException
+    {
+        while (!isStopped())
+        {
+            if (queue.offer(item, POLL_MS, TimeUnit.MILLISECONDS))
+            {
+                return;
+            }
+        }
+    }
+
+    private boolean isDirectory(ImportableItem item)
+    {
+        return item.getHeadRevision().contentFileExists() &&
+               ImportableItem.FileType.DIRECTORY.equals(item.getHeadRevision().getContentFileType());
+    }
+
+    private boolean isStopped()
+    {
+        return finished || failure != null;
+    }
+
+    private void fail(Throwable e)
+    {
+        logger.error("Bulk Filesystem Import: Pipeline stage failed, stopping the import.", e);
+        synchronized (outstandingLock)
+        {
+            if (failure == null)
+            {
+                failure = e;
+            }
+            outstandingLock.notifyAll();
+        }
+    }
+
+    private void adjustOutstanding(long delta)
+    {
+        synchronized (outstandingLock)
+        {
+            outstanding += delta;
+            if (outstanding <= 0)
+            {
+                outstandingLock.notifyAll();
+            }
+        }
+    }
+
+    private void awaitCompletion()
+    {
+        synchronized (outstandingLock)
+        {
+            while (outstanding > 0 && failure == null)
+            {
+                try
+                {
+                    outstandingLock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    fail(e);
+                }
+            }
+        }
+    }
+}
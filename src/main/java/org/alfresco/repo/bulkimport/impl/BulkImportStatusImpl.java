@@ -99,6 +99,13 @@ public class BulkImportStatusImpl implements BulkImportStatus
     private AtomicLong    numberOfContentVersionsCreated          = new AtomicLong();
     private AtomicLong    numberOfContentVersionBytesWritten      = new AtomicLong();
     private AtomicLong    numberOfContentVersionPropertiesWritten = new AtomicLong();
+    
+    // Pipeline information (only maintained by pipelined imports)
+    private int           numWalkerThreads;
+    private int           numMetadataThreads;
+    private AtomicLong    numberOfDirectoriesWalked               = new AtomicLong();
+    private AtomicLong    numberOfItemsLoaded                     = new AtomicLong();
+    private AtomicLong    numberOfItemsWritten                    = new AtomicLong();
 
     private ReadLock readLock;
     private WriteLock writeLock;
@@ -258,6 +265,13 @@ public class BulkImportStatusImpl implements BulkImportStatus
         this.numberOfContentVersionBytesWritten.set(0);
         this.numberOfContentVersionPropertiesWritten.set(0);
         
+        // Pipeline information
+        this.numWalkerThreads   = 0;
+        this.numMetadataThreads = 0;
+        this.numberOfDirectoriesWalked.set(0);
+        this.numberOfItemsLoaded.set(0);
+        this.numberOfItemsWritten.set(0);
+        
         this.startNs = System.nanoTime();
         this.endNs   = null;
     }
@@ -549,7 +563,83 @@ public class BulkImportStatusImpl implements BulkImportStatus
 		}
     }
 
+    // Pipeline information
+    public long getNumberOfDirectoriesWalked() { return(numberOfDirectoriesWalked.longValue()); }
+    public long getNumberOfItemsLoaded()       { return(numberOfItemsLoaded.longValue()); }
+    public long getNumberOfItemsWritten()      { return(numberOfItemsWritten.longValue()); }
+    
+    public void incrementNumberOfDirectoriesWalked()
+    {
+        numberOfDirectoriesWalked.incrementAndGet();
+    }
+    
+    public void incrementNumberOfItemsLoaded(final long count)
+    {
+        numberOfItemsLoaded.addAndGet(count);
+    }
+    
+    public void incrementNumberOfItemsWritten(final long count)
+    {
+        numberOfItemsWritten.addAndGet(count);
+    }
+    
+    public Long getDirectoriesWalkedPerSecond()
+    {
+        return perSecond(numberOfDirectoriesWalked.longValue());
+    }
+    
+    public Long getItemsLoadedPerSecond()
+    {
+        return perSecond(numberOfItemsLoaded.longValue());
+    }
+    
+    public Long getItemsWrittenPerSecond()
+    {
+        return perSecond(numberOfItemsWritten.longValue());
+    }
+    
+    public int getNumWalkerThreads()
+    {
+        return numWalkerThreads;
+    }
+    
+    public int getNumMetadataThreads()
+    {
+        return numMetadataThreads;
+    }
+    
+    public void setNumWalkerThreads(int numWalkerThreads)
+    {
+        this.numWalkerThreads = numWalkerThreads;
+    }
+    
+    public void setNumMetadataThreads(int numMetadataThreads)
+    {
+        this.numMetadataThreads = numMetadataThreads;
+    }
+    
+    /**
+     * @return <tt>true</tt> if the current (or last) import ran as a pipeline of walker, metadata and writer stages
+     */
+    public boolean isPipelined()
+    {
+        return numWalkerThreads > 0;
+    }
+
     // Private helper methods
+    private Long perSecond(final long count)
+    {
+        Long duration = getDuration();
+        if(duration != null)
+        {
+            return count / duration;
+        }
+        else
+        {
+            return null;
+        }
+    }
+    
     private final Date copyDate(final Date date)
     {
         // Defensively copy the date.
@@ -599,6 +689,13 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getNumThreads());
     	sb.append("\nBatch size : ");
     	sb.append(getBatchSize());
+    	if(isPipelined())
+    	{
+    		sb.append("\nWalker threads : ");
+    		sb.append(getNumWalkerThreads());
+    		sb.append("\nMetadata threads : ");
+    		sb.append(getNumMetadataThreads());
+    	}
 
     	if(inProgress())
     	{
@@ -620,6 +717,21 @@ public class BulkImportStatusImpl implements BulkImportStatus
     	sb.append(getFilesReadPerSecond());
     	sb.append("\nNodes created/sec : ");
     	sb.append(getNodesCreatedPerSecond());
+    	if(isPipelined())
+    	{
+    		sb.append("\nDirectories walked/sec : ");
+    		sb.append(getDirectoriesWalkedPerSecond());
+    		sb.append("\nItems loaded/sec : ");
+    		sb.append(getItemsLoadedPerSecond());
+    		sb.append("\nItems written/sec : ");
+    		sb.append(getItemsWrittenPerSecond());
+    		sb.append("\nNumber of directories walked : ");
+    		sb.append(getNumberOfDirectoriesWalked());
+    		sb.append("\nNumber of items loaded : ");
+    		sb.append(getNumberOfItemsLoaded());
+    		sb.append("\nNumber of items written : ");
+    		sb.append(getNumberOfItemsWritten());
+    	}
     	sb.append("\nNumber of files scanned : ");
     	sb.append(getNumberOfFilesScanned());
     	sb.append("\nNumber of folders scanned : ");
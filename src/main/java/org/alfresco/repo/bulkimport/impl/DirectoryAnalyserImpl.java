@@ -146,6 +146,14 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
      * @see org.alfresco.repo.bulkimport.DirectoryAnalyser#analyseDirectory(org.alfresco.repo.bulkimport.ImportableItem, java.nio.file.DirectoryStream.Filter)
      */
     public AnalysedDirectory analyseDirectory(ImportableItem directory, DirectoryStream.Filter<Path> filter)
+    {
+        return analyseDirectory(directory, filter, true);
+    }
+
+    /**
+     * @see org.alfresco.repo.bulkimport.DirectoryAnalyser#analyseDirectory(org.alfresco.repo.bulkimport.ImportableItem, java.nio.file.DirectoryStream.Filter, boolean)
+     */
+    public AnalysedDirectory analyseDirectory(ImportableItem directory, DirectoryStream.Filter<Path> filter, boolean validateMetadata)
     {
     	Path directoryFile = directory.getHeadRevision().getContentFile();
     	AnalysedDirectory result = new AnalysedDirectory(listFiles(directoryFile, filter));
@@ -238,7 +246,7 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
         {
             ImportableItem importableItem = iter.next();
 
-            if (!importableItem.isValid() || !isMetadataValid(importableItem))
+            if (!importableItem.isValid() || (validateMetadata && !isMetadataValid(importableItem)))
             {
                 iter.remove();
             }
@@ -292,30 +300,45 @@ public class DirectoryAnalyserImpl implements DirectoryAnalyser
             MetadataLoader.Metadata result = new MetadataLoader.Metadata();
             metadataLoader.loadMetadata(importableItem.getHeadRevision(), result);
             
-            Map<QName, Serializable> metadataProperties = result.getProperties();
-            for (QName propertyName : metadataProperties.keySet())
+            return isMetadataValid(importableItem, result);
+        }
+        
+        return true;
+    }
+
+    /**
+     * @see org.alfresco.repo.bulkimport.DirectoryAnalyser#isMetadataValid(org.alfresco.repo.bulkimport.ImportableItem, org.alfresco.repo.bulkimport.MetadataLoader.Metadata)
+     */
+    public boolean isMetadataValid(ImportableItem importableItem, MetadataLoader.Metadata metadata)
+    {
+        if (!importableItem.getHeadRevision().metadataFileExists())
+        {
+            return true;
+        }
+        
+        Map<QName, Serializable> metadataProperties = metadata.getProperties();
+        for (QName propertyName : metadataProperties.keySet())
+        {
+            PropertyDefinition propDef = dictionaryService.getProperty(propertyName);
+            if (propDef != null)
             {
-                PropertyDefinition propDef = dictionaryService.getProperty(propertyName);
-                if (propDef != null)
+                for (ConstraintDefinition constraintDef : propDef.getConstraints())
                 {
-                    for (ConstraintDefinition constraintDef : propDef.getConstraints())
+                    Constraint constraint = constraintDef.getConstraint();
+                    if (constraint != null)
                     {
-                        Constraint constraint = constraintDef.getConstraint();
-                        if (constraint != null)
+                        try
                         {
-                            try
-                            {
-                                constraint.evaluate(metadataProperties.get(propertyName));
-                            }
-                            catch (ConstraintException e)
+                            constraint.evaluate(metadataProperties.get(propertyName));
+                        }
+                        catch (ConstraintException e)
+                        {
+                            if (log.isWarnEnabled())
                             {
-                                if (log.isWarnEnabled())
-                                {
-                                    log.warn("Skipping file '" + FileUtils.getFileName(importableItem.getHeadRevision().getContentFile())
-                                       +"' with invalid metadata: '" + FileUtils.getFileName(importableItem.getHeadRevision().getMetadataFile()) + "'.", e);
-                                }
-                                return false;
+                                log.warn("Skipping file '" + FileUtils.getFileName(importableItem.getHeadRevision().getContentFile())
+                                   +"' with invalid metadata: '" + FileUtils.getFileName(importableItem.getHeadRevision().getMetadataFile()) + "'.", e);
                             }
+                            return false;
                         }
                     }
                 }
@@ -55,6 +55,11 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
     protected int defaultNumThreads;
     protected int defaultLoggingInterval = 100;
 
+    protected boolean pipelineEnabled = false;
+    protected int pipelineWalkerThreads = 2;
+    protected int pipelineMetadataThreads = 2;
+    protected int pipelineQueueCapacity = 1000;
+
     protected int getLoggingInterval(BulkImportParameters bulkImportParameters)
     {
         return bulkImportParameters.getLoggingInterval() != null ? bulkImportParameters.getLoggingInterval() : defaultLoggingInterval;    	
@@ -70,6 +75,9 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
         return bulkImportParameters.getNumThreads() != null ? bulkImportParameters.getNumThreads() : defaultNumThreads;    	
     }
 
+    /**
+     * @param filesystemTracker     The tracker to tell about imported items, or <tt>null</tt> if the caller tracks the walk itself.
+     */
     protected BatchProcessor.BatchProcessWorker<ImportableItem> getWorker(final BulkImportParameters bulkImportParameters, final String lockToken,
     		final NodeImporter nodeImporter, final FilesystemTracker filesystemTracker)
     {
@@ -127,7 +135,10 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 		                    behaviourFilter.disableBehaviour(ContentModel.ASPECT_AUDITABLE);
 
 		                    NodeRef nodeRef = nodeImporter.importImportableItem(importableItem, bulkImportParameters.getExistingFileMode());
-		                    filesystemTracker.itemImported(nodeRef, importableItem);
+		                    if (filesystemTracker != null)
+		                    {
+		                        filesystemTracker.itemImported(nodeRef, importableItem);
+		                    }
 		                }
 		                finally
 		                {
@@ -173,6 +184,38 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
 		this.defaultBatchSize = defaultBatchSize;
 	}
 
+	/**
+	 * Import through a pipeline of walker, metadata and writer stages instead of level by level.
+	 * The writer stage uses the usual number of threads and batch size.
+	 */
+	public void setPipelineEnabled(boolean pipelineEnabled)
+	{
+		this.pipelineEnabled = pipelineEnabled;
+	}
+
+	public void setPipelineWalkerThreads(int pipelineWalkerThreads)
+	{
+		this.pipelineWalkerThreads = pipelineWalkerThreads;
+	}
+
+	public void setPipelineMetadataThreads(int pipelineMetadataThreads)
+	{
+		this.pipelineMetadataThreads = pipelineMetadataThreads;
+	}
+
+	/**
+	 * The capacity of each of the queues between the pipeline stages, in importable items.
+	 */
+	public void setPipelineQueueCapacity(int pipelineQueueCapacity)
+	{
+		this.pipelineQueueCapacity = pipelineQueueCapacity;
+	}
+
+	public boolean isPipelineEnabled()
+	{
+		return pipelineEnabled;
+	}
+
 	public int getDefaultNumThreads()
 	{
 		return defaultNumThreads;
@@ -200,4 +243,33 @@ public abstract class MultiThreadedBulkFilesystemImporter extends AbstractBulkFi
         importStatus.setBatchSize(batchSize);
     }
 
+    /**
+     * Imports the source folder of the node importer with a {@link BulkImportPipeline}, so that walking the filesystem,
+     * loading metadata and writing nodes overlap rather than taking turns.
+     * 
+     * @param bulkImportParameters  The bulk import parameters to apply to this bulk import.
+     * @param nodeImporter          The node importer implementation that will import each node.
+     * @param lockToken             The lock token to use during the bulk import.
+     */
+    protected void pipelinedBulkImport(final BulkImportParameters bulkImportParameters, final NodeImporter nodeImporter, final String lockToken)
+    {
+        final int batchSize = getBatchSize(bulkImportParameters);
+        final int numThreads = getNumThreads(bulkImportParameters);
+
+        importStatus.setNumThreads(numThreads);
+        importStatus.setBatchSize(batchSize);
+
+        // not really an importable item but the directory analyser requires it to be in this form
+        ImportableItem rootFolder = new ImportableItem();
+        rootFolder.getHeadRevision().setContentFile(nodeImporter.getSourceFolder().toPath());
+        rootFolder.setNodeRef(bulkImportParameters.getTarget());
+
+        // The pipeline walks the filesystem itself, handing committed directories back to its walkers, so there is no tracker
+        BulkImportPipeline pipeline = new BulkImportPipeline(importStatus, directoryAnalyser, nodeImporter, transactionHelper,
+                getWorker(bulkImportParameters, lockToken, nodeImporter, null),
+                pipelineWalkerThreads, pipelineMetadataThreads, numThreads, batchSize, pipelineQueueCapacity,
+                AuthenticationUtil.getFullyAuthenticatedUser(), TenantUtil.getCurrentDomain());
+        pipeline.run(rootFolder);
+    }
+
 }
@@ -51,6 +51,12 @@ public class StripingBulkFilesystemImporter extends MultiThreadedBulkFilesystemI
     @Override
     protected void bulkImportImpl(final BulkImportParameters bulkImportParameters, final NodeImporter nodeImporter, final String lockToken)
     {
+        if (pipelineEnabled)
+        {
+            pipelinedBulkImport(bulkImportParameters, nodeImporter, lockToken);
+            return;
+        }
+
         super.bulkImportImpl(bulkImportParameters, nodeImporter, lockToken);
 
     	final File sourceFolder = nodeImporter.getSourceFolder();
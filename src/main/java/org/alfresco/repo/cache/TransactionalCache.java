@@ -76,6 +76,10 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
  * the shared cache will not have stale data in the event of the transaction-local
  * caches dropping items.  It is therefore important to size the transactional caches
  * correctly.
+ * <p>
+ * Values read from the shared cache during a read-only transaction are kept in a flat
+ * {@link TransactionalReadBuffer} rather than in buckets, as they are never written back
+ * and the post-commit phase need not visit them.
  * 
  * @author Derek Hulley
  */
@@ -270,6 +274,11 @@ public class TransactionalCache<K extends Serializable, V extends Object>
             data.removedItemsCache = new HashSet<Serializable>(13);
             data.lockedItemsCache = new HashSet<Serializable>(13);
             data.isReadOnly = AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY;
+            if (data.isReadOnly)
+            {
+                // Reads are the bulk of the work in a read-only transaction and need no commit-time processing
+                data.readItemsCache = new TransactionalReadBuffer(maxCacheSize);
+            }
             data.stats = new TransactionStats();
 
             // ensure that we get the transaction callbacks as we have bound the unique
@@ -322,6 +331,11 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         if (noSharedCacheRead && !txnData.noSharedCacheRead)
         {
             txnData.noSharedCacheRead = noSharedCacheRead;
+            if (txnData.readItemsCache != null)
+            {
+                // Simply 'forget' reads
+                txnData.readItemsCache.clear();
+            }
             String currentCacheRegion = TenantUtil.getCurrentDomain();
             for (Map.Entry<Serializable, CacheBucket<V>> entry : new ArrayList<Map.Entry<Serializable, CacheBucket<V>>>(
                     txnData.updatedItemsCache.entrySet()))
@@ -585,6 +599,7 @@ public class TransactionalCache<K extends Serializable, V extends Object>
         final Serializable key = getTenantAwareCacheKey(keyIn);
         
         boolean ignoreSharedCache = false;
+        Object bufferedValue;
         // are we in a transaction?
         if (AlfrescoTransactionSupport.getTransactionId() != null)
         {
@@ -632,6 +647,13 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                     // Can't store values in the current txn any more
                     ignoreSharedCache = true;
                 }
+                else if (txnData.readItemsCache != null && (bufferedValue = txnData.readItemsCache.get(key)) != TransactionalReadBuffer.NOT_FOUND)
+                {
+                    // Already read from the shared cache in this read-only transaction
+                    @SuppressWarnings("unchecked")
+                    V value = (V) bufferedValue;
+                    return value;
+                }
                 else if (txnData.noSharedCacheRead)
                 {
                     // Explicitly told to ignore shared cache
@@ -651,8 +673,16 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                         // No stats tracking, pass in null TransactionStats
                         value = TransactionalCache.getSharedCacheValue(sharedCache, key, null);
                     }
-                    bucket = new ReadCacheBucket<V>(value);
-                    txnData.updatedItemsCache.put(key, bucket);
+                    if (txnData.readItemsCache != null)
+                    {
+                        // No bucket is needed as reads are not written back to the shared cache
+                        txnData.readItemsCache.put(key, value);
+                    }
+                    else
+                    {
+                        bucket = new ReadCacheBucket<V>(value);
+                        txnData.updatedItemsCache.put(key, bucket);
+                    }
                     return value;
                 }
             }
@@ -778,6 +808,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 txnData.updatedItemsCache.put(key, bucket);
                 // remove the item from the removed cache, if present
                 txnData.removedItemsCache.remove(key);
+                if (txnData.readItemsCache != null)
+                {
+                    txnData.readItemsCache.remove(key);
+                }
                 // done
                 if (isDebugEnabled)
                 {
@@ -876,6 +910,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 }
                 // remove the item from the udpated cache, if present
                 txnData.updatedItemsCache.remove(key);
+                if (txnData.readItemsCache != null)
+                {
+                    txnData.readItemsCache.remove(key);
+                }
                 // done
                 if (isDebugEnabled)
                 {
@@ -922,6 +960,10 @@ public class TransactionalCache<K extends Serializable, V extends Object>
                 txnData.isClearOn = true;
                 txnData.updatedItemsCache.clear();
                 txnData.removedItemsCache.clear();
+                if (txnData.readItemsCache != null)
+                {
+                    txnData.readItemsCache.clear();
+                }
             }
         }
         else            // no transaction
@@ -1377,6 +1419,8 @@ public class TransactionalCache<K extends Serializable, V extends Object>
     private class TransactionData
     {
         private LRULinkedHashMap<Serializable, CacheBucket<V>> updatedItemsCache;
+        /** values read from the shared cache; only present for read-only transactions */
+        private TransactionalReadBuffer readItemsCache;
         private Set<Serializable> removedItemsCache;
         private Set<Serializable> lockedItemsCache;
         private boolean haveIssuedFullWarning;
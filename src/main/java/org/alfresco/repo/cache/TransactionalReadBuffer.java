@@ -0,0 +1,194 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import java.util.Arrays;
+
+/**
+ * A flat, open-addressing map used by the {@link TransactionalCache} to remember the values
+ * read from the shared cache during a read-only transaction.
+ * <p/>
+ * Keys and values are held in two parallel arrays, so a buffered read costs no entry or bucket
+ * instances.  The buffer never holds more than its maximum size; once full, further values are
+ * simply not buffered.  Instances are bound to a single transaction and are not thread-safe.
+ * 
+ * @since 7.0
+ */
+class TransactionalReadBuffer
+{
+    /** Returned by {@link #get(Object)} when the key is not buffered */
+    static final Object NOT_FOUND = new Object();
+    /** Stands in for buffered <tt>null</tt> values */
+    private static final Object NULL_VALUE = new Object();
+    
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private final int maxSize;
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    
+    /**
+     * @param maxSize           the maximum number of values to buffer
+     */
+    TransactionalReadBuffer(int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.keys = new Object[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+    }
+    
+    int size()
+    {
+        return size;
+    }
+    
+    /**
+     * @return                  the buffered value (which may be <tt>null</tt>) or {@link #NOT_FOUND}
+     */
+    Object get(Object key)
+    {
+        int mask = keys.length - 1;
+        for (int i = indexFor(key, mask); ; i = (i + 1) & mask)
+        {
+            Object existingKey = keys[i];
+            if (existingKey == null)
+            {
+                return NOT_FOUND;
+            }
+            else if (existingKey == key || existingKey.equals(key))
+            {
+                Object value = values[i];
+                return (value == NULL_VALUE) ? null : value;
+            }
+        }
+    }
+    
+    /**
+     * @return                  <tt>true</tt> if the value was buffered or <tt>false</tt> if the buffer is full
+     */
+    boolean put(Object key, Object value)
+    {
+        Object storedValue = (value == null) ? NULL_VALUE : value;
+        int mask = keys.length - 1;
+        int i = indexFor(key, mask);
+        for (; keys[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key || keys[i].equals(key))
+            {
+                values[i] = storedValue;
+                return true;
+            }
+        }
+        if (size >= maxSize)
+        {
+            return false;
+        }
+        // Keep the load factor at 0.75 or lower
+        if ((size + 1) * 4 > keys.length * 3)
+        {
+            resize();
+            mask = keys.length - 1;
+            for (i = indexFor(key, mask); keys[i] != null; i = (i + 1) & mask);
+        }
+        keys[i] = key;
+        values[i] = storedValue;
+        size++;
+        return true;
+    }
+    
+    void remove(Object key)
+    {
+        int mask = keys.length - 1;
+        int i = indexFor(key, mask);
+        while (true)
+        {
+            Object existingKey = keys[i];
+            if (existingKey == null)
+            {
+                return;
+            }
+            else if (existingKey == key || existingKey.equals(key))
+            {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = null;
+        values[i] = null;
+        size--;
+        // Shift back any following entries that can no longer be reached from their home slot
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask)
+        {
+            int home = indexFor(keys[j], mask);
+            boolean reachable = (j > i) ? (home > i && home <= j) : (home > i || home <= j);
+            if (!reachable)
+            {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = null;
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+    
+    void clear()
+    {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+    
+    private void resize()
+    {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            if (oldKeys[j] == null)
+            {
+                continue;
+            }
+            int i = indexFor(oldKeys[j], mask);
+            while (keys[i] != null)
+            {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+    
+    private static int indexFor(Object key, int mask)
+    {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
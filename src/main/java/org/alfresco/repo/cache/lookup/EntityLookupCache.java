@@ -589,6 +589,12 @@ public class EntityLookupCache<K extends Serializable, V extends Object, VK exte
     @SuppressWarnings("unchecked")
     public K getKey(VK valueKey)
     {
+        // Handle missing cache
+        if (cache == null)
+        {
+            return null;
+        }
+        
         // There is a good value key, cache by value
         CacheRegionValueKey valueCacheKey = new CacheRegionValueKey(cacheRegion, valueKey);
         K key = (K) cache.get(valueCacheKey);
@@ -64,7 +64,7 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
 {
     private final static Log log = LogFactory.getLog(CachingContentStore.class);
     // NUM_LOCKS absolutely must be a power of 2 for the use of locks to be evenly balanced
-    private final static int numLocks = 256;
+    private final static int numLocks = lockStripes(Runtime.getRuntime().availableProcessors());
     private final static ReentrantReadWriteLock[] locks; 
     private ContentStore backingStore;
     private ContentCache cache;
@@ -387,13 +387,41 @@ public class CachingContentStore implements ContentStore, ApplicationEventPublis
      * @return ReentrantReadWriteLock
      */
     public ReentrantReadWriteLock readWriteLock(String url)
+    {
+        return lockFor(url);
+    }
+    
+    /**
+     * Get the lock for a given URL without a store instance, so that the cache can hold it while evicting
+     * a cache file that the store may be reading or writing.
+     * 
+     * @param url String
+     * @return ReentrantReadWriteLock
+     */
+    static ReentrantReadWriteLock lockFor(String url)
     {
         return locks[lockIndex(url)];
     }
     
-    private int lockIndex(String url)
+    private static int lockIndex(String url)
+    {
+        // Spread the high bits of the hash so that URLs differing only in their suffix use different stripes
+        int h = url.hashCode();
+        h ^= (h >>> 16);
+        return h & (numLocks - 1);
+    }
+    
+    /**
+     * Number of lock stripes for the given number of processors: at least 256, otherwise 64 stripes per
+     * processor rounded up to a power of 2, which keeps contention low on large machines.
+     * 
+     * @param processors int
+     * @return power of 2 number of stripes
+     */
+    static int lockStripes(int processors)
     {
-        return url.hashCode() & (numLocks - 1);
+        int stripes = Math.max(256, processors * 64);
+        return Math.min(1 << 16, Integer.highestOneBit(stripes - 1) << 1);
     }
     
     @Required
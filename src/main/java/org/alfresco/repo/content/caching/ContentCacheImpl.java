@@ -26,20 +26,24 @@
 package org.alfresco.repo.content.caching;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.GregorianCalendar;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.content.caching.ContentCacheIndex.EvictionPolicy;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.service.cmr.repository.ContentIOException;
 import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentStreamListener;
 import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.Deleter;
 import org.alfresco.util.GUID;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,6 +53,11 @@ import org.apache.commons.logging.LogFactory;
  * is stored on disk in the location specified by {@link #cacheRoot}.
  * <p>
  * The in-memory lookup table is provided by a SimpleCache implementation.
+ * <p>
+ * When {@link #setIndexEnabled(boolean) indexEnabled} is set, a {@link ContentCacheIndex} additionally tracks the
+ * size and usage of every cache file. The index is saved to {cacheRoot}/cache-index.bin after each cleaner run and
+ * on {@link #shutdown()}, and reloaded by {@link #init()}, repopulating the lookup table so the cache is warm after
+ * a restart. It also allows {@link #evict(long, EvictionPolicy)} to reclaim space without walking the cache directory.
  * 
  * @author Matt Ward
  */
@@ -57,8 +66,163 @@ public class ContentCacheImpl implements ContentCache
     private static final Log log = LogFactory.getLog(ContentCacheImpl.class);
     private static final String CACHE_FILE_EXT = ".bin";
     private static final String CACHE_FILE_TEMP_EXT = ".tmp";
+    private static final String CACHE_INDEX_FILENAME = "cache-index.bin";
     private File cacheRoot;
     private SimpleCache<Key, String> memoryStore;
+    private boolean indexEnabled;
+    private ContentCacheIndex index;
+    
+    /**
+     * Lifecycle method. When the index is enabled, loads the last index snapshot (written by {@link #saveIndex()}
+     * or {@link #shutdown()}) and repopulates the lookup table with the entries whose cache files still exist.
+     */
+    public void init()
+    {
+        if (!indexEnabled)
+        {
+            return;
+        }
+        ContentCacheIndex newIndex = new ContentCacheIndex();
+        File indexFile = new File(cacheRoot, CACHE_INDEX_FILENAME);
+        if (newIndex.load(indexFile))
+        {
+            int restored = 0;
+            for (String url : newIndex.getContentUrls())
+            {
+                String path = newIndex.getPath(url);
+                if (path != null && new File(path).exists())
+                {
+                    memoryStore.put(Key.forUrl(url), path);
+                    memoryStore.put(Key.forCacheFile(path), url);
+                    restored++;
+                }
+                else
+                {
+                    newIndex.remove(url);
+                }
+            }
+            if (log.isInfoEnabled())
+            {
+                log.info("Warm started content cache with " + restored + " entries from " + indexFile);
+            }
+        }
+        // The snapshot is kept, so that a crash before the next save still leaves a usable (if older) snapshot.
+        // Entries whose files have gone are dropped above; files written since are orphans for the cleaner.
+        this.index = newIndex;
+    }
+    
+    /**
+     * Lifecycle method. Saves the index, if enabled, so that the next {@link #init()} can warm start the cache.
+     */
+    public void shutdown()
+    {
+        saveIndex();
+    }
+    
+    /**
+     * Write a snapshot of the index, if enabled. Called on {@link #shutdown()} and after every cleaner run so
+     * that the snapshot is never far behind the cache contents, even if the server is not shut down cleanly.
+     */
+    public void saveIndex()
+    {
+        if (index == null)
+        {
+            return;
+        }
+        File indexFile = new File(cacheRoot, CACHE_INDEX_FILENAME);
+        try
+        {
+            index.save(indexFile);
+        }
+        catch (IOException e)
+        {
+            log.warn("Unable to save content cache index to " + indexFile, e);
+        }
+    }
+    
+    /**
+     * @return the cache file index, or <tt>null</tt> if the index is not enabled
+     */
+    public ContentCacheIndex getIndex()
+    {
+        return index;
+    }
+    
+    /**
+     * Evict cache files, as chosen by the index, until at least <code>bytesToFree</code> bytes have been
+     * recovered. The entries are removed from the lookup table and the files deleted immediately, each under
+     * the {@link CachingContentStore} lock for its URL. Entries whose lock is busy, because the content is being
+     * read or cached at that moment, are skipped and stay in the cache.
+     * 
+     * @param bytesToFree the number of bytes to recover
+     * @param policy the order in which cache files are chosen
+     * @return the number of bytes actually freed
+     */
+    public long evict(long bytesToFree, EvictionPolicy policy)
+    {
+        if (index == null)
+        {
+            throw new IllegalStateException("Eviction requires the content cache index to be enabled.");
+        }
+        long freed = 0L;
+        for (String url : index.selectForEviction(bytesToFree, policy))
+        {
+            ReentrantReadWriteLock readWriteLock = CachingContentStore.lockFor(url);
+            if (readWriteLock.isWriteLockedByCurrentThread() || !readWriteLock.writeLock().tryLock())
+            {
+                // In use - possibly by this thread, caching the content that triggered the eviction
+                continue;
+            }
+            try
+            {
+                freed += evictEntry(url);
+            }
+            finally
+            {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Evicted " + freed + " bytes from content cache using " + policy + " policy.");
+        }
+        return freed;
+    }
+    
+    private long evictEntry(String url)
+    {
+        String path = index.remove(url);
+        if (path == null)
+        {
+            // Removed concurrently
+            return 0L;
+        }
+        memoryStore.remove(Key.forUrl(url));
+        memoryStore.remove(Key.forCacheFile(path));
+        
+        File cacheFile = new File(path);
+        long size = cacheFile.length();
+        new CacheFileProps(cacheFile).delete();
+        if (cacheFile.delete())
+        {
+            Deleter.deleteEmptyParents(cacheFile, cacheRoot);
+            return size;
+        }
+        return 0L;
+    }
+    
+    /**
+     * Notify the cache that a cache file has been deleted from disk by some other party (e.g. the cleaner).
+     * 
+     * @param cacheFile File
+     */
+    public void cacheFileDeleted(File cacheFile)
+    {
+        if (index != null)
+        {
+            index.removeByPath(cacheFile.getAbsolutePath());
+        }
+    }
     
     
     @Override
@@ -128,6 +292,10 @@ public class ContentCacheImpl implements ContentCache
             File cacheFile = new File(path);
             if (cacheFile.exists())
             {
+                if (index != null)
+                {
+                    index.touch(contentUrl);
+                }
                 return new FileContentReader(cacheFile, contentUrl);
             }
         }
@@ -157,6 +325,10 @@ public class ContentCacheImpl implements ContentCache
     {
         memoryStore.put(Key.forUrl(contentUrl), cacheFile.getAbsolutePath());
         memoryStore.put(Key.forCacheFile(cacheFile), contentUrl);
+        if (index != null)
+        {
+            index.put(contentUrl, cacheFile.getAbsolutePath(), cacheFile.length());
+        }
     }
     
     /**
@@ -179,6 +351,10 @@ public class ContentCacheImpl implements ContentCache
         String path = getCacheFilePath(contentUrl);
         memoryStore.remove(Key.forUrl(contentUrl));
         memoryStore.remove(Key.forCacheFile(path));
+        if (index != null)
+        {
+            index.remove(contentUrl);
+        }
     }
     
     /**
@@ -187,6 +363,10 @@ public class ContentCacheImpl implements ContentCache
     public void removeAll()
     {
         memoryStore.clear();
+        if (index != null)
+        {
+            index.clear();
+        }
     }
     
     @Override
@@ -194,6 +374,7 @@ public class ContentCacheImpl implements ContentCache
     {
         File cacheFile = new File(getCacheFilePath(url));
         cacheFile.delete();
+        cacheFileDeleted(cacheFile);
     }
 
     @Override
@@ -307,6 +488,16 @@ public class ContentCacheImpl implements ContentCache
         this.memoryStore = memoryStore;
     }
     
+    /**
+     * Track cache file sizes and usage in a {@link ContentCacheIndex} that is persisted across restarts.
+     * 
+     * @param indexEnabled boolean
+     */
+    public void setIndexEnabled(boolean indexEnabled)
+    {
+        this.indexEnabled = indexEnabled;
+    }
+    
     /**
      * Specify the directory where cache files will be written.
      * 
@@ -0,0 +1,400 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * In-memory index of the files held by a {@link ContentCacheImpl}, recording the size, last access time and
+ * access count of each cache file. The index allows the quota strategy to pick eviction candidates
+ * (least recently or least frequently used) and to know the total cache size without walking the cache
+ * directory tree.
+ * <p>
+ * The index can be written to and read from a snapshot file, so that the cache
+ * can be warm started after a clean shutdown. The snapshot is a point in time view only; files that have since
+ * disappeared from disk must be filtered out by the caller.
+ * 
+ * @since 7.0
+ */
+public class ContentCacheIndex
+{
+    private static final Log log = LogFactory.getLog(ContentCacheIndex.class);
+    private static final int MAGIC = 0x41434349;   // "ACCI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    
+    /**
+     * Policy used to order eviction candidates.
+     */
+    public enum EvictionPolicy
+    {
+        /** Least recently used entries are evicted first. */
+        LRU,
+        /** Least frequently used entries are evicted first, ties broken by least recent use. */
+        LFU
+    }
+    
+    private final Map<String, Entry> entriesByUrl = new ConcurrentHashMap<>();
+    private final Map<String, String> urlsByPath = new ConcurrentHashMap<>();
+    private final AtomicLong totalSize = new AtomicLong(0L);
+    
+    /**
+     * Record a cache file for the given content URL, replacing any previous entry for the URL.
+     * 
+     * @param contentUrl the content URL
+     * @param path absolute path of the cache file
+     * @param size size of the cache file in bytes
+     */
+    public void put(String contentUrl, String path, long size)
+    {
+        put(contentUrl, new Entry(path, size, System.currentTimeMillis(), 1));
+    }
+    
+    private void put(String contentUrl, Entry entry)
+    {
+        Entry previous = entriesByUrl.put(contentUrl, entry);
+        if (previous != null)
+        {
+            urlsByPath.remove(previous.path, contentUrl);
+            totalSize.addAndGet(-previous.size);
+        }
+        urlsByPath.put(entry.path, contentUrl);
+        totalSize.addAndGet(entry.size);
+    }
+    
+    /**
+     * Record an access to the cache file for the given content URL.
+     * 
+     * @param contentUrl the content URL
+     */
+    public void touch(String contentUrl)
+    {
+        Entry entry = entriesByUrl.get(contentUrl);
+        if (entry != null)
+        {
+            entry.lastAccess = System.currentTimeMillis();
+            // Not atomic; a lost increment under contention does not matter for eviction ordering.
+            entry.accessCount++;
+        }
+    }
+    
+    /**
+     * Remove the entry for a content URL.
+     * 
+     * @param contentUrl the content URL
+     * @return the path of the cache file that was indexed, or <tt>null</tt> if there was no entry
+     */
+    public String remove(String contentUrl)
+    {
+        Entry entry = entriesByUrl.remove(contentUrl);
+        if (entry == null)
+        {
+            return null;
+        }
+        urlsByPath.remove(entry.path, contentUrl);
+        totalSize.addAndGet(-entry.size);
+        return entry.path;
+    }
+    
+    /**
+     * Remove the entry for a cache file, e.g. after the file was deleted by the cleaner.
+     * 
+     * @param path absolute path of the cache file
+     */
+    public void removeByPath(String path)
+    {
+        String contentUrl = urlsByPath.get(path);
+        if (contentUrl != null)
+        {
+            Entry entry = entriesByUrl.get(contentUrl);
+            if (entry != null && entry.path.equals(path))
+            {
+                remove(contentUrl);
+            }
+        }
+    }
+    
+    /**
+     * @param contentUrl the content URL
+     * @return the indexed cache file path for the URL, or <tt>null</tt>
+     */
+    public String getPath(String contentUrl)
+    {
+        Entry entry = entriesByUrl.get(contentUrl);
+        return entry == null ? null : entry.path;
+    }
+    
+    /**
+     * @return the content URLs currently indexed
+     */
+    public List<String> getContentUrls()
+    {
+        return new ArrayList<>(entriesByUrl.keySet());
+    }
+    
+    public void clear()
+    {
+        entriesByUrl.clear();
+        urlsByPath.clear();
+        totalSize.set(0L);
+    }
+    
+    /**
+     * @return the total size in bytes of all indexed cache files
+     */
+    public long getTotalSize()
+    {
+        return totalSize.get();
+    }
+    
+    public int size()
+    {
+        return entriesByUrl.size();
+    }
+    
+    /**
+     * Select the content URLs that should be evicted in order to free at least <code>bytesToFree</code> bytes.
+     * The index itself is not modified. Only the selected entries are held while the index is scanned, so the
+     * cost depends on the number of files to evict rather than on the size of the index.
+     * 
+     * @param bytesToFree the number of bytes to recover
+     * @param policy the order in which entries are chosen
+     * @return the content URLs to evict, in eviction order
+     */
+    public List<String> selectForEviction(long bytesToFree, EvictionPolicy policy)
+    {
+        if (bytesToFree <= 0L)
+        {
+            return Collections.emptyList();
+        }
+        
+        Comparator<Candidate> order = (policy == EvictionPolicy.LFU) ? LFU_ORDER : LRU_ORDER;
+        // The candidate that would be evicted last is at the head, so it can be dropped when a better one turns up
+        PriorityQueue<Candidate> selected = new PriorityQueue<>(16, Collections.reverseOrder(order));
+        long selectedBytes = 0L;
+        for (Map.Entry<String, Entry> e : entriesByUrl.entrySet())
+        {
+            Entry entry = e.getValue();
+            Candidate candidate = new Candidate(e.getKey(), entry.size, entry.lastAccess, entry.accessCount);
+            if (selectedBytes >= bytesToFree && order.compare(candidate, selected.peek()) >= 0)
+            {
+                continue;
+            }
+            selected.add(candidate);
+            selectedBytes += candidate.size;
+            // Keep only as many of the first candidates as are needed to free enough space
+            while (selectedBytes - selected.peek().size >= bytesToFree)
+            {
+                selectedBytes -= selected.poll().size;
+            }
+        }
+        
+        List<String> contentUrls = new ArrayList<>(selected.size());
+        while (!selected.isEmpty())
+        {
+            contentUrls.add(selected.poll().contentUrl);
+        }
+        Collections.reverse(contentUrls);
+        return contentUrls;
+    }
+    
+    /**
+     * Write a snapshot of the index to the given file. The snapshot is written to a temporary file first and
+     * then renamed, so an interrupted save never leaves a partial snapshot behind.
+     * 
+     * @param file the snapshot file
+     * @throws IOException if the snapshot could not be written
+     */
+    public void save(File file) throws IOException
+    {
+        // The entry count is written first, so take the entries as they are now
+        List<Map.Entry<String, Entry>> entries = new ArrayList<>(entriesByUrl.entrySet());
+        
+        File tempFile = new File(file.getPath() + ".tmp");
+        tempFile.delete();
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile))
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries)
+            {
+                Entry entry = e.getValue();
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastAccess);
+                out.writeInt(entry.accessCount);
+                writeString(out, e.getKey());
+                writeString(out, entry.path);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        
+        file.delete();
+        if (!tempFile.renameTo(file))
+        {
+            throw new IOException("Unable to rename " + tempFile + " to " + file);
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Saved content cache index with " + entries.size() + " entries to " + file);
+        }
+    }
+    
+    /**
+     * Replace the contents of the index with a snapshot previously written by {@link #save(File)}.
+     * 
+     * @param file the snapshot file
+     * @return <tt>true</tt> if the snapshot was loaded, <tt>false</tt> if it does not exist or is not readable
+     */
+    public boolean load(File file)
+    {
+        clear();
+        if (!file.exists())
+        {
+            return false;
+        }
+        
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)))
+        {
+            if (file.length() < HEADER_SIZE || in.readInt() != MAGIC || in.readInt() != VERSION)
+            {
+                log.warn("Ignoring unrecognised content cache index file: " + file);
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++)
+            {
+                long size = in.readLong();
+                long lastAccess = in.readLong();
+                int accessCount = in.readInt();
+                String url = readString(in);
+                String path = readString(in);
+                put(url, new Entry(path, size, lastAccess, accessCount));
+            }
+            if (log.isDebugEnabled())
+            {
+                log.debug("Loaded content cache index with " + count + " entries from " + file);
+            }
+            return true;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.warn("Unable to load content cache index file: " + file, e);
+            clear();
+            return false;
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static final Comparator<Candidate> LRU_ORDER = new Comparator<Candidate>()
+    {
+        @Override
+        public int compare(Candidate c1, Candidate c2)
+        {
+            return Long.compare(c1.lastAccess, c2.lastAccess);
+        }
+    };
+    
+    private static final Comparator<Candidate> LFU_ORDER = new Comparator<Candidate>()
+    {
+        @Override
+        public int compare(Candidate c1, Candidate c2)
+        {
+            int result = Integer.compare(c1.accessCount, c2.accessCount);
+            return result != 0 ? result : Long.compare(c1.lastAccess, c2.lastAccess);
+        }
+    };
+    
+    private static final class Entry
+    {
+        private final String path;
+        private final long size;
+        private volatile long lastAccess;
+        private volatile int accessCount;
+        
+        private Entry(String path, long size, long lastAccess, int accessCount)
+        {
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.accessCount = accessCount;
+        }
+    }
+    
+    /**
+     * Stable copy of an entry's statistics, taken so that ordering is not disturbed by concurrent access.
+     */
+    private static final class Candidate
+    {
+        private final String contentUrl;
+        private final long size;
+        private final long lastAccess;
+        private final int accessCount;
+        
+        private Candidate(String contentUrl, long size, long lastAccess, int accessCount)
+        {
+            this.contentUrl = contentUrl;
+            this.size = size;
+            this.lastAccess = lastAccess;
+            this.accessCount = accessCount;
+        }
+    }
+}
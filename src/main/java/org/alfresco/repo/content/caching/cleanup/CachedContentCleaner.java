@@ -124,6 +124,8 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
         resetStats();
         timeStarted = new Date();
         cache.processFiles(this);
+        // Keep the index snapshot recent in case of an unclean shutdown
+        cache.saveIndex();
         timeFinished = new Date(); 
         
         if (usageTracker != null)
@@ -331,6 +333,7 @@ public class CachedContentCleaner extends Thread implements FileHandler, Applica
             }
             numFilesDeleted++;
             sizeFilesDeleted += fileSize;
+            cache.cacheFileDeleted(cacheFile);
             Deleter.deleteEmptyParents(cacheFile, cache.getCacheRoot());
         }
         else
@@ -30,13 +30,19 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.repo.content.caching.ContentCacheImpl;
+import org.alfresco.repo.content.caching.ContentCacheIndex.EvictionPolicy;
 import org.alfresco.repo.content.caching.cleanup.CachedContentCleaner;
 import org.alfresco.repo.content.filestore.FileContentReader;
 import org.alfresco.repo.content.filestore.FileContentWriter;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -57,6 +63,12 @@ import org.springframework.beans.factory.annotation.Required;
  * Upon startup, if the cache-usage.ser file exists then the current usage is seeded with that value and the cleaner
  * is invoked in a new thread so that the value can be updated more accurately (perhaps some files were deleted
  * manually after shutdown for example).
+ * <p>
+ * If the cache has its {@link org.alfresco.repo.content.caching.ContentCacheIndex index} enabled, aggressive
+ * clean ups evict files chosen by the index according to the {@link EvictionPolicy} (LRU by default) instead of
+ * walking the cache directory. The eviction runs in its own thread, one at a time, and evicted files are deleted
+ * under the CachingContentStore lock for their URL. The
+ * startup and scheduled cleaners still walk the directory to remove orphaned files and correct the usage.
  * 
  * @author Matt Ward
  */
@@ -76,6 +88,9 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
     private CachedContentCleaner cleaner;
     private ContentCacheImpl cache;   // impl specific functionality required
     private int maxFileSizeMB = 0;
+    private EvictionPolicy evictionPolicy = EvictionPolicy.LRU;
+    private AtomicBoolean evicting = new AtomicBoolean(false);
+    private ExecutorService evictionExecutor;
     
     /**
      * Lifecycle method. Should be called immediately after constructing objects of this type (e.g. by the
@@ -101,7 +116,8 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
         loadDiskUsage();
         // Set the time to start the normal clean
         lastCleanupStart.set(System.currentTimeMillis() - normalCleanThresholdSec);
-        // Run the cleaner thread so that it can update the disk usage more accurately.
+        // Run the cleaner thread so that it can update the disk usage more accurately. This is needed with
+        // the index too: after an unclean shutdown the index snapshot may not describe the newest cache files.
         signalCleanerStart("quota (init)");
     }
     
@@ -117,6 +133,13 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
             log.debug("Shutting down quota strategy.");
         }
         saveDiskUsage();
+        synchronized (this)
+        {
+            if (evictionExecutor != null)
+            {
+                evictionExecutor.shutdownNow();
+            }
+        }
     }
     
     
@@ -231,7 +254,11 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
      */
     private void signalCleanerStart(final String reason, final boolean aggressive)
     {
-        if (aggressive)
+        if (aggressive && cache.getIndex() != null)
+        {
+            signalEviction(reason);
+        }
+        else if (aggressive)
         {
             long targetReductionBytes = (long) (((double) targetUsagePct / 100) * maxUsageBytes);
             cleaner.executeAggressive(reason, targetReductionBytes);                    
@@ -254,6 +281,85 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
         }
     }
     
+    /**
+     * Run an eviction using the cache index in the eviction thread. Requests made while an eviction is
+     * queued or running are ignored, as that eviction works out how much to free when it starts.
+     * 
+     * @param reason String
+     */
+    private void signalEviction(final String reason)
+    {
+        if (!evicting.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            getEvictionExecutor().execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        evictUsingIndex(reason);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        log.error("Content cache eviction failed, reason: " + reason, e);
+                    }
+                    finally
+                    {
+                        evicting.set(false);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down
+            evicting.set(false);
+        }
+    }
+    
+    private synchronized ExecutorService getEvictionExecutor()
+    {
+        if (evictionExecutor == null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setNamePrefix("ContentCacheEviction");
+            threadFactory.setThreadDaemon(true);
+            evictionExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        return evictionExecutor;
+    }
+    
+    /**
+     * Evict files chosen by the cache index until usage is back down to targetUsagePct. If the index
+     * cannot account for enough space (e.g. orphaned files), the aggressive cleaner is started as well.
+     * 
+     * @param reason String
+     */
+    private void evictUsingIndex(final String reason)
+    {
+        long targetUsageBytes = (long) (((double) targetUsagePct / 100) * maxUsageBytes);
+        long bytesToFree = getCurrentUsageBytes() - targetUsageBytes;
+        if (bytesToFree <= 0)
+        {
+            return;
+        }
+        if (log.isDebugEnabled())
+        {
+            log.debug("Evicting " + bytesToFree + " bytes using " + evictionPolicy + " policy, reason: " + reason);
+        }
+        long freed = cache.evict(bytesToFree, evictionPolicy);
+        addUsageBytes(-freed);
+        if (freed < bytesToFree)
+        {
+            cleaner.executeAggressive(reason, targetUsageBytes);
+        }
+    }
+    
     /**
      * Run a non-aggressive clean up job in a new thread.
      * 
@@ -328,6 +434,16 @@ public class StandardQuotaStrategy implements QuotaManagerStrategy, UsageTracker
         this.normalCleanThresholdSec = normalCleanThresholdSec;
     }
     
+    /**
+     * Order in which indexed cache files are evicted when the quota limit is reached (LRU or LFU).
+     * 
+     * @param evictionPolicy EvictionPolicy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy)
+    {
+        this.evictionPolicy = evictionPolicy;
+    }
+    
     @Required
     public void setCache(ContentCacheImpl cache)
     {
@@ -26,9 +26,15 @@
 package org.alfresco.repo.content.cleanup;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -38,12 +44,14 @@ import org.alfresco.repo.lock.JobLockService;
 import org.alfresco.repo.lock.JobLockService.JobLockRefreshCallback;
 import org.alfresco.repo.lock.LockAcquisitionException;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.VmShutdownListener;
 import org.alfresco.util.VmShutdownListener.VmShutdownException;
 import org.apache.commons.logging.Log;
@@ -77,6 +85,11 @@ import org.apache.commons.logging.LogFactory;
  * Lazy cleanup protects the content for a given period (e.g. 7 days) giving plenty of
  * time for a backup to be taken; this allows hot backup without needing metadata-content
  * consistency to be enforced.
+ * <p/>
+ * Orphaned URLs are processed in ID order, in batches.  The binaries of a batch can be deleted
+ * by {@link #setThreadCount(int) several threads}.  If an {@link #setAttributeService(AttributeService) attribute service}
+ * is available, the next orphan ID is recorded after each batch so that an interrupted run is resumed
+ * where it stopped; a run that completes clears the record and the next run starts from the beginning.
  * 
  * @author Derek Hulley
  */
@@ -112,6 +125,8 @@ public class ContentStoreCleaner
     
     private static final QName LOCK_QNAME = QName.createQName(NamespaceService.SYSTEM_MODEL_1_0_URI, "ContentStoreCleaner"); 
     private static final long LOCK_TTL = 30000L;
+    private static final String KEY_CHECKPOINT_ROOT = ".contentStoreCleaner";
+    private static final String KEY_CHECKPOINT_NEXT_ORPHAN_ID = "nextOrphanId";
     
     private static Log logger = LogFactory.getLog(ContentStoreCleaner.class);
     
@@ -124,13 +139,18 @@ public class ContentStoreCleaner
     private DictionaryService dictionaryService;
     private ContentService contentService;
     private TransactionService transactionService;
+    private AttributeService attributeService;
     private int protectDays;
     private DeleteFailureAction deletionFailureAction;
+    private int batchSize;
+    private int threadCount;
     
     public ContentStoreCleaner()
     {
         this.protectDays = 7;
         this.deletionFailureAction = DeleteFailureAction.IGNORE;
+        this.batchSize = 1000;
+        this.threadCount = 1;
     }
 
     /**
@@ -181,6 +201,34 @@ public class ContentStoreCleaner
         this.transactionService = transactionService;
     }
 
+    /**
+     * @param attributeService  optional service used to record the progress of a run so that it can be resumed
+     * @since 7.0
+     */
+    public void setAttributeService(AttributeService attributeService)
+    {
+        this.attributeService = attributeService;
+    }
+
+    /**
+     * @param batchSize         the number of orphaned URLs processed per transaction.  The default is 1000.
+     * @since 7.0
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param threadCount       the number of threads deleting binaries from the stores.  The default is 1,
+     *                          in which case the binaries are deleted by the job thread.
+     * @since 7.0
+     */
+    public void setThreadCount(int threadCount)
+    {
+        this.threadCount = threadCount;
+    }
+
     /**
      * Set the minimum number of days old that orphaned content must be
      *      before deletion is possible.  The default is 7 days.
@@ -223,6 +271,10 @@ public class ContentStoreCleaner
         PropertyCheck.mandatory(this, "transactionService", transactionService);
         PropertyCheck.mandatory(this, "eagerContentStoreCleaner", eagerContentStoreCleaner);
         
+        if (batchSize < 1)
+        {
+            throw new AlfrescoRuntimeException("Property 'batchSize' must be 1 or greater");
+        }
         // check the protect days
         if (protectDays < 0)
         {
@@ -324,33 +376,103 @@ public class ContentStoreCleaner
     private void executeInternal()
     {
         final long maxOrphanTime = System.currentTimeMillis() - (protectDays * 24 * 3600 * 1000L);
-        // execute in READ-WRITE txn
-        RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
+        final ExecutorService deleteExecutor = createDeleteExecutor();
+        try
         {
-            public Long execute() throws Exception
+            final Long[] nextOrphanId = new Long[] {getCheckpoint()};
+            if (logger.isDebugEnabled() && nextOrphanId[0] > 0L)
+            {
+                logger.debug("   Resuming content store cleanup from orphan ID " + nextOrphanId[0]);
+            }
+            // execute in READ-WRITE txn
+            RetryingTransactionCallback<Long> getAndDeleteWork = new RetryingTransactionCallback<Long>()
             {
-                return cleanBatch(maxOrphanTime, 1000);
+                public Long execute() throws Exception
+                {
+                    return cleanBatch(maxOrphanTime, nextOrphanId[0], batchSize, deleteExecutor);
+                };
             };
-        };
-        while (true)
-        {
-            Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
-            if (vmShutdownListener.isVmShuttingDown())
+            while (true)
             {
-                throw new VmShutdownException();
+                Long lastProcessedOrphanId = transactionService.getRetryingTransactionHelper().doInTransaction(getAndDeleteWork);
+                if (vmShutdownListener.isVmShuttingDown())
+                {
+                    throw new VmShutdownException();
+                }
+                if (lastProcessedOrphanId == null)
+                {
+                    // There is no more to process
+                    break;
+                }
+                nextOrphanId[0] = lastProcessedOrphanId + 1L;
+                // There is still more to delete, so continue
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("   Removed orphaned content URLs up to orphan ID " + lastProcessedOrphanId);
+                }
             }
-            if (lastProcessedOrphanId == null)
+            // Done, so the next run starts from the beginning
+            clearCheckpoint();
+        }
+        finally
+        {
+            if (deleteExecutor != null)
             {
-                // There is no more to process
-                break;
+                deleteExecutor.shutdown();
             }
-            // There is still more to delete, so continue
-            if (logger.isDebugEnabled())
+        }
+    }
+    
+    /**
+     * @return              the threads used to delete binaries or <tt>null</tt> if the job thread must be used
+     */
+    private ExecutorService createDeleteExecutor()
+    {
+        if (threadCount <= 1)
+        {
+            return null;
+        }
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("ContentStoreCleaner");
+        threadFactory.setThreadDaemon(true);
+        return Executors.newFixedThreadPool(threadCount, threadFactory);
+    }
+    
+    /**
+     * @return              the orphan ID recorded by an interrupted run or <tt>0</tt> to start at the beginning
+     */
+    private Long getCheckpoint()
+    {
+        if (attributeService == null)
+        {
+            return 0L;
+        }
+        RetryingTransactionCallback<Long> getCheckpointWork = new RetryingTransactionCallback<Long>()
+        {
+            public Long execute() throws Exception
             {
-                logger.debug("   Removed orphaned content URLs up orphan time " + new Date(lastProcessedOrphanId));
-            }
+                Long nextOrphanId = (Long) attributeService.getAttribute(KEY_CHECKPOINT_ROOT, KEY_CHECKPOINT_NEXT_ORPHAN_ID);
+                return (nextOrphanId == null) ? 0L : nextOrphanId;
+            };
+        };
+        return transactionService.getRetryingTransactionHelper().doInTransaction(getCheckpointWork, true);
+    }
+    
+    private void clearCheckpoint()
+    {
+        if (attributeService == null)
+        {
+            return;
         }
-        // Done
+        RetryingTransactionCallback<Void> clearCheckpointWork = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Exception
+            {
+                attributeService.removeAttribute(KEY_CHECKPOINT_ROOT, KEY_CHECKPOINT_NEXT_ORPHAN_ID);
+                return null;
+            };
+        };
+        transactionService.getRetryingTransactionHelper().doInTransaction(clearCheckpointWork);
     }
     
     private class LockCallback implements JobLockRefreshCallback
@@ -377,10 +499,12 @@ public class ContentStoreCleaner
     /**
      * 
      * @param maxTimeExclusive      the max orphan time (exclusive)
+     * @param minIdInclusive        the lowest orphan ID to process
      * @param batchSize             the maximum number of orphans to process
+     * @param deleteExecutor        the threads to delete the binaries or <tt>null</tt> to use the current thread
      * @return                      Returns the last processed orphan ID or <tt>null</tt> if nothing was processed
      */
-    private Long cleanBatch(final long maxTimeExclusive, final int batchSize)
+    private Long cleanBatch(final long maxTimeExclusive, final long minIdInclusive, final int batchSize, ExecutorService deleteExecutor)
     {
         // Get a bunch of cleanable URLs
         final TreeMap<Long, String> urlsById = new TreeMap<Long, String>();
@@ -393,7 +517,7 @@ public class ContentStoreCleaner
             }
         };
         // Get a bunch of cleanable URLs
-        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, batchSize);
+        contentDataDAO.getContentUrlsOrphaned(contentUrlHandler, maxTimeExclusive, minIdInclusive, batchSize);
         
         // Shortcut, if necessary
         if (urlsById.size() == 0)
@@ -408,27 +532,86 @@ public class ContentStoreCleaner
         // No problems, so far (ALF-1998: contentStoreCleanerJob leads to foreign key exception)
 
         // Now attempt to physically delete the URLs
-        for (Long id : ids)
+        List<String> failedContentUrls = deleteFromStores(urlsById.values(), deleteExecutor);
+        for (String contentUrl : failedContentUrls)
         {
-            String contentUrl = urlsById.get(id);
             // Handle failures
-            boolean deleted = eagerContentStoreCleaner.deleteFromStores(contentUrl);
-            if (!deleted)
+            switch (deletionFailureAction)
             {
-                switch (deletionFailureAction)
-                {
-                    case KEEP_URL:
-                        // Keep the URL, but with an orphan time of 0 so that it is recorded
-                        contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
-                    case IGNORE:
-                        break;
-                    default:
-                        throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
-                }
+                case KEEP_URL:
+                    // Keep the URL, but with an orphan time of 0 so that it is recorded
+                    contentDataDAO.createContentUrlOrphaned(contentUrl, new Date(0L));
+                case IGNORE:
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown deletion failure action: " + deletionFailureAction);
             }
         }
         
+        // Record progress with the deletes
+        if (attributeService != null)
+        {
+            attributeService.setAttribute(Long.valueOf(lastId + 1L), KEY_CHECKPOINT_ROOT, KEY_CHECKPOINT_NEXT_ORPHAN_ID);
+        }
+        
         // Done
         return lastId;
     }
+    
+    /**
+     * Physically delete the URLs, in parallel if there are delete threads
+     * 
+     * @return                      the URLs that could not be deleted from all stores
+     */
+    private List<String> deleteFromStores(Collection<String> contentUrls, ExecutorService deleteExecutor)
+    {
+        List<String> failedContentUrls = new ArrayList<String>(0);
+        if (deleteExecutor == null)
+        {
+            for (String contentUrl : contentUrls)
+            {
+                if (!eagerContentStoreCleaner.deleteFromStores(contentUrl))
+                {
+                    failedContentUrls.add(contentUrl);
+                }
+            }
+            return failedContentUrls;
+        }
+        
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(contentUrls.size());
+        for (final String contentUrl : contentUrls)
+        {
+            results.add(deleteExecutor.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    return eagerContentStoreCleaner.deleteFromStores(contentUrl);
+                }
+            }));
+        }
+        int i = 0;
+        for (String contentUrl : contentUrls)
+        {
+            Future<Boolean> result = results.get(i++);
+            try
+            {
+                if (!result.get())
+                {
+                    failedContentUrls.add(contentUrl);
+                }
+            }
+            catch (ExecutionException e)
+            {
+                logger.error("Content deletion failed: \n" + "   URL:    " + contentUrl, e.getCause());
+                failedContentUrls.add(contentUrl);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new AlfrescoRuntimeException("Interrupted while deleting orphaned content", e);
+            }
+        }
+        return failedContentUrls;
+    }
 }
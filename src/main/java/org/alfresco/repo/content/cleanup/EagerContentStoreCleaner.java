@@ -28,6 +28,9 @@ package org.alfresco.repo.content.cleanup;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
 
 import org.alfresco.repo.content.ContentStore;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -87,6 +90,8 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
     private boolean eagerOrphanCleanup;
     private List<ContentStore> stores;
     private List<ContentStoreCleanerListener> listeners;
+    private int maxConcurrentDeletesPerStore;
+    private final ConcurrentMap<ContentStore, Semaphore> storeDeletePermits = new ConcurrentHashMap<ContentStore, Semaphore>();
     
     public EagerContentStoreCleaner()
     {
@@ -118,6 +123,19 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
         this.listeners = listeners;
     }
 
+    /**
+     * Limit the number of threads deleting from any one store at the same time.  This is only of
+     * use when URLs are deleted by several threads e.g. by a multi-threaded {@link ContentStoreCleaner}.
+     * 
+     * @param maxConcurrentDeletesPerStore  the maximum number of concurrent deletes per store
+     *                                      or <tt>0</tt> (default) for no limit
+     * @since 7.0
+     */
+    public void setMaxConcurrentDeletesPerStore(int maxConcurrentDeletesPerStore)
+    {
+        this.maxConcurrentDeletesPerStore = maxConcurrentDeletesPerStore;
+    }
+
     /**
      * Initializes the cleaner based on the {@link #setEagerOrphanCleanup(boolean) eagerCleanup} flag.
      */
@@ -305,7 +323,7 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
                 }
             }
             // Delete
-            if (deleteFromStore(contentUrl, store))
+            if (deleteFromStoreWithPermit(contentUrl, store))
             {
                 deleted++;
             }
@@ -314,6 +332,48 @@ public class EagerContentStoreCleaner extends TransactionListenerAdapter
         return deleted == stores.size();
     }
     
+    /**
+     * Attempts to delete the URL from the store once a delete permit for the store is available.
+     */
+    private boolean deleteFromStoreWithPermit(String contentUrl, ContentStore store)
+    {
+        if (maxConcurrentDeletesPerStore <= 0)
+        {
+            return deleteFromStore(contentUrl, store);
+        }
+        Semaphore permits = storeDeletePermits.get(store);
+        if (permits == null)
+        {
+            Semaphore newPermits = new Semaphore(maxConcurrentDeletesPerStore);
+            permits = storeDeletePermits.putIfAbsent(store, newPermits);
+            if (permits == null)
+            {
+                permits = newPermits;
+            }
+        }
+        try
+        {
+            permits.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            logger.error(
+                    "Content deletion interrupted: \n" +
+                    "   URL:    " + contentUrl + "\n" +
+                    "   Source: " + store);
+            return false;
+        }
+        try
+        {
+            return deleteFromStore(contentUrl, store);
+        }
+        finally
+        {
+            permits.release();
+        }
+    }
+    
     /**
      * Attempts to delete the URL from the store, catching and reporing errors.
      */
@@ -68,6 +68,15 @@ public class ActivityFeedDAOImpl extends ActivitiesDAOImpl implements ActivityFe
         return (id != null ? id : -1);
     }
     
+    public int insertFeedEntries(List<ActivityFeedEntity> activityFeeds) throws SQLException
+    {
+        if (activityFeeds.isEmpty())
+        {
+            return 0;
+        }
+        return template.insert("alfresco.activities.insert.insert_activity_feeds", activityFeeds);
+    }
+    
     @Override
     public int deleteFeedEntries(Integer maxIdRange) throws SQLException
     {
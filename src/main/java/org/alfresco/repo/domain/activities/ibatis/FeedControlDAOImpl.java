@@ -26,6 +26,8 @@
 package org.alfresco.repo.domain.activities.ibatis;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.alfresco.repo.domain.activities.FeedControlDAO;
@@ -33,6 +35,9 @@ import org.alfresco.repo.domain.activities.FeedControlEntity;
 
 public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControlDAO
 {
+    /** Keeps the IN clause of the bulk select within the limits of all supported databases */
+    private static final int MAX_USERS_PER_SELECT = 500;
+    
     public long insertFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         template.insert("alfresco.activities.insert.insert_activity_feedcontrol", activityFeedControl);
@@ -53,6 +58,19 @@ public class FeedControlDAOImpl extends ActivitiesDAOImpl implements FeedControl
         return template.selectList("alfresco.activities.select_activity_feedcontrols_for_user", params);
     }
     
+    public List<FeedControlEntity> selectFeedControls(Collection<String> feedUserIds) throws SQLException
+    {
+        List<String> userIds = new ArrayList<String>(feedUserIds);
+        List<FeedControlEntity> feedControls = new ArrayList<FeedControlEntity>();
+        for (int i = 0; i < userIds.size(); i += MAX_USERS_PER_SELECT)
+        {
+            List<String> params = userIds.subList(i, Math.min(i + MAX_USERS_PER_SELECT, userIds.size()));
+            List<FeedControlEntity> selected = template.selectList("alfresco.activities.select_activity_feedcontrols_for_users", params);
+            feedControls.addAll(selected);
+        }
+        return feedControls;
+    }
+    
     public long selectFeedControl(FeedControlEntity activityFeedControl) throws SQLException
     {
         Long id = template.selectOne("alfresco.activities.select_activity_feedcontrol", activityFeedControl);
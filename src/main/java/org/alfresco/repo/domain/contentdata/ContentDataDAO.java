@@ -122,6 +122,23 @@ public interface ContentDataDAO
             Long maxOrphanTimeExclusive,
             int maxResults);
     
+    /**
+     * Enumerate, in ID order, the available content URLs that were orphaned on or before the given time,
+     * starting at the given content URL ID
+     * 
+     * @param contentUrlHandler         the callback object to process the rows
+     * @param maxOrphanTimeExclusive    the maximum orphan time (exclusive)
+     * @param minIdInclusive            the lowest content URL ID to return or <tt>null</tt> to start at the beginning
+     * @param maxResults                the maximum number of results (1 or greater)
+     * 
+     * @since 7.0
+     */
+    void getContentUrlsOrphaned(
+            ContentUrlHandler contentUrlHandler,
+            Long maxOrphanTimeExclusive,
+            Long minIdInclusive,
+            int maxResults);
+    
     /**
      * Enumerate all available content URLs that were orphaned and cleanup for these urls failed
      * 
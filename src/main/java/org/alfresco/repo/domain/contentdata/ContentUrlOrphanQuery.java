@@ -34,6 +34,7 @@ package org.alfresco.repo.domain.contentdata;
 public class ContentUrlOrphanQuery
 {
     private Long maxOrphanTimeExclusive;
+    private Long minIdInclusive;
     
     @Override
     public String toString()
@@ -41,6 +42,7 @@ public class ContentUrlOrphanQuery
         StringBuilder sb = new StringBuilder(512);
         sb.append("ContentUrlOrphanQuery")
           .append("[ maxOrphanTimeExclusive=").append(maxOrphanTimeExclusive)
+          .append(", minIdInclusive=").append(minIdInclusive)
           .append("]");
         return sb.toString();
     }
@@ -54,4 +56,14 @@ public class ContentUrlOrphanQuery
     {
         this.maxOrphanTimeExclusive = maxOrphanTimeExclusive;
     }
+
+    public Long getMinIdInclusive()
+    {
+        return minIdInclusive;
+    }
+
+    public void setMinIdInclusive(Long minIdInclusive)
+    {
+        this.minIdInclusive = minIdInclusive;
+    }
 }
\ No newline at end of file
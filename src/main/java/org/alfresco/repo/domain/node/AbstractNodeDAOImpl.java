@@ -40,11 +40,13 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.Stack;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.ibatis.BatchingDAO;
@@ -67,6 +69,7 @@ import org.alfresco.repo.policy.BehaviourFilter;
 import org.alfresco.repo.security.permissions.AccessControlListProperties;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionAwareSingleton;
 import org.alfresco.repo.transaction.TransactionalDao;
@@ -97,6 +100,7 @@ import org.alfresco.util.GUID;
 import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.ReadWriteLockExecuter;
+import org.alfresco.util.TraceableThreadFactory;
 import org.alfresco.util.ValueProtectingMap;
 import org.alfresco.util.transaction.TransactionListenerAdapter;
 import org.apache.commons.logging.Log;
@@ -123,6 +127,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     
     private static final String KEY_LOST_NODE_PAIRS = AbstractNodeDAOImpl.class.getName() + ".lostNodePairs";
     private static final String KEY_DELETED_ASSOCS = AbstractNodeDAOImpl.class.getName() + ".deletedAssocs";
+    private static final String KEY_READ_AHEAD_SIBLINGS = AbstractNodeDAOImpl.class.getName() + ".readAheadSiblings";
     
     protected Log logger = LogFactory.getLog(getClass());
     private Log loggerPaths = LogFactory.getLog(getClass().getName() + ".paths");
@@ -144,6 +149,13 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private UsageDAO usageDAO;
 
     private int cachingThreshold = 10;
+    private boolean readAheadEnabled = false;
+    private int readAheadWindowSize = 100;
+    private int readAheadMaxRegistered = 1000;
+    private final NodeReadAheadStatistics readAheadStatistics = new NodeReadAheadStatistics();
+    private boolean ancestorIndexEnabled = false;
+    private int ancestorIndexBatchSize = 1000;
+    private ExecutorService ancestorIndexExecutor;
 
     /**
      * Cache for the Store root nodes by StoreRef:<br/>
@@ -194,6 +206,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private ParentAssocsCache parentAssocsCache;
     private int parentAssocsCacheSize;
     private int parentAssocsCacheLimitFactor = 8;
+    private boolean parentAssocsCacheSegmented = false;
+    private int parentAssocsCacheSegments = 16;
         
     /**
      * Cache for fast lookups of child nodes by <b>cm:name</b>. 
@@ -237,6 +251,58 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
 		this.cachingThreshold = cachingThreshold;
 	}
 
+    /**
+     * @param readAheadEnabled      <tt>true</tt> to pre-load registered siblings on the first cache miss
+     *                              (see {@link #registerSiblings(List)})
+     */
+    public void setReadAheadEnabled(boolean readAheadEnabled)
+    {
+        this.readAheadEnabled = readAheadEnabled;
+    }
+
+    /**
+     * @param readAheadWindowSize   the maximum number of siblings loaded by a single read-ahead batch
+     */
+    public void setReadAheadWindowSize(int readAheadWindowSize)
+    {
+        this.readAheadWindowSize = readAheadWindowSize;
+    }
+
+    /**
+     * @param readAheadMaxRegistered    the maximum number of siblings waiting to be visited in a transaction;
+     *                                  further siblings are not registered
+     */
+    public void setReadAheadMaxRegistered(int readAheadMaxRegistered)
+    {
+        this.readAheadMaxRegistered = readAheadMaxRegistered;
+    }
+
+    /**
+     * @return                      the read-ahead hit and miss counters
+     */
+    public NodeReadAheadStatistics getReadAheadStatistics()
+    {
+        return readAheadStatistics;
+    }
+
+    /**
+     * @param ancestorIndexEnabled  <tt>true</tt> to maintain the persisted index of each node's primary ancestors
+     *                              and to resolve primary paths from it (see {@link #buildAncestorIndex()})
+     */
+    public void setAncestorIndexEnabled(boolean ancestorIndexEnabled)
+    {
+        this.ancestorIndexEnabled = ancestorIndexEnabled;
+    }
+
+    /**
+     * @param ancestorIndexBatchSize    the number of nodes re-indexed per transaction when a subtree is moved, which is
+     *                                  also the largest subtree that is re-indexed within the move itself
+     */
+    public void setAncestorIndexBatchSize(int ancestorIndexBatchSize)
+    {
+        this.ancestorIndexBatchSize = ancestorIndexBatchSize;
+    }
+
     /**
      * @param policyBehaviourFilter     the service to determine the behaviour for <b>cm:auditable</b> and
      *                                  other inherent capabilities.
@@ -392,6 +458,29 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         this.parentAssocsCacheLimitFactor = parentAssocsCacheLimitFactor;
     }
 
+    /**
+     * Sets whether the parent assocs cache keeps its entries in primitive arrays split into independently locked
+     * segments, rather than in linked hash maps behind a single lock. The segmented cache uses a fraction of the
+     * memory per entry and evicts entries that are still being read last.
+     * 
+     * @param parentAssocsCacheSegmented   <tt>true</tt> to use the segmented cache
+     */
+    public void setParentAssocsCacheSegmented(boolean parentAssocsCacheSegmented)
+    {
+        this.parentAssocsCacheSegmented = parentAssocsCacheSegmented;
+    }
+
+    /**
+     * Sets the number of independently locked segments of the segmented parent assocs cache. The capacity and the
+     * parent limit are divided evenly between the segments.
+     * 
+     * @param parentAssocsCacheSegments    the number of segments, rounded up to a power of two
+     */
+    public void setParentAssocsCacheSegments(int parentAssocsCacheSegments)
+    {
+        this.parentAssocsCacheSegments = parentAssocsCacheSegments;
+    }
+
     /**
      * Set the cache that maintains lookups by child <b>cm:name</b>
      * 
@@ -418,7 +507,42 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         PropertyCheck.mandatory(this, "usageDAO", usageDAO);
 
         this.nodePropertyHelper = new NodePropertyHelper(dictionaryService, qnameDAO, localeDAO, contentDataDAO);
-        this.parentAssocsCache = new ParentAssocsCache(this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor);
+        if (parentAssocsCacheSegmented)
+        {
+            this.parentAssocsCache = new SegmentedParentAssocsCache(
+                    this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor, this.parentAssocsCacheSegments);
+        }
+        else
+        {
+            this.parentAssocsCache = new LinkedParentAssocsCache(this.parentAssocsCacheSize, this.parentAssocsCacheLimitFactor);
+        }
+    }
+    
+    /**
+     * Stops the thread that re-indexes moved subtrees, if it was ever started
+     */
+    public synchronized void destroy()
+    {
+        if (ancestorIndexExecutor != null)
+        {
+            ancestorIndexExecutor.shutdown();
+            ancestorIndexExecutor = null;
+        }
+    }
+    
+    /**
+     * @return          the executor for re-indexing moved subtrees, which is only created once a large subtree is moved
+     */
+    private synchronized ExecutorService getAncestorIndexExecutor()
+    {
+        if (ancestorIndexExecutor == null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setNamePrefix("NodeAncestorIndex");
+            threadFactory.setThreadDaemon(true);
+            ancestorIndexExecutor = Executors.newSingleThreadExecutor(threadFactory);
+        }
+        return ancestorIndexExecutor;
     }
     
     /*
@@ -747,6 +871,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         NodeEntity rootNode = newNodeImpl(store, null, nodeTypeQNameId, null, aclId, null, true);
         Long rootNodeId = rootNode.getId();
         addNodeAspects(rootNodeId, Collections.singleton(ContentModel.ASPECT_ROOT));
+        if (ancestorIndexEnabled)
+        {
+            insertNodeAncestorSelf(rootNodeId);
+        }
 
         // Now update the store with the root node ID
         store.setRootNode(rootNode);
@@ -896,6 +1024,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     
     public boolean exists(NodeRef nodeRef)
     {
+        readAhead(nodeRef);
         NodeEntity node = new NodeEntity(nodeRef);
         Pair<Long, Node> pair = nodesCache.getByValue(node);
         return pair != null && !pair.getSecond().getDeleted(qnameDAO);
@@ -919,6 +1048,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     @Override
     public Status getNodeRefStatus(NodeRef nodeRef)
     {
+        readAhead(nodeRef);
         Node node = new NodeEntity(nodeRef);
         Pair<Long, Node> nodePair = nodesCache.getByValue(node);
         // The nodesCache gets both live and deleted nodes.
@@ -950,6 +1080,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     @Override
     public Pair<Long, NodeRef> getNodePair(NodeRef nodeRef)
     {
+        readAhead(nodeRef);
         NodeEntity node = new NodeEntity(nodeRef);
         Pair<Long, Node> pair = nodesCache.getByValue(node);
         // Check it
@@ -1234,6 +1365,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
         ChildAssocEntity assoc = newChildAssocImpl(
                 parentNodeId, nodeId, true, assocTypeQName, assocQName, childNodeName, false);
+        indexNewNodeAncestors(nodeId, parentNodeId);
         
         // There will be no other parent assocs
         boolean isRoot = false;
@@ -1471,6 +1603,20 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                     assocTypeQName,
                     assocQName);
         
+        // Bring the ancestor index in line with the new primary parent
+        if (newChildNodeId.equals(childNodeId))
+        {
+            if (!EqualsHelper.nullSafeEquals(newParentNodeId, oldParentNodeId))
+            {
+                indexMovedNodeAncestors(newChildNodeId, newParentNodeId);
+            }
+        }
+        else
+        {
+            // The original node, and with it the subtree, was removed from the index
+            indexNewNodeAncestors(newChildNodeId, newParentNodeId);
+        }
+        
         // Optimize for rename case
         if (!EqualsHelper.nullSafeEquals(newParentNodeId, oldParentNodeId))
         {
@@ -1979,6 +2125,13 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         
         // Remove subscriptions
         deleteSubscriptions(nodeId);
+        
+        // Remove the node, and anything still indexed below it, from the ancestor index
+        if (ancestorIndexEnabled)
+        {
+            deleteNodeAncestorsOfSubtree(nodeId);
+            deleteNodeAncestors(Collections.singletonList(nodeId), null);
+        }
 
         // Delete the row completely:
         //      ALF-12358: Concurrency: Possible to create association references to deleted nodes
@@ -3411,7 +3564,7 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             this.callback = callback;
             this.preload = callback.preLoadNodes();
-            if (preload)
+            if (preload || readAheadEnabled)
             {
                 nodeRefs = new LinkedList<NodeRef>();           // No memory required
             }
@@ -3443,18 +3596,32 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
                 Pair<Long, NodeRef> parentNodePair,
                 Pair<Long, NodeRef> childNodePair)
         {
-            if (preload)
+            if (nodeRefs != null)
             {
                 nodeRefs.add(childNodePair.getSecond());
+                if (!preload && nodeRefs.size() >= readAheadWindowSize)
+                {
+                    // Register a window at a time rather than holding on to every child
+                    registerSiblings(nodeRefs);
+                    nodeRefs.clear();
+                }
             }
             return callback.handle(childAssocPair, parentNodePair, childNodePair);
         }
         public void done()
         {
             // Finish the batch
-            if (preload && nodeRefs.size() > 0)
+            if (nodeRefs != null && nodeRefs.size() > 0)
             {
-                cacheNodes(nodeRefs);
+                if (preload)
+                {
+                    cacheNodes(nodeRefs);
+                }
+                else
+                {
+                    // The children are not loaded now but are likely to be visited together
+                    registerSiblings(nodeRefs);
+                }
                 nodeRefs.clear();
             }
             // Done
@@ -3527,48 +3694,172 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     public Pair<Long, ChildAssociationRef> getChildAssoc(Long parentNodeId, QName assocTypeQName, String childName)
     {
         ChildByNameKey key = new ChildByNameKey(parentNodeId, assocTypeQName, childName);
-        ChildAssocEntity assoc = childByNameCache.get(key);
-        boolean query = false;
+        ChildAssocEntity assoc = getChildByNameCached(key);
         if (assoc == null)
         {
-            query = true;
+            assoc = selectChildAssoc(parentNodeId, assocTypeQName, childName);
+            if (assoc != null)
+            {
+                childByNameCache.put(key, assoc);
+            }
+            else
+            {
+                // We do not cache misses.  See javadoc.
+            }
         }
-        else
+        // Now return, checking the assoc's ID for null
+        return assoc == null ? null : assoc.getPair(qnameDAO);
+    }
+
+    /**
+     * Checks the cache and then queries for any names not found.  Misses are not cached.
+     * 
+     * @see #getChildAssoc(Long, QName, String)
+     */
+    @Override
+    public Map<String, Pair<Long, ChildAssociationRef>> getChildAssocsByNames(
+            Long parentNodeId,
+            QName assocTypeQName,
+            Collection<String> childNames)
+    {
+        Map<String, Pair<Long, ChildAssociationRef>> results = new HashMap<String, Pair<Long, ChildAssociationRef>>(childNames.size() * 2);
+        // Names to query for, keyed by the shortened name and CRC as stored against the association
+        Map<Pair<String, Long>, List<String>> childNamesToQuery = new HashMap<Pair<String, Long>, List<String>>(childNames.size() * 2);
+        for (String childName : childNames)
         {
-            // Check that the resultant child node has not moved on
-            Node childNode = assoc.getChildNode();
-            Long childNodeId = childNode.getId();
-            NodeVersionKey childNodeVersionKey = childNode.getNodeVersionKey();
-            Pair<Long, Node> childNodeFromCache = nodesCache.getByKey(childNodeId);
-            if (childNodeFromCache == null)
+            if (results.containsKey(childName))
             {
-                // Child node no longer exists (or never did)
-                query = true;
+                continue;
             }
-            else
+            ChildAssocEntity assoc = getChildByNameCached(new ChildByNameKey(parentNodeId, assocTypeQName, childName));
+            if (assoc != null)
+            {
+                results.put(childName, assoc.getPair(qnameDAO));
+                continue;
+            }
+            String childNameLower = childName.toLowerCase();
+            Pair<String, Long> nameKey = new Pair<String, Long>(
+                    ChildAssocEntity.getChildNodeNameShort(childNameLower),
+                    ChildAssocEntity.getChildNodeNameCrc(childNameLower));
+            List<String> names = childNamesToQuery.get(nameKey);
+            if (names == null)
             {
-                NodeVersionKey childNodeFromCacheVersionKey = childNodeFromCache.getSecond().getNodeVersionKey();
-                if (!childNodeFromCacheVersionKey.equals(childNodeVersionKey))
+                names = new ArrayList<String>(1);
+                childNamesToQuery.put(nameKey, names);
+            }
+            names.add(childName);
+        }
+        if (childNamesToQuery.isEmpty())
+        {
+            return results;
+        }
+        // Query the misses in batches
+        List<String> queryNames = new ArrayList<String>(childNamesToQuery.size());
+        for (List<String> names : childNamesToQuery.values())
+        {
+            queryNames.add(names.get(0));
+        }
+        for (int i = 0; i < queryNames.size(); i += 1000)
+        {
+            List<String> batch = queryNames.subList(i, Math.min(i + 1000, queryNames.size()));
+            for (ChildAssocEntity assoc : selectChildAssocsByNames(parentNodeId, assocTypeQName, batch))
+            {
+                List<String> names = childNamesToQuery.get(
+                        new Pair<String, Long>(assoc.getChildNodeName(), assoc.getChildNodeNameCrc()));
+                if (names == null)
+                {
+                    continue;
+                }
+                Pair<Long, ChildAssociationRef> assocPair = assoc.getPair(qnameDAO);
+                for (String childName : names)
                 {
-                    // The child node has moved on.  We don't know why, but must query again.
-                    query = true;
+                    childByNameCache.put(new ChildByNameKey(parentNodeId, assocTypeQName, childName), assoc);
+                    results.put(childName, assocPair);
                 }
             }
         }
-        if (query)
+        return results;
+    }
+
+    /**
+     * Uses the cache for as much of the path as it can and resolves the rest with a single query.
+     * 
+     * @see #getChildAssoc(Long, QName, String)
+     */
+    @Override
+    public List<Pair<Long, ChildAssociationRef>> getChildAssocsByNamePath(
+            Long parentNodeId,
+            QName assocTypeQName,
+            List<String> childNames)
+    {
+        List<Pair<Long, ChildAssociationRef>> results = new ArrayList<Pair<Long, ChildAssociationRef>>(childNames.size());
+        Long currentParentNodeId = parentNodeId;
+        int depth = 0;
+        for (; depth < childNames.size(); depth++)
         {
-            assoc = selectChildAssoc(parentNodeId, assocTypeQName, childName);
-            if (assoc != null)
+            ChildAssocEntity assoc = getChildByNameCached(
+                    new ChildByNameKey(currentParentNodeId, assocTypeQName, childNames.get(depth)));
+            if (assoc == null)
             {
-                childByNameCache.put(key, assoc);
+                break;
             }
-            else
+            results.add(assoc.getPair(qnameDAO));
+            currentParentNodeId = assoc.getChildNode().getId();
+        }
+        if (depth == childNames.size())
+        {
+            return results;
+        }
+        // The query returns the matches for each depth in order; follow the chain from the last parent found
+        List<ChildAssocEntity> assocs = selectChildAssocsByNamePath(
+                currentParentNodeId,
+                assocTypeQName,
+                childNames.subList(depth, childNames.size()));
+        for (ChildAssocEntity assoc : assocs)
+        {
+            if (depth == childNames.size())
             {
-                // We do not cache misses.  See javadoc.
+                break;
+            }
+            if (!currentParentNodeId.equals(assoc.getParentNode().getId()))
+            {
+                continue;
             }
+            childByNameCache.put(new ChildByNameKey(currentParentNodeId, assocTypeQName, childNames.get(depth)), assoc);
+            results.add(assoc.getPair(qnameDAO));
+            currentParentNodeId = assoc.getChildNode().getId();
+            depth++;
         }
-        // Now return, checking the assoc's ID for null
-        return assoc == null ? null : assoc.getPair(qnameDAO);
+        return results;
+    }
+
+    /**
+     * @return          the cached association, provided that the child node has not changed since it was cached
+     */
+    private ChildAssocEntity getChildByNameCached(ChildByNameKey key)
+    {
+        ChildAssocEntity assoc = childByNameCache.get(key);
+        if (assoc == null)
+        {
+            return null;
+        }
+        // Check that the resultant child node has not moved on
+        Node childNode = assoc.getChildNode();
+        Long childNodeId = childNode.getId();
+        NodeVersionKey childNodeVersionKey = childNode.getNodeVersionKey();
+        Pair<Long, Node> childNodeFromCache = nodesCache.getByKey(childNodeId);
+        if (childNodeFromCache == null)
+        {
+            // Child node no longer exists (or never did)
+            return null;
+        }
+        NodeVersionKey childNodeFromCacheVersionKey = childNodeFromCache.getSecond().getNodeVersionKey();
+        if (!childNodeFromCacheVersionKey.equals(childNodeVersionKey))
+        {
+            // The child node has moved on.  We don't know why, but must query again.
+            return null;
+        }
+        return assoc;
     }
 
     @Override
@@ -3795,8 +4086,11 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         // create storage for touched associations
         Stack<Long> assocIdStack = new Stack<Long>();
         
-        // call recursive method to sort it out
-        prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+        // use the ancestor index for the primary path, or call recursive method to sort it out
+        if (!(primaryOnly && prependIndexedPrimaryPath(nodePair, paths)))
+        {
+            prependPaths(nodePair, null, currentPath, paths, assocIdStack, primaryOnly);
+        }
         
         // check that for the primary only case we have exactly one path
         if (primaryOnly && paths.size() != 1)
@@ -3826,6 +4120,67 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         return paths;
     }
     
+    @Override
+    public int buildAncestorIndex()
+    {
+        if (!ancestorIndexEnabled || !transactionService.getAllowWrite())
+        {
+            return 0;
+        }
+        final RetryingTransactionHelper txnHelper = transactionService.getRetryingTransactionHelper();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Integer>()
+        {
+            public Integer execute() throws Throwable
+            {
+                return insertNodeAncestorStoreRoots();
+            }
+        }, false, true);
+        // Walk down the primary hierarchy a level at a time, indexing the children of the previous level's nodes.
+        // Each level is looked up by its parents' ids, so the node table is never scanned as a whole.
+        List<Long> parentNodeIds = txnHelper.doInTransaction(new RetryingTransactionCallback<List<Long>>()
+        {
+            public List<Long> execute() throws Throwable
+            {
+                return selectNodeAncestorStoreRootIds();
+            }
+        }, true, true);
+        int total = 0;
+        int depth = 0;
+        while (!parentNodeIds.isEmpty())
+        {
+            List<Long> childNodeIds = new ArrayList<Long>(parentNodeIds.size());
+            int indexed = 0;
+            for (int i = 0; i < parentNodeIds.size(); i += ancestorIndexBatchSize)
+            {
+                final List<Long> batchParentNodeIds = parentNodeIds.subList(i, Math.min(i + ancestorIndexBatchSize, parentNodeIds.size()));
+                indexed += txnHelper.doInTransaction(new RetryingTransactionCallback<Integer>()
+                {
+                    public Integer execute() throws Throwable
+                    {
+                        insertNodeAncestorsOfChildren(batchParentNodeIds);
+                        return insertNodeAncestorSelves(batchParentNodeIds);
+                    }
+                }, false, true);
+                // Already indexed children are descended into too, as nodes below them may not be
+                childNodeIds.addAll(txnHelper.doInTransaction(new RetryingTransactionCallback<List<Long>>()
+                {
+                    public List<Long> execute() throws Throwable
+                    {
+                        return selectNodeAncestorPrimaryChildIds(batchParentNodeIds);
+                    }
+                }, true, true));
+            }
+            total += indexed;
+            depth++;
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Ancestor index added " + indexed + " of " + childNodeIds.size() + " nodes at depth " + depth);
+            }
+            parentNodeIds = childNodeIds;
+        }
+        return total;
+    }
+    
     private void bindFixAssocAndCollectLostAndFound(final Pair<Long, NodeRef> lostNodePair, final String lostName, final Long assocId, final boolean orphanChild)
     {
         // Remember the items already deleted in inner transactions
@@ -4146,156 +4501,159 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     }
 
     /**
-     * A Map-like class for storing ParentAssocsInfos. It prunes its oldest ParentAssocsInfo entries not only when a
-     * capacity is reached, but also when a total number of cached parents is reached, as this is what dictates the
-     * overall memory usage.
+     * Build the primary path for a node from the ancestor index.  The primary associations found via the index
+     * are read live and must form an unbroken chain up from the node, otherwise the index is ignored.
+     * 
+     * @param nodePair              the node to start with
+     * @param completedPaths        completed paths i.e. the result
+     * @return                      <tt>true</tt> if the path was built, or <tt>false</tt> if the parent
+     *                              associations must be walked instead
      */
-    private static class ParentAssocsCache
-    {
-        private final ReadWriteLock lock = new ReentrantReadWriteLock();
-        private final int size;
-        private final int maxParentCount;
-        private final Map<Pair <Long, String>, ParentAssocsInfo> cache;
-        private final Map<Pair <Long, String>, Pair <Long, String>> nextKeys;
-        private final Map<Pair <Long, String>, Pair <Long, String>> previousKeys;
-        private Pair <Long, String> firstKey;
-        private Pair <Long, String> lastKey;
-        private int parentCount;
-        
-        /**
-         * @param size int
-         * @param limitFactor int
-         */
-        public ParentAssocsCache(int size, int limitFactor)
+    /* package */ boolean prependIndexedPrimaryPath(Pair<Long, NodeRef> nodePair, Collection<Path> completedPaths)
+    {
+        if (!ancestorIndexEnabled)
         {
-            this.size = size;
-            this.maxParentCount = size * limitFactor;
-            final int mapSize = size * 2;
-            this.cache = new HashMap<Pair <Long, String>, ParentAssocsInfo>(mapSize);
-            this.nextKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
-            this.previousKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
+            return false;
         }
-
-        private ParentAssocsInfo get(Pair <Long, String> cacheKey)
+        List<ChildAssocEntity> assocs = selectNodeAncestorPrimaryAssocs(nodePair.getFirst());
+        if (assocs.isEmpty())
         {
-            lock.readLock().lock();
-            try
-            {
-                return cache.get(cacheKey);
-            }
-            finally
-            {
-                lock.readLock().unlock();
-            }
+            // Not indexed or a root node
+            return false;
         }
-        
-        private void put(Pair <Long, String> cacheKey, ParentAssocsInfo parentAssocs)
+        Path currentPath = new Path();
+        Long expectedChildNodeId = nodePair.getFirst();
+        Stack<Long> assocIdStack = new Stack<Long>();
+        for (ChildAssocEntity assoc : assocs)
         {
-            lock.writeLock().lock();
-            try
+            if (!expectedChildNodeId.equals(assoc.getChildNode().getId()) || assocIdStack.contains(assoc.getId()))
             {
-                // If an entry already exists, remove it and do the necessary housekeeping
-                if (cache.containsKey(cacheKey))
-                {
-                    remove(cacheKey);
-                }
-
-                // Add the value and prepend the key
-                cache.put(cacheKey, parentAssocs);
-                if (firstKey == null)
-                {
-                    lastKey = cacheKey;
-                }
-                else
-                {
-                    nextKeys.put(cacheKey, firstKey);
-                    previousKeys.put(firstKey, cacheKey);
-                }
-                firstKey = cacheKey;
-                parentCount += parentAssocs.getParentAssocs().size();
-                
-                // Now prune the oldest entries whilst we have more cache entries or cached parents than desired
-                int currentSize = cache.size();
-                while (currentSize > size || parentCount > maxParentCount)
+                // The index is out of date for this node
+                if (isDebugEnabled)
                 {
-                    remove(lastKey);
-                    currentSize--;
+                    logger.debug("Ancestor index is out of date for node " + nodePair + " at assoc " + assoc);
                 }
+                return false;
             }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            ChildAssociationRef assocRef = assoc.getRef(qnameDAO);
+            assocRef.setNthSibling(-1);
+            currentPath.prepend(new Path.ChildAssocElement(assocRef));
+            assocIdStack.push(assoc.getId());
+            expectedChildNodeId = assoc.getParentNode().getId();
         }
+        // Finish off from the topmost ancestor, which is normally the store root
+        Pair<Long, NodeRef> topNodePair = getNodeNotNull(expectedChildNodeId, false).getNodePair();
+        prependPaths(topNodePair, null, currentPath, completedPaths, assocIdStack, true);
+        return true;
+    }
 
-        private ParentAssocsInfo remove(Pair <Long, String> cacheKey)
+    /**
+     * Add a new node to the ancestor index, provided that its primary parent is already indexed.
+     */
+    private void indexNewNodeAncestors(Long nodeId, Long parentNodeId)
+    {
+        if (!ancestorIndexEnabled)
         {
-            lock.writeLock().lock();
-            try
-            {
-                // Remove from the map
-                ParentAssocsInfo oldParentAssocs = cache.remove(cacheKey);
-
-                // If the object didn't exist, we are done
-                if (oldParentAssocs == null)
-                {
-                    return null;
-                }
+            return;
+        }
+        if (insertNodeAncestors(nodeId, parentNodeId) > 0)
+        {
+            insertNodeAncestorSelf(nodeId);
+        }
+    }
 
-                // Re-link the list
-                Pair <Long, String> previousCacheKey = previousKeys.remove(cacheKey);
-                Pair <Long, String> nextCacheKey = nextKeys.remove(cacheKey);
-                if (nextCacheKey == null)
-                {
-                    if (previousCacheKey == null)
-                    {
-                        firstKey = lastKey = null;
-                    }
-                    else
-                    {
-                        lastKey = previousCacheKey;
-                        nextKeys.remove(previousCacheKey);
-                    }
-                }
-                else
+    /**
+     * Bring the ancestor index in line after a node has been given a new primary parent in the same store.
+     * The index rows of the node and everything indexed below it are rewritten in batches; the first batch is
+     * done in the current transaction and any further batches are done in new transactions after commit.
+     * Until then the primary paths of the remaining nodes are found by walking the parent associations.
+     * <p/>
+     * Each batch replaces whatever rows lie above the moved node with its ancestors at the time, so a batch
+     * that runs after a later move of the same node, or of one of its new ancestors, still leaves the rows correct.
+     */
+    private void indexMovedNodeAncestors(final Long nodeId, Long parentNodeId)
+    {
+        if (!ancestorIndexEnabled)
+        {
+            return;
+        }
+        if (selectNodeAncestorIds(nodeId).isEmpty())
+        {
+            // Nothing indexed
+            return;
+        }
+        final Long lastNodeId = reindexMovedNodes(nodeId, parentNodeId, Long.MIN_VALUE);
+        if (lastNodeId == null)
+        {
+            return;
+        }
+        AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+        {
+            @Override
+            public void afterCommit()
+            {
+                getAncestorIndexExecutor().execute(new Runnable()
                 {
-                    if (previousCacheKey == null)
+                    @Override
+                    public void run()
                     {
-                        firstKey = nextCacheKey;
-                        previousKeys.remove(nextCacheKey);
-                    }
-                    else
-                    {
-                        nextKeys.put(previousCacheKey, nextCacheKey);
-                        previousKeys.put(nextCacheKey, previousCacheKey);
+                        try
+                        {
+                            Long minNodeId = lastNodeId;
+                            while (minNodeId != null)
+                            {
+                                final Long batchMinNodeId = minNodeId;
+                                RetryingTransactionCallback<Long> callback = new RetryingTransactionCallback<Long>()
+                                {
+                                    public Long execute() throws Throwable
+                                    {
+                                        return reindexMovedNodes(nodeId, null, batchMinNodeId);
+                                    }
+                                };
+                                minNodeId = transactionService.getRetryingTransactionHelper().doInTransaction(callback, false, true);
+                            }
+                        }
+                        catch (Throwable e)
+                        {
+                            logger.warn("Failed to update the ancestor index below moved node " + nodeId, e);
+                        }
                     }
-                }
-                // Update the parent count
-                parentCount -= oldParentAssocs.getParentAssocs().size();
-                return oldParentAssocs;
-            }
-            finally
-            {
-                lock.writeLock().unlock();
+                });
             }
-        }
+        });
+    }
 
-        private void clear()
+    /**
+     * Rewrite the ancestor index rows for one batch of the nodes indexed below a moved node.  The rows above the
+     * moved node are replaced by the ancestors of its current primary parent or, if that parent is not indexed,
+     * the nodes are removed from the index.
+     * 
+     * @param parentNodeId          the new primary parent or <tt>null</tt> to look up the current one
+     * @param minNodeId             the node ID to continue after (exclusive)
+     * @return                      the last node ID processed, or <tt>null</tt> if there are no more nodes
+     */
+    private Long reindexMovedNodes(Long nodeId, Long parentNodeId, Long minNodeId)
+    {
+        List<Long> movedNodeIds = selectNodeAncestorDescendantIds(nodeId, minNodeId, ancestorIndexBatchSize);
+        if (movedNodeIds.isEmpty())
         {
-            lock.writeLock().lock();
-            try
-            {
-                cache.clear();
-                nextKeys.clear();
-                previousKeys.clear();
-                firstKey = lastKey = null;
-                parentCount = 0;
-            }
-            finally
-            {
-                lock.writeLock().unlock();
-            }
+            return null;
+        }
+        if (parentNodeId == null)
+        {
+            ChildAssocEntity primaryParentAssoc = getPrimaryParentAssocImpl(nodeId);
+            parentNodeId = (primaryParentAssoc == null) ? null : primaryParentAssoc.getParentNode().getId();
         }
+        if (parentNodeId == null || selectNodeAncestorIds(parentNodeId).isEmpty())
+        {
+            deleteNodeAncestors(movedNodeIds, null);
+        }
+        else
+        {
+            deleteNodeAncestorsAbove(nodeId, movedNodeIds);
+            insertNodeAncestorsOfMovedNodes(nodeId, parentNodeId, movedNodeIds);
+        }
+        return movedNodeIds.size() < ancestorIndexBatchSize ? null : movedNodeIds.get(movedNodeIds.size() - 1);
     }
 
     /**
@@ -4304,12 +4662,12 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private ParentAssocsInfo getParentAssocsCached(Long nodeId)
     {
         Node node = getNodeNotNull(nodeId, false);
-        Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
-        ParentAssocsInfo value = parentAssocsCache.get(cacheKey);
+        String changeTxnId = node.getTransaction().getChangeTxnId();
+        ParentAssocsInfo value = parentAssocsCache.get(nodeId, changeTxnId);
         if (value == null)
         {
             value = loadParentAssocs(node.getNodeVersionKey());
-            parentAssocsCache.put(cacheKey, value);
+            parentAssocsCache.put(nodeId, changeTxnId, value);
         }
         
         // We have already validated on loading that we have a list in sync with the child node, so if the list is still
@@ -4333,8 +4691,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
     private void setParentAssocsCached(Long nodeId, ParentAssocsInfo parentAssocs)
     {
         Node node = getNodeNotNull(nodeId, false);
-        Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
-        parentAssocsCache.put(cacheKey, parentAssocs);
+        String changeTxnId = node.getTransaction().getChangeTxnId();
+        parentAssocsCache.put(nodeId, changeTxnId, parentAssocs);
     }
     
     /**
@@ -4349,11 +4707,10 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             return;
         }
-        Pair<Long, String> cacheKey = new Pair<Long, String>(from.getId(), fromTransactionId);
-        ParentAssocsInfo cacheEntry = parentAssocsCache.get(cacheKey);
+        ParentAssocsInfo cacheEntry = parentAssocsCache.get(from.getId(), fromTransactionId);
         if (cacheEntry != null)
         {
-            parentAssocsCache.put(new Pair<Long, String>(from.getId(), toTransactionId), cacheEntry);
+            parentAssocsCache.put(from.getId(), toTransactionId, cacheEntry);
         }
     }
     
@@ -4365,13 +4722,13 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         // Invalidate both the node and current transaction ID, just in case
         Long nodeId = node.getId();
         String nodeTransactionId = node.getTransaction().getChangeTxnId();
-        parentAssocsCache.remove(new Pair<Long, String>(nodeId, nodeTransactionId));
+        parentAssocsCache.remove(nodeId, nodeTransactionId);
         if (AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_WRITE)
         {
             String currentTransactionId = getCurrentTransaction().getChangeTxnId();
             if (!currentTransactionId.equals(nodeTransactionId))
             {
-                parentAssocsCache.remove(new Pair<Long, String>(nodeId, currentTransactionId));
+                parentAssocsCache.remove(nodeId, currentTransactionId);
             }
         }                        
     }
@@ -4472,8 +4829,8 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         {
             return; // Not in cache yet - will load in due course
         }
-        Pair<Long, String> cacheKey = new Pair<Long, String>(nodeId, node.getTransaction().getChangeTxnId());
-        ParentAssocsInfo value = parentAssocsCache.get(cacheKey);
+        String changeTxnId = node.getTransaction().getChangeTxnId();
+        ParentAssocsInfo value = parentAssocsCache.get(nodeId, changeTxnId);
         if (value == null)
         {
             return; // Not in cache yet - will load in due course
@@ -4554,6 +4911,102 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The parent associations of uncached nodes are selected in batches and checked against the cached
+     * node versions.  Nodes that fail the check or have no parents at all (roots and nodes being deleted)
+     * are left to be loaded individually, with the usual integrity checks, when they are next visited.
+     */
+    @Override
+    public Set<Long> cacheParentAssocs(List<Long> nodeIds)
+    {
+        cacheNodesById(nodeIds);
+        
+        int batchSize = 256;
+        Set<Long> parentNodeIds = new HashSet<Long>(nodeIds.size() * 2);
+        SortedMap<Long, Node> batch = new TreeMap<Long, Node>();
+        for (Long nodeId : nodeIds)
+        {
+            Node node = nodesCache.getValue(nodeId);
+            if (node == null)
+            {
+                if (!exists(nodeId))
+                {
+                    continue;
+                }
+                node = getNodeNotNull(nodeId, false);
+            }
+            if (node.getDeleted(qnameDAO))
+            {
+                continue;
+            }
+            String changeTxnId = node.getTransaction().getChangeTxnId();
+            ParentAssocsInfo value = parentAssocsCache.get(nodeId, changeTxnId);
+            if (value != null)
+            {
+                for (ChildAssocEntity assoc : value.getParentAssocs().values())
+                {
+                    parentNodeIds.add(assoc.getParentNode().getId());
+                }
+                continue;
+            }
+            batch.put(nodeId, node);
+            if (batch.size() >= batchSize)
+            {
+                cacheParentAssocsBatch(batch, parentNodeIds);
+                batch.clear();
+            }
+        }
+        if (batch.size() > 0)
+        {
+            cacheParentAssocsBatch(batch, parentNodeIds);
+        }
+        return parentNodeIds;
+    }
+    
+    private void cacheParentAssocsBatch(SortedMap<Long, Node> nodes, Set<Long> parentNodeIds)
+    {
+        List<ChildAssocEntity> assocs = selectParentAssocsOfChildren(new ArrayList<Long>(nodes.keySet()));
+        Map<Long, List<ChildAssocEntity>> assocsByChildId = new HashMap<Long, List<ChildAssocEntity>>(nodes.size() * 2);
+        for (ChildAssocEntity assoc : assocs)
+        {
+            Long childNodeId = assoc.getChildNode().getId();
+            List<ChildAssocEntity> childAssocs = assocsByChildId.get(childNodeId);
+            if (childAssocs == null)
+            {
+                childAssocs = new ArrayList<ChildAssocEntity>(2);
+                assocsByChildId.put(childNodeId, childAssocs);
+            }
+            childAssocs.add(assoc);
+        }
+        int cached = 0;
+        for (Map.Entry<Long, List<ChildAssocEntity>> entry : assocsByChildId.entrySet())
+        {
+            Long nodeId = entry.getKey();
+            Node node = nodes.get(nodeId);
+            List<ChildAssocEntity> childAssocs = entry.getValue();
+            if (!childAssocs.get(0).getChildNode().getNodeVersionKey().equals(node.getNodeVersionKey()))
+            {
+                // The cached node is stale; it will be dealt with when its parents are next requested
+                continue;
+            }
+            boolean isRoot = hasNodeAspect(nodeId, ContentModel.ASPECT_ROOT);
+            boolean isStoreRoot = getNodeType(nodeId).equals(ContentModel.TYPE_STOREROOT);
+            String changeTxnId = node.getTransaction().getChangeTxnId();
+            parentAssocsCache.put(nodeId, changeTxnId, new ParentAssocsInfo(isRoot, isStoreRoot, childAssocs));
+            for (ChildAssocEntity assoc : childAssocs)
+            {
+                parentNodeIds.add(assoc.getParentNode().getId());
+            }
+            cached++;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Pre-loaded parent associations of " + cached + " nodes.");
+        }
+    }
+
 	/**
      * {@inheritDoc}
      * <p/>
@@ -4634,6 +5087,114 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
         }
     }
     
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * The siblings are split into windows of {@link #setReadAheadWindowSize(int) readAheadWindowSize} nodes,
+     * held until they are visited or the transaction ends.  The first lookup of any node in a window loads the
+     * whole window.  No more than {@link #setReadAheadMaxRegistered(int) readAheadMaxRegistered} siblings are
+     * held at a time; any others are not registered.
+     */
+    @Override
+    public void registerSiblings(List<NodeRef> nodeRefs)
+    {
+        if (!readAheadEnabled || nodeRefs.size() < 2 || !AlfrescoTransactionSupport.isActualTransactionActive())
+        {
+            return;
+        }
+        Map<NodeRef, ReadAheadWindow> windowsByNodeRef = TransactionalResourceHelper.getMap(KEY_READ_AHEAD_SIBLINGS);
+        int registerCount = Math.min(nodeRefs.size(), readAheadMaxRegistered - windowsByNodeRef.size());
+        if (registerCount < 2)
+        {
+            return;
+        }
+        int windowSize = Math.max(readAheadWindowSize, 2);
+        ReadAheadWindow window = null;
+        for (NodeRef nodeRef : nodeRefs.subList(0, registerCount))
+        {
+            if (window == null || window.nodeRefs.size() >= windowSize)
+            {
+                window = new ReadAheadWindow(Math.min(windowSize, registerCount));
+            }
+            window.nodeRefs.add(nodeRef);
+            windowsByNodeRef.put(nodeRef, window);
+        }
+        readAheadStatistics.recordRegistered(registerCount);
+    }
+
+    /**
+     * Load the read-ahead window of a registered sibling when it is first looked up.
+     */
+    private void readAhead(NodeRef nodeRef)
+    {
+        if (!readAheadEnabled || !AlfrescoTransactionSupport.isActualTransactionActive())
+        {
+            return;
+        }
+        Map<NodeRef, ReadAheadWindow> windowsByNodeRef = TransactionalResourceHelper.getMap(KEY_READ_AHEAD_SIBLINGS);
+        ReadAheadWindow window = windowsByNodeRef.remove(nodeRef);
+        if (window == null)
+        {
+            // Not a registered sibling or already visited
+            return;
+        }
+        if (window.loaded)
+        {
+            readAheadStatistics.recordHit();
+            return;
+        }
+        window.loaded = true;
+        
+        // Nodes that are already cached may still be missing aspects or properties
+        List<Node> cachedNodes = new ArrayList<Node>(window.nodeRefs.size());
+        Map<StoreRef, List<String>> uuidsByStore = new HashMap<StoreRef, List<String>>(3);
+        for (NodeRef siblingNodeRef : window.nodeRefs)
+        {
+            Long nodeId = nodesCache.getKey(siblingNodeRef);
+            Node node = (nodeId == null) ? null : nodesCache.getValue(nodeId);
+            if (node != null)
+            {
+                cachedNodes.add(node);
+                continue;
+            }
+            StoreRef storeRef = siblingNodeRef.getStoreRef();
+            List<String> uuids = uuidsByStore.get(storeRef);
+            if (uuids == null)
+            {
+                uuids = new ArrayList<String>(window.nodeRefs.size());
+                uuidsByStore.put(storeRef, uuids);
+            }
+            uuids.add(siblingNodeRef.getId());
+        }
+        for (Map.Entry<StoreRef, List<String>> entry : uuidsByStore.entrySet())
+        {
+            cacheNodes(entry.getKey(), entry.getValue());
+        }
+        if (cachedNodes.size() > 0)
+        {
+            cacheNodesNoBatch(cachedNodes);
+        }
+        readAheadStatistics.recordMiss(window.nodeRefs.size());
+        if (isDebugEnabled)
+        {
+            logger.debug("Read ahead " + window.nodeRefs.size() + " siblings of " + nodeRef + ": " + readAheadStatistics);
+        }
+    }
+
+    /**
+     * A window of registered siblings that are loaded together
+     */
+    private static class ReadAheadWindow
+    {
+        private final List<NodeRef> nodeRefs;
+        private boolean loaded;
+        
+        private ReadAheadWindow(int size)
+        {
+            this.nodeRefs = new ArrayList<NodeRef>(size);
+        }
+    }
+
     /**
      * Loads the nodes into cache using batching.
      */
@@ -4979,6 +5540,20 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             QName assocTypeQName,
             Collection<String> childNames,
             ChildAssocRefQueryCallback resultsCallback);
+    /**
+     * @param childNames            up to 1000 child names
+     */
+    protected abstract List<ChildAssocEntity> selectChildAssocsByNames(
+            Long parentNodeId,
+            QName assocTypeQName,
+            Collection<String> childNames);
+    /**
+     * @return                      the associations matching each successive child name, ordered by depth
+     */
+    protected abstract List<ChildAssocEntity> selectChildAssocsByNamePath(
+            Long parentNodeId,
+            QName assocTypeQName,
+            List<String> childNames);
     protected abstract void selectChildAssocsByPropertyValue(
             Long parentNodeId,
             QName propertyQName,
@@ -5002,6 +5577,44 @@ public abstract class AbstractNodeDAOImpl implements NodeDAO, BatchingDAO
             Boolean isPrimary,
             ChildAssocRefQueryCallback resultsCallback);
     protected abstract List<ChildAssocEntity> selectParentAssocs(Long childNodeId);
+    protected abstract List<ChildAssocEntity> selectParentAssocsOfChildren(List<Long> childNodeIds);
+    protected abstract void insertNodeAncestorSelf(Long nodeId);
+    /**
+     * Index a node below an indexed parent
+     * 
+     * @return              the number of index rows added, which will be <tt>0</tt> if the parent is not indexed
+     */
+    protected abstract int insertNodeAncestors(Long nodeId, Long parentNodeId);
+    protected abstract int insertNodeAncestorsOfMovedNodes(Long nodeId, Long parentNodeId, List<Long> movedNodeIds);
+    protected abstract int insertNodeAncestorStoreRoots();
+    /**
+     * Index the unindexed primary children of the given indexed parents, except for their own depth-0 rows
+     */
+    protected abstract int insertNodeAncestorsOfChildren(List<Long> parentNodeIds);
+    /**
+     * Add the depth-0 rows of the primary children of the given parents that were indexed by
+     * {@link #insertNodeAncestorsOfChildren(List)}
+     * 
+     * @return              the number of nodes added to the index
+     */
+    protected abstract int insertNodeAncestorSelves(List<Long> parentNodeIds);
+    protected abstract List<Long> selectNodeAncestorStoreRootIds();
+    protected abstract List<Long> selectNodeAncestorPrimaryChildIds(List<Long> parentNodeIds);
+    /**
+     * @return              the primary associations leading up from the node, nearest first
+     */
+    protected abstract List<ChildAssocEntity> selectNodeAncestorPrimaryAssocs(Long nodeId);
+    /**
+     * @return              the indexed ancestors of the node, including the node itself
+     */
+    protected abstract List<Long> selectNodeAncestorIds(Long nodeId);
+    protected abstract List<Long> selectNodeAncestorDescendantIds(Long nodeId, Long minNodeId, int maxResults);
+    protected abstract int deleteNodeAncestors(List<Long> nodeIds, List<Long> ancestorIds);
+    /**
+     * Remove the index rows of nodes below the given node that are for ancestors above it
+     */
+    protected abstract int deleteNodeAncestorsAbove(Long nodeId, List<Long> nodeIds);
+    protected abstract int deleteNodeAncestorsOfSubtree(Long nodeId);
     /**
      * No DB constraint, so multiple returned
      */
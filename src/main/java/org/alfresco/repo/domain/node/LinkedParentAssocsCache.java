@@ -0,0 +1,207 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.alfresco.util.Pair;
+
+/**
+ * A Map-like class for storing ParentAssocsInfos. It prunes its oldest ParentAssocsInfo entries not only when a
+ * capacity is reached, but also when a total number of cached parents is reached, as this is what dictates the
+ * overall memory usage.
+ * 
+ * @since 7.0
+ */
+class LinkedParentAssocsCache implements ParentAssocsCache
+{
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int size;
+    private final int maxParentCount;
+    private final Map<Pair <Long, String>, ParentAssocsInfo> cache;
+    private final Map<Pair <Long, String>, Pair <Long, String>> nextKeys;
+    private final Map<Pair <Long, String>, Pair <Long, String>> previousKeys;
+    private Pair <Long, String> firstKey;
+    private Pair <Long, String> lastKey;
+    private int parentCount;
+    
+    /**
+     * @param size int
+     * @param limitFactor int
+     */
+    public LinkedParentAssocsCache(int size, int limitFactor)
+    {
+        this.size = size;
+        this.maxParentCount = size * limitFactor;
+        final int mapSize = size * 2;
+        this.cache = new HashMap<Pair <Long, String>, ParentAssocsInfo>(mapSize);
+        this.nextKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
+        this.previousKeys = new HashMap<Pair <Long, String>, Pair <Long, String>>(mapSize);
+    }
+
+    @Override
+    public ParentAssocsInfo get(long nodeId, String txnId)
+    {
+        return get(new Pair<Long, String>(nodeId, txnId));
+    }
+
+    @Override
+    public void put(long nodeId, String txnId, ParentAssocsInfo parentAssocs)
+    {
+        put(new Pair<Long, String>(nodeId, txnId), parentAssocs);
+    }
+
+    @Override
+    public ParentAssocsInfo remove(long nodeId, String txnId)
+    {
+        return remove(new Pair<Long, String>(nodeId, txnId));
+    }
+
+    private ParentAssocsInfo get(Pair <Long, String> cacheKey)
+    {
+        lock.readLock().lock();
+        try
+        {
+            return cache.get(cacheKey);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    private void put(Pair <Long, String> cacheKey, ParentAssocsInfo parentAssocs)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            // If an entry already exists, remove it and do the necessary housekeeping
+            if (cache.containsKey(cacheKey))
+            {
+                remove(cacheKey);
+            }
+
+            // Add the value and prepend the key
+            cache.put(cacheKey, parentAssocs);
+            if (firstKey == null)
+            {
+                lastKey = cacheKey;
+            }
+            else
+            {
+                nextKeys.put(cacheKey, firstKey);
+                previousKeys.put(firstKey, cacheKey);
+            }
+            firstKey = cacheKey;
+            parentCount += parentAssocs.getParentAssocs().size();
+            
+            // Now prune the oldest entries whilst we have more cache entries or cached parents than desired
+            int currentSize = cache.size();
+            while (currentSize > size || parentCount > maxParentCount)
+            {
+                remove(lastKey);
+                currentSize--;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private ParentAssocsInfo remove(Pair <Long, String> cacheKey)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            // Remove from the map
+            ParentAssocsInfo oldParentAssocs = cache.remove(cacheKey);
+
+            // If the object didn't exist, we are done
+            if (oldParentAssocs == null)
+            {
+                return null;
+            }
+
+            // Re-link the list
+            Pair <Long, String> previousCacheKey = previousKeys.remove(cacheKey);
+            Pair <Long, String> nextCacheKey = nextKeys.remove(cacheKey);
+            if (nextCacheKey == null)
+            {
+                if (previousCacheKey == null)
+                {
+                    firstKey = lastKey = null;
+                }
+                else
+                {
+                    lastKey = previousCacheKey;
+                    nextKeys.remove(previousCacheKey);
+                }
+            }
+            else
+            {
+                if (previousCacheKey == null)
+                {
+                    firstKey = nextCacheKey;
+                    previousKeys.remove(nextCacheKey);
+                }
+                else
+                {
+                    nextKeys.put(previousCacheKey, nextCacheKey);
+                    previousKeys.put(nextCacheKey, previousCacheKey);
+                }
+            }
+            // Update the parent count
+            parentCount -= oldParentAssocs.getParentAssocs().size();
+            return oldParentAssocs;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear()
+    {
+        lock.writeLock().lock();
+        try
+        {
+            cache.clear();
+            nextKeys.clear();
+            previousKeys.clear();
+            firstKey = lastKey = null;
+            parentCount = 0;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+}
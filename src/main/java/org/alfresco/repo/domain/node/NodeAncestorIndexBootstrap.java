@@ -0,0 +1,101 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.extensions.surf.util.AbstractLifecycleBean;
+
+/**
+ * Catches the primary ancestor index up with the existing content on startup (see {@link NodeDAO#buildAncestorIndex()}).
+ * The build runs in the background; nodes that are not yet indexed have their paths found the usual way.
+ * 
+ * @since 7.0
+ */
+public class NodeAncestorIndexBootstrap extends AbstractLifecycleBean
+{
+    private static Log logger = LogFactory.getLog(NodeAncestorIndexBootstrap.class);
+    
+    private NodeDAO nodeDAO;
+    private boolean enabled;
+    
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * @param enabled       <tt>true</tt> if the ancestor index is enabled
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    @Override
+    protected void onBootstrap(ApplicationEvent event)
+    {
+        PropertyCheck.mandatory(this, "nodeDAO", nodeDAO);
+        if (!enabled)
+        {
+            return;
+        }
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("NodeAncestorIndexBuilder");
+        threadFactory.setThreadDaemon(true);
+        Thread thread = threadFactory.newThread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    long start = System.currentTimeMillis();
+                    int count = nodeDAO.buildAncestorIndex();
+                    if (logger.isInfoEnabled())
+                    {
+                        logger.info("Added " + count + " nodes to the ancestor index in " +
+                                (System.currentTimeMillis() - start) + "ms");
+                    }
+                }
+                catch (Throwable e)
+                {
+                    logger.error("Failed to build the ancestor index", e);
+                }
+            }
+        });
+        thread.start();
+    }
+
+    @Override
+    protected void onShutdown(ApplicationEvent event)
+    {
+        // Daemon thread
+    }
+}
@@ -665,6 +665,36 @@ public interface NodeDAO extends NodeBulkLoader
      */
     public Pair<Long, ChildAssociationRef> getChildAssoc(Long parentNodeId, QName assocTypeQName, String childName);
 
+    /**
+     * Get the child associations for several child node names (<b>cm:name</b>) at once.  Names already cached
+     * are not queried and the rest are fetched together.
+     * 
+     * @param parentNodeId          the parent Node ID
+     * @param assocTypeQName        the association type to filter on
+     * @param childNames            the <b>cm:name</b> values to look for
+     * @return                      Returns the associations found, keyed by the child names given
+     */
+    public Map<String, Pair<Long, ChildAssociationRef>> getChildAssocsByNames(
+            Long parentNodeId,
+            QName assocTypeQName,
+            Collection<String> childNames);
+
+    /**
+     * Resolve a path of child node names (<b>cm:name</b>) below a parent node.  Levels that are not
+     * cached are resolved together rather than one query per level.
+     * 
+     * @param parentNodeId          the node to start from
+     * @param assocTypeQName        the association type to follow at each level
+     * @param childNames            the <b>cm:name</b> of the child at each level
+     * @return                      Returns the association for each level, stopping at the first name that
+     *                              could not be found i.e. the path was fully resolved if the list is as long
+     *                              as the list of names
+     */
+    public List<Pair<Long, ChildAssociationRef>> getChildAssocsByNamePath(
+            Long parentNodeId,
+            QName assocTypeQName,
+            List<String> childNames);
+
     /**
      * Get the child associations of a given parent node, filtering on type <tt>QName</tt> and
      * the <b>cm:name</b> of the child nodes.
@@ -766,6 +796,17 @@ public interface NodeDAO extends NodeBulkLoader
      * Perform a check for cyclic relationships
      */
     public void cycleCheck(Long nodeId);
+    
+    /**
+     * Add all existing nodes to the primary ancestor index, working down from the store roots.
+     * New and moved nodes are indexed as they change, so this only needs to catch up on content
+     * created while the index was disabled.  The hierarchy is walked a level at a time, looking up
+     * each level by the ids of the level above, and each batch of parents has its children indexed
+     * in a new transaction.
+     * 
+     * @return              the number of nodes added to the index, or <tt>0</tt> if the index is disabled
+     */
+    public int buildAncestorIndex();
 
     /*
      * Transactions
@@ -0,0 +1,102 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the node read-ahead carried out by the {@link NodeDAO} for registered sibling sets.
+ * <p/>
+ * A <b>hit</b> is a sibling whose node, aspects and properties were already loaded by read-ahead when
+ * it was first accessed, i.e. a round trip saved.  A <b>miss</b> is the access that triggered a
+ * read-ahead batch.
+ * 
+ * @since 7.0
+ */
+public class NodeReadAheadStatistics
+{
+    private final AtomicLong registered = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong nodesLoaded = new AtomicLong();
+
+    void recordRegistered(int count)
+    {
+        registered.addAndGet(count);
+    }
+
+    void recordHit()
+    {
+        hits.incrementAndGet();
+    }
+
+    void recordMiss(int nodesLoadedCount)
+    {
+        misses.incrementAndGet();
+        nodesLoaded.addAndGet(nodesLoadedCount);
+    }
+
+    /**
+     * @return the number of nodes registered as part of a sibling set
+     */
+    public long getRegisteredCount()
+    {
+        return registered.get();
+    }
+
+    /**
+     * @return the number of first accesses that were served by a previous read-ahead batch
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of accesses that triggered a read-ahead batch
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of nodes loaded into the caches by read-ahead batches
+     */
+    public long getNodesLoadedCount()
+    {
+        return nodesLoaded.get();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "NodeReadAheadStatistics[registered=" + registered.get() +
+                ", hits=" + hits.get() +
+                ", misses=" + misses.get() +
+                ", nodesLoaded=" + nodesLoaded.get() + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+/**
+ * Non-clustered cache of {@link ParentAssocsInfo}s keyed by node ID and the ID of the transaction that last changed
+ * the node. Implementations prune their oldest entries not only when a capacity is reached, but also when a total
+ * number of cached parents is reached, as this is what dictates the overall memory usage.
+ * 
+ * @since 7.0
+ */
+interface ParentAssocsCache
+{
+    /**
+     * @param nodeId            the node ID
+     * @param txnId             the change transaction ID of the node version
+     * @return                  the cached parent associations or <tt>null</tt>
+     */
+    ParentAssocsInfo get(long nodeId, String txnId);
+
+    /**
+     * Cache or replace the parent associations of a node version
+     */
+    void put(long nodeId, String txnId, ParentAssocsInfo parentAssocs);
+
+    /**
+     * @return                  the parent associations that were removed or <tt>null</tt>
+     */
+    ParentAssocsInfo remove(long nodeId, String txnId);
+
+    /**
+     * Remove all entries
+     */
+    void clear();
+}
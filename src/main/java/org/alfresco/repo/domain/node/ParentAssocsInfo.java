@@ -106,7 +106,7 @@ public class ParentAssocsInfo implements Serializable
         }
         this.primaryAssocId = primaryAssocId;
         // Protect the map from accidental modification
-        this.parentAssocsById = Collections.unmodifiableMap(parentAssocsById);
+        this.parentAssocsById = compact(parentAssocsById);
     }
 
     /**
@@ -120,10 +120,27 @@ public class ParentAssocsInfo implements Serializable
     {
         this.isRoot = isRoot;
         this.isStoreRoot = isStoreRoot;
-        this.parentAssocsById = Collections.unmodifiableMap(parentAssocsById);
+        this.parentAssocsById = compact(parentAssocsById);
         this.primaryAssocId = primaryAssocId;
     }
 
+    /**
+     * Most nodes have a single parent, which doesn't warrant a whole map per cached node
+     */
+    private static Map<Long, ChildAssocEntity> compact(Map<Long, ChildAssocEntity> parentAssocsById)
+    {
+        switch (parentAssocsById.size())
+        {
+        case 0:
+            return Collections.emptyMap();
+        case 1:
+            Map.Entry<Long, ChildAssocEntity> entry = parentAssocsById.entrySet().iterator().next();
+            return Collections.singletonMap(entry.getKey(), entry.getValue());
+        default:
+            return Collections.unmodifiableMap(parentAssocsById);
+        }
+    }
+
     @Override
     public String toString()
     {
@@ -0,0 +1,450 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link ParentAssocsCache} that keeps its entries in primitive arrays, so that neither the node IDs nor the links
+ * between entries are boxed. The cache is split into independently locked segments, each of which evicts its own
+ * entries in approximate least-recently-used order: entries are queued by insertion and an entry that has been read
+ * since it was queued gets a second chance at the head of the queue instead of being evicted. Reads therefore only
+ * need the segment's read lock.
+ * <p/>
+ * Each version of a node, identified by its change transaction ID, is a separate entry, so a version can be cached
+ * against a new transaction without copying or disturbing the version other transactions are reading.
+ * 
+ * @since 7.0
+ */
+class SegmentedParentAssocsCache implements ParentAssocsCache
+{
+    private static final int NONE = -1;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param size              the maximum number of entries
+     * @param limitFactor       the average number of parents expected per entry
+     * @param segmentCount      the number of independently locked segments, rounded up to a power of two
+     */
+    public SegmentedParentAssocsCache(int size, int limitFactor, int segmentCount)
+    {
+        int segmentBits = 0;
+        while ((1 << segmentBits) < segmentCount && segmentBits < 16)
+        {
+            segmentBits++;
+        }
+        int segmentSize = Math.max(1, (size + (1 << segmentBits) - 1) >> segmentBits);
+        this.segments = new Segment[1 << segmentBits];
+        for (int i = 0; i < segments.length; i++)
+        {
+            segments[i] = new Segment(segmentSize, segmentSize * limitFactor);
+        }
+        // Segments are chosen with the high bits of the hash and buckets with the low bits
+        this.segmentShift = 32 - segmentBits;
+    }
+
+    private static int hash(long nodeId)
+    {
+        int h = (int) (nodeId ^ (nodeId >>> 32)) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash)
+    {
+        return segmentShift == 32 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    @Override
+    public ParentAssocsInfo get(long nodeId, String txnId)
+    {
+        int hash = hash(nodeId);
+        ParentAssocsInfo value = segmentFor(hash).get(hash, nodeId, txnId);
+        if (value == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            hits.increment();
+        }
+        return value;
+    }
+
+    @Override
+    public void put(long nodeId, String txnId, ParentAssocsInfo parentAssocs)
+    {
+        int hash = hash(nodeId);
+        segmentFor(hash).put(hash, nodeId, txnId, parentAssocs);
+    }
+
+    @Override
+    public ParentAssocsInfo remove(long nodeId, String txnId)
+    {
+        int hash = hash(nodeId);
+        return segmentFor(hash).remove(hash, nodeId, txnId);
+    }
+
+    @Override
+    public void clear()
+    {
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @return the number of cached node versions
+     */
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the total number of cached parent associations
+     */
+    public int getParentCount()
+    {
+        int parentCount = 0;
+        for (Segment segment : segments)
+        {
+            parentCount += segment.parentCount();
+        }
+        return parentCount;
+    }
+
+    public long getHitCount()
+    {
+        return hits.sum();
+    }
+
+    public long getMissCount()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("SegmentedParentAssocsCache")
+          .append("[segments=").append(segments.length)
+          .append(", size=").append(size())
+          .append(", parents=").append(getParentCount())
+          .append(", hits=").append(getHitCount())
+          .append(", misses=").append(getMissCount())
+          .append(", evictions=").append(getEvictionCount())
+          .append("]");
+        return sb.toString();
+    }
+
+    /**
+     * A fixed capacity hash table with chained buckets. Entries live in numbered slots; the bucket chains, the free
+     * list and the eviction queue are all slot numbers held in int arrays.
+     */
+    private class Segment
+    {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final int capacity;
+        private final int maxParentCount;
+        /** The first slot of each bucket */
+        private final int[] buckets;
+        /** The next slot in the same bucket or, for unused slots, the next free slot */
+        private final int[] chain;
+        /** The next newer and next older slot in the eviction queue */
+        private final int[] newer;
+        private final int[] older;
+        private final long[] nodeIds;
+        private final String[] txnIds;
+        private final ParentAssocsInfo[] values;
+        /** Set when an entry is read, cleared when it is given a second chance */
+        private final boolean[] referenced;
+        private int newest;
+        private int oldest;
+        private int free;
+        private int size;
+        private int parentCount;
+
+        private Segment(int capacity, int maxParentCount)
+        {
+            this.capacity = capacity;
+            this.maxParentCount = maxParentCount;
+            this.buckets = new int[Integer.highestOneBit(Math.max(1, capacity - 1)) << 2];
+            this.chain = new int[capacity];
+            this.newer = new int[capacity];
+            this.older = new int[capacity];
+            this.nodeIds = new long[capacity];
+            this.txnIds = new String[capacity];
+            this.values = new ParentAssocsInfo[capacity];
+            this.referenced = new boolean[capacity];
+            reset();
+        }
+
+        private void reset()
+        {
+            Arrays.fill(buckets, NONE);
+            for (int i = 0; i < capacity; i++)
+            {
+                chain[i] = i + 1 < capacity ? i + 1 : NONE;
+            }
+            Arrays.fill(txnIds, null);
+            Arrays.fill(values, null);
+            Arrays.fill(referenced, false);
+            newest = oldest = NONE;
+            free = 0;
+            size = 0;
+            parentCount = 0;
+        }
+
+        private int find(int hash, long nodeId, String txnId)
+        {
+            for (int slot = buckets[hash & (buckets.length - 1)]; slot != NONE; slot = chain[slot])
+            {
+                if (nodeIds[slot] == nodeId && txnIds[slot].equals(txnId))
+                {
+                    return slot;
+                }
+            }
+            return NONE;
+        }
+
+        private ParentAssocsInfo get(int hash, long nodeId, String txnId)
+        {
+            lock.readLock().lock();
+            try
+            {
+                int slot = find(hash, nodeId, txnId);
+                if (slot == NONE)
+                {
+                    return null;
+                }
+                // Racing readers all set the same flag
+                referenced[slot] = true;
+                return values[slot];
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void put(int hash, long nodeId, String txnId, ParentAssocsInfo parentAssocs)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                int slot = find(hash, nodeId, txnId);
+                if (slot == NONE)
+                {
+                    if (free == NONE)
+                    {
+                        evict();
+                    }
+                    slot = free;
+                    free = chain[slot];
+                    int bucket = hash & (buckets.length - 1);
+                    chain[slot] = buckets[bucket];
+                    buckets[bucket] = slot;
+                    nodeIds[slot] = nodeId;
+                    txnIds[slot] = txnId;
+                    size++;
+                }
+                else
+                {
+                    unlinkQueue(slot);
+                    parentCount -= values[slot].getParentAssocs().size();
+                }
+                values[slot] = parentAssocs;
+                referenced[slot] = false;
+                parentCount += parentAssocs.getParentAssocs().size();
+                linkQueue(slot);
+
+                // Now prune whilst we have more cached parents than desired
+                while (parentCount > maxParentCount && size > 0)
+                {
+                    evict();
+                }
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private ParentAssocsInfo remove(int hash, long nodeId, String txnId)
+        {
+            lock.writeLock().lock();
+            try
+            {
+                int slot = find(hash, nodeId, txnId);
+                return slot == NONE ? null : removeSlot(hash, slot);
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Evicts the oldest entry that has not been read since it was queued. Must be called with the write lock.
+         */
+        private void evict()
+        {
+            while (referenced[oldest])
+            {
+                int slot = oldest;
+                referenced[slot] = false;
+                unlinkQueue(slot);
+                linkQueue(slot);
+            }
+            removeSlot(hash(nodeIds[oldest]), oldest);
+            evictions.increment();
+        }
+
+        private ParentAssocsInfo removeSlot(int hash, int slot)
+        {
+            // Unlink from the bucket
+            int bucket = hash & (buckets.length - 1);
+            if (buckets[bucket] == slot)
+            {
+                buckets[bucket] = chain[slot];
+            }
+            else
+            {
+                int previous = buckets[bucket];
+                while (chain[previous] != slot)
+                {
+                    previous = chain[previous];
+                }
+                chain[previous] = chain[slot];
+            }
+            unlinkQueue(slot);
+
+            ParentAssocsInfo oldParentAssocs = values[slot];
+            parentCount -= oldParentAssocs.getParentAssocs().size();
+            size--;
+            txnIds[slot] = null;
+            values[slot] = null;
+            referenced[slot] = false;
+            chain[slot] = free;
+            free = slot;
+            return oldParentAssocs;
+        }
+
+        private void linkQueue(int slot)
+        {
+            newer[slot] = NONE;
+            older[slot] = newest;
+            if (newest == NONE)
+            {
+                oldest = slot;
+            }
+            else
+            {
+                newer[newest] = slot;
+            }
+            newest = slot;
+        }
+
+        private void unlinkQueue(int slot)
+        {
+            if (newer[slot] == NONE)
+            {
+                newest = older[slot];
+            }
+            else
+            {
+                older[newer[slot]] = older[slot];
+            }
+            if (older[slot] == NONE)
+            {
+                oldest = newer[slot];
+            }
+            else
+            {
+                newer[older[slot]] = newer[slot];
+            }
+        }
+
+        private void clear()
+        {
+            lock.writeLock().lock();
+            try
+            {
+                reset();
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private int size()
+        {
+            lock.readLock().lock();
+            try
+            {
+                return size;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int parentCount()
+        {
+            lock.readLock().lock();
+            try
+            {
+                return parentCount;
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+        }
+    }
+}
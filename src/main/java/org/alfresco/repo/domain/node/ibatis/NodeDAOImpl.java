@@ -135,13 +135,29 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     private static final String SELECT_CHILD_ASSOCS_OF_PARENT = "alfresco.node.select_ChildAssocsOfParent";
     private static final String SELECT_CHILD_ASSOCS_OF_PARENT_LIMITED = "alfresco.node.select.children.select_ChildAssocsOfParent_Limited";
     private static final String SELECT_CHILD_ASSOC_OF_PARENT_BY_NAME = "alfresco.node.select_ChildAssocOfParentByName";
+    private static final String SELECT_CHILD_ASSOCS_BY_NAME_PATH = "alfresco.node.select_ChildAssocsByNamePath";
     private static final String SELECT_CHILD_ASSOCS_OF_PARENT_WITHOUT_PARENT_ASSOCS_OF_TYPE =
             "alfresco.node.select_ChildAssocsOfParentWithoutParentAssocsOfType";
     private static final String SELECT_CHILD_ASSOCS_OF_PARENT_WITHOUT_NODE_ASSOCS_OF_TYPE =
             "alfresco.node.select_ChildAssocsOfParentWithoutNodeAssocsOfType";
     private static final String SELECT_PARENT_ASSOCS_OF_CHILD = "alfresco.node.select_ParentAssocsOfChild";
+    private static final String SELECT_PARENT_ASSOCS_OF_CHILDREN = "alfresco.node.select_ParentAssocsOfChildren";
     private static final String UPDATE_PARENT_ASSOCS_OF_CHILD = "alfresco.node.update_ParentAssocsOfChild";
     private static final String DELETE_SUBSCRIPTIONS = "alfresco.node.delete_NodeSubscriptions";
+    private static final String INSERT_NODE_ANCESTOR_SELF = "alfresco.node.insert_NodeAncestorSelf";
+    private static final String INSERT_NODE_ANCESTORS_OF_PARENT = "alfresco.node.insert_NodeAncestorsOfParent";
+    private static final String INSERT_NODE_ANCESTORS_OF_MOVED_NODES = "alfresco.node.insert_NodeAncestorsOfMovedNodes";
+    private static final String INSERT_NODE_ANCESTOR_STORE_ROOTS = "alfresco.node.insert_NodeAncestorStoreRoots";
+    private static final String INSERT_NODE_ANCESTORS_OF_CHILDREN = "alfresco.node.insert_NodeAncestorsOfChildren";
+    private static final String INSERT_NODE_ANCESTOR_SELVES = "alfresco.node.insert_NodeAncestorSelves";
+    private static final String SELECT_NODE_ANCESTOR_STORE_ROOT_IDS = "alfresco.node.select_NodeAncestorStoreRootIds";
+    private static final String SELECT_NODE_ANCESTOR_PRIMARY_CHILD_IDS = "alfresco.node.select_NodeAncestorPrimaryChildIds";
+    private static final String SELECT_NODE_ANCESTOR_PRIMARY_ASSOCS = "alfresco.node.select_NodeAncestorPrimaryAssocs";
+    private static final String SELECT_NODE_ANCESTOR_IDS = "alfresco.node.select_NodeAncestorIds";
+    private static final String SELECT_NODE_ANCESTOR_DESCENDANT_IDS = "alfresco.node.select_NodeAncestorDescendantIds";
+    private static final String DELETE_NODE_ANCESTORS = "alfresco.node.delete_NodeAncestors";
+    private static final String DELETE_NODE_ANCESTORS_ABOVE = "alfresco.node.delete_NodeAncestorsAbove";
+    private static final String DELETE_NODE_ANCESTORS_OF_SUBTREE = "alfresco.node.delete_NodeAncestorsOfSubtree";
     
     private static final String UPDATE_MOVE_PARENT_ASSOCS = "alfresco.node.update_MoveParentAssocs";
     private static final String UPDATE_MOVE_CHILD_ASSOCS = "alfresco.node.update_MoveChildAssocs";
@@ -1307,6 +1323,95 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         resultsCallback.done();
     }
 
+    @Override
+    protected List<ChildAssocEntity> selectChildAssocsByNames(
+            Long parentNodeId,
+            QName assocTypeQName,
+            Collection<String> childNames)
+    {
+        if (childNames.size() > 1000)
+        {
+            throw new IllegalArgumentException("Unable to process more than 1000 child names in selectChildAssocsByNames");
+        }
+        ChildAssocEntity assoc = new ChildAssocEntity();
+        // Parent
+        NodeEntity parentNode = new NodeEntity();
+        parentNode.setId(parentNodeId);
+        assoc.setParentNode(parentNode);
+        // Type QName
+        if (childNames.isEmpty() || !assoc.setTypeQNameAll(qnameDAO, assocTypeQName, false))
+        {
+            return Collections.emptyList();     // Shortcut
+        }
+        // Child names
+        Set<String> childNamesShort = new HashSet<String>(childNames.size() * 2);
+        List<Long> childNamesCrc = new ArrayList<Long>(childNames.size());
+        for (String childName : childNames)
+        {
+            String childNameLower = childName.toLowerCase();
+            childNamesShort.add(ChildAssocEntity.getChildNodeNameShort(childNameLower));
+            childNamesCrc.add(ChildAssocEntity.getChildNodeNameCrc(childNameLower));
+        }
+        assoc.setChildNodeNameCrcs(childNamesCrc);
+        // Ordered
+        assoc.setOrdered(false);
+        
+        List<ChildAssocEntity> results = template.selectList(SELECT_CHILD_ASSOCS_OF_PARENT, assoc);
+        // Check the names as well as the CRCs
+        List<ChildAssocEntity> assocs = new ArrayList<ChildAssocEntity>(results.size());
+        for (ChildAssocEntity result : results)
+        {
+            if (childNamesShort.contains(result.getChildNodeName()))
+            {
+                assocs.add(result);
+            }
+        }
+        return assocs;
+    }
+
+    @Override
+    protected List<ChildAssocEntity> selectChildAssocsByNamePath(
+            Long parentNodeId,
+            QName assocTypeQName,
+            List<String> childNames)
+    {
+        if (childNames.size() < 2)
+        {
+            ChildAssocEntity assoc = childNames.isEmpty() ? null : selectChildAssoc(parentNodeId, assocTypeQName, childNames.get(0));
+            return assoc == null ? Collections.<ChildAssocEntity>emptyList() : Collections.singletonList(assoc);
+        }
+        Pair<Long, QName> assocTypeQNamePair = qnameDAO.getQName(assocTypeQName);
+        if (assocTypeQNamePair == null)
+        {
+            return Collections.emptyList();     // Shortcut
+        }
+        Map<String, Object> params = new HashMap<String, Object>(11);
+        params.put("parentNodeId", parentNodeId);
+        params.put("typeQNameId", assocTypeQNamePair.getFirst());
+        List<Map<String, Object>> segments = new ArrayList<Map<String, Object>>(childNames.size());
+        for (int i = 0; i < childNames.size(); i++)
+        {
+            String childNameLower = childNames.get(i).toLowerCase();
+            String childNameShort = ChildAssocEntity.getChildNodeNameShort(childNameLower);
+            Long childNameCrc = ChildAssocEntity.getChildNodeNameCrc(childNameLower);
+            if (i == 0)
+            {
+                params.put("childNodeName", childNameShort);
+                params.put("childNodeNameCrc", childNameCrc);
+            }
+            else
+            {
+                Map<String, Object> segment = new HashMap<String, Object>(5);
+                segment.put("parentDepth", i - 1);
+                segment.put("childNodeName", childNameShort);
+                segment.put("childNodeNameCrc", childNameCrc);
+                segments.add(segment);
+            }
+        }
+        params.put("segments", segments);
+        return template.selectList(SELECT_CHILD_ASSOCS_BY_NAME_PATH, params);
+    }
+
     @Override
     protected void selectChildAssocsByPropertyValue(Long parentNodeId,
             QName propertyQName, 
@@ -1481,6 +1586,132 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         return template.selectList(SELECT_PARENT_ASSOCS_OF_CHILD, assoc);
     }
 
+    @Override
+    protected List<ChildAssocEntity> selectParentAssocsOfChildren(List<Long> childNodeIds)
+    {
+        IdsEntity idsEntity = new IdsEntity();
+        idsEntity.setIds(childNodeIds);
+        
+        return template.selectList(SELECT_PARENT_ASSOCS_OF_CHILDREN, idsEntity);
+    }
+
+    @Override
+    protected void insertNodeAncestorSelf(Long nodeId)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        template.insert(INSERT_NODE_ANCESTOR_SELF, params);
+    }
+
+    @Override
+    protected int insertNodeAncestors(Long nodeId, Long parentNodeId)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        params.put("parentNodeId", parentNodeId);
+        return template.insert(INSERT_NODE_ANCESTORS_OF_PARENT, params);
+    }
+
+    @Override
+    protected int insertNodeAncestorsOfMovedNodes(Long nodeId, Long parentNodeId, List<Long> movedNodeIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(5);
+        params.put("nodeId", nodeId);
+        params.put("parentNodeId", parentNodeId);
+        params.put("nodeIds", movedNodeIds);
+        return template.insert(INSERT_NODE_ANCESTORS_OF_MOVED_NODES, params);
+    }
+
+    @Override
+    protected int insertNodeAncestorStoreRoots()
+    {
+        return template.insert(INSERT_NODE_ANCESTOR_STORE_ROOTS, Collections.emptyMap());
+    }
+
+    @Override
+    protected int insertNodeAncestorsOfChildren(List<Long> parentNodeIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("parentNodeIds", parentNodeIds);
+        params.put("true", Boolean.TRUE);
+        return template.insert(INSERT_NODE_ANCESTORS_OF_CHILDREN, params);
+    }
+
+    @Override
+    protected int insertNodeAncestorSelves(List<Long> parentNodeIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("parentNodeIds", parentNodeIds);
+        return template.insert(INSERT_NODE_ANCESTOR_SELVES, params);
+    }
+
+    @Override
+    protected List<Long> selectNodeAncestorStoreRootIds()
+    {
+        return template.selectList(SELECT_NODE_ANCESTOR_STORE_ROOT_IDS);
+    }
+
+    @Override
+    protected List<Long> selectNodeAncestorPrimaryChildIds(List<Long> parentNodeIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("parentNodeIds", parentNodeIds);
+        params.put("true", Boolean.TRUE);
+        return template.selectList(SELECT_NODE_ANCESTOR_PRIMARY_CHILD_IDS, params);
+    }
+
+    @Override
+    protected List<ChildAssocEntity> selectNodeAncestorPrimaryAssocs(Long nodeId)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        params.put("true", Boolean.TRUE);
+        return template.selectList(SELECT_NODE_ANCESTOR_PRIMARY_ASSOCS, params);
+    }
+
+    @Override
+    protected List<Long> selectNodeAncestorIds(Long nodeId)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        return template.selectList(SELECT_NODE_ANCESTOR_IDS, params);
+    }
+
+    @Override
+    protected List<Long> selectNodeAncestorDescendantIds(Long nodeId, Long minNodeId, int maxResults)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        params.put("minNodeId", minNodeId);
+        return template.selectList(SELECT_NODE_ANCESTOR_DESCENDANT_IDS, params, new RowBounds(0, maxResults));
+    }
+
+    @Override
+    protected int deleteNodeAncestors(List<Long> nodeIds, List<Long> ancestorIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeIds", nodeIds);
+        params.put("ancestorIds", ancestorIds);
+        return template.delete(DELETE_NODE_ANCESTORS, params);
+    }
+
+    @Override
+    protected int deleteNodeAncestorsAbove(Long nodeId, List<Long> nodeIds)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        params.put("nodeIds", nodeIds);
+        return template.delete(DELETE_NODE_ANCESTORS_ABOVE, params);
+    }
+
+    @Override
+    protected int deleteNodeAncestorsOfSubtree(Long nodeId)
+    {
+        Map<String, Object> params = new HashMap<String, Object>(3);
+        params.put("nodeId", nodeId);
+        return template.delete(DELETE_NODE_ANCESTORS_OF_SUBTREE, params);
+    }
+
     @Override
     protected int updatePrimaryParentAssocs(
             Long childNodeId,
@@ -1796,6 +2027,30 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
         {
             template.delete(DELETE_SUBSCRIPTIONS, nodeId);
         }
+
+        /**
+         * SQL Server does not accept <tt>WITH RECURSIVE</tt>, so the path is resolved one level at a time.
+         */
+        @Override
+        protected List<ChildAssocEntity> selectChildAssocsByNamePath(
+                Long parentNodeId,
+                QName assocTypeQName,
+                List<String> childNames)
+        {
+            List<ChildAssocEntity> assocs = new ArrayList<ChildAssocEntity>(childNames.size());
+            Long currentParentNodeId = parentNodeId;
+            for (String childName : childNames)
+            {
+                ChildAssocEntity assoc = selectChildAssoc(currentParentNodeId, assocTypeQName, childName);
+                if (assoc == null)
+                {
+                    break;
+                }
+                assocs.add(assoc);
+                currentParentNodeId = assoc.getChildNode().getId();
+            }
+            return assocs;
+        }
     }
     
     /**
@@ -1804,6 +2059,8 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
     public static class MySQL extends NodeDAOImpl
     {
         private static final String DELETE_TXNS_UNUSED_MYSQL = "alfresco.node.delete_Txns_Unused_MySQL";
+        private static final String DELETE_NODE_ANCESTORS_ABOVE_MYSQL = "alfresco.node.delete_NodeAncestorsAbove_MySQL";
+        private static final String DELETE_NODE_ANCESTORS_OF_SUBTREE_MYSQL = "alfresco.node.delete_NodeAncestorsOfSubtree_MySQL";
 
         private SqlSessionTemplate template;
         
@@ -1822,6 +2079,24 @@ public class NodeDAOImpl extends AbstractNodeDAOImpl
             int numDeleted = template.delete(DELETE_TXNS_UNUSED_MYSQL, txnQuery);
             return numDeleted;
         }
+
+        @Override
+        protected int deleteNodeAncestorsOfSubtree(Long nodeId)
+        {
+            // MySQL can't delete from a table that the where clause selects from, but can join it to itself
+            Map<String, Object> params = new HashMap<String, Object>(3);
+            params.put("nodeId", nodeId);
+            return template.delete(DELETE_NODE_ANCESTORS_OF_SUBTREE_MYSQL, params);
+        }
+
+        @Override
+        protected int deleteNodeAncestorsAbove(Long nodeId, List<Long> nodeIds)
+        {
+            Map<String, Object> params = new HashMap<String, Object>(3);
+            params.put("nodeId", nodeId);
+            params.put("nodeIds", nodeIds);
+            return template.delete(DELETE_NODE_ANCESTORS_ABOVE_MYSQL, params);
+        }
     }
     
     /**
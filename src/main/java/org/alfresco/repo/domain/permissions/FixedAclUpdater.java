@@ -30,10 +30,19 @@ import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.batch.BatchProcessWorkProvider;
@@ -52,6 +61,7 @@ import org.alfresco.repo.security.permissions.PermissionServicePolicies.OnInheri
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transaction.TransactionListenerAdapter;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
@@ -66,15 +76,20 @@ import org.springframework.context.ApplicationContextAware;
 
 /**
  * Finds nodes with ASPECT_PENDING_FIX_ACL aspect and sets fixed ACLs for them
+ * <p>
+ * Optionally, each page of pending nodes is grouped into disjoint subtrees so that the worker threads never
+ * update nested pending nodes concurrently, and pending nodes that are being read are moved to the front of the
+ * queue. Progress is exposed through {@link FixedAclUpdaterMBean}.
  * 
  * @author Andreea Dragoi
  * @author sglover
  * @since 4.2.7
  */
-public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware
+public class FixedAclUpdater extends TransactionListenerAdapter implements ApplicationContextAware, FixedAclUpdaterMBean
 {
     private static final Log log = LogFactory.getLog(FixedAclUpdater.class);
     private static final Set<QName> PENDING_FIX_ACL_ASPECT_PROPS = pendingFixAclAspectProps();
+    private static final String KEY_PROCESSED_NODE_COUNT = FixedAclUpdater.class.getName() + ".processedNodeCount";
 
     public static final String FIXED_ACL_ASYNC_REQUIRED_KEY = "FIXED_ACL_ASYNC_REQUIRED";
     public static final String FIXED_ACL_ASYNC_CALL_KEY = "FIXED_ACL_ASYNC_CALL";
@@ -90,6 +105,20 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
     private int maxItemBatchSize = 100;
     private int numThreads = 4;
+    private boolean groupSubtrees = false;
+    private int maxAncestorDepth = 64;
+    private boolean prioritiseReadNodes = false;
+    private int maxPrioritisedNodes = 1000;
+
+    /** Pending nodes that have been read since they were queued, in the order they were read */
+    private final Set<NodeRef> prioritisedNodes = new LinkedHashSet<>();
+
+    private volatile boolean running;
+    private volatile long runStartTime;
+    private volatile long runEndTime;
+    private volatile int estimatedWorkSize;
+    private final AtomicLong processedNodeCount = new AtomicLong();
+    private final AtomicLong totalProcessedNodeCount = new AtomicLong();
 
     private ClassPolicyDelegate<OnInheritPermissionsDisabled> onInheritPermissionsDisabledDelegate;    
     private PolicyComponent policyComponent;    
@@ -147,6 +176,161 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         this.policyIgnoreUtil = policyIgnoreUtil;
     }
 
+    /**
+     * @param groupSubtrees
+     *            <tt>true</tt> to process each page of pending nodes as disjoint subtrees spread over the worker
+     *            threads, with nested pending nodes handled after their ancestor in the same transaction
+     *            (default: <tt>false</tt>)
+     * @since 7.0
+     */
+    public void setGroupSubtrees(boolean groupSubtrees)
+    {
+        this.groupSubtrees = groupSubtrees;
+    }
+
+    /**
+     * @param maxAncestorDepth
+     *            the number of primary parents to visit when looking for a pending ancestor (default: 64)
+     * @since 7.0
+     */
+    public void setMaxAncestorDepth(int maxAncestorDepth)
+    {
+        this.maxAncestorDepth = maxAncestorDepth;
+    }
+
+    /**
+     * @param prioritiseReadNodes
+     *            <tt>true</tt> to process pending nodes that are read, or whose children are read, ahead of the
+     *            remaining work (default: <tt>false</tt>)
+     * @since 7.0
+     */
+    public void setPrioritiseReadNodes(boolean prioritiseReadNodes)
+    {
+        this.prioritiseReadNodes = prioritiseReadNodes;
+    }
+
+    /**
+     * @since 7.0
+     */
+    public boolean isPrioritiseReadNodes()
+    {
+        return prioritiseReadNodes;
+    }
+
+    /**
+     * @param maxPrioritisedNodes
+     *            the maximum number of nodes waiting to be prioritised; further requests are dropped
+     *            (default: 1000)
+     * @since 7.0
+     */
+    public void setMaxPrioritisedNodes(int maxPrioritisedNodes)
+    {
+        this.maxPrioritisedNodes = maxPrioritisedNodes;
+    }
+
+    /**
+     * Ask for a node with ASPECT_PENDING_FIX_ACL to be processed ahead of the remaining work. The request is taken
+     * up by the current run, or by the next one if no run is active. Nodes that are no longer pending by then are
+     * skipped.
+     * 
+     * @param nodeRef
+     *            a node with ASPECT_PENDING_FIX_ACL
+     * @since 7.0
+     */
+    public void prioritise(NodeRef nodeRef)
+    {
+        if (!prioritiseReadNodes)
+        {
+            return;
+        }
+        synchronized (prioritisedNodes)
+        {
+            if (prioritisedNodes.size() < maxPrioritisedNodes)
+            {
+                prioritisedNodes.add(nodeRef);
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    @Override
+    public Date getRunStartTime()
+    {
+        long startTime = runStartTime;
+        return startTime == 0 ? null : new Date(startTime);
+    }
+
+    @Override
+    public Date getRunEndTime()
+    {
+        long endTime = runEndTime;
+        return endTime == 0 ? null : new Date(endTime);
+    }
+
+    @Override
+    public long getProcessedNodeCount()
+    {
+        return processedNodeCount.get();
+    }
+
+    @Override
+    public long getTotalProcessedNodeCount()
+    {
+        return totalProcessedNodeCount.get();
+    }
+
+    @Override
+    public long getEstimatedPendingNodeCount()
+    {
+        if (!running)
+        {
+            return 0;
+        }
+        return Math.max(0, estimatedWorkSize - processedNodeCount.get());
+    }
+
+    @Override
+    public double getThroughput()
+    {
+        long startTime = runStartTime;
+        if (startTime == 0)
+        {
+            return 0.0;
+        }
+        long endTime = running ? System.currentTimeMillis() : runEndTime;
+        long elapsed = Math.max(1, endTime - startTime);
+        return processedNodeCount.get() * 1000.0 / elapsed;
+    }
+
+    @Override
+    public long getEstimatedSecondsRemaining()
+    {
+        if (!running)
+        {
+            return 0;
+        }
+        double throughput = getThroughput();
+        if (throughput <= 0.0)
+        {
+            return -1;
+        }
+        return (long) Math.ceil(getEstimatedPendingNodeCount() / throughput);
+    }
+
+    @Override
+    public int getPrioritisedNodeCount()
+    {
+        synchronized (prioritisedNodes)
+        {
+            return prioritisedNodes.size();
+        }
+    }
+
     public void init()
     {
         onInheritPermissionsDisabledDelegate = policyComponent.registerClassPolicy(PermissionServicePolicies.OnInheritPermissionsDisabled.class);
@@ -206,9 +390,35 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
     }
 
-    private class AclWorkProvider implements BatchProcessWorkProvider<NodeRef>
+    /**
+     * Pending nodes that are processed together, ancestors before their descendants
+     */
+    private static class PendingSubtree
+    {
+        private final NodeRef rootNodeRef;
+        private final List<NodeRef> nodeRefs = new ArrayList<>(1);
+
+        PendingSubtree(NodeRef rootNodeRef)
+        {
+            this.rootNodeRef = rootNodeRef;
+            this.nodeRefs.add(rootNodeRef);
+        }
+
+        NodeRef getRootNodeRef()
+        {
+            return rootNodeRef;
+        }
+
+        List<NodeRef> getNodeRefs()
+        {
+            return nodeRefs;
+        }
+    }
+
+    private class AclWorkProvider implements BatchProcessWorkProvider<PendingSubtree>
     {
         private GetNodesWithAspects getNodesWithAspects;
+        private LinkedList<PendingSubtree> bufferedWork = new LinkedList<>();
 
         AclWorkProvider()
         {
@@ -223,13 +433,155 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
 
         @Override
-        public Collection<NodeRef> getNextWork()
+        public Collection<PendingSubtree> getNextWork()
+        {
+            List<PendingSubtree> work = takePrioritisedNodes();
+            if (!work.isEmpty())
+            {
+                return work;
+            }
+
+            if (bufferedWork.isEmpty())
+            {
+                List<NodeRef> nodes = new ArrayList<>(getNodesWithAspects.getNodesWithAspects());
+                if (groupSubtrees && nodes.size() > 1)
+                {
+                    bufferedWork.addAll(groupIntoSubtrees(nodes));
+                }
+                else
+                {
+                    for (NodeRef nodeRef : nodes)
+                    {
+                        bufferedWork.add(new PendingSubtree(nodeRef));
+                    }
+                }
+            }
+
+            // Hand out smaller chunks when prioritising, so that nodes that are read get a look in between them
+            int chunkSize = prioritiseReadNodes ? Math.max(1, maxItemBatchSize / Math.max(1, numThreads)) : bufferedWork.size();
+            work = new ArrayList<>(Math.min(chunkSize, bufferedWork.size()));
+            while (!bufferedWork.isEmpty() && work.size() < chunkSize)
+            {
+                work.add(bufferedWork.removeFirst());
+            }
+            return work;
+        }
+
+        private List<PendingSubtree> takePrioritisedNodes()
         {
-            return getNodesWithAspects.getNodesWithAspects();
+            synchronized (prioritisedNodes)
+            {
+                if (prioritisedNodes.isEmpty())
+                {
+                    return Collections.emptyList();
+                }
+                List<PendingSubtree> work = new ArrayList<>(prioritisedNodes.size());
+                for (NodeRef nodeRef : prioritisedNodes)
+                {
+                    work.add(new PendingSubtree(nodeRef));
+                }
+                prioritisedNodes.clear();
+                if (log.isDebugEnabled())
+                {
+                    log.debug(String.format("Prioritising %d pending nodes", work.size()));
+                }
+                return work;
+            }
+        }
+
+        /**
+         * Group a page of pending nodes by their top-most pending ancestor within the page
+         */
+        private List<PendingSubtree> groupIntoSubtrees(final List<NodeRef> nodes)
+        {
+            return transactionService.getRetryingTransactionHelper()
+                    .doInTransaction(new RetryingTransactionCallback<List<PendingSubtree>>()
+                    {
+                        @Override
+                        public List<PendingSubtree> execute() throws Throwable
+                        {
+                            Set<NodeRef> page = new HashSet<>(nodes);
+                            Map<NodeRef, NodeRef> pendingAncestors = new HashMap<>();
+                            for (NodeRef nodeRef : nodes)
+                            {
+                                NodeRef pendingAncestor = getPendingAncestor(nodeRef, page);
+                                if (pendingAncestor != null)
+                                {
+                                    pendingAncestors.put(nodeRef, pendingAncestor);
+                                }
+                            }
+
+                            Map<NodeRef, PendingSubtree> subtrees = new LinkedHashMap<>();
+                            final Map<NodeRef, Integer> depths = new HashMap<>();
+                            for (NodeRef nodeRef : nodes)
+                            {
+                                NodeRef rootNodeRef = nodeRef;
+                                int depth = 0;
+                                while (pendingAncestors.containsKey(rootNodeRef) && depth < nodes.size())
+                                {
+                                    rootNodeRef = pendingAncestors.get(rootNodeRef);
+                                    depth++;
+                                }
+                                depths.put(nodeRef, depth);
+                                PendingSubtree subtree = subtrees.get(rootNodeRef);
+                                if (subtree == null)
+                                {
+                                    subtree = new PendingSubtree(rootNodeRef);
+                                    subtrees.put(rootNodeRef, subtree);
+                                }
+                                if (!nodeRef.equals(rootNodeRef))
+                                {
+                                    subtree.getNodeRefs().add(nodeRef);
+                                }
+                            }
+
+                            Comparator<NodeRef> byDepth = new Comparator<NodeRef>()
+                            {
+                                @Override
+                                public int compare(NodeRef nodeRef1, NodeRef nodeRef2)
+                                {
+                                    return Integer.compare(depths.get(nodeRef1), depths.get(nodeRef2));
+                                }
+                            };
+                            for (PendingSubtree subtree : subtrees.values())
+                            {
+                                Collections.sort(subtree.getNodeRefs(), byDepth);
+                            }
+
+                            if (log.isDebugEnabled())
+                            {
+                                log.debug(String.format("Grouped %d pending nodes into %d subtrees", nodes.size(), subtrees.size()));
+                            }
+                            return new ArrayList<>(subtrees.values());
+                        }
+                    }, true, true);
+        }
+
+        /**
+         * @return the nearest primary ancestor of the node that is one of the given candidates, or <tt>null</tt>
+         */
+        private NodeRef getPendingAncestor(NodeRef nodeRef, Set<NodeRef> candidates)
+        {
+            Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+            for (int depth = 0; nodePair != null && depth < maxAncestorDepth; depth++)
+            {
+                Pair<Long, ChildAssociationRef> parentAssoc = nodeDAO.getPrimaryParentAssoc(nodePair.getFirst());
+                if (parentAssoc == null || parentAssoc.getSecond().getParentRef() == null)
+                {
+                    return null;
+                }
+                NodeRef parentNodeRef = parentAssoc.getSecond().getParentRef();
+                if (candidates.contains(parentNodeRef))
+                {
+                    return parentNodeRef;
+                }
+                nodePair = nodeDAO.getNodePair(parentNodeRef);
+            }
+            return null;
         }
     }
 
-    private class AclWorker implements BatchProcessor.BatchProcessWorker<NodeRef>
+    private class AclWorker implements BatchProcessor.BatchProcessWorker<PendingSubtree>
     {
         private Set<QName> aspects = new HashSet<>(1);
 
@@ -238,9 +590,9 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
             aspects.add(ContentModel.ASPECT_PENDING_FIX_ACL);
         }
 
-        public String getIdentifier(NodeRef nodeRef)
+        public String getIdentifier(PendingSubtree subtree)
         {
-            return String.valueOf(nodeRef.toString());
+            return String.valueOf(subtree.getRootNodeRef().toString());
         }
 
         public void beforeProcess() throws Throwable
@@ -251,18 +603,36 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         {
         }
 
-        public void process(final NodeRef nodeRef) throws Throwable
+        public void process(PendingSubtree subtree) throws Throwable
+        {
+            for (NodeRef nodeRef : subtree.getNodeRefs())
+            {
+                process(nodeRef);
+            }
+        }
+
+        private void process(final NodeRef nodeRef) throws Throwable
         {
             RunAsWork<Void> findAndUpdateAclRunAsWork = new RunAsWork<Void>()
             {
                 @Override
                 public Void doWork() throws Exception
                 {
+                    Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+                    if (nodePair == null || !nodeDAO.hasNodeAspect(nodePair.getFirst(), ContentModel.ASPECT_PENDING_FIX_ACL))
+                    {
+                        // Deleted, or already processed after being prioritised
+                        if (log.isDebugEnabled())
+                        {
+                            log.debug(String.format("Node no longer pending %s", nodeRef));
+                        }
+                        return null;
+                    }
                     if (log.isDebugEnabled())
                     {
                         log.debug(String.format("Processing node %s", nodeRef));
                     }
-                    final Long nodeId = nodeDAO.getNodePair(nodeRef).getFirst();
+                    final Long nodeId = nodePair.getFirst();
 
                     // retrieve acl properties from node
                     Long inheritFrom = (Long) nodeDAO.getNodeProperty(nodeId,
@@ -285,6 +655,8 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
                         onInheritPermissionsDisabledPolicy.onInheritPermissionsDisabled(nodeRef, transformedToAsyncOperation);
                     }
 
+                    countProcessedNode();
+
                     if (log.isDebugEnabled())
                     {
                         log.debug(String.format("Node processed %s", nodeRef));
@@ -297,6 +669,30 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
 
             AuthenticationUtil.runAs(findAndUpdateAclRunAsWork, AuthenticationUtil.getSystemUserName());
         }
+
+        /**
+         * Count processed nodes once the batch transaction has committed, so that retries are not counted twice
+         */
+        private void countProcessedNode()
+        {
+            AtomicInteger txnCount = AlfrescoTransactionSupport.getResource(KEY_PROCESSED_NODE_COUNT);
+            if (txnCount == null)
+            {
+                final AtomicInteger count = new AtomicInteger();
+                AlfrescoTransactionSupport.bindResource(KEY_PROCESSED_NODE_COUNT, count);
+                AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
+                {
+                    @Override
+                    public void afterCommit()
+                    {
+                        processedNodeCount.addAndGet(count.get());
+                        totalProcessedNodeCount.addAndGet(count.get());
+                    }
+                });
+                txnCount = count;
+            }
+            txnCount.incrementAndGet();
+        }
     };
 
     private class GetNodesWithAspectCallback implements NodeRefQueryCallback
@@ -384,21 +780,36 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
     {
         String lockToken = null;
         FixedAclUpdaterJobLockRefreshCallback jobLockRefreshCallback = new FixedAclUpdaterJobLockRefreshCallback();
+        boolean started = false;
 
         try
         {
             lockToken = jobLockService.getLock(lockQName, lockTimeToLive, 0, 1);
             jobLockService.refreshLock(lockToken, lockQName, lockRefreshTime, jobLockRefreshCallback);
 
+            processedNodeCount.set(0);
+            runEndTime = 0;
+            runStartTime = System.currentTimeMillis();
+            running = true;
+            started = true;
+
             AclWorkProvider provider = new AclWorkProvider();
+            estimatedWorkSize = provider.getTotalEstimatedWorkSize();
             AclWorker worker = new AclWorker();
-            BatchProcessor<NodeRef> bp = new BatchProcessor<>(
+            boolean workStealing = groupSubtrees || prioritiseReadNodes;
+            BatchProcessor<PendingSubtree> bp = new BatchProcessor<>(
                     "FixedAclUpdater",
                     transactionService.getRetryingTransactionHelper(),
                     provider,
-                    numThreads, maxItemBatchSize,
+                    numThreads, workStealing ? Math.max(1, maxItemBatchSize / Math.max(1, numThreads)) : maxItemBatchSize,
                     applicationContext,
                     log, 100);
+            if (workStealing)
+            {
+                // Keeps the number of queued batches low so that prioritised nodes are picked up quickly
+                bp.setWorkStealing(true);
+                bp.setMaxBatchSize(maxItemBatchSize);
+            }
             int count = bp.process(worker, true);
             return count;
         }
@@ -409,6 +820,11 @@ public class FixedAclUpdater extends TransactionListenerAdapter implements Appli
         }
         finally
         {
+            if (started)
+            {
+                running = false;
+                runEndTime = System.currentTimeMillis();
+            }
             jobLockRefreshCallback.isActive.set(false);
             if(lockToken != null)
             {
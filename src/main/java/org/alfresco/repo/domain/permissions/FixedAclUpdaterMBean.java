@@ -0,0 +1,84 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.permissions;
+
+import java.util.Date;
+
+/**
+ * Progress of the {@link FixedAclUpdater}. The counts refer to the current run, or to the last run if none is active.
+ * 
+ * @since 7.0
+ */
+public interface FixedAclUpdaterMBean
+{
+    /**
+     * @return <tt>true</tt> if pending nodes are being processed on this server
+     */
+    public boolean isRunning();
+
+    /**
+     * @return the start time of the current or last run, or <tt>null</tt> if there has not been one
+     */
+    public Date getRunStartTime();
+
+    /**
+     * @return the end time of the last run, or <tt>null</tt> if a run is active or there has not been one
+     */
+    public Date getRunEndTime();
+
+    /**
+     * @return the number of pending nodes processed by the current or last run
+     */
+    public long getProcessedNodeCount();
+
+    /**
+     * @return the number of pending nodes processed since startup
+     */
+    public long getTotalProcessedNodeCount();
+
+    /**
+     * Nodes that become pending while the run is active are not included.
+     * 
+     * @return the number of pending nodes left, based on the count taken at the start of the run
+     */
+    public long getEstimatedPendingNodeCount();
+
+    /**
+     * @return the number of pending nodes processed per second by the current or last run
+     */
+    public double getThroughput();
+
+    /**
+     * @return the estimated number of seconds until the current run completes, <tt>0</tt> if no run is active or
+     *         <tt>-1</tt> if it is not known yet
+     */
+    public long getEstimatedSecondsRemaining();
+
+    /**
+     * @return the number of pending nodes waiting to be processed ahead of the remaining work
+     */
+    public int getPrioritisedNodeCount();
+}
@@ -744,6 +744,74 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         return (Pair<Long, Serializable>) entityPair;
     }
 
+    public List<Long> getOrCreatePropertyValues(List<? extends Serializable> values)
+    {
+        Long[] ids = new Long[values.size()];
+        // Values that can be looked up but are not in the cache
+        List<Integer> missingIndexes = new ArrayList<Integer>(values.size());
+        List<Serializable> missingValues = new ArrayList<Serializable>(values.size());
+        for (int i = 0; i < ids.length; i++)
+        {
+            Serializable value = values.get(i);
+            Serializable valueKey = (value == null) ? null : propertyValueCallback.getValueKey(value);
+            if (valueKey == null)
+            {
+                // Nulls are always cached and pure Serializables cannot be looked up
+                ids[i] = getOrCreatePropertyValue(value).getFirst();
+                continue;
+            }
+            Long id = propertyValueCache.getKey(valueKey);
+            if (id != null)
+            {
+                ids[i] = id;
+            }
+            else
+            {
+                missingIndexes.add(i);
+                missingValues.add(value);
+            }
+        }
+        if (missingValues.isEmpty())
+        {
+            return Arrays.asList(ids);
+        }
+        
+        // Look up everything that was missed together and only create what is really missing
+        List<PropertyValueEntity> entities = findPropertyValuesByValues(missingValues);
+        // Values created here, by value key, as the cache may be missing
+        Map<Serializable, Long> createdIds = new HashMap<Serializable, Long>();
+        for (int i = 0; i < missingValues.size(); i++)
+        {
+            Serializable value = missingValues.get(i);
+            PropertyValueEntity entity = entities.get(i);
+            Long id;
+            if (entity != null)
+            {
+                id = entity.getId();
+            }
+            else
+            {
+                // It may have been created for a duplicate earlier in the list
+                Serializable valueKey = propertyValueCallback.getValueKey(value);
+                id = createdIds.get(valueKey);
+                if (id == null)
+                {
+                    id = propertyValueCallback.createValue(value).getFirst();
+                    createdIds.put(valueKey, id);
+                }
+            }
+            propertyValueCache.setValue(id, value);
+            ids[missingIndexes.get(i)] = id;
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug(
+                    "Resolved " + values.size() + " property values: " +
+                    missingValues.size() + " not cached, " + createdIds.size() + " created.");
+        }
+        return Arrays.asList(ids);
+    }
+
     /**
      * Callback for <b>alf_prop_value</b> DAO.
      */
@@ -834,6 +902,23 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
     protected abstract PropertyValueEntity findPropertyValueById(Long id);
     protected abstract PropertyValueEntity findPropertyValueByValue(Serializable value);
     protected abstract PropertyValueEntity createPropertyValue(Serializable value);
+    
+    /**
+     * Find several property values.  The default implementation looks up each value on its own.
+     * 
+     * @param values            the values to find (never <tt>null</tt> and never pure Serializables)
+     * @return                  the entities in the same order as the values, with <tt>null</tt> for values that don't exist
+     * @since 7.0
+     */
+    protected List<PropertyValueEntity> findPropertyValuesByValues(List<Serializable> values)
+    {
+        List<PropertyValueEntity> entities = new ArrayList<PropertyValueEntity>(values.size());
+        for (Serializable value : values)
+        {
+            entities.add(findPropertyValueByValue(value));
+        }
+        return entities;
+    }
 
     //================================
     // 'alf_prop_root' accessors
@@ -890,7 +975,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         {
             // We will need a new root
             Long rootPropId = createPropertyRoot();
-            createPropertyImpl(rootPropId, 0L, 0L, null, value);
+            createPropertyLinks(rootPropId, value);
             // Done
             if (logger.isDebugEnabled())
             {
@@ -932,7 +1017,7 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             // Remove all links using the root
             deletePropertyLinks(key);
             // Create the new properties and update the cache
-            createPropertyImpl(key, 0L, 0L, null, value);
+            createPropertyLinks(key, value);
             // Update the property root to detect concurrent modification
             updatePropertyRoot(entity);
             // Done
@@ -961,8 +1046,60 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
         }
     }
 
+    /**
+     * Explode a value into the links of a property root.  All the values needed are resolved
+     * up front in one go, and the links are then written together.
+     */
+    private void createPropertyLinks(Long rootPropId, Serializable value)
+    {
+        List<Serializable> values = new ArrayList<Serializable>();
+        collectPropertyValues(value, values);
+        if (values.size() > 1)
+        {
+            getOrCreatePropertyValues(values);
+        }
+        List<PropertyLinkEntity> links = new ArrayList<PropertyLinkEntity>(values.size());
+        createPropertyImpl(rootPropId, 0L, 0L, null, value, links);
+        createPropertyLinks(links);
+    }
+    
+    /**
+     * Gather the values that {@link #createPropertyImpl} will need IDs for
+     */
+    @SuppressWarnings("unchecked")
+    private void collectPropertyValues(Serializable value, List<Serializable> values)
+    {
+        Serializable emptyInstance = null;
+        if (value instanceof Map<?, ?> || value instanceof Collection<?>)
+        {
+            emptyInstance = constructEmptyContainer(value.getClass());
+        }
+        if (emptyInstance == null)
+        {
+            values.add(value);
+        }
+        else if (value instanceof Map<?, ?>)
+        {
+            values.add(emptyInstance);
+            for (Map.Entry<Serializable, Serializable> entry : ((Map<Serializable, Serializable>) value).entrySet())
+            {
+                values.add(entry.getKey());
+                collectPropertyValues(entry.getValue(), values);
+            }
+        }
+        else
+        {
+            values.add(emptyInstance);
+            for (Serializable collectionValue : (Collection<Serializable>) value)
+            {
+                collectPropertyValues(collectionValue, values);
+            }
+        }
+    }
+
     /**
      * @param propIndex         a unique index within the context of the current property root
+     * @param links             the links to write, to which this value's links are added
      */
     @SuppressWarnings("unchecked")
     private long createPropertyImpl(
@@ -970,7 +1107,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             long propIndex,
             long containedIn,
             Long keyPropId,
-            Serializable value)
+            Serializable value,
+            List<PropertyLinkEntity> links)
     {
         // Keep track of the index for this property.  It gets used later when making the link entry.
         long thisPropIndex = propIndex;
@@ -1008,7 +1146,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
                             propIndex + 1L,
                             thisPropIndex,
                             mapKeyId,
-                            mapValue);
+                            mapValue,
+                            links);
                 }
             }
         }
@@ -1035,7 +1174,8 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
                             propIndex + 1L,
                             thisPropIndex,
                             null,
-                            collectionValue);
+                            collectionValue,
+                            links);
                 }
             }
         }
@@ -1051,7 +1191,13 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             // If the key matches the value then it is the root
             keyPropId = valuePropId;
         }
-        createPropertyLink(rootPropId, thisPropIndex, containedIn, keyPropId, valuePropId);
+        PropertyLinkEntity link = new PropertyLinkEntity();
+        link.setRootPropId(rootPropId);
+        link.setPropIndex(thisPropIndex);
+        link.setContainedIn(containedIn);
+        link.setKeyPropId(keyPropId);
+        link.setValuePropId(valuePropId);
+        links.add(link);
         
         // Done
         return propIndex;
@@ -1121,6 +1267,26 @@ public abstract class AbstractPropertyValueDAOImpl implements PropertyValueDAO
             Long keyPropId,
             Long valuePropId);
     
+    /**
+     * Create the entries for all the links of a property root.  The default implementation
+     * creates each link on its own.
+     * 
+     * @param links                 the links to create
+     * @since 7.0
+     */
+    protected void createPropertyLinks(List<PropertyLinkEntity> links)
+    {
+        for (PropertyLinkEntity link : links)
+        {
+            createPropertyLink(
+                    link.getRootPropId(),
+                    link.getPropIndex(),
+                    link.getContainedIn(),
+                    link.getKeyPropId(),
+                    link.getValuePropId());
+        }
+    }
+    
     /**
      * Remove all property links for a given property root.
      * 
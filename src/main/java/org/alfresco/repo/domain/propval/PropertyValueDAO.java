@@ -210,6 +210,19 @@ public interface PropertyValueDAO
      * @param value             the value to find the ID for (may be <tt>null</tt>)
      */
     Pair<Long, Serializable> getOrCreatePropertyValue(Serializable value);
+    /**
+     * Use for accessing unique properties; see interface comments.
+     * <p/>
+     * <b>alf_prop_value</b> accessor: find or create several properties at once.  Values
+     * missing from the caches are looked up together and only those that do not exist
+     * yet are created.  As with {@link #getOrCreatePropertyValue(Serializable)}, maps and
+     * collections are not recursed into.
+     * 
+     * @param values            the values to find the IDs for (may contain <tt>null</tt>)
+     * @return                  Returns the IDs in the same order as the values
+     * @since 7.0
+     */
+    List<Long> getOrCreatePropertyValues(List<? extends Serializable> values);
     
     //================================
     // 'alf_prop_root' accessors
@@ -26,6 +26,7 @@
 package org.alfresco.repo.domain.propval.ibatis;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -86,6 +87,7 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
     private static final String SELECT_PROPERTY_VALUE_BY_LOCAL_VALUE = "alfresco.propval.select_PropertyValueByLocalValue";
     private static final String SELECT_PROPERTY_VALUE_BY_DOUBLE_VALUE = "alfresco.propval.select_PropertyValueByDoubleValue";
     private static final String SELECT_PROPERTY_VALUE_BY_STRING_VALUE = "alfresco.propval.select_PropertyValueByStringValue";
+    private static final String SELECT_PROPERTY_VALUES_BY_STRING_VALUES = "alfresco.propval.select_PropertyValuesByStringValues";
     private static final String INSERT_PROPERTY_VALUE = "alfresco.propval.insert.insert_PropertyValue";
     
     private static final String SELECT_PROPERTY_BY_ID = "alfresco.propval.select_PropertyById";
@@ -103,6 +105,10 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
     private static final String DELETE_PROPERTY_UNIQUE_CTX_BY_VALUES = "alfresco.propval.delete_PropertyUniqueContextByValues";
     
     private static final String INSERT_PROPERTY_LINK = "alfresco.propval.insert_PropertyLink";
+    private static final String INSERT_PROPERTY_LINKS = "alfresco.propval.insert_PropertyLinks";
+    
+    /** The number of values or links handled by one multi-value statement */
+    private static final int MAX_VALUES_PER_STATEMENT = 100;
     private static final String DELETE_PROPERTY_LINKS_BY_ROOT_ID = "alfresco.propval.delete_PropertyLinksByRootId";
     
     
@@ -410,6 +416,68 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
         return result;
     }
     
+    /**
+     * Values stored as strings are looked up with one query per chunk; the rest are looked up one at a time.
+     */
+    @Override
+    protected List<PropertyValueEntity> findPropertyValuesByValues(List<Serializable> values)
+    {
+        List<PropertyValueEntity> results = new ArrayList<PropertyValueEntity>(values.size());
+        List<Integer> stringIndexes = new ArrayList<Integer>(values.size());
+        List<PropertyStringQueryEntity> stringQueries = new ArrayList<PropertyStringQueryEntity>(values.size());
+        for (int i = 0; i < values.size(); i++)
+        {
+            Serializable value = values.get(i);
+            results.add(null);
+            Pair<Long, Class<?>> clazzPair = getPropertyClass(value.getClass());
+            if (clazzPair == null)
+            {
+                // Shortcut: There are no properties of this type
+                continue;
+            }
+            PropertyValueEntity queryEntity = new PropertyValueEntity();
+            queryEntity.setValue(value, converter);
+            queryEntity.setActualTypeId(clazzPair.getFirst());
+            switch (queryEntity.getPersistedTypeEnum())
+            {
+            case CONSTRUCTABLE:
+            case ENUM:
+            case STRING:
+                stringIndexes.add(i);
+                stringQueries.add(new PropertyStringQueryEntity(
+                        queryEntity.getPersistedType(),
+                        queryEntity.getActualTypeId(),
+                        queryEntity.getStringValue()));
+                break;
+            default:
+                results.set(i, findPropertyValueByValue(value));
+            }
+        }
+        
+        for (int start = 0; start < stringQueries.size(); start += MAX_VALUES_PER_STATEMENT)
+        {
+            int end = Math.min(start + MAX_VALUES_PER_STATEMENT, stringQueries.size());
+            List<PropertyStringQueryEntity> chunk = stringQueries.subList(start, end);
+            List<PropertyValueEntity> rows = template.selectList(SELECT_PROPERTY_VALUES_BY_STRING_VALUES, chunk);
+            // The CRC can match several strings, so pick the exact match for each query
+            for (int i = start; i < end; i++)
+            {
+                PropertyStringQueryEntity query = stringQueries.get(i);
+                for (PropertyValueEntity row : rows)
+                {
+                    if (query.getPersistedType().equals(row.getPersistedType()) &&
+                            query.getActualTypeId().equals(row.getActualTypeId()) &&
+                            query.getStringValue().equals(row.getStringValue()))
+                    {
+                        results.set(stringIndexes.get(i), row);
+                        break;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+    
     @Override
     protected PropertyValueEntity createPropertyValue(Serializable value)
     {
@@ -694,6 +762,21 @@ public class PropertyValueDAOImpl extends AbstractPropertyValueDAOImpl
         // Done
     }
 
+    @Override
+    protected void createPropertyLinks(List<PropertyLinkEntity> links)
+    {
+        if (links.size() == 1)
+        {
+            template.insert(INSERT_PROPERTY_LINK, links.get(0));
+            return;
+        }
+        for (int start = 0; start < links.size(); start += MAX_VALUES_PER_STATEMENT)
+        {
+            int end = Math.min(start + MAX_VALUES_PER_STATEMENT, links.size());
+            template.insert(INSERT_PROPERTY_LINKS, links.subList(start, end));
+        }
+    }
+
     @Override
     protected int deletePropertyLinks(Long rootPropId)
     {
@@ -29,7 +29,10 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.model.ForumModel;
@@ -48,6 +51,7 @@ import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterCrawlerParameters;
@@ -79,6 +83,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     // Dependencies
     private CheckOutCheckInService checkOutCheckInService;
     private ContentServiceHelper  contentServiceHelper;
+    private ContentService contentService;
     private DownloadStorage downloadStorage;
     private ExporterService exporterService;
     private NodeService nodeService;
@@ -86,6 +91,9 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
     private DownloadStatusUpdateService updateService;
 
     private long maximumContentSize = -1l;
+    private ExecutorService contentPrefetchExecutor;
+    private int contentPrefetchCount = 0;
+    private Set<String> storedMimetypes = new HashSet<String>();
     
     private static class SizeEstimator extends BaseExporter 
     {
@@ -133,6 +141,11 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.contentServiceHelper = contentServiceHelper;
     }
     
+    public void setContentService(ContentService contentService)
+    {
+        this.contentService = contentService;
+    }
+    
     public void setDownloadStorage(DownloadStorage downloadStorage)
     {
         this.downloadStorage = downloadStorage;
@@ -167,6 +180,36 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         this.updateService = updateService;
     }
 
+    public void setContentPrefetchExecutor(ExecutorService contentPrefetchExecutor)
+    {
+        this.contentPrefetchExecutor = contentPrefetchExecutor;
+    }
+
+    /**
+     * Set the number of entries whose content is read and compressed, in parallel, ahead of the one being added to the archive.
+     * 0 (the default) reads and compresses each entry's content as it is added.
+     */
+    public void setContentPrefetchCount(int contentPrefetchCount)
+    {
+        this.contentPrefetchCount = contentPrefetchCount;
+    }
+
+    /**
+     * Set the comma separated mimetypes that are stored in the archive without compression,
+     * because they are already compressed.
+     */
+    public void setStoredMimetypes(String storedMimetypes)
+    {
+        this.storedMimetypes = new HashSet<String>();
+        for (String mimetype : storedMimetypes.split(","))
+        {
+            if (mimetype.trim().length() > 0)
+            {
+                this.storedMimetypes.add(mimetype.trim());
+            }
+        }
+    }
+
     /**
      * Create an archive file containing content from the repository.
      * 
@@ -247,6 +290,8 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         // perform the actual export
         final File tempFile = TempFileProvider.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
         final ZipDownloadExporter handler = new ZipDownloadExporter(tempFile, checkOutCheckInService, nodeService, transactionHelper, updateService, downloadStorage, actionedUponNodeRef, estimator.getSize(), estimator.getFileCount());
+        handler.setStoredMimetypes(storedMimetypes);
+        handler.setContentPrefetch(contentPrefetchExecutor, contentPrefetchCount, contentService);
         
         try {
             exporterService.exportView(handler, crawlerParameters, null);
@@ -258,6 +303,7 @@ public class CreateDownloadArchiveAction extends ActionExecuterAbstractBase
         }
         finally
         {
+            handler.discardPendingEntries();
             tempFile.delete();
         }
     }
@@ -25,15 +25,28 @@
  */
 package org.alfresco.repo.download;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -42,12 +55,15 @@ import org.alfresco.service.cmr.coci.CheckOutCheckInService;
 import org.alfresco.service.cmr.download.DownloadStatus;
 import org.alfresco.service.cmr.download.DownloadStatus.Status;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.view.ExporterContext;
 import org.alfresco.service.cmr.view.ExporterException;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.alfresco.util.TempFileProvider;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream.UnicodeExtraFieldPolicy;
@@ -57,6 +73,14 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Handler for exporting node content to a ZIP file
+ * <p/>
+ * Content with one of the {@link #setStoredMimetypes(Set) stored mimetypes} (images, video, archives, ...)
+ * is added without compression, as deflating it again costs time and saves nothing.
+ * <p/>
+ * When {@link #setContentPrefetch(ExecutorService, int, ContentService) content prefetch} is set, entries are
+ * not written as soon as the export reaches them.  Instead, the content of each entry is read and compressed
+ * on the given executor, while the export moves on to the next entries.  Entries are written in export order
+ * once they have been compressed.
  * 
  * @author Alex Miller
  */
@@ -65,6 +89,9 @@ public class ZipDownloadExporter extends BaseExporter
     private static Logger log = LoggerFactory.getLogger(ZipDownloadExporter.class);
     
     private static final String PATH_SEPARATOR = "/";
+    
+    /** Prefetched content up to this size is held in memory rather than in a temporary file */
+    private static final int PREFETCH_IN_MEMORY_SIZE = 1024 * 1024;
 
     protected ZipArchiveOutputStream zipStream;
 
@@ -82,7 +109,14 @@ public class ZipDownloadExporter extends BaseExporter
     private Deque<Pair<String, NodeRef>> path = new LinkedList<Pair<String, NodeRef>>();
     private String currentName;
 
-    private OutputStream outputStream;
+    private File zipFile;
+
+    private Set<String> storedMimetypes = Collections.emptySet();
+    private ExecutorService prefetchExecutor;
+    private int prefetchCount;
+    private ContentService contentService;
+    private Deque<PendingEntry> pendingEntries = new ArrayDeque<PendingEntry>();
+    private volatile boolean discarded;
 
     /**
      * Construct
@@ -100,27 +134,53 @@ public class ZipDownloadExporter extends BaseExporter
     public ZipDownloadExporter(File zipFile, CheckOutCheckInService checkOutCheckInService, NodeService nodeService, RetryingTransactionHelper transactionHelper, DownloadStatusUpdateService updateService, DownloadStorage downloadStorage, NodeRef downloadNodeRef, long total, long totalFileCount)
     {
         super(checkOutCheckInService, nodeService);
+        this.zipFile = zipFile;
+        this.updateService = updateService;
+        this.transactionHelper = transactionHelper;
+        this.downloadStorage = downloadStorage;
+        
+        this.downloadNodeRef = downloadNodeRef;
+        this.total = total;
+        this.totalFileCount = totalFileCount;
+    }
+
+    /**
+     * Set the mimetypes of content that is already compressed, and is stored in the archive as it is.
+     * 
+     * @since 7.0
+     */
+    public void setStoredMimetypes(Set<String> storedMimetypes)
+    {
+        this.storedMimetypes = storedMimetypes;
+    }
+
+    /**
+     * Read and compress the content of up to <tt>prefetchCount</tt> entries ahead of the one being written.
+     * 
+     * @param prefetchExecutor      reads and compresses the content
+     * @param prefetchCount         the number of entries read ahead; 0 to write each entry as the export reaches it
+     * @param contentService        provides the readers for the content that is read ahead
+     * @since 7.0
+     */
+    public void setContentPrefetch(ExecutorService prefetchExecutor, int prefetchCount, ContentService contentService)
+    {
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchCount = (prefetchExecutor == null || contentService == null) ? 0 : prefetchCount;
+        this.contentService = contentService;
+    }
+
+    @Override
+    public void start(final ExporterContext context)
+    {
         try
         {
-            this.outputStream = new FileOutputStream(zipFile);
-            this.updateService = updateService;
-            this.transactionHelper = transactionHelper;
-            this.downloadStorage = downloadStorage;
-            
-            this.downloadNodeRef = downloadNodeRef;
-            this.total = total;
-            this.totalFileCount = totalFileCount;
+            // Writing to a file allows entries to be stored with their size and CRC filled in afterwards
+            zipStream = new ZipArchiveOutputStream(zipFile);
         }
-        catch (FileNotFoundException e)
+        catch (IOException e)
         {
             throw new ExporterException("Failed to create zip file", e);
         }
-    }
-
-    @Override
-    public void start(final ExporterContext context)
-    {
-        zipStream = new ZipArchiveOutputStream(outputStream);
         // NOTE: This encoding allows us to workaround bug...
         //       http://bugs.sun.com/bugdatabase/view_bug.do;:WuuT?bug_id=4820807
         zipStream.setEncoding("UTF-8");
@@ -137,16 +197,28 @@ public class ZipDownloadExporter extends BaseExporter
         if (ContentModel.TYPE_FOLDER.equals(nodeService.getType(nodeRef)))
         {
             String path = getPath() + PATH_SEPARATOR;
-            ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
-            try
-            {
-                zipStream.putArchiveEntry(archiveEntry);
-                zipStream.closeArchiveEntry();
-            }
-            catch (IOException e)
+            if (prefetchCount > 0)
             {
-                throw new ExporterException("Unexpected IOException adding folder entry", e);
+                // Keep the entries in order
+                pendingEntries.add(new PendingEntry(path, null));
+                writePendingEntries(prefetchCount);
+                return;
             }
+            writeFolderEntry(path);
+        }
+    }
+
+    private void writeFolderEntry(String path)
+    {
+        ZipArchiveEntry archiveEntry = new ZipArchiveEntry(path);
+        try
+        {
+            zipStream.putArchiveEntry(archiveEntry);
+            zipStream.closeArchiveEntry();
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Unexpected IOException adding folder entry", e);
         }
     }
     
@@ -159,10 +231,45 @@ public class ZipDownloadExporter extends BaseExporter
             return;
         }
         
+        if (prefetchCount > 0)
+        {
+            // The export stream is closed by the caller, so the pool reads the content through a reader of its own
+            ContentReader reader = contentService.getReader(nodeRef, property);
+            if (reader != null)
+            {
+                Future<CompressedContent> compressed = prefetchExecutor.submit(new CompressContent(reader, isStored(contentData.getMimetype())));
+                pendingEntries.add(new PendingEntry(getPath(), compressed));
+                writePendingEntries(prefetchCount);
+                return;
+            }
+            // Keep the entries in order
+            writePendingEntries(0);
+        }
+        
+        writeContentEntry(getPath(), contentData.getMimetype(), content);
+    }
+
+    private boolean isStored(String mimetype)
+    {
+        return mimetype != null && storedMimetypes.contains(mimetype);
+    }
+
+    private void writeContentEntry(String path, String mimetype, InputStream content)
+    {
         try
         {
             // ALF-2016
-            ZipArchiveEntry zipEntry=new ZipArchiveEntry(getPath());
+            ZipArchiveEntry zipEntry=new ZipArchiveEntry(path);
+            boolean store = isStored(mimetype);
+            if (zipStream.isSeekable())
+            {
+                zipEntry.setMethod(store ? ZipEntry.STORED : ZipEntry.DEFLATED);
+            }
+            else
+            {
+                // The zip file could not be opened for random access, and stored entries need their size and CRC up front
+                zipStream.setLevel(store ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            }
             zipStream.putArchiveEntry(zipEntry);
             
             // copy export stream to zip
@@ -176,6 +283,124 @@ public class ZipDownloadExporter extends BaseExporter
             throw new ExporterException("Failed to zip export stream", e);
         }
     }
+
+    private void writeCompressedEntry(String path, CompressedContent content)
+    {
+        try
+        {
+            ZipArchiveEntry zipEntry = new ZipArchiveEntry(path);
+            zipEntry.setMethod(content.method);
+            zipEntry.setSize(content.size);
+            zipEntry.setCompressedSize(content.data.getSize());
+            zipEntry.setCrc(content.crc);
+            
+            InputStream in = content.data.getInputStream();
+            try
+            {
+                zipStream.addRawArchiveEntry(zipEntry, in);
+            }
+            finally
+            {
+                in.close();
+            }
+            filesAddedCount = filesAddedCount + 1;
+            done = done + content.size;
+            updateStatus();
+            checkCancelled();
+        }
+        catch (IOException e)
+        {
+            throw new ExporterException("Failed to zip export stream", e);
+        }
+    }
+
+    /**
+     * Write pending entries, in order, until no more than the given number are left
+     */
+    private void writePendingEntries(int maxPending)
+    {
+        boolean written = false;
+        try
+        {
+            while (pendingEntries.size() > maxPending)
+            {
+                PendingEntry entry = pendingEntries.poll();
+                if (entry.compressed == null)
+                {
+                    writeFolderEntry(entry.path);
+                    continue;
+                }
+                CompressedContent content = getCompressedContent(entry);
+                try
+                {
+                    writeCompressedEntry(entry.path, content);
+                }
+                finally
+                {
+                    content.data.release();
+                }
+            }
+            written = true;
+        }
+        finally
+        {
+            if (!written)
+            {
+                discardPendingEntries();
+            }
+        }
+    }
+
+    private CompressedContent getCompressedContent(PendingEntry entry)
+    {
+        try
+        {
+            return entry.compressed.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ExporterException("Interrupted while compressing content for " + entry.path, e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new ExporterException("Failed to compress content for " + entry.path, e.getCause());
+        }
+    }
+
+    /**
+     * Discard the entries that have not been written yet, and release their content.  Used when the export
+     * fails or is cancelled.
+     */
+    void discardPendingEntries()
+    {
+        // Compression that is still running releases its own output once it sees this
+        discarded = true;
+        for (PendingEntry entry : pendingEntries)
+        {
+            if (entry.compressed == null)
+            {
+                continue;
+            }
+            if (entry.compressed.cancel(false))
+            {
+                continue;
+            }
+            try
+            {
+                CompressedContent content = entry.compressed.get();
+                if (content != null)
+                {
+                    content.data.release();
+                }
+            }
+            catch (Exception e)
+            {
+                // Nothing to release
+            }
+        }
+        pendingEntries.clear();
+    }
     
     @Override
     public void endNode(NodeRef nodeRef)
@@ -188,11 +413,18 @@ public class ZipDownloadExporter extends BaseExporter
     {
         try
         {
-            zipStream.close();
+            writePendingEntries(0);
         }
-        catch (IOException error)
+        finally
         {
-            throw new ExporterException("Unexpected error closing zip stream!", error);
+            try
+            {
+                zipStream.close();
+            }
+            catch (IOException error)
+            {
+                throw new ExporterException("Unexpected error closing zip stream!", error);
+            }
         }
     }
 
@@ -219,7 +451,6 @@ public class ZipDownloadExporter extends BaseExporter
         
         return pathBuilder.toString();
     }
-
     /**
      * Copy input stream to output stream
      * 
@@ -306,4 +537,171 @@ public class ZipDownloadExporter extends BaseExporter
     {
         return totalFileCount;
     }
+
+    /**
+     * An entry waiting to be written: a folder when there is no content
+     */
+    private static class PendingEntry
+    {
+        private final String path;
+        private final Future<CompressedContent> compressed;
+
+        private PendingEntry(String path, Future<CompressedContent> compressed)
+        {
+            this.path = path;
+            this.compressed = compressed;
+        }
+    }
+
+    /**
+     * Reads content and compresses it straight into a spool, unless it is stored as it is, working out its CRC
+     */
+    private class CompressContent implements Callable<CompressedContent>
+    {
+        private final ContentReader reader;
+        private final boolean store;
+
+        private CompressContent(ContentReader reader, boolean store)
+        {
+            this.reader = reader;
+            this.store = store;
+        }
+
+        @Override
+        public CompressedContent call() throws Exception
+        {
+            if (discarded)
+            {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            long size = 0L;
+            ContentSpool data = new ContentSpool();
+            try
+            {
+                // Raw deflate data, as the zip entry provides the header and checksum
+                Deflater deflater = store ? null : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                OutputStream out = store ? data : new DeflaterOutputStream(data, deflater);
+                try
+                {
+                    InputStream in = reader.getContentInputStream();
+                    try
+                    {
+                        byte[] buffer = new byte[2048 * 10];
+                        int read;
+                        while (!discarded && (read = in.read(buffer)) != -1)
+                        {
+                            crc.update(buffer, 0, read);
+                            out.write(buffer, 0, read);
+                            size += read;
+                        }
+                    }
+                    finally
+                    {
+                        in.close();
+                    }
+                }
+                finally
+                {
+                    out.close();
+                    if (deflater != null)
+                    {
+                        deflater.end();
+                    }
+                }
+            }
+            catch (IOException | RuntimeException e)
+            {
+                data.release();
+                throw e;
+            }
+            CompressedContent compressed = new CompressedContent(data, store ? ZipEntry.STORED : ZipEntry.DEFLATED, size, crc.getValue());
+            if (discarded)
+            {
+                // Nobody is going to write it
+                data.release();
+                return null;
+            }
+            return compressed;
+        }
+    }
+
+    private static class CompressedContent
+    {
+        private final ContentSpool data;
+        private final int method;
+        private final long size;
+        private final long crc;
+
+        private CompressedContent(ContentSpool data, int method, long size, long crc)
+        {
+            this.data = data;
+            this.method = method;
+            this.size = size;
+            this.crc = crc;
+        }
+    }
+
+    /**
+     * Holds content in memory up to {@link #PREFETCH_IN_MEMORY_SIZE}, and in a temporary file beyond that
+     */
+    private static class ContentSpool extends OutputStream
+    {
+        private ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream out = bytes;
+        private long size;
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            if (file == null && size + len > PREFETCH_IN_MEMORY_SIZE)
+            {
+                file = TempFileProvider.createTempFile("downloadPrefetch", ".bin");
+                out = new FileOutputStream(file);
+                bytes.writeTo(out);
+                bytes = null;
+            }
+            out.write(b, off, len);
+            size += len;
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+        }
+
+        private long getSize()
+        {
+            return size;
+        }
+
+        private InputStream getInputStream() throws IOException
+        {
+            return (file == null) ? new ByteArrayInputStream(bytes.toByteArray()) : new FileInputStream(file);
+        }
+
+        private void release()
+        {
+            if (file != null)
+            {
+                try
+                {
+                    out.close();
+                }
+                catch (IOException e)
+                {
+                    // Only the file is of interest
+                }
+                file.delete();
+            }
+        }
+    }
 }
@@ -0,0 +1,365 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.repo.event2.Event2MessageProducer.BatchSendException;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Publishes repo events from a dedicated thread so that committing transactions are not held up
+ * while the events are serialised and sent.
+ * <p/>
+ * Events are placed on a bounded queue.  A single publishing thread drains the queue in batches of up
+ * to {@link #setBatchSize(int) batchSize} events, waiting up to {@link #setLingerMs(long) lingerMs} for
+ * a batch to fill, and hands each batch to the producer in one transaction.  As there is one queue and one
+ * publishing thread, events are sent in the order they were published, so the events for any node stay in
+ * order.  When the queue is full, {@link #publish(RepoEvent)} blocks until there is space again.
+ * <p/>
+ * When not {@link #setEnabled(boolean) enabled}, events are sent directly on the calling thread.  Events
+ * published while the publisher is shutting down are sent directly once the publishing thread has stopped,
+ * so that they are not sent ahead of the events still queued.
+ *
+ * @since 7.0
+ */
+public class BatchingEventPublisher implements InitializingBean, DisposableBean
+{
+    private static final Log LOGGER = LogFactory.getLog(BatchingEventPublisher.class);
+
+    private static final long POLL_INTERVAL_MS = 500L;
+
+    private enum State
+    {
+        RUNNING, STOPPING, STOPPED
+    }
+
+    private Event2MessageProducer event2MessageProducer;
+    private TransactionService transactionService;
+    private boolean enabled = false;
+    private int queueCapacity = 10000;
+    private int batchSize = 100;
+    private long lingerMs = 50L;
+    private long shutdownTimeoutMs = 10000L;
+
+    private BlockingQueue<RepoEvent<?>> queue;
+    private ExecutorService executor;
+    private volatile State state = State.STOPPED;
+    private final CountDownLatch dispatchStopped = new CountDownLatch(1);
+
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public void setEvent2MessageProducer(Event2MessageProducer event2MessageProducer)
+    {
+        this.event2MessageProducer = event2MessageProducer;
+    }
+
+    public void setTransactionService(TransactionService transactionService)
+    {
+        this.transactionService = transactionService;
+    }
+
+    /**
+     * @param enabled <tt>true</tt> to publish events from the dedicated thread
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param queueCapacity the number of events that may be waiting before publishers are blocked
+     */
+    public void setQueueCapacity(int queueCapacity)
+    {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @param batchSize the maximum number of events sent in one transaction
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param lingerMs how long to wait for more events before sending a partially filled batch
+     */
+    public void setLingerMs(long lingerMs)
+    {
+        this.lingerMs = lingerMs;
+    }
+
+    /**
+     * @param shutdownTimeoutMs how long to wait for queued events to be sent when shutting down
+     */
+    public void setShutdownTimeoutMs(long shutdownTimeoutMs)
+    {
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    @Override
+    public void afterPropertiesSet()
+    {
+        PropertyCheck.mandatory(this, "event2MessageProducer", event2MessageProducer);
+        PropertyCheck.mandatory(this, "transactionService", transactionService);
+
+        if (!enabled)
+        {
+            return;
+        }
+        if (queueCapacity < 1 || batchSize < 1)
+        {
+            throw new IllegalArgumentException("Both 'queueCapacity' and 'batchSize' must be at least 1.");
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+        threadFactory.setNamePrefix("RepoEvent2Publisher");
+        threadFactory.setThreadDaemon(true);
+        executor = Executors.newSingleThreadExecutor(threadFactory);
+        state = State.RUNNING;
+        executor.execute(this::dispatch);
+    }
+
+    @Override
+    public void destroy() throws Exception
+    {
+        if (executor == null)
+        {
+            return;
+        }
+        // Let the publishing thread empty the queue
+        state = State.STOPPING;
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS))
+        {
+            LOGGER.warn("Shut down with " + queue.size() + " repository events still waiting to be sent.");
+            executor.shutdownNow();
+            dispatchStopped.await(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        state = State.STOPPED;
+    }
+
+    /**
+     * @return <tt>true</tt> if events are published from the dedicated thread
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Hand an event over for publishing.  This blocks while the queue is full.
+     *
+     * @param event the event to send
+     */
+    public void publish(RepoEvent<?> event)
+    {
+        boolean queued = false;
+        try
+        {
+            while (state == State.RUNNING)
+            {
+                if (queue.offer(event, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+                {
+                    queued = true;
+                    if (state == State.RUNNING)
+                    {
+                        return;
+                    }
+                    break;
+                }
+            }
+            if (queue != null)
+            {
+                // Shutting down: wait for the queued events to go first
+                dispatchStopped.await(shutdownTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("Interrupted while waiting to queue a repository event; sending it directly.");
+        }
+        if (queued && !queue.remove(event))
+        {
+            // Queued as the publisher stopped, and taken by the publishing thread after all
+            return;
+        }
+        sendBatch(Collections.singletonList(event));
+    }
+
+    /**
+     * @return the number of events waiting to be sent
+     */
+    public int getQueueDepth()
+    {
+        return (queue == null) ? 0 : queue.size();
+    }
+
+    /**
+     * @return the number of events sent
+     */
+    public long getPublishedCount()
+    {
+        return publishedCount.get();
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getBatchCount()
+    {
+        return batchCount.get();
+    }
+
+    /**
+     * @return the number of events that could not be sent
+     */
+    public long getFailedCount()
+    {
+        return failedCount.get();
+    }
+
+    private void dispatch()
+    {
+        try
+        {
+            drain();
+        }
+        finally
+        {
+            dispatchStopped.countDown();
+        }
+    }
+
+    private void drain()
+    {
+        final List<RepoEvent<?>> batch = new ArrayList<>(batchSize);
+        while (state == State.RUNNING || !queue.isEmpty())
+        {
+            try
+            {
+                RepoEvent<?> event = queue.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (event == null)
+                {
+                    continue;
+                }
+                batch.add(event);
+                // Give the batch a chance to fill up
+                final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize)
+                {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remainingNanos <= 0)
+                    {
+                        break;
+                    }
+                    event = queue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (event == null)
+                    {
+                        break;
+                    }
+                    batch.add(event);
+                }
+                sendBatch(batch);
+            }
+            catch (InterruptedException e)
+            {
+                // Forced shutdown: whatever has not been sent is lost
+                int lost = batch.size() + queue.size();
+                queue.clear();
+                failedCount.addAndGet(lost);
+                LOGGER.warn("Repository event publishing interrupted with " + lost + " events waiting.");
+                return;
+            }
+            finally
+            {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(List<RepoEvent<?>> batch)
+    {
+        try
+        {
+            // Camel expects a transaction; one read transaction covers the whole batch
+            transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
+                event2MessageProducer.sendBatch(batch);
+                return null;
+            }, true, false);
+            publishedCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+            if (LOGGER.isTraceEnabled())
+            {
+                LOGGER.trace("Sent " + batch.size() + " repository events, " + getQueueDepth() + " waiting.");
+            }
+        }
+        catch (Exception e)
+        {
+            // Must consume the exception to keep publishing
+            int sent = getSentCount(e);
+            publishedCount.addAndGet(sent);
+            failedCount.addAndGet(batch.size() - sent);
+            LOGGER.error("Unexpected error while sending " + (batch.size() - sent) + " of " + batch.size() + " repository events", e);
+        }
+    }
+
+    private static int getSentCount(Throwable e)
+    {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+        {
+            if (cause instanceof BatchSendException)
+            {
+                return ((BatchSendException) cause).getSentCount();
+            }
+        }
+        return 0;
+    }
+}
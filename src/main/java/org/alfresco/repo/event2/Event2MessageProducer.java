@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.event2;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.alfresco.error.AlfrescoRuntimeException;
@@ -60,6 +62,46 @@ public class Event2MessageProducer extends AbstractEventProducer implements Init
         send(this.endpoint, null, event, null);
     }
 
+    /**
+     * Sends a batch of events, in order, to the endpoint.  Every event is serialised before the first one
+     * is sent, so a batch that cannot be serialised is not partly sent, and the endpoint and headers are
+     * resolved once for the whole batch.
+     *
+     * @param events the events to send
+     * @throws BatchSendException if the batch could not be sent completely, giving the number of events
+     *             that were sent before the failure
+     */
+    public void sendBatch(List<?> events)
+    {
+        List<Object> bodies = new ArrayList<>(events.size());
+        try
+        {
+            for (Object event : events)
+            {
+                bodies.add((event instanceof String) ? event : this.objectMapper.writeValueAsString(event));
+            }
+        }
+        catch (Exception e)
+        {
+            throw new BatchSendException(0, e);
+        }
+
+        Map<String, Object> headers = this.addHeaders(null);
+        int sent = 0;
+        try
+        {
+            for (Object body : bodies)
+            {
+                this.producer.sendBodyAndHeaders(this.endpoint, ExchangePattern.InOnly, body, headers);
+                sent++;
+            }
+        }
+        catch (Exception e)
+        {
+            throw new BatchSendException(sent, e);
+        }
+    }
+
     @Override
     public void send(String endpointUri, ExchangePattern exchangePattern, Object event, Map<String, Object> headers)
     {
@@ -81,4 +123,28 @@ public class Event2MessageProducer extends AbstractEventProducer implements Init
             throw new AlfrescoRuntimeException(ERROR_SENDING, e);
         }
     }
+
+    /**
+     * Thrown when a batch of events could not be sent completely.
+     */
+    public static class BatchSendException extends AlfrescoRuntimeException
+    {
+        private static final long serialVersionUID = -2805340157296134856L;
+
+        private final int sentCount;
+
+        public BatchSendException(int sentCount, Throwable cause)
+        {
+            super(ERROR_SENDING, cause);
+            this.sentCount = sentCount;
+        }
+
+        /**
+         * @return the number of events at the start of the batch that were sent
+         */
+        public int getSentCount()
+        {
+            return sentCount;
+        }
+    }
 }
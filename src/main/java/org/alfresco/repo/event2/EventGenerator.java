@@ -79,6 +79,7 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
     private DescriptorService descriptorService;
     private EventFilterRegistry eventFilterRegistry;
     private Event2MessageProducer event2MessageProducer;
+    private BatchingEventPublisher eventPublisher;
     private TransactionService transactionService;
     private PersonService personService;
 
@@ -156,6 +157,14 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
         this.event2MessageProducer = event2MessageProducer;
     }
 
+    /**
+     * Optional stage to send the events from a dedicated thread
+     */
+    public void setEventPublisher(BatchingEventPublisher eventPublisher)
+    {
+        this.eventPublisher = eventPublisher;
+    }
+
     public void setTransactionService(TransactionService transactionService)
     {
         this.transactionService = transactionService;
@@ -275,6 +284,12 @@ public class EventGenerator extends AbstractLifecycleBean implements Initializin
             LOGGER.trace("List of Events:" + consolidator.getEventTypes());
             LOGGER.trace("Sending event:" + event);
         }
+        if (eventPublisher != null && eventPublisher.isEnabled())
+        {
+            // Don't hold up the committing thread; the events are sent in order by the publisher
+            eventPublisher.publish(event);
+            return;
+        }
         // Need to execute this in another read txn because Camel expects it
         transactionService.getRetryingTransactionHelper().doInTransaction((RetryingTransactionCallback<Void>) () -> {
             event2MessageProducer.send(event);
@@ -46,6 +46,7 @@ import org.alfresco.query.CannedQueryResults;
 import org.alfresco.query.PagingRequest;
 import org.alfresco.query.PagingResults;
 import org.alfresco.repo.copy.AbstractBaseCopyService;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.model.filefolder.HiddenAspect.Visibility;
 import org.alfresco.repo.model.filefolder.traitextender.FileFolderServiceExtension;
 import org.alfresco.repo.model.filefolder.traitextender.FileFolderServiceTrait;
@@ -56,6 +57,7 @@ import org.alfresco.repo.search.QueryParameterDefImpl;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue.PermissionCheckedValueMixin;
+import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.Auditable;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
@@ -80,6 +82,8 @@ import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.cmr.search.QueryParameterDefinition;
 import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.traitextender.AJProxyTrait;
@@ -149,6 +153,9 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
     private ContentService contentService;
     private MimetypeService mimetypeService;
     private BehaviourFilter behaviourFilter;
+    private NodeDAO nodeDAO;
+    private TenantService tenantService;
+    private PermissionService permissionService;
     private NamedObjectRegistry<CannedQueryFactory<NodeRef>> cannedQueryRegistry;
 
     private boolean preserveAuditableData = true;
@@ -235,6 +242,21 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
         this.behaviourFilter = behaviourFilter;
     }
 
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    public void setTenantService(TenantService tenantService)
+    {
+        this.tenantService = tenantService;
+    }
+
+    public void setPermissionService(PermissionService permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+
     public void setPreserveAuditableData(boolean preserveAuditableData)
     {
         this.preserveAuditableData = preserveAuditableData;
@@ -1571,44 +1593,26 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
         {
             throw new IllegalArgumentException("Path elements list is empty");
         }
-        // walk the folder tree first
-        NodeRef parentNodeRef = rootNodeRef;
+        // resolve the whole path - only the final node is checked by the caller's permissions
+        List<NodeRef> nodeRefs = resolveNamePathNodes(rootNodeRef, pathElements, false);
         StringBuilder currentPath = new StringBuilder(pathElements.size() << 4);
-        int folderCount = pathElements.size() - 1;
-        for (int i = 0; i < folderCount; i++)
+        for (int i = 0; i <= nodeRefs.size() && i < pathElements.size(); i++)
         {
-            String pathElement = pathElements.get(i);
-            currentPath.append("/").append(pathElement);
-            NodeRef folderNodeRef = searchSimple(parentNodeRef, pathElement);
-            if (folderNodeRef == null)
-            {
-                if (mustExist)
-                {
-                    throw new FileNotFoundException("Folder not found: " + currentPath + " (in " + rootNodeRef + ")");
-                }
-                else
-                {
-                    return null;
-                }
-            }
-            parentNodeRef = folderNodeRef;
+            currentPath.append("/").append(pathElements.get(i));
         }
-        // we have resolved the folder path - resolve the last component
-        String pathElement = pathElements.get(pathElements.size() - 1);
-        currentPath.append("/").append(pathElement);
-        NodeRef fileNodeRef = searchSimple(parentNodeRef, pathElement);
-        if (fileNodeRef == null)
+        if (nodeRefs.size() < pathElements.size())
         {
             if (mustExist)
             {
-                throw new FileNotFoundException("File not found: " + currentPath + " (in " + rootNodeRef + ")");
+                String missing = (nodeRefs.size() < pathElements.size() - 1) ? "Folder" : "File";
+                throw new FileNotFoundException(missing + " not found: " + currentPath + " (in " + rootNodeRef + ")");
             }
             else
             {
                 return null;
             }
         }
-        FileInfo result = getFileInfo(fileNodeRef);
+        FileInfo result = getFileInfo(nodeRefs.get(nodeRefs.size() - 1));
         // found it
         if (logger.isDebugEnabled())
         {
@@ -1620,6 +1624,80 @@ public class FileFolderServiceImpl extends AbstractBaseCopyService implements Fi
         return result;
     }
 
+    @Override
+    public List<FileInfo> resolveNamePathElements(NodeRef rootNodeRef, List<String> pathElements)
+    {
+        if (pathElements.size() == 0)
+        {
+            throw new IllegalArgumentException("Path elements list is empty");
+        }
+        List<NodeRef> nodeRefs = resolveNamePathNodes(rootNodeRef, pathElements, true);
+        List<FileInfo> results = new ArrayList<FileInfo>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            FileInfo fileInfo = getFileInfo(nodeRef);
+            if (fileInfo == null)
+            {
+                // Neither a file nor a folder
+                break;
+            }
+            results.add(fileInfo);
+        }
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Resolved path elements: \n" +
+                    "   root: " + rootNodeRef + "\n" +
+                    "   path: " + pathElements + "\n" +
+                    "   nodes: " + results);
+        }
+        return results;
+    }
+
+    /**
+     * Resolve a name path with as few queries as possible.  The levels are looked up together where the
+     * database supports it; anything left over, e.g. below a virtual folder, is looked up one level at a time.
+     * 
+     * @param checkPermissions      <tt>true</tt> to stop at the first node the current user may not read
+     * @return                      Returns the node at each level, stopping at the first level that could not be resolved
+     */
+    private List<NodeRef> resolveNamePathNodes(NodeRef rootNodeRef, List<String> pathElements, boolean checkPermissions)
+    {
+        List<NodeRef> results = new ArrayList<NodeRef>(pathElements.size());
+        if (checkPermissions && permissionService.hasPermission(rootNodeRef, PermissionService.READ_CHILDREN) != AccessStatus.ALLOWED)
+        {
+            return results;
+        }
+        Pair<Long, NodeRef> rootNodePair = nodeDAO.getNodePair(tenantService.getName(rootNodeRef));
+        if (rootNodePair != null)
+        {
+            List<Pair<Long, ChildAssociationRef>> assocs = nodeDAO.getChildAssocsByNamePath(
+                    rootNodePair.getFirst(), ContentModel.ASSOC_CONTAINS, pathElements);
+            for (Pair<Long, ChildAssociationRef> assoc : assocs)
+            {
+                NodeRef childNodeRef = tenantService.getBaseName(assoc.getSecond().getChildRef());
+                if (checkPermissions && permissionService.hasPermission(childNodeRef, PermissionService.READ) != AccessStatus.ALLOWED)
+                {
+                    return results;
+                }
+                results.add(childNodeRef);
+            }
+        }
+        // Anything the query could not resolve, e.g. below a virtual folder, is looked up one level at a time
+        NodeRef parentNodeRef = results.isEmpty() ? rootNodeRef : results.get(results.size() - 1);
+        for (int i = results.size(); i < pathElements.size(); i++)
+        {
+            NodeRef childNodeRef = searchSimple(parentNodeRef, pathElements.get(i));
+            if (childNodeRef == null ||
+                    (checkPermissions && permissionService.hasPermission(childNodeRef, PermissionService.READ) != AccessStatus.ALLOWED))
+            {
+                break;
+            }
+            results.add(childNodeRef);
+            parentNodeRef = childNodeRef;
+        }
+        return results;
+    }
+
     @Override
     public FileInfo getFileInfo(NodeRef nodeRef)
     {
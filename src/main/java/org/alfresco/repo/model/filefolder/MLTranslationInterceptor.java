@@ -79,6 +79,7 @@ public class MLTranslationInterceptor implements MethodInterceptor
         METHOD_NAMES_LIST.add("listDeepFolders");
         METHOD_NAMES_LIST.add("search");
         METHOD_NAMES_LIST.add("getNamePath");
+        METHOD_NAMES_LIST.add("resolveNamePathElements");
         
         METHOD_NAMES_SINGLE = new HashSet<String>(13);
         METHOD_NAMES_SINGLE.add("getLocalizedSibling");
@@ -72,6 +72,26 @@ public interface NodeBulkLoader
      * @param nodeIds           the nodes that will be cached.
      */
     public void cacheNodesById(List<Long> nodeIds);
+
+    /**
+     * Pre-cache the parent associations of the given nodes using set-based queries rather than one
+     * query per node.  Nodes that no longer exist are skipped.  There is no need to split the
+     * collection up before calling this method.
+     * 
+     * @param nodeIds           the child nodes whose parent associations will be cached
+     * @return                  the IDs of the parents of the given nodes
+     */
+    public Set<Long> cacheParentAssocs(List<Long> nodeIds);
+
+    /**
+     * Register nodes that are likely to be visited together, such as a page of child associations
+     * or a list of search result rows.  Nothing is loaded up front; if read-ahead is enabled, the
+     * first cache miss on one of the nodes loads the nodes, aspects and properties of its siblings
+     * in one batch.  Implementations may ignore the registration.
+     * 
+     * @param nodeRefs          the sibling nodes, in the order they are likely to be visited
+     */
+    public void registerSiblings(List<NodeRef> nodeRefs);
     
     /**
      * <b>FOR TESTING ONLY: </b>Clears out node cache data
@@ -29,6 +29,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -1951,6 +1952,39 @@ public class DbNodeServiceImpl extends AbstractNodeServiceImpl implements Extens
         Pair<Long, NodeRef> nodePair = getNodePairNotNull(nodeRef);
         Long nodeId = nodePair.getFirst();
 
+        if (assocTypeQName != null)
+        {
+            // Each name matches at most one child, so use the cached lookups and order as the query would
+            Map<Long, ChildAssociationRef> assocsById = new HashMap<Long, ChildAssociationRef>(childNames.size() * 2);
+            for (Pair<Long, ChildAssociationRef> assocPair : nodeDAO.getChildAssocsByNames(nodeId, assocTypeQName, childNames).values())
+            {
+                assocsById.put(assocPair.getFirst(), assocPair.getSecond());
+            }
+            List<Map.Entry<Long, ChildAssociationRef>> entries = new ArrayList<Map.Entry<Long, ChildAssociationRef>>(assocsById.entrySet());
+            Collections.sort(entries, new Comparator<Map.Entry<Long, ChildAssociationRef>>()
+            {
+                @Override
+                public int compare(Map.Entry<Long, ChildAssociationRef> e1, Map.Entry<Long, ChildAssociationRef> e2)
+                {
+                    int compare = Integer.compare(e1.getValue().getNthSibling(), e2.getValue().getNthSibling());
+                    return compare != 0 ? compare : e1.getKey().compareTo(e2.getKey());
+                }
+            });
+            List<ChildAssociationRef> results = new ArrayList<ChildAssociationRef>(entries.size());
+            List<NodeRef> childNodeRefs = new ArrayList<NodeRef>(entries.size());
+            for (Map.Entry<Long, ChildAssociationRef> entry : entries)
+            {
+                results.add(entry.getValue());
+                childNodeRefs.add(entry.getValue().getChildRef());
+            }
+            // Pre-load the children, as the query below does
+            if (childNodeRefs.size() > 0)
+            {
+                nodeDAO.cacheNodes(childNodeRefs);
+            }
+            return results;
+        }
+
         final List<ChildAssociationRef> results = new ArrayList<ChildAssociationRef>(100);
         
         NodeDAO.ChildAssocRefQueryCallback callback = new NodeDAO.ChildAssocRefQueryCallback()
@@ -71,6 +71,12 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
     private Long sysDeletedType;
 
     private Long sinceTxId;
+
+    private int limit = 0;
+
+    private int offset = 0;
+
+    private Long afterNodeId;
     
     Set<String> selectorGroup;
 
@@ -133,6 +139,55 @@ public class DBQuery extends BaseQuery implements DBQueryBuilderComponent
         this.sinceTxId = sinceTxId;
     }
 
+    /**
+     * @return the maximum number of rows the generated SQL returns or <tt>0</tt> for no limit
+     */
+    public int getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @param limit the maximum number of rows to select or <tt>0</tt> for no limit
+     */
+    public void setLimit(int limit)
+    {
+        this.limit = limit;
+    }
+
+    /**
+     * @return the number of rows the generated SQL skips; only used with a limit
+     */
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    /**
+     * @param offset the number of rows to skip when a limit is set
+     */
+    public void setOffset(int offset)
+    {
+        this.offset = offset;
+    }
+
+    /**
+     * @return only nodes with a greater id are selected, or <tt>null</tt> to select from the first node
+     */
+    public Long getAfterNodeId()
+    {
+        return afterNodeId;
+    }
+
+    /**
+     * @param afterNodeId the id of the last node of the previous chunk of a limited query ordered by node id,
+     *            or <tt>null</tt> to select from the first node
+     */
+    public void setAfterNodeId(Long afterNodeId)
+    {
+        this.afterNodeId = afterNodeId;
+    }
+
     public List<DBQueryBuilderJoinCommand> getJoins()
     {
         HashMap<QName, DBQueryBuilderJoinCommand> singleJoins = new HashMap<QName, DBQueryBuilderJoinCommand>();
@@ -46,14 +46,22 @@ import org.alfresco.repo.search.impl.querymodel.QueryEngineResults;
 import org.alfresco.repo.search.impl.querymodel.QueryModelException;
 import org.alfresco.repo.search.impl.querymodel.QueryModelFactory;
 import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
+import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.LimitBy;
 import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.util.Pair;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.mybatis.spring.SqlSessionTemplate;
 
 /**
@@ -79,11 +87,55 @@ public class DBQueryEngine implements QueryEngine
     
     private OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2;
 
+    private boolean usePagingQuery = false;
+
+    private PermissionServiceSPI permissionService;
+
+    private boolean usePermissionFiltering = false;
+
+    private int permissionCheckChunkSize = 200;
+
     public void setMetadataIndexCheck2(OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2)
     {
         this.metadataIndexCheck2 = metadataIndexCheck2;
     }
     
+    /**
+     * @param usePagingQuery <tt>true</tt> to select only the rows needed for the requested page
+     *            (skipCount + maxItems and one look-ahead row) rather than every matching node.
+     *            Unless running as the system user the page is filled with readable nodes, as
+     *            for {@link #setUsePermissionFiltering(boolean) permission filtering}.
+     */
+    public void setUsePagingQuery(boolean usePagingQuery)
+    {
+        this.usePagingQuery = usePagingQuery;
+    }
+    
+    /**
+     * @param permissionService used to evaluate read permission when permission filtering is enabled
+     */
+    public void setPermissionService(PermissionServiceSPI permissionService)
+    {
+        this.permissionService = permissionService;
+    }
+
+    /**
+     * @param usePermissionFiltering <tt>true</tt> to fill the requested page with readable nodes only,
+     *            fetching candidate rows in chunks and stopping once the page (and a look-ahead row) is full
+     */
+    public void setUsePermissionFiltering(boolean usePermissionFiltering)
+    {
+        this.usePermissionFiltering = usePermissionFiltering;
+    }
+
+    /**
+     * @param permissionCheckChunkSize the number of candidate rows fetched per query when permission filtering
+     */
+    public void setPermissionCheckChunkSize(int permissionCheckChunkSize)
+    {
+        this.permissionCheckChunkSize = permissionCheckChunkSize;
+    }
+
     public void setTenantService(TenantService tenantService)
     {
         this.tenantService = tenantService;
@@ -205,20 +257,164 @@ public class DBQueryEngine implements QueryEngine
         dbQuery.setSinceTxId(sinceTxId);
         
         dbQuery.prepare(namespaceService, dictionaryService, qnameDAO, nodeDAO, tenantService, selectorGroup, null, functionContext, metadataIndexCheck2.getPatchApplied());
-        List<Node> nodes = template.selectList(SELECT_BY_DYNAMIC_QUERY, dbQuery);
-        LinkedHashSet<Long> set = new LinkedHashSet<Long>(nodes.size());
-        for(Node node : nodes)
+        SearchParameters searchParameters = options.getAsSearchParmeters();
+        ResultSet rs;
+        boolean paged = searchParameters.getMaxItems() >= 0;
+        // A limited select would be cut short again by the after invocation permission filter,
+        // so a page for anyone but the system user has to be filled with readable nodes here
+        if (paged && (usePermissionFiltering || usePagingQuery) && !AuthenticationUtil.isRunAsUserTheSystemUser())
         {
-            set.add(node.getId());
+            rs = selectReadablePage(dbQuery, searchParameters);
         }
-        List<Long> nodeIds = new ArrayList<Long>(set);
-        ResultSet rs =  new DBResultSet(options.getAsSearchParmeters(), nodeIds, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE);
-        ResultSet paged = new PagingLuceneResultSet(rs, options.getAsSearchParmeters(), nodeService);
+        else if (paged && usePagingQuery)
+        {
+            rs = selectPage(dbQuery, searchParameters);
+        }
+        else
+        {
+            List<Node> nodes = template.selectList(SELECT_BY_DYNAMIC_QUERY, dbQuery);
+            LinkedHashSet<Long> set = new LinkedHashSet<Long>(nodes.size());
+            for(Node node : nodes)
+            {
+                set.add(node.getId());
+            }
+            List<Long> nodeIds = new ArrayList<Long>(set);
+            rs =  new DBResultSet(searchParameters, nodeIds, nodeDAO, nodeService, tenantService, Integer.MAX_VALUE);
+        }
+        ResultSet paged = new PagingLuceneResultSet(rs, searchParameters, nodeService);
         
         answer.put(key, paged);
         return new QueryEngineResults(answer);
     }
 
+    /**
+     * Select just enough distinct node ids to fill the requested page plus one look-ahead row.
+     * <p/>
+     * Only used when no permission filtering follows (i.e. for the system user), so every selected row
+     * ends up in the result and the look-ahead row reliably tells whether there is more. Rows are streamed through a result handler that stops the cursor as soon as enough ids have been
+     * seen; when the query has no joins (one row per node) the limit is also pushed into the SQL.
+     */
+    private ResultSet selectPage(DBQuery dbQuery, SearchParameters searchParameters)
+    {
+        int skipCount = Math.max(searchParameters.getSkipCount(), 0);
+        long requiredRows = (long) skipCount + searchParameters.getMaxItems() + 1;
+        int maxNodeIds = requiredRows > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) requiredRows;
+        if (dbQuery.getJoins().isEmpty())
+        {
+            dbQuery.setLimit(maxNodeIds);
+        }
+        
+        NodeIdResultHandler resultHandler = new NodeIdResultHandler(maxNodeIds);
+        template.select(SELECT_BY_DYNAMIC_QUERY, dbQuery, resultHandler);
+        
+        List<Long> nodeIds = new ArrayList<Long>(resultHandler.getNodeIds());
+        // The look-ahead row is the only way we know there is more beyond the requested page
+        LimitBy limitBy = resultHandler.isLimited() ? LimitBy.FINAL_SIZE : LimitBy.UNLIMITED;
+        return new DBResultSet(searchParameters, nodeIds, nodeDAO, nodeService, tenantService, limitBy);
+    }
+
+    /**
+     * Select readable node ids, chunk by chunk, until the requested page plus one look-ahead row is filled.
+     * <p/>
+     * Each chunk is a separate limited query so no cursor is held open while permissions are evaluated.
+     * Unless the query has its own ordering, chunks are ordered by node id and each one starts after the
+     * last node id of the previous chunk, so later chunks cost no more than the first. An explicit ordering
+     * can only be continued with an offset.
+     * Read permission is evaluated once per distinct ACL; only nodes whose ACL does not grant read on its
+     * own (e.g. readable only by their owner) are checked one at a time. The page is still passed through
+     * the usual after invocation permission filter, which now only sees readable nodes.
+     */
+    private ResultSet selectReadablePage(DBQuery dbQuery, SearchParameters searchParameters)
+    {
+        int skipCount = Math.max(searchParameters.getSkipCount(), 0);
+        long requiredRows = (long) skipCount + searchParameters.getMaxItems() + 1;
+        int maxNodeIds = requiredRows > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) requiredRows;
+        int chunkSize = Math.max(permissionCheckChunkSize, 1);
+        boolean ordered = dbQuery.getHasOrderBy() && dbQuery.getHasPredicatePartsOrder();
+        
+        // Queries with joins may return a node more than once, possibly in different chunks
+        Set<Long> seen = dbQuery.getJoins().isEmpty() ? null : new HashSet<Long>();
+        Map<Long, AccessStatus> aclReadStatus = new HashMap<Long, AccessStatus>();
+        List<Long> readableNodeIds = new ArrayList<Long>(Math.min(maxNodeIds, 1024));
+        int offset = 0;
+        Long lastNodeId = null;
+        while (readableNodeIds.size() < maxNodeIds)
+        {
+            dbQuery.setLimit(chunkSize);
+            if (ordered)
+            {
+                dbQuery.setOffset(offset);
+            }
+            else
+            {
+                dbQuery.setAfterNodeId(lastNodeId);
+            }
+            List<Node> nodes = template.selectList(SELECT_BY_DYNAMIC_QUERY, dbQuery);
+            offset += nodes.size();
+            
+            List<Long> candidates = new ArrayList<Long>(nodes.size());
+            for (Node node : nodes)
+            {
+                lastNodeId = node.getId();
+                if (seen == null || seen.add(node.getId()))
+                {
+                    candidates.add(node.getId());
+                }
+            }
+            addReadable(candidates, aclReadStatus, readableNodeIds, maxNodeIds);
+            
+            if (nodes.size() < chunkSize)
+            {
+                // No more candidates
+                break;
+            }
+        }
+        
+        LimitBy limitBy = readableNodeIds.size() >= maxNodeIds ? LimitBy.FINAL_SIZE : LimitBy.UNLIMITED;
+        return new DBResultSet(searchParameters, readableNodeIds, nodeDAO, nodeService, tenantService, limitBy);
+    }
+
+    private void addReadable(List<Long> candidates, Map<Long, AccessStatus> aclReadStatus, List<Long> readableNodeIds, int maxNodeIds)
+    {
+        if (candidates.isEmpty())
+        {
+            return;
+        }
+        nodeDAO.cacheNodesById(candidates);
+        for (Long nodeId : candidates)
+        {
+            Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeId);
+            if (nodePair == null)
+            {
+                // Deleted since the query ran
+                continue;
+            }
+            Long aclId = nodeDAO.getNodeAclId(nodeId);
+            AccessStatus status = AccessStatus.UNDETERMINED;
+            if (aclId != null)
+            {
+                status = aclReadStatus.get(aclId);
+                if (status == null)
+                {
+                    status = permissionService.hasAclReadPermission(aclId);
+                    aclReadStatus.put(aclId, status);
+                }
+            }
+            if (status != AccessStatus.ALLOWED)
+            {
+                status = permissionService.hasReadPermission(tenantService.getBaseName(nodePair.getSecond()));
+            }
+            if (status == AccessStatus.ALLOWED)
+            {
+                readableNodeIds.add(nodeId);
+                if (readableNodeIds.size() >= maxNodeIds)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.alfresco.repo.search.impl.querymodel.QueryEngine#getQueryModelFactory()
@@ -229,4 +425,44 @@ public class DBQueryEngine implements QueryEngine
         return new DBQueryModelFactory();
     }
 
+    /**
+     * Collects distinct node ids in query order and stops the cursor once the maximum is reached.
+     */
+    private static class NodeIdResultHandler implements ResultHandler
+    {
+        private final int maxNodeIds;
+        private final LinkedHashSet<Long> nodeIds;
+        
+        private NodeIdResultHandler(int maxNodeIds)
+        {
+            this.maxNodeIds = maxNodeIds;
+            this.nodeIds = new LinkedHashSet<Long>(Math.min(maxNodeIds, 1024));
+        }
+        
+        @Override
+        public void handleResult(ResultContext context)
+        {
+            if (context.isStopped())
+            {
+                return;
+            }
+            Node node = (Node) context.getResultObject();
+            nodeIds.add(node.getId());
+            if (nodeIds.size() >= maxNodeIds)
+            {
+                context.stop();
+            }
+        }
+        
+        public Set<Long> getNodeIds()
+        {
+            return nodeIds;
+        }
+        
+        public boolean isLimited()
+        {
+            return nodeIds.size() >= maxNodeIds;
+        }
+    }
+
 }
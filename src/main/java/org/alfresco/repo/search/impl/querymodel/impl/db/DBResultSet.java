@@ -100,6 +100,22 @@ public class DBResultSet extends AbstractResultSet
                 PermissionEvaluationMode.EAGER, searchParameters);
     }
 
+    /**
+     * Create a result set over ids selected by a paged query, where the caller already knows whether
+     * the results were cut off.
+     */
+    public DBResultSet(SearchParameters searchParameters, List<Long> dbids, NodeDAO nodeDao,  NodeService nodeService, TenantService tenantService, LimitBy limitBy)
+    {
+        this.nodeDao = nodeDao;
+        this.dbids = dbids;
+        this.nodeService = nodeService;
+        this.tenantService = tenantService;
+        this.prefetch = new BitSet(dbids.size());
+        nodeRefs= new NodeRef[(dbids.size())];
+        
+        this.resultSetMetaData = new SimpleResultSetMetaData(limitBy, PermissionEvaluationMode.EAGER, searchParameters);
+    }
+
     /* (non-Javadoc)
      * @see org.alfresco.service.cmr.search.ResultSetSPI#length()
      */
@@ -0,0 +1,694 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable bridge table holding the links between authorities and their transitive closure, so that all the
+ * groups containing an authority can be found without walking the group hierarchy.
+ * <p>
+ * Each authority is given an <tt>int</tt> index and the parents, children and ancestors of every authority are held
+ * in sorted <tt>int</tt> arrays. Changes are applied copy-on-write by {@link #withChanges(List)}: only the rows of
+ * the authorities that are affected by a change are rebuilt and all the other rows are shared with the original
+ * table, so readers can keep using a table while its successor is being built.
+ * 
+ * @since 7.0
+ */
+public final class AuthorityBridgeTable
+{
+    private static final int[] EMPTY = new int[0];
+
+    /** The empty table */
+    public static final AuthorityBridgeTable EMPTY_TABLE = new AuthorityBridgeTable(
+            Collections.<String, Integer> emptyMap(), new String[0], new int[0][], new int[0][], new int[0][], 0);
+
+    private final Map<String, Integer> indexes;
+    private final String[] names;
+    private final int[][] parents;
+    private final int[][] children;
+    private final int[][] ancestors;
+    private final int linkCount;
+
+    private AuthorityBridgeTable(Map<String, Integer> indexes, String[] names, int[][] parents, int[][] children,
+            int[][] ancestors, int linkCount)
+    {
+        this.indexes = indexes;
+        this.names = names;
+        this.parents = parents;
+        this.children = children;
+        this.ancestors = ancestors;
+        this.linkCount = linkCount;
+    }
+
+    /**
+     * Build a table from a complete list of links.
+     * 
+     * @param links             all the parent-child links between authorities
+     * @return                  the table
+     * @throws ConcurrentModificationException if the links contain a cycle
+     */
+    public static AuthorityBridgeTable build(Collection<AuthorityBridgeLink> links)
+    {
+        Editor editor = new Editor(EMPTY_TABLE, links.size());
+        int[] linkParents = new int[links.size()];
+        int[] linkChildren = new int[links.size()];
+        int count = 0;
+        for (AuthorityBridgeLink link : links)
+        {
+            linkParents[count] = editor.getOrAddIndex(link.getParentName());
+            linkChildren[count] = editor.getOrAddIndex(link.getChildName());
+            count++;
+        }
+        editor.setLinks(linkParents, linkChildren, count);
+        editor.computeAllAncestors();
+        return editor.toTable();
+    }
+
+    /**
+     * Create a new table with the given changes applied in order. This table is not modified.
+     * <p>
+     * Changes are idempotent: adding an existing link or removing a missing one has no effect.
+     * 
+     * @param changes           the changes to apply
+     * @return                  the new table or this table if there are no changes
+     * @throws ConcurrentModificationException if a change would create a cycle
+     */
+    public AuthorityBridgeTable withChanges(List<Change> changes)
+    {
+        if (changes.isEmpty())
+        {
+            return this;
+        }
+        Editor editor = new Editor(this, 0);
+        for (Change change : changes)
+        {
+            switch (change.type)
+            {
+            case ADD:
+                editor.addLink(change.parentName, change.childName);
+                break;
+            case REMOVE:
+                editor.removeLink(change.parentName, change.childName);
+                break;
+            case DELETE:
+                editor.deleteAuthority(change.childName);
+                break;
+            }
+        }
+        return editor.toTable();
+    }
+
+    /**
+     * Get all the ancestors of an authority, not including the authority itself.
+     * 
+     * @param name              the authority name
+     * @return                  a read-only view of the ancestors, empty if the authority has no links
+     */
+    public Set<String> getAncestors(String name)
+    {
+        Integer index = indexes.get(name);
+        if (index == null)
+        {
+            return Collections.emptySet();
+        }
+        int[] row = ancestors[index];
+        return row.length == 0 ? Collections.<String> emptySet() : new NameSet(row);
+    }
+
+    /**
+     * @return                  the number of authorities known to the table
+     */
+    public int size()
+    {
+        return names.length;
+    }
+
+    /**
+     * @return                  the number of parent-child links
+     */
+    public int getLinkCount()
+    {
+        return linkCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AuthorityBridgeTable [authorities=" + names.length + ", links=" + linkCount + "]";
+    }
+
+    /**
+     * A change to apply to the table with {@link AuthorityBridgeTable#withChanges(List)}.
+     */
+    public static final class Change
+    {
+        private enum Type
+        {
+            ADD, REMOVE, DELETE
+        }
+
+        private final Type type;
+        private final String parentName;
+        private final String childName;
+
+        private Change(Type type, String parentName, String childName)
+        {
+            this.type = type;
+            this.parentName = parentName;
+            this.childName = childName;
+        }
+
+        /**
+         * A link from <tt>parentName</tt> to <tt>childName</tt> has been added
+         */
+        public static Change linkAdded(String parentName, String childName)
+        {
+            return new Change(Type.ADD, parentName, childName);
+        }
+
+        /**
+         * The link from <tt>parentName</tt> to <tt>childName</tt> has been removed
+         */
+        public static Change linkRemoved(String parentName, String childName)
+        {
+            return new Change(Type.REMOVE, parentName, childName);
+        }
+
+        /**
+         * The authority has been deleted along with all of its links
+         */
+        public static Change authorityDeleted(String name)
+        {
+            return new Change(Type.DELETE, null, name);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Change [" + type + " " + (parentName == null ? "" : parentName + " -> ") + childName + "]";
+        }
+    }
+
+    /**
+     * Read-only view of a sorted row of indexes as authority names
+     */
+    private final class NameSet extends AbstractSet<String>
+    {
+        private final int[] row;
+
+        private NameSet(int[] row)
+        {
+            this.row = row;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+            Integer index = indexes.get(o);
+            return index != null && Arrays.binarySearch(row, index) >= 0;
+        }
+
+        @Override
+        public Iterator<String> iterator()
+        {
+            return new Iterator<String>()
+            {
+                private int next = 0;
+
+                @Override
+                public boolean hasNext()
+                {
+                    return next < row.length;
+                }
+
+                @Override
+                public String next()
+                {
+                    if (next >= row.length)
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    return names[row[next++]];
+                }
+            };
+        }
+
+        @Override
+        public int size()
+        {
+            return row.length;
+        }
+    }
+
+    /**
+     * Mutable working copy of a table. The row arrays are copied up front but the rows themselves are only replaced
+     * when they change, so unchanged rows stay shared with the source table.
+     */
+    private static final class Editor
+    {
+        private Map<String, Integer> indexes;
+        private boolean indexesCopied;
+        private String[] names;
+        private int[][] parents;
+        private int[][] children;
+        private int[][] ancestors;
+        private int count;
+        private int linkCount;
+
+        /** Scratch space: visit marks stamped with the current generation and a work list */
+        private int[] marks;
+        private int generation;
+        private int[] work;
+
+        private Editor(AuthorityBridgeTable source, int expectedLinks)
+        {
+            this.indexes = source.indexes;
+            this.count = source.names.length;
+            int capacity = Math.max(count + expectedLinks, 16);
+            this.names = Arrays.copyOf(source.names, capacity);
+            this.parents = Arrays.copyOf(source.parents, capacity);
+            this.children = Arrays.copyOf(source.children, capacity);
+            this.ancestors = Arrays.copyOf(source.ancestors, capacity);
+            this.linkCount = source.linkCount;
+            this.marks = new int[capacity];
+            this.work = new int[capacity];
+        }
+
+        private int indexOf(String name)
+        {
+            Integer index = indexes.get(name);
+            return index == null ? -1 : index;
+        }
+
+        private int getOrAddIndex(String name)
+        {
+            Integer index = indexes.get(name);
+            if (index != null)
+            {
+                return index;
+            }
+            if (!indexesCopied)
+            {
+                indexes = new HashMap<String, Integer>(indexes);
+                indexesCopied = true;
+            }
+            if (count == names.length)
+            {
+                int capacity = names.length * 2;
+                names = Arrays.copyOf(names, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                children = Arrays.copyOf(children, capacity);
+                ancestors = Arrays.copyOf(ancestors, capacity);
+                marks = Arrays.copyOf(marks, capacity);
+                work = Arrays.copyOf(work, capacity);
+            }
+            names[count] = name;
+            parents[count] = EMPTY;
+            children[count] = EMPTY;
+            ancestors[count] = EMPTY;
+            indexes.put(name, count);
+            return count++;
+        }
+
+        private int nextGeneration()
+        {
+            if (++generation == Integer.MAX_VALUE)
+            {
+                Arrays.fill(marks, 0);
+                generation = 1;
+            }
+            return generation;
+        }
+
+        /**
+         * Set the parent and child rows from a list of links, ignoring duplicates.
+         */
+        private void setLinks(int[] linkParents, int[] linkChildren, int size)
+        {
+            int[] parentCounts = new int[count];
+            int[] childCounts = new int[count];
+            for (int i = 0; i < size; i++)
+            {
+                parentCounts[linkChildren[i]]++;
+                childCounts[linkParents[i]]++;
+            }
+            for (int i = 0; i < count; i++)
+            {
+                parents[i] = parentCounts[i] == 0 ? EMPTY : new int[parentCounts[i]];
+                children[i] = childCounts[i] == 0 ? EMPTY : new int[childCounts[i]];
+            }
+            Arrays.fill(parentCounts, 0);
+            Arrays.fill(childCounts, 0);
+            for (int i = 0; i < size; i++)
+            {
+                int parent = linkParents[i];
+                int child = linkChildren[i];
+                parents[child][parentCounts[child]++] = parent;
+                children[parent][childCounts[parent]++] = child;
+            }
+            linkCount = 0;
+            for (int i = 0; i < count; i++)
+            {
+                parents[i] = sortedUnique(parents[i]);
+                children[i] = sortedUnique(children[i]);
+                linkCount += parents[i].length;
+            }
+        }
+
+        /**
+         * Compute the ancestors of every authority, visiting parents before their children.
+         */
+        private void computeAllAncestors()
+        {
+            int[] pendingParents = new int[count];
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < count; i++)
+            {
+                pendingParents[i] = parents[i].length;
+                if (pendingParents[i] == 0)
+                {
+                    work[tail++] = i;
+                }
+            }
+            while (head < tail)
+            {
+                int index = work[head++];
+                ancestors[index] = closure(parents[index]);
+                for (int child : children[index])
+                {
+                    if (--pendingParents[child] == 0)
+                    {
+                        work[tail++] = child;
+                    }
+                }
+            }
+            if (tail < count)
+            {
+                throw new ConcurrentModificationException("Cyclic authority links: " + (count - tail)
+                        + " authorities are not reachable from a root authority");
+            }
+        }
+
+        /**
+         * @return the sorted union of the given parents and all of their ancestors
+         */
+        private int[] closure(int[] parentRow)
+        {
+            if (parentRow.length == 0)
+            {
+                return EMPTY;
+            }
+            if (parentRow.length == 1)
+            {
+                return insertSorted(ancestors[parentRow[0]], parentRow[0]);
+            }
+            int gen = nextGeneration();
+            int[] result = new int[16];
+            int size = 0;
+            for (int parent : parentRow)
+            {
+                if (marks[parent] != gen)
+                {
+                    marks[parent] = gen;
+                    if (size == result.length)
+                    {
+                        result = Arrays.copyOf(result, size * 2);
+                    }
+                    result[size++] = parent;
+                }
+                for (int ancestor : ancestors[parent])
+                {
+                    if (marks[ancestor] != gen)
+                    {
+                        marks[ancestor] = gen;
+                        if (size == result.length)
+                        {
+                            result = Arrays.copyOf(result, size * 2);
+                        }
+                        result[size++] = ancestor;
+                    }
+                }
+            }
+            int[] row = Arrays.copyOf(result, size);
+            Arrays.sort(row);
+            return row;
+        }
+
+        /**
+         * Collect the authority and all of its descendants into the work list.
+         * 
+         * @return the number of entries in the work list, with the authority itself first
+         */
+        private int collectWithDescendants(int index)
+        {
+            int gen = nextGeneration();
+            marks[index] = gen;
+            work[0] = index;
+            int head = 0;
+            int tail = 1;
+            while (head < tail)
+            {
+                for (int child : children[work[head++]])
+                {
+                    if (marks[child] != gen)
+                    {
+                        marks[child] = gen;
+                        work[tail++] = child;
+                    }
+                }
+            }
+            return tail;
+        }
+
+        private void addLink(String parentName, String childName)
+        {
+            int parent = getOrAddIndex(parentName);
+            int child = getOrAddIndex(childName);
+            if (Arrays.binarySearch(parents[child], parent) >= 0)
+            {
+                return;
+            }
+            if (parent == child || Arrays.binarySearch(ancestors[parent], child) >= 0)
+            {
+                throw new ConcurrentModificationException("Adding link from '" + parentName + "' to '" + childName
+                        + "' would create a cyclic authority link");
+            }
+            parents[child] = insertSorted(parents[child], parent);
+            children[parent] = insertSorted(children[parent], child);
+            linkCount++;
+
+            // The new parent and its ancestors become ancestors of the child and all of its descendants
+            int[] added = insertSorted(ancestors[parent], parent);
+            int size = collectWithDescendants(child);
+            for (int i = 0; i < size; i++)
+            {
+                int index = work[i];
+                ancestors[index] = union(ancestors[index], added);
+            }
+        }
+
+        private void removeLink(String parentName, String childName)
+        {
+            int parent = indexOf(parentName);
+            int child = indexOf(childName);
+            if (parent < 0 || child < 0 || Arrays.binarySearch(parents[child], parent) < 0)
+            {
+                return;
+            }
+            parents[child] = removeSorted(parents[child], parent);
+            children[parent] = removeSorted(children[parent], child);
+            linkCount--;
+
+            // Recompute the child and its descendants with every authority visited after all of its affected parents
+            int size = collectWithDescendants(child);
+            int[] affected = Arrays.copyOf(work, size);
+            Map<Integer, Integer> pendingParents = new HashMap<Integer, Integer>(size * 2);
+            int gen = generation;
+            for (int index : affected)
+            {
+                int pending = 0;
+                for (int p : parents[index])
+                {
+                    if (marks[p] == gen)
+                    {
+                        pending++;
+                    }
+                }
+                pendingParents.put(index, pending);
+            }
+            // Reuse the affected array as the queue, each authority is queued exactly once
+            int head = 0;
+            int tail = 0;
+            for (int index : affected)
+            {
+                if (pendingParents.get(index) == 0)
+                {
+                    affected[tail++] = index;
+                }
+            }
+            while (head < tail)
+            {
+                int index = affected[head++];
+                ancestors[index] = closure(parents[index]);
+                for (int c : children[index])
+                {
+                    Integer pending = pendingParents.get(c);
+                    if (pending != null)
+                    {
+                        pendingParents.put(c, pending - 1);
+                        if (pending == 1)
+                        {
+                            affected[tail++] = c;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void deleteAuthority(String name)
+        {
+            int index = indexOf(name);
+            if (index < 0)
+            {
+                return;
+            }
+            for (int parent : parents[index].clone())
+            {
+                removeLink(names[parent], name);
+            }
+            for (int child : children[index].clone())
+            {
+                removeLink(name, names[child]);
+            }
+        }
+
+        private AuthorityBridgeTable toTable()
+        {
+            return new AuthorityBridgeTable(indexes, Arrays.copyOf(names, count), Arrays.copyOf(parents, count),
+                    Arrays.copyOf(children, count), Arrays.copyOf(ancestors, count), linkCount);
+        }
+    }
+
+    private static int[] sortedUnique(int[] row)
+    {
+        if (row.length < 2)
+        {
+            return row;
+        }
+        Arrays.sort(row);
+        int size = 1;
+        for (int i = 1; i < row.length; i++)
+        {
+            if (row[i] != row[size - 1])
+            {
+                row[size++] = row[i];
+            }
+        }
+        return size == row.length ? row : Arrays.copyOf(row, size);
+    }
+
+    private static int[] insertSorted(int[] row, int value)
+    {
+        int pos = Arrays.binarySearch(row, value);
+        if (pos >= 0)
+        {
+            return row;
+        }
+        pos = -pos - 1;
+        int[] result = new int[row.length + 1];
+        System.arraycopy(row, 0, result, 0, pos);
+        result[pos] = value;
+        System.arraycopy(row, pos, result, pos + 1, row.length - pos);
+        return result;
+    }
+
+    private static int[] removeSorted(int[] row, int value)
+    {
+        int pos = Arrays.binarySearch(row, value);
+        if (pos < 0)
+        {
+            return row;
+        }
+        if (row.length == 1)
+        {
+            return EMPTY;
+        }
+        int[] result = new int[row.length - 1];
+        System.arraycopy(row, 0, result, 0, pos);
+        System.arraycopy(row, pos + 1, result, pos, row.length - pos - 1);
+        return result;
+    }
+
+    private static int[] union(int[] a, int[] b)
+    {
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < a.length && j < b.length)
+        {
+            if (a[i] < b[j])
+            {
+                result[size++] = a[i++];
+            }
+            else if (a[i] > b[j])
+            {
+                result[size++] = b[j++];
+            }
+            else
+            {
+                result[size++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length)
+        {
+            result[size++] = a[i++];
+        }
+        while (j < b.length)
+        {
+            result[size++] = b[j++];
+        }
+        if (size == a.length)
+        {
+            // Nothing new, keep sharing the original row
+            return a;
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+}
@@ -25,39 +25,80 @@
  */
 package org.alfresco.repo.security.authority;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.cache.AbstractMTAsynchronouslyRefreshedCache;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.security.authority.AuthorityBridgeTable.Change;
 import org.alfresco.repo.tenant.TenantAdminService;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
-import org.alfresco.util.BridgeTable;
+import org.alfresco.repo.transaction.TransactionListenerAdapter;
 import org.alfresco.util.PropertyCheck;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.InitializingBean;
 
 /**
+ * Asynchronously refreshed cache of the {@link AuthorityBridgeTable} for each tenant.
+ * <p>
+ * By default every membership change rebuilds the whole table from the database. When <tt>incremental</tt> is set,
+ * the changes reported through {@link #linksAdded(Collection, String)}, {@link #linkRemoved(String, String)} and
+ * {@link #authorityDeleted(String)} are collected after each commit and applied copy-on-write to the current table
+ * in batches, at most once every <tt>coalesceWindowMs</tt>. Renames, explicit refreshes and refreshes received from
+ * other cluster members still rebuild the table, as does any change that would create a cycle.
+ * 
  * @author Andy
  * @since 4.1.3
  */
-public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<BridgeTable<String>> implements InitializingBean
+public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractMTAsynchronouslyRefreshedCache<AuthorityBridgeTable> implements InitializingBean
 {
+    private static final String KEY_TXN_CHANGES = "AuthorityBridgeTableAsynchronouslyRefreshedCache.txnChanges.";
+    private static final String KEY_TXN_TABLE = "AuthorityBridgeTableAsynchronouslyRefreshedCache.txnTable.";
+
     private AuthorityBridgeDAO authorityBridgeDAO;
     private RetryingTransactionHelper retryingTransactionHelper;
     private TenantAdminService tenantAdminService;
+    private TenantService tenantService;
     private AuthorityDAO authorityDAO;
+    private boolean incremental = false;
+    private long coalesceWindowMs = 500;
+
+    private final Map<String, TenantState> tenantStates = new ConcurrentHashMap<String, TenantState>();
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<Runnable>();
+    private ScheduledExecutorService scheduler;
 
     private Log logger = LogFactory.getLog(getClass());
 
+    /**
+     * The incrementally maintained table of a tenant and the changes that are waiting to be applied to it
+     */
+    private static class TenantState
+    {
+        private volatile AuthorityBridgeTable table;
+        private List<Change> pending = new ArrayList<Change>();
+        private boolean applyScheduled;
+        /** Changes applied while a full build is running, replayed onto the result of the build */
+        private List<Change> replay;
+    }
+
     /**
      * @param authorityDAO
      *            the authorityDAO to set
@@ -91,16 +132,319 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
     }
 
     @Override
-    protected BridgeTable<String> buildCache(final String tenantId)
+    public void setTenantService(TenantService tenantService)
+    {
+        super.setTenantService(tenantService);
+        this.tenantService = tenantService;
+    }
+
+    /**
+     * @param incremental       <tt>true</tt> to apply membership changes to the current table instead of
+     *                          rebuilding it.  Changes are only applied on the server that made them.
+     */
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @param coalesceWindowMs  the time to collect committed changes before applying them as one batch
+     */
+    public void setCoalesceWindowMs(long coalesceWindowMs)
+    {
+        this.coalesceWindowMs = coalesceWindowMs;
+    }
+
+    /**
+     * Register a callback to run after changes have been applied incrementally to a table.  Full rebuilds are
+     * reported to the listeners registered with {@link #register(org.alfresco.util.cache.RefreshableCacheListener)}.
+     */
+    public void registerChangeListener(Runnable listener)
+    {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Record that <tt>childName</tt> has been added to the given groups in the current transaction.
+     */
+    public void linksAdded(Collection<String> parentNames, String childName)
+    {
+        if (!incremental)
+        {
+            refresh();
+            return;
+        }
+        List<Change> changes = getTransactionChanges();
+        for (String parentName : parentNames)
+        {
+            changes.add(Change.linkAdded(parentName, childName));
+        }
+    }
+
+    /**
+     * Record that <tt>childName</tt> has been removed from the group <tt>parentName</tt> in the current transaction.
+     */
+    public void linkRemoved(String parentName, String childName)
+    {
+        if (!incremental)
+        {
+            refresh();
+            return;
+        }
+        getTransactionChanges().add(Change.linkRemoved(parentName, childName));
+    }
+
+    /**
+     * Record that the authority has been deleted, along with all of its links, in the current transaction.
+     */
+    public void authorityDeleted(String name)
     {
-        return AuthenticationUtil.runAs(new RunAsWork<BridgeTable<String>>()
+        if (!incremental)
         {
-            public BridgeTable<String> doWork() throws Exception
+            refresh();
+            return;
+        }
+        getTransactionChanges().add(Change.authorityDeleted(name));
+    }
+
+    private List<Change> getTransactionChanges()
+    {
+        final String tenantId = tenantService.getCurrentUserDomain();
+        String key = KEY_TXN_CHANGES + tenantId;
+        List<Change> changes = AlfrescoTransactionSupport.getResource(key);
+        if (changes == null)
+        {
+            final List<Change> txnChanges = new ArrayList<Change>();
+            AlfrescoTransactionSupport.bindResource(key, txnChanges);
+            AlfrescoTransactionSupport.bindListener(new TransactionListenerAdapter()
             {
-                return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<BridgeTable<String>>()
+                @Override
+                public void afterCommit()
+                {
+                    queueChanges(tenantId, txnChanges);
+                }
+            });
+            changes = txnChanges;
+        }
+        return changes;
+    }
+
+    private boolean hasTransactionChanges(String tenantId)
+    {
+        List<Change> changes = AlfrescoTransactionSupport.getResource(KEY_TXN_CHANGES + tenantId);
+        return changes != null && !changes.isEmpty();
+    }
+
+    private TenantState getTenantState(String tenantId)
+    {
+        return tenantStates.computeIfAbsent(tenantId, id -> new TenantState());
+    }
+
+    /* package */ void queueChanges(final String tenantId, List<Change> changes)
+    {
+        if (changes.isEmpty())
+        {
+            return;
+        }
+        TenantState state = getTenantState(tenantId);
+        synchronized (state)
+        {
+            state.pending.addAll(changes);
+            if (state.applyScheduled)
+            {
+                return;
+            }
+            state.applyScheduled = true;
+        }
+        getScheduler().schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                applyChanges(tenantId);
+            }
+        }, coalesceWindowMs, TimeUnit.MILLISECONDS);
+    }
+
+    /* package */ void applyChanges(final String tenantId)
+    {
+        TenantState state = getTenantState(tenantId);
+        boolean rebuild = false;
+        synchronized (state)
+        {
+            List<Change> changes = state.pending;
+            state.pending = new ArrayList<Change>();
+            state.applyScheduled = false;
+            if (state.replay != null)
+            {
+                state.replay.addAll(changes);
+            }
+            if (state.table != null)
+            {
+                try
+                {
+                    state.table = state.table.withChanges(changes);
+                    if (logger.isDebugEnabled())
+                    {
+                        logger.debug("Applied " + changes.size() + " changes for tenant '" + tenantId + "': " + state.table);
+                    }
+                }
+                catch (ConcurrentModificationException e)
+                {
+                    // The full build detects and breaks the cycle
+                    logger.warn("Rebuilding authority bridge table for tenant '" + tenantId + "': " + e.getMessage());
+                    rebuild = true;
+                }
+            }
+            else if (state.replay == null)
+            {
+                // No table has been built incrementally yet, so the one in use may predate the changes
+                rebuild = true;
+            }
+        }
+        AuthenticationUtil.runAs(new RunAsWork<Void>()
+        {
+            public Void doWork() throws Exception
+            {
+                for (Runnable listener : changeListeners)
+                {
+                    listener.run();
+                }
+                return null;
+            }
+        }, tenantAdminService.getDomainUser(AuthenticationUtil.getSystemUserName(), tenantId));
+        if (rebuild)
+        {
+            refresh(tenantId);
+        }
+    }
+
+    @Override
+    public AuthorityBridgeTable get()
+    {
+        if (incremental)
+        {
+            String tenantId = tenantService.getCurrentUserDomain();
+            AuthorityBridgeTable txnTable = AlfrescoTransactionSupport.getResource(KEY_TXN_TABLE + tenantId);
+            if (txnTable != null)
+            {
+                return txnTable;
+            }
+            TenantState state = tenantStates.get(tenantId);
+            if (state != null && state.table != null)
+            {
+                return state.table;
+            }
+        }
+        return super.get();
+    }
+
+    @Override
+    public void forceInChangesForThisUncommittedTransaction()
+    {
+        if (!incremental)
+        {
+            super.forceInChangesForThisUncommittedTransaction();
+            return;
+        }
+        String tenantId = tenantService.getCurrentUserDomain();
+        List<Change> changes = AlfrescoTransactionSupport.getResource(KEY_TXN_CHANGES + tenantId);
+        if (changes == null || changes.isEmpty())
+        {
+            return;
+        }
+        // Apply this transaction's changes to a private copy of the current table
+        try
+        {
+            AlfrescoTransactionSupport.bindResource(KEY_TXN_TABLE + tenantId, get().withChanges(changes));
+        }
+        catch (ConcurrentModificationException e)
+        {
+            AlfrescoTransactionSupport.unbindResource(KEY_TXN_TABLE + tenantId);
+            refresh();
+            super.forceInChangesForThisUncommittedTransaction();
+        }
+    }
+
+    @Override
+    public boolean isUpToDate()
+    {
+        if (!super.isUpToDate())
+        {
+            return false;
+        }
+        if (!incremental)
+        {
+            return true;
+        }
+        String tenantId = tenantService.getCurrentUserDomain();
+        if (hasTransactionChanges(tenantId))
+        {
+            return false;
+        }
+        TenantState state = tenantStates.get(tenantId);
+        if (state == null)
+        {
+            return true;
+        }
+        synchronized (state)
+        {
+            return state.pending.isEmpty();
+        }
+    }
+
+    @Override
+    protected AuthorityBridgeTable buildCache(final String tenantId)
+    {
+        if (!incremental)
+        {
+            // Any incrementally maintained table is out of date from now on
+            tenantStates.remove(tenantId);
+            return doBuildCacheInTransaction(tenantId);
+        }
+        TenantState state = getTenantState(tenantId);
+        synchronized (state)
+        {
+            state.replay = new ArrayList<Change>();
+        }
+        AuthorityBridgeTable bridgeTable = null;
+        try
+        {
+            bridgeTable = doBuildCacheInTransaction(tenantId);
+        }
+        finally
+        {
+            synchronized (state)
+            {
+                if (bridgeTable != null)
+                {
+                    // Changes applied since the build started may not be visible to the build's transaction
+                    try
+                    {
+                        state.table = bridgeTable.withChanges(state.replay);
+                    }
+                    catch (ConcurrentModificationException e)
+                    {
+                        logger.warn("Ignoring changes made during authority bridge table build for tenant '" + tenantId + "': " + e.getMessage());
+                        state.table = bridgeTable;
+                    }
+                }
+                state.replay = null;
+            }
+        }
+        return bridgeTable;
+    }
+
+    private AuthorityBridgeTable doBuildCacheInTransaction(final String tenantId)
+    {
+        return AuthenticationUtil.runAs(new RunAsWork<AuthorityBridgeTable>()
+        {
+            public AuthorityBridgeTable doWork() throws Exception
+            {
+                return retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<AuthorityBridgeTable>()
                 {
                     @Override
-                    public BridgeTable<String> execute() throws Throwable
+                    public AuthorityBridgeTable execute() throws Throwable
                     {
                         return doBuildCache(tenantId);
                     }
@@ -110,16 +454,13 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
         }, tenantAdminService.getDomainUser(AuthenticationUtil.getSystemUserName(), tenantId));
     }
 
-    private BridgeTable<String> doBuildCache(String tenantId)
+    private AuthorityBridgeTable doBuildCache(String tenantId)
     {
         List<AuthorityBridgeLink> links = authorityBridgeDAO.getAuthorityBridgeLinks();
-        BridgeTable<String> bridgeTable = new BridgeTable<String>();
+        AuthorityBridgeTable bridgeTable;
         try
         {
-            for (AuthorityBridgeLink link : links)
-            {
-                bridgeTable.addLink(link.getParentName(), link.getChildName());
-            }
+            bridgeTable = AuthorityBridgeTable.build(links);
         }
         catch (ConcurrentModificationException e)
         {
@@ -244,4 +585,19 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCache extends  AbstractM
         PropertyCheck.mandatory(this, "authorityDAO", authorityDAO);
         super.afterPropertiesSet();
     }
+
+    /**
+     * @return      the thread that applies committed changes, which is only started once there are changes to apply
+     */
+    private synchronized ScheduledExecutorService getScheduler()
+    {
+        if (scheduler == null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setThreadDaemon(true);
+            threadFactory.setNamePrefix("AuthorityBridgeTableChanges");
+            scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+        return scheduler;
+    }
 }
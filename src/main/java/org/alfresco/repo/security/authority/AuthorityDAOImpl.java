@@ -85,7 +85,6 @@ import org.alfresco.service.namespace.NamespacePrefixResolver;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.namespace.RegexQNamePattern;
-import org.alfresco.util.BridgeTable;
 import org.alfresco.util.EqualsHelper;
 import org.alfresco.util.ISO9075;
 import org.alfresco.util.Pair;
@@ -376,7 +375,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         else
         {
             userAuthorityCache.clear();
-            authorityBridgeTableCache.refresh();
+            authorityBridgeTableCache.linksAdded(parentNames, childName);
         }
     }
 
@@ -437,7 +436,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         
         authorityLookupCache.remove(cacheKey(name));
         userAuthorityCache.clear();
-        authorityBridgeTableCache.refresh();
+        authorityBridgeTableCache.authorityDeleted(name);
     }
     
     public PagingResults<AuthorityInfo> getAuthoritiesInfo(AuthorityType type, String zoneName, String displayNameFilter, String sortBy, boolean sortAscending, PagingRequest pagingRequest)
@@ -816,7 +815,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
             userAuthorityCache.clear();
             if (cacheRefresh)
             {
-                authorityBridgeTableCache.refresh();
+                authorityBridgeTableCache.linkRemoved(parentName, childName);
             }
         }
     }
@@ -826,7 +825,7 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
      */
     private void listAuthoritiesByBridgeTable(Set<String> authorities, String name)
     {
-        BridgeTable<String> bridgeTable = authorityBridgeTableCache.get();
+        AuthorityBridgeTable bridgeTable = authorityBridgeTableCache.get();
         
         AuthorityType type = AuthorityType.getAuthorityType(name);
         switch(type)
@@ -1830,6 +1829,18 @@ public class AuthorityDAOImpl implements AuthorityDAO, NodeServicePolicies.Befor
         PropertyCheck.mandatory(this, "storeRef", storeRef);
         PropertyCheck.mandatory(this, "storeRef", storeRef);
         authorityBridgeTableCache.register(this);
+        authorityBridgeTableCache.registerChangeListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (logger.isDebugEnabled())
+                {
+                    logger.debug("Bridge Table changes triggering userAuthorityCache.clear()");
+                }
+                userAuthorityCache.clear();
+            }
+        });
         
     };
 }
@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.security.permissions;
 
+import java.util.BitSet;
+import java.util.List;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -74,6 +76,32 @@ public interface PermissionServiceSPI extends PermissionService
      */
     public NodePermissionEntry getSetPermissions(NodeRef nodeRef);
 
+    /**
+     * Check if the current user can read nodes that have the given ACL, looking at the ACL alone.
+     * <p>
+     * The result can be shared by every node with the same ACL. Only {@link AccessStatus#ALLOWED} is
+     * conclusive: the owner and other dynamic authorities are not considered, so for any other answer
+     * the node must be checked with {@link #hasReadPermission(NodeRef)}.
+     * 
+     * @param aclId the ACL id
+     * @return {@link AccessStatus#ALLOWED} if the ACL grants read, otherwise {@link AccessStatus#DENIED}
+     *         or {@link AccessStatus#UNDETERMINED} if the ACL cannot be evaluated on its own
+     */
+    public AccessStatus hasAclReadPermission(Long aclId);
+
+    /**
+     * Check that the current authentication has a particular permission for each of the given nodes.
+     * <p>
+     * This gives the same answers as calling {@link #hasPermission(NodeRef, String)} for each node, but nodes that
+     * share an ACL, type, aspects and dynamic authorities are evaluated once.
+     * 
+     * @param nodeRefs the nodes to check
+     * @param perm the permission to check
+     * @return a bit set with the bit at each node's position in the list set unless the permission is
+     *         {@link AccessStatus#DENIED}
+     */
+    public BitSet hasPermissions(List<NodeRef> nodeRefs, String perm);
+
     /**
      * Check that the given authentication has a particular permission for the
      * given node. (The default behaviour is to inherit permissions)
@@ -0,0 +1,295 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Interns sets of authorities as {@link InternedAuthoritySet}s and remembers the core authority set of each user.
+ * <p>
+ * Authority names are given <tt>int</tt> indexes on first use and each distinct set of authorities is held once as a
+ * bit set over those indexes. A user's set is remembered against the set of containing authorities it was built from,
+ * which is the value held in the user authority cache and so is replaced whenever the user's group membership or the
+ * authority bridge table changes. Once <tt>maxSets</tt> sets have been interned everything is dropped and interning
+ * starts again; sets handed out before then remain valid.
+ * <p>
+ * The interner also keeps a bounded, node-local record of ACL evaluations for interned sets, see
+ * {@link #getAclResult(Object)}.
+ * 
+ * @since 7.0
+ */
+public class AuthoritySetInterner
+{
+    private boolean enabled = false;
+    private int maxSets = 10000;
+    private int maxAclResults = 50000;
+
+    private final AtomicLong nextSetId = new AtomicLong();
+    private volatile Dictionary dictionary = new Dictionary();
+    private volatile Map<Object, Boolean> aclResults = new ConcurrentHashMap<Object, Boolean>();
+    private final AtomicLong aclResultHits = new AtomicLong();
+    private final AtomicLong aclResultMisses = new AtomicLong();
+
+    /**
+     * @param enabled           <tt>true</tt> to intern the authority sets used for permission checks
+     */
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * @param maxSets           the number of distinct sets to intern before starting again
+     */
+    public void setMaxSets(int maxSets)
+    {
+        this.maxSets = maxSets;
+    }
+
+    /**
+     * @param maxAclResults     the number of ACL evaluations to remember before starting again
+     */
+    public void setMaxAclResults(int maxAclResults)
+    {
+        this.maxAclResults = maxAclResults;
+    }
+
+    /**
+     * Get the remembered authority set of a user.
+     * 
+     * @param username              the user name
+     * @param containingAuthorities the user's current containing authorities
+     * @param grantedAuthorities    the authorities granted by the user's authentication
+     * @return                      the remembered set or <tt>null</tt> if there is none for these authorities
+     */
+    public InternedAuthoritySet getUserAuthorities(String username, Set<String> containingAuthorities, String[] grantedAuthorities)
+    {
+        UserEntry entry = dictionary.users.get(username);
+        if (entry == null || !Arrays.equals(entry.grantedAuthorities, grantedAuthorities))
+        {
+            return null;
+        }
+        // The cached value is normally the same instance, but a distributed cache may hand out copies
+        if (entry.containingAuthorities != containingAuthorities && !entry.containingAuthorities.equals(containingAuthorities))
+        {
+            return null;
+        }
+        return entry.authorities;
+    }
+
+    /**
+     * Intern and remember the authority set of a user.
+     * 
+     * @param username              the user name
+     * @param containingAuthorities the containing authorities the set was built from
+     * @param grantedAuthorities    the authorities granted by the user's authentication
+     * @param authorities           all of the user's authorities
+     * @return                      the interned set
+     */
+    public InternedAuthoritySet putUserAuthorities(String username, Set<String> containingAuthorities, String[] grantedAuthorities,
+            Collection<String> authorities)
+    {
+        InternedAuthoritySet interned = intern(authorities);
+        interned.getDictionary().users.put(username, new UserEntry(containingAuthorities, grantedAuthorities, interned));
+        return interned;
+    }
+
+    /**
+     * Intern a set of authorities.
+     */
+    public InternedAuthoritySet intern(Collection<String> authorities)
+    {
+        Dictionary current = dictionary;
+        BitSet bits = new BitSet();
+        for (String authority : authorities)
+        {
+            bits.set(current.getOrAddIndex(authority));
+        }
+        return intern(current, bits);
+    }
+
+    /**
+     * Intern the union of an interned set and some further authorities.
+     * 
+     * @return                  the interned union, which is <tt>base</tt> if it already contains all the authorities
+     */
+    public InternedAuthoritySet union(InternedAuthoritySet base, Collection<String> authorities)
+    {
+        if (base.containsAll(authorities))
+        {
+            return base;
+        }
+        Dictionary baseDictionary = base.getDictionary();
+        BitSet bits = (BitSet) base.getBits().clone();
+        for (String authority : authorities)
+        {
+            bits.set(baseDictionary.getOrAddIndex(authority));
+        }
+        return intern(baseDictionary, bits);
+    }
+
+    private InternedAuthoritySet intern(Dictionary target, BitSet bits)
+    {
+        InternedAuthoritySet interned = target.sets.get(bits);
+        if (interned != null)
+        {
+            return interned;
+        }
+        interned = new InternedAuthoritySet(nextSetId.incrementAndGet(), bits, target);
+        InternedAuthoritySet existing = target.sets.putIfAbsent(bits, interned);
+        if (existing != null)
+        {
+            return existing;
+        }
+        if (target.sets.size() > maxSets && target == dictionary)
+        {
+            // Start again: sets already handed out keep their own dictionary
+            dictionary = new Dictionary();
+            aclResults = new ConcurrentHashMap<Object, Boolean>();
+        }
+        return interned;
+    }
+
+    /**
+     * Get a remembered ACL evaluation.  Keys must identify the version of the ACL as well as the
+     * {@link InternedAuthoritySet#getId() authority set} and everything else the evaluation depends on.
+     * 
+     * @return                  the result or <tt>null</tt> if not known
+     */
+    public Boolean getAclResult(Object key)
+    {
+        Boolean result = aclResults.get(key);
+        (result == null ? aclResultMisses : aclResultHits).incrementAndGet();
+        return result;
+    }
+
+    /**
+     * @return                  the number of ACL evaluations found by {@link #getAclResult(Object)}
+     */
+    public long getAclResultHits()
+    {
+        return aclResultHits.get();
+    }
+
+    /**
+     * @return                  the number of ACL evaluations not found by {@link #getAclResult(Object)}
+     */
+    public long getAclResultMisses()
+    {
+        return aclResultMisses.get();
+    }
+
+    /**
+     * Remember an ACL evaluation.
+     */
+    public void putAclResult(Object key, boolean result)
+    {
+        Map<Object, Boolean> results = aclResults;
+        if (results.size() >= maxAclResults)
+        {
+            results = new ConcurrentHashMap<Object, Boolean>();
+            aclResults = results;
+        }
+        results.put(key, result);
+    }
+
+    /**
+     * The authority indexes and the sets interned against them
+     */
+    static final class Dictionary
+    {
+        private final Map<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+        private volatile String[] names = new String[256];
+        private int count;
+        private final Map<BitSet, InternedAuthoritySet> sets = new ConcurrentHashMap<BitSet, InternedAuthoritySet>();
+        private final Map<String, UserEntry> users = new ConcurrentHashMap<String, UserEntry>();
+
+        int indexOf(Object name)
+        {
+            if (name == null)
+            {
+                return -1;
+            }
+            Integer index = indexes.get(name);
+            return index == null ? -1 : index;
+        }
+
+        String nameOf(int index)
+        {
+            return names[index];
+        }
+
+        int getOrAddIndex(String name)
+        {
+            Integer index = indexes.get(name);
+            if (index != null)
+            {
+                return index;
+            }
+            synchronized (this)
+            {
+                index = indexes.get(name);
+                if (index != null)
+                {
+                    return index;
+                }
+                if (count == names.length)
+                {
+                    names = Arrays.copyOf(names, count * 2);
+                }
+                // The name is stored before the index is published
+                names[count] = name;
+                indexes.put(name, count);
+                return count++;
+            }
+        }
+    }
+
+    private static final class UserEntry
+    {
+        private final Set<String> containingAuthorities;
+        private final String[] grantedAuthorities;
+        private final InternedAuthoritySet authorities;
+
+        private UserEntry(Set<String> containingAuthorities, String[] grantedAuthorities, InternedAuthoritySet authorities)
+        {
+            this.containingAuthorities = containingAuthorities;
+            this.grantedAuthorities = grantedAuthorities;
+            this.authorities = authorities;
+        }
+    }
+}
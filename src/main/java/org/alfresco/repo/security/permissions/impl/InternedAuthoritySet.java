@@ -0,0 +1,123 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable set of authorities held as a bit set over the authority indexes of an
+ * {@link AuthoritySetInterner}. Every distinct set is interned, so two sets with the same authorities share the same
+ * instance and {@link #getId() id}, which can be used in cache keys in place of the authorities themselves.
+ * 
+ * @since 7.0
+ */
+public final class InternedAuthoritySet extends AbstractSet<String>
+{
+    private final long id;
+    private final BitSet bits;
+    private final int size;
+    private final AuthoritySetInterner.Dictionary dictionary;
+
+    InternedAuthoritySet(long id, BitSet bits, AuthoritySetInterner.Dictionary dictionary)
+    {
+        this.id = id;
+        this.bits = bits;
+        this.size = bits.cardinality();
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * @return          the id of this set, unique for the lifetime of the {@link AuthoritySetInterner}
+     */
+    public long getId()
+    {
+        return id;
+    }
+
+    BitSet getBits()
+    {
+        return bits;
+    }
+
+    AuthoritySetInterner.Dictionary getDictionary()
+    {
+        return dictionary;
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        int index = dictionary.indexOf(o);
+        return index >= 0 && bits.get(index);
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+        return new Iterator<String>()
+        {
+            private int next = bits.nextSetBit(0);
+
+            @Override
+            public boolean hasNext()
+            {
+                return next >= 0;
+            }
+
+            @Override
+            public String next()
+            {
+                if (next < 0)
+                {
+                    throw new NoSuchElementException();
+                }
+                String name = dictionary.nameOf(next);
+                next = bits.nextSetBit(next + 1);
+                return name;
+            }
+        };
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        // Same authorities as the bits within one dictionary, otherwise compare by name
+        if (o instanceof InternedAuthoritySet && ((InternedAuthoritySet) o).dictionary == dictionary)
+        {
+            return ((InternedAuthoritySet) o).bits.equals(bits);
+        }
+        return super.equals(o);
+    }
+}
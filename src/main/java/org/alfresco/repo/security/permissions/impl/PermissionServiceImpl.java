@@ -28,8 +28,12 @@ package org.alfresco.repo.security.permissions.impl;
 import static org.apache.commons.lang3.BooleanUtils.toBoolean;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +45,7 @@ import net.sf.acegisecurity.providers.dao.User;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.domain.permissions.FixedAclUpdater;
 import org.alfresco.repo.policy.ClassPolicyDelegate;
@@ -166,8 +171,15 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
     
     protected FixedAclUpdater fixedAclUpdater;
 
+    /*
+     * Pre-loads the nodes checked in bulk
+     */
+    protected NodeDAO nodeDAO;
+
     protected boolean anyDenyDenies = false;
 
+    protected AuthoritySetInterner authoritySetInterner;
+
     private final ExtendedTrait<PermissionServiceTrait> permissionServiceTrait;
     
     private ClassPolicyDelegate<OnGrantLocalPermission> onGrantLocalPermissionDelegate;
@@ -300,6 +312,44 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         this.fixedAclUpdater = fixedAclUpdater;
     }
     
+    /**
+     * Set the node DAO used to pre-load the nodes checked by {@link #hasPermissions(List, String)}
+     * 
+     * @param nodeDAO NodeDAO
+     */
+    public void setNodeDAO(NodeDAO nodeDAO)
+    {
+        this.nodeDAO = nodeDAO;
+    }
+
+    /**
+     * Ask the {@link FixedAclUpdater} to process the node, or its primary parent, first if its ACLs are still to be
+     * fixed, as the children of such a node may not have their final permissions yet.
+     */
+    private void prioritisePendingFixedAcl(NodeRef nodeRef, Set<QName> aspectQNames)
+    {
+        if (aspectQNames.contains(ContentModel.ASPECT_PENDING_FIX_ACL))
+        {
+            fixedAclUpdater.prioritise(nodeRef);
+            return;
+        }
+        ChildAssociationRef parentAssocRef = nodeService.getPrimaryParent(nodeRef);
+        NodeRef parentRef = parentAssocRef == null ? null : parentAssocRef.getParentRef();
+        if (parentRef != null && nodeService.hasAspect(parentRef, ContentModel.ASPECT_PENDING_FIX_ACL))
+        {
+            fixedAclUpdater.prioritise(parentRef);
+        }
+    }
+
+    /**
+     * Set the interner used to hold the authorities of each user as a compact, shared set.  Interning is only used
+     * if the interner is enabled.
+     */
+    public void setAuthoritySetInterner(AuthoritySetInterner authoritySetInterner)
+    {
+        this.authoritySetInterner = authoritySetInterner;
+    }
+    
     /**
      * Set the permissions access cache.
      * 
@@ -590,6 +640,10 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             QName typeQname = nodeService.getType(nodeRef);
             Set<QName> aspectQNames = nodeService.getAspects(nodeRef);
+            if (fixedAclUpdater != null && fixedAclUpdater.isPrioritiseReadNodes())
+            {
+                prioritisePendingFixedAcl(nodeRef, aspectQNames);
+            }
             PermissionContext context = new PermissionContext(typeQname);
             context.getAspects().addAll(aspectQNames);
             Authentication auth = AuthenticationUtil.getRunAsAuthentication();
@@ -782,7 +836,11 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         }
 
         boolean result;
-        if (context.getStoreAcl() == null)
+        if (context.getStoreAcl() == null && authorisations instanceof InternedAuthoritySet)
+        {
+            result = evaluateInterned((InternedAuthoritySet) authorisations, aclId, context, permission);
+        }
+        else if (context.getStoreAcl() == null)
         {
             AclTest aclTest = new AclTest(permission, typeQname, aspectQNames);
             result = aclTest.evaluate(authorisations, aclId, context);
@@ -798,6 +856,31 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     }
 
+    /**
+     * Evaluate an ACL for an interned authority set, reusing an earlier evaluation of the same version of the ACL for
+     * the same set, permission, type and aspects.  Dynamic authorities are already part of the set.
+     */
+    private boolean evaluateInterned(InternedAuthoritySet authorisations, Long aclId, PermissionContext context, PermissionReference permission)
+    {
+        // The ACL properties change with every change to the ACL, as for the ACL cache
+        AccessControlListProperties properties = aclDaoComponent.getAccessControlListProperties(aclId);
+        if (properties == null)
+        {
+            return new AclTest(permission, context.getType(), context.getAspects()).evaluate(authorisations, aclId, context);
+        }
+        // Copy the aspects as the context is mutable
+        List<Object> key = Arrays.<Object>asList(properties, authorisations.getId(), permission, context.getType(),
+                new HashSet<QName>(context.getAspects()));
+        Boolean result = authoritySetInterner.getAclResult(key);
+        if (result == null)
+        {
+            AclTest aclTest = new AclTest(permission, context.getType(), context.getAspects());
+            result = aclTest.evaluate(authorisations, aclId, context);
+            authoritySetInterner.putAclResult(key, result);
+        }
+        return result;
+    }
+
     /**
      * Control permissions cache - only used when we do old style permission evaluations 
      * - which should only be in DM stores where no permissions have been set 
@@ -834,6 +917,11 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         {
             key.add((Serializable)Collections.singleton(((AuthorityServiceImpl.UserAuthoritySet)auths).getUsername()));
         }
+        else if (auths instanceof InternedAuthoritySet)
+        {
+            // As for the lazy set: the interned set is local to this server so key it by the user
+            key.add((Serializable)Collections.singleton(AuthenticationUtil.getRunAsUser()));
+        }
         else
         {
             key.addAll(auths);            
@@ -871,20 +959,62 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         return auths;
     }
 
+    /**
+     * Get the core authorisations used for permission checks.  When authority sets are interned this is a read-only
+     * {@link InternedAuthoritySet} and {@link #getCoreAuthorisations(Authentication)} is not called; otherwise it is
+     * the mutable set returned by {@link #getCoreAuthorisations(Authentication)}.
+     */
+    private Set<String> getCheckAuthorisations(Authentication auth)
+    {
+        if (auth != null && authoritySetInterner != null && authoritySetInterner.isEnabled())
+        {
+            return getInternedCoreAuthorisations(auth, ((User) auth.getPrincipal()).getUsername());
+        }
+        return getCoreAuthorisations(auth);
+    }
+
+    /**
+     * Get the core authorisations as an interned set, remembered for the user until their containing authorities change.
+     */
+    private Set<String> getInternedCoreAuthorisations(Authentication auth, String username)
+    {
+        GrantedAuthority[] grantedAuthorities = auth.getAuthorities();
+        String[] granted = new String[grantedAuthorities == null ? 0 : grantedAuthorities.length];
+        for (int i = 0; i < granted.length; i++)
+        {
+            granted[i] = grantedAuthorities[i].getAuthority();
+        }
+        Set<String> containing = authorityService.getContainingAuthorities(null, username, false);
+        InternedAuthoritySet interned = authoritySetInterner.getUserAuthorities(username, containing, granted);
+        if (interned == null)
+        {
+            Set<String> auths = new HashSet<String>(authorityService.getAuthoritiesForUser(username));
+            auths.add(username);
+            auths.addAll(Arrays.asList(granted));
+            interned = authoritySetInterner.putUserAuthorities(username, containing, granted, auths);
+        }
+        return interned;
+    }
+
     /**
      * Get the authorisations for the currently authenticated user
      * 
      * @param auth Authentication
      * @param nodeRef NodeRef
      * @param required PermissionReference
-     * @return the set of authorisations
+     * @return the set of authorisations, read-only when authority sets are interned
      */
     protected Set<String> getAuthorisations(Authentication auth, NodeRef nodeRef, PermissionReference required)
     {
-        Set<String> auths = getCoreAuthorisations(auth);
+        Set<String> auths = getCheckAuthorisations(auth);
         if (auth != null)
         {
-            auths.addAll(getDynamicAuthorities(auth, nodeRef, required));
+            Set<String> dynAuths = getDynamicAuthorities(auth, nodeRef, required);
+            if (auths instanceof InternedAuthoritySet)
+            {
+                return authoritySetInterner.union((InternedAuthoritySet) auths, dynAuths);
+            }
+            auths.addAll(dynAuths);
         }
         return auths;
     }
@@ -918,12 +1048,17 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
 
     protected Set<String> getAuthorisations(Authentication auth, PermissionContext context)
     {
-        Set<String> auths = getCoreAuthorisations(auth);
+        Set<String> auths = getCheckAuthorisations(auth);
         if (auth != null)
         {
             if (context != null)
             {
-                auths.addAll(getDynamicAuthorities(auth, context, auths));
+                Set<String> dynAuths = getDynamicAuthorities(auth, context, auths);
+                if (auths instanceof InternedAuthoritySet)
+                {
+                    return authoritySetInterner.union((InternedAuthoritySet) auths, dynAuths);
+                }
+                auths.addAll(dynAuths);
             }
         }
         return auths;
@@ -1218,6 +1353,150 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         return hasPermission(nodeRef, getPermissionReference(perm));
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The nodes are pre-loaded together and grouped by ACL, type and aspects; the permission is evaluated once per group.
+     * A node goes through {@link #hasPermission(NodeRef, PermissionReference)} on its own if it does not have a new
+     * style ACL or if a dynamic authority, such as the owner or the lock owner, applies to it.  So does every node when
+     * running as the system user or without an authentication.
+     */
+    @Override
+    public BitSet hasPermissions(List<NodeRef> nodeRefs, String perm)
+    {
+        BitSet allowed = new BitSet(nodeRefs.size());
+        PermissionReference permIn = getPermissionReference(perm);
+        Authentication auth = AuthenticationUtil.getRunAsAuthentication();
+        boolean group = permIn != null && auth != null && AuthenticationUtil.getRunAsUser() != null
+                && !AuthenticationUtil.isRunAsUserTheSystemUser();
+        PermissionReference permission = OLD_ALL_PERMISSIONS_REFERENCE.equals(permIn) ? getAllPermissionReference() : permIn;
+        // The user and the dynamic authorities that may apply are the same for every node
+        String username = group ? ((User) auth.getPrincipal()).getUsername() : null;
+        List<DynamicAuthority> requiredDynamicAuthorities = group ? getDynamicAuthoritiesRequiredFor(permission) : null;
+        if (group)
+        {
+            cacheNodes(nodeRefs);
+        }
+        
+        // The positions of the nodes in each group of ACL, type and aspects
+        Map<List<Object>, List<Integer>> indexesByGroup = new LinkedHashMap<List<Object>, List<Integer>>();
+        for (int index = 0; index < nodeRefs.size(); index++)
+        {
+            NodeRef nodeRef = nodeRefs.get(index);
+            List<Object> key = null;
+            if (group && nodeRef != null && !isVersionNodeRef(nodeRef) && nodeService.exists(nodeRef))
+            {
+                key = getPermissionGroup(tenantService.getName(nodeRef), username, requiredDynamicAuthorities);
+            }
+            if (key == null)
+            {
+                if (hasPermission(nodeRef, permIn) != AccessStatus.DENIED)
+                {
+                    allowed.set(index);
+                }
+                continue;
+            }
+            List<Integer> indexes = indexesByGroup.get(key);
+            if (indexes == null)
+            {
+                indexes = new ArrayList<Integer>();
+                indexesByGroup.put(key, indexes);
+            }
+            indexes.add(index);
+        }
+        
+        for (Map.Entry<List<Object>, List<Integer>> entry : indexesByGroup.entrySet())
+        {
+            List<Object> key = entry.getKey();
+            @SuppressWarnings("unchecked")
+            Set<QName> aspectQNames = (Set<QName>) key.get(2);
+            PermissionContext context = new PermissionContext((QName) key.get(1));
+            context.getAspects().addAll(aspectQNames);
+            if (hasPermission((Long) key.get(0), context, permission) != AccessStatus.DENIED)
+            {
+                for (Integer index : entry.getValue())
+                {
+                    allowed.set(index);
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Pre-load the live nodes that are about to be checked
+     */
+    private void cacheNodes(List<NodeRef> nodeRefs)
+    {
+        if (nodeDAO == null)
+        {
+            return;
+        }
+        List<NodeRef> liveNodeRefs = new ArrayList<NodeRef>(nodeRefs.size());
+        for (NodeRef nodeRef : nodeRefs)
+        {
+            if (nodeRef != null && !isVersionNodeRef(nodeRef))
+            {
+                liveNodeRefs.add(tenantService.getName(nodeRef));
+            }
+        }
+        if (liveNodeRefs.size() > 1)
+        {
+            nodeDAO.cacheNodes(liveNodeRefs);
+        }
+    }
+
+    /**
+     * Get the group of nodes whose permissions can be evaluated together with this one: those with the same new style
+     * ACL, type and aspects.
+     * 
+     * @return the ACL ID, type and aspects of the node, or <tt>null</tt> if the node must be checked on its own because
+     *         it does not have a new style ACL or because one of the dynamic authorities applies to it
+     */
+    private List<Object> getPermissionGroup(NodeRef nodeRef, String username, List<DynamicAuthority> requiredDynamicAuthorities)
+    {
+        AccessControlListProperties properties = permissionsDaoComponent.getAccessControlListProperties(nodeRef);
+        if ((properties == null) || (properties.getAclType() == null) || (properties.getAclType() == ACLType.OLD))
+        {
+            return null;
+        }
+        for (DynamicAuthority da : requiredDynamicAuthorities)
+        {
+            if (da.hasAuthority(nodeRef, username))
+            {
+                return null;
+            }
+        }
+        QName typeQname = nodeService.getType(nodeRef);
+        Set<QName> aspectQNames = nodeService.getAspects(nodeRef);
+        if (fixedAclUpdater != null && fixedAclUpdater.isPrioritiseReadNodes())
+        {
+            prioritisePendingFixedAcl(nodeRef, aspectQNames);
+        }
+        return Arrays.<Object>asList(properties.getId(), typeQname, aspectQNames);
+    }
+
+    /**
+     * @return the dynamic authorities that may be granted for the permission, which are then checked against each node
+     */
+    private List<DynamicAuthority> getDynamicAuthoritiesRequiredFor(PermissionReference required)
+    {
+        if (dynamicAuthorities == null)
+        {
+            return Collections.emptyList();
+        }
+        List<DynamicAuthority> requiredDynamicAuthorities = new ArrayList<DynamicAuthority>(dynamicAuthorities.size());
+        for (DynamicAuthority da : dynamicAuthorities)
+        {
+            Set<PermissionReference> requiredFor = da.requiredFor();
+            if ((requiredFor == null) || (requiredFor.contains(required)))
+            {
+                requiredDynamicAuthorities.add(da);
+            }
+        }
+        return requiredDynamicAuthorities;
+    }
+
     @Override
     @Extend(traitAPI = PermissionServiceTrait.class, extensionAPI = PermissionServiceExtension.class)
     public void setPermission(NodeRef nodeRef, String authority, String perm, boolean allow)
@@ -1271,8 +1550,66 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             return AccessStatus.ALLOWED;
         }
 
-        // any dynamic authorities other than those defined in the default permissions model with full
-        // control or read permission force hasPermission check
+        if(isForceHasPermission())
+        {
+            return hasPermission(nodeRef, PermissionService.READ);
+        }
+
+        Long aclID = nodeService.getNodeAclId(nodeRef);
+        if(aclID == null)
+        {
+            // ACLID is null - need to call default permissions evaluation
+            // This will end up calling the old-style ACL code that walks up the ACL tree
+            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
+        }
+        else
+        {
+            status = (canRead(aclID) == AccessStatus.ALLOWED ||
+                    adminRead() == AccessStatus.ALLOWED ||
+                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+        }
+
+        return status;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AccessStatus hasAclReadPermission(Long aclId)
+    {
+        if (aclId == null)
+        {
+            return AccessStatus.UNDETERMINED;
+        }
+
+        if (AuthenticationUtil.getRunAsUser() == null)
+        {
+            return AccessStatus.DENIED;
+        }
+
+        if (AuthenticationUtil.isRunAsUserTheSystemUser())
+        {
+            return AccessStatus.ALLOWED;
+        }
+
+        // Read may depend on dynamic authorities that can only be evaluated against a node
+        if (isForceHasPermission())
+        {
+            return AccessStatus.UNDETERMINED;
+        }
+
+        return (canRead(aclId) == AccessStatus.ALLOWED ||
+                adminRead() == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
+    }
+
+    /**
+     * Any dynamic authorities other than those defined in the default permissions model with full
+     * control or read permission force a full hasPermission check for read.
+     * The answer is bound to the current transaction.
+     */
+    private boolean isForceHasPermission()
+    {
         Boolean forceHasPermission = (Boolean)AlfrescoTransactionSupport.getResource("forceHasPermission");
         if(forceHasPermission == null)
         {
@@ -1293,27 +1630,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
             }
             AlfrescoTransactionSupport.bindResource("forceHasPermission", forceHasPermission);            
         }
-
-        if(forceHasPermission == Boolean.TRUE)
-        {
-            return hasPermission(nodeRef, PermissionService.READ);
-        }
-
-        Long aclID = nodeService.getNodeAclId(nodeRef);
-        if(aclID == null)
-        {
-            // ACLID is null - need to call default permissions evaluation
-            // This will end up calling the old-style ACL code that walks up the ACL tree
-            status = hasPermission(nodeRef, getPermissionReference(null, PermissionService.READ));
-        }
-        else
-        {
-            status = (canRead(aclID) == AccessStatus.ALLOWED ||
-                    adminRead() == AccessStatus.ALLOWED ||
-                    ownerRead(runAsUser, nodeRef) == AccessStatus.ALLOWED) ? AccessStatus.ALLOWED : AccessStatus.DENIED;
-        }
-
-        return status;
+        return forceHasPermission == Boolean.TRUE;
     }
 
     protected AccessStatus adminRead()
@@ -2925,7 +3242,7 @@ public class PermissionServiceImpl extends AbstractLifecycleBean implements Perm
         }
         if (auths == null)
         {
-            auths = getCoreAuthorisations(auth);
+            auths = getCheckAuthorisations(auth);
             AlfrescoTransactionSupport.bindResource("MyAuthCache", auths);
         }
         return Collections.unmodifiableSet(auths);   
@@ -26,8 +26,10 @@
 package org.alfresco.repo.security.permissions.impl.acegi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -52,6 +54,7 @@ import org.alfresco.repo.security.permissions.PermissionCheckCollection;
 import org.alfresco.repo.security.permissions.PermissionCheckValue;
 import org.alfresco.repo.security.permissions.PermissionCheckedCollection.PermissionCheckedCollectionMixin;
 import org.alfresco.repo.security.permissions.PermissionCheckedValue;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionReference;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -103,6 +106,7 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
 	private int optimisePermissionsBulkFetchSize;
     private boolean anyDenyDenies = false;
     private boolean postProcessDenies = false;
+    private int bulkPermissionCheckSize = 0;
     /**
      * Default constructor
      */
@@ -527,6 +531,20 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
     {
         this.postProcessDenies = postProcessDenies;
     }
+
+    /**
+     * Set the number of collection values whose permissions are checked together, grouping nodes that share an ACL.
+     * Values of 1 or less check each value on its own. Bulk checks need a {@link PermissionServiceSPI}.
+     * <p>
+     * The number of values checked together starts at one and doubles up to this size, as long as the time taken
+     * so far says the checks will complete within the time-based cut-off.
+     * 
+     * @param bulkPermissionCheckSize int
+     */
+    public void setBulkPermissionCheckSize(int bulkPermissionCheckSize)
+    {
+        this.bulkPermissionCheckSize = bulkPermissionCheckSize;
+    }
     
 	private ResultSet decide(Authentication authentication, Object object, ConfigAttributeDefinition config, ResultSet returnedObject) throws AccessDeniedException
     {
@@ -807,6 +825,14 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         // Keep values explicitly
         List<Object> keepValues = new ArrayList<Object>(returnedObject.size());
         
+        // Permissions are decided for a window of values at a time, which is a single value unless checks are bulked
+        int maxWindowSize = (bulkPermissionCheckSize > 1 && permissionService instanceof PermissionServiceSPI) ? bulkPermissionCheckSize : 1;
+        List<Object> values = (maxWindowSize > 1) ? new ArrayList<Object>(returnedObject) : null;
+        // Windows start small and grow, so that the time taken by the first checks can size the later ones
+        int windowSize = 1;
+        boolean[] windowAllowed = new boolean[0];
+        int windowStart = 0;
+        
         for (Object nextObject : returnedObject)
         {
             // if the maximum result size or time has been exceeded, then we have to remove only
@@ -838,90 +864,32 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
                 break;
             }
             
-            boolean allowed = true;
-            for (ConfigAttributeDefintion cad : supportedDefinitions)
+            boolean allowed;
+            if (values == null)
             {
-                NodeRef testNodeRef = null;
-                if (cad.typeString.equals(AFTER_ACL_NODE))
-                {
-                    if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = nodeService.getRootNode((StoreRef) nextObject);
-                    }
-                    else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) nextObject;
-                    }
-                    else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((ChildAssociationRef) nextObject).getChildRef();
-                    }
-                    else if (Pair.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
-                    }
-                    else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
-                    }
-                    else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((AssociationRef) nextObject).getTargetRef();
-                    }
-                    else
-                    {
-                        throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
-                    }
-                }
-                else if (cad.typeString.equals(AFTER_ACL_PARENT))
+                allowed = decide(Collections.singletonList(nextObject), supportedDefinitions)[0];
+            }
+            else
+            {
+                if (count - windowStart >= windowAllowed.length)
                 {
-                    if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        // Will be allowed
-                        testNodeRef = null;
-                    }
-                    else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = nodeService.getPrimaryParent((NodeRef) nextObject).getParentRef();
-                    }
-                    else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = ((ChildAssociationRef) nextObject).getParentRef();
-                    }
-                    else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+                    // Decide the next window, but never check more values than are needed or allowed
+                    long windowEnd = Math.min(values.size(), (long) count + windowSize);
+                    windowEnd = Math.min(windowEnd, maxPermissionChecks);
+                    windowEnd = Math.min(windowEnd, count + targetResultCount - keepValues.size());
+                    long elapsedMillis = currentTimeMillis - startTimeMillis;
+                    long remainingMillis = maxPermissionCheckTimeMillis - elapsedMillis;
+                    if (count > 0 && elapsedMillis > 0 && remainingMillis < Long.MAX_VALUE / count)
                     {
-                        testNodeRef = ((AssociationRef) nextObject).getSourceRef();
-                    }
-                    else if (Pair.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
-                    }
-                    else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
-                    {
-                        NodeRef nodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
-                        testNodeRef = nodeService.getPrimaryParent(nodeRef).getParentRef();
-                    }
-                    else
-                    {
-                        throw new ACLEntryVoterException("The specified parameter is recognized: " + nextObject.getClass());
+                        // Only check as many values as the time taken so far says will fit in the time left
+                        long remainingChecks = remainingMillis * count / elapsedMillis;
+                        windowEnd = Math.min(windowEnd, count + Math.max(1L, remainingChecks));
                     }
+                    windowStart = count;
+                    windowAllowed = decide(values.subList(count, (int) windowEnd), supportedDefinitions);
+                    windowSize = Math.min(maxWindowSize, windowSize * 2);
                 }
-                
-                if (log.isDebugEnabled())
-                {
-                    log.debug("\t" + cad.typeString + " test on " + testNodeRef + " from " + nextObject.getClass().getName());
-                }
-                
-                if (isUnfiltered(testNodeRef))      // Null allows
-                {
-                    continue;                       // Continue to next ConfigAttributeDefintion
-                }
-                
-                if (allowed && (testNodeRef != null) && (permissionService.hasPermission(testNodeRef, cad.required.toString()) == AccessStatus.DENIED))
-                {
-                    allowed = false;
-                    break;                          // No point evaluating more ConfigAttributeDefintions
-                }
+                allowed = windowAllowed[count - windowStart];
             }
             
             // Failure or success, increase the count
@@ -955,6 +923,140 @@ public class ACLEntryAfterInvocationProvider implements AfterInvocationProvider,
         return PermissionCheckedCollectionMixin.create(returnedObject, cutoff, checksRemaining, sizeOriginal);
     }
 
+    /**
+     * Decide the permissions for a window of collection values.
+     * 
+     * @return whether each value in the window is allowed
+     */
+    private boolean[] decide(List<Object> values, List<ConfigAttributeDefintion> supportedDefinitions)
+    {
+        boolean[] allowed = new boolean[values.size()];
+        Arrays.fill(allowed, true);
+        for (ConfigAttributeDefintion cad : supportedDefinitions)
+        {
+            List<NodeRef> testNodeRefs = new ArrayList<NodeRef>(values.size());
+            List<Integer> testPositions = new ArrayList<Integer>(values.size());
+            for (int i = 0; i < values.size(); i++)
+            {
+                if (!allowed[i])
+                {
+                    continue;                       // No point evaluating more ConfigAttributeDefintions
+                }
+                Object nextObject = values.get(i);
+                NodeRef testNodeRef = getTestNodeRef(cad, nextObject);
+                
+                if (log.isDebugEnabled())
+                {
+                    log.debug("\t" + cad.typeString + " test on " + testNodeRef + " from " + nextObject.getClass().getName());
+                }
+                
+                if (isUnfiltered(testNodeRef) || (testNodeRef == null))      // Null allows
+                {
+                    continue;
+                }
+                testNodeRefs.add(testNodeRef);
+                testPositions.add(i);
+            }
+            
+            if (testNodeRefs.size() == 1)
+            {
+                if (permissionService.hasPermission(testNodeRefs.get(0), cad.required.toString()) == AccessStatus.DENIED)
+                {
+                    allowed[testPositions.get(0)] = false;
+                }
+            }
+            else if (testNodeRefs.size() > 1)
+            {
+                // Nodes sharing an ACL are evaluated once
+                BitSet testAllowed = ((PermissionServiceSPI) permissionService).hasPermissions(testNodeRefs, cad.required.toString());
+                for (int i = 0; i < testNodeRefs.size(); i++)
+                {
+                    if (!testAllowed.get(i))
+                    {
+                        allowed[testPositions.get(i)] = false;
+                    }
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Get the node that a collection value is checked against.
+     * 
+     * @return the node to check, or <tt>null</tt> if the value is allowed
+     */
+    @SuppressWarnings("rawtypes")
+    private NodeRef getTestNodeRef(ConfigAttributeDefintion cad, Object nextObject)
+    {
+        NodeRef testNodeRef = null;
+        if (cad.typeString.equals(AFTER_ACL_NODE))
+        {
+            if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = nodeService.getRootNode((StoreRef) nextObject);
+            }
+            else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = (NodeRef) nextObject;
+            }
+            else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = ((ChildAssociationRef) nextObject).getChildRef();
+            }
+            else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
+            }
+            else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
+            }
+            else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = ((AssociationRef) nextObject).getTargetRef();
+            }
+            else
+            {
+                throw new ACLEntryVoterException("The specified parameter is not recognized: " + nextObject.getClass());
+            }
+        }
+        else if (cad.typeString.equals(AFTER_ACL_PARENT))
+        {
+            if (StoreRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                // Will be allowed
+                testNodeRef = null;
+            }
+            else if (NodeRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = nodeService.getPrimaryParent((NodeRef) nextObject).getParentRef();
+            }
+            else if (ChildAssociationRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = ((ChildAssociationRef) nextObject).getParentRef();
+            }
+            else if (AssociationRef.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = ((AssociationRef) nextObject).getSourceRef();
+            }
+            else if (Pair.class.isAssignableFrom(nextObject.getClass()))
+            {
+                testNodeRef = (NodeRef) ((Pair)nextObject).getSecond();
+            }
+            else if (PermissionCheckValue.class.isAssignableFrom(nextObject.getClass()))
+            {
+                NodeRef nodeRef = ((PermissionCheckValue) nextObject).getNodeRef();
+                testNodeRef = nodeService.getPrimaryParent(nodeRef).getParentRef();
+            }
+            else
+            {
+                throw new ACLEntryVoterException("The specified parameter is recognized: " + nextObject.getClass());
+            }
+        }
+        return testNodeRef;
+    }
+
     @SuppressWarnings("rawtypes")
     private Object[] decide(Authentication authentication, Object object, ConfigAttributeDefinition config, Object[] returnedObject) throws AccessDeniedException
     {
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.security.sync;
 
+import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.admin.SysAdminParams;
 import org.alfresco.repo.batch.BatchProcessor;
@@ -45,6 +46,7 @@ import org.alfresco.repo.transaction.AlfrescoTransactionSupport.TxnReadState;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.cmr.attributes.AttributeService;
+import org.alfresco.service.cmr.attributes.AttributeService.AttributeQueryCallback;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.security.AuthorityService;
 import org.alfresco.service.cmr.security.AuthorityType;
@@ -55,6 +57,7 @@ import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.PropertyCheck;
 import org.alfresco.util.PropertyMap;
 import org.alfresco.util.TraceableThreadFactory;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.context.ApplicationContext;
@@ -71,8 +74,16 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -145,7 +156,10 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         
     /** The label under which the status is stored for each zone. */
     private static final String SUMMARY_ATTRIBUTE = "SUMMARY";
-    
+
+    /** The path in the attribute service below which we persist a hash of each synchronized user, by zone. */
+    /* package */ static final String PERSON_HASH_ATTRIBUTE_PATH = ROOT_ATTRIBUTE_PATH + ".PersonHash";
+
     /** The manager for the autentication chain to be traversed. */
     private ChildApplicationContextManager applicationContextManager;
 
@@ -201,6 +215,12 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     private String externalUserControl = "";
 
     private String externalUserControlSubsystemName = "";
+
+    /** Skip users whose registry description hasn't changed since they were last synchronized? */
+    private boolean skipUnchangedPersons = false;
+
+    /** The number of threads reading the groups of the zones in the chain ahead of their turn. */
+    private int zonePrefetchThreads = 0;
     
     public void init()
     {
@@ -400,6 +420,33 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
     {
         this.syncDelete = syncDelete;
     }
+
+    /**
+     * Controls whether a hash of each synchronized user is stored, so that users whose description in the registry
+     * hasn't changed can be skipped by later synchronizations. The hashes of a zone are read with a single query at
+     * the start of its user synchronization. By default is set to false.
+     * 
+     * @param skipUnchangedPersons
+     *            If <b>true</b> then unchanged users are not written again. Local changes to their synchronized
+     *            properties are then only overwritten once the user changes in the registry.
+     */
+    public void setSkipUnchangedPersons(boolean skipUnchangedPersons)
+    {
+        this.skipUnchangedPersons = skipUnchangedPersons;
+    }
+
+    /**
+     * Sets the number of zones after the one being synchronized whose groups are read ahead of their turn, each on its
+     * own thread. Zones are still applied one after another, in chain order, as users and groups of a zone take
+     * precedence over those of the zones after it. Only used by batch (scheduled or startup) synchronizations.
+     * 
+     * @param zonePrefetchThreads
+     *            the number of zones read ahead, or zero to read each zone's groups when its turn comes
+     */
+    public void setZonePrefetchThreads(int zonePrefetchThreads)
+    {
+        this.zonePrefetchThreads = zonePrefetchThreads;
+    }
     
     @Override
     public SynchronizeDiagnostic testSynchronize(String authenticatorName)
@@ -517,6 +564,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         threadFactory.setNamePrefix("ChainingUserRegistrySynchronizer lock refresh");
         threadFactory.setThreadDaemon(true);
         ScheduledExecutorService lockRefresher = new ScheduledThreadPoolExecutor(1, threadFactory);
+        ExecutorService zonePrefetcher = null;
 
         // Let's ensure all exceptions get logged
         try
@@ -615,6 +663,25 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
              */
             notifySyncStart(plugins.keySet());
 
+            // Read the groups of the next zones ahead of their turn, so that the registries are queried while earlier
+            // zones are being applied. At most zonePrefetchThreads zones are read ahead at a time.
+            Deque<String> zonesToPrefetch = new LinkedList<String>();
+            Map<String, Future<Collection<NodeDescription>>> prefetchedGroups = new HashMap<String, Future<Collection<NodeDescription>>>();
+            if (splitTxns && this.zonePrefetchThreads > 0 && plugins.size() > 1)
+            {
+                TraceableThreadFactory prefetchThreadFactory = new TraceableThreadFactory();
+                prefetchThreadFactory.setNamePrefix("ChainingUserRegistrySynchronizer zone prefetch");
+                prefetchThreadFactory.setThreadDaemon(true);
+                zonePrefetcher = Executors.newFixedThreadPool(this.zonePrefetchThreads, prefetchThreadFactory);
+                for (String id : instanceIds)
+                {
+                    if (plugins.containsKey(id))
+                    {
+                        zonesToPrefetch.add(id);
+                    }
+                }
+            }
+
             for (String id : instanceIds)
             {    
                 UserRegistry plugin = plugins.get(id);
@@ -731,12 +798,21 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                     boolean requiresNew = splitTxns
                             || AlfrescoTransactionSupport.getTransactionReadState() == TxnReadState.TXN_READ_ONLY;
 
+                    // Take this zone's groups if they were read ahead, and start reading the zones after it
+                    zonesToPrefetch.remove(id);
+                    Future<Collection<NodeDescription>> groups = prefetchedGroups.remove(id);
+                    if (zonePrefetcher != null)
+                    {
+                        prefetchGroups(zonePrefetcher, prefetchedGroups, zonesToPrefetch, plugins, forceUpdate);
+                    }
+
                     try 
                     {    
                        /**
                         * Do the sync with the specified plugin
                         */
-                       syncWithPlugin(id, plugin, forceUpdate, isFullSync, requiresNew, visitedZoneIds, allZoneIds);
+                       syncWithPlugin(id, plugin, forceUpdate, isFullSync, requiresNew, visitedZoneIds, allZoneIds,
+                               groups);
 
                        this.applicationEventPublisher.publishEvent(new SynchronizeDirectoryEndEvent(this, id));                       
                     }
@@ -759,6 +835,11 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         }
         finally
         {            
+            if (zonePrefetcher != null)
+            {
+                zonePrefetcher.shutdownNow();
+            }
+
             // Release the lock if necessary
             if (lockToken != null)
             {
@@ -799,6 +880,69 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         }
     }
 
+    /**
+     * Waits for groups read by {@link #prefetchGroups}, rethrowing any failure to read them.
+     */
+    private Collection<NodeDescription> getPrefetchedGroups(Future<Collection<NodeDescription>> prefetchedGroups)
+    {
+        try
+        {
+            return prefetchedGroups.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new AlfrescoRuntimeException("Interrupted while reading groups from the user registry", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            throw new AlfrescoRuntimeException("Failed to read groups from the user registry", cause);
+        }
+    }
+
+    /**
+     * Starts reading the groups of the next zones, in authentication chain order, on the given executor, until
+     * <tt>zonePrefetchThreads</tt> zones are pending. Groups are only held for the zones immediately ahead of the one
+     * being synchronized, rather than for the whole chain.
+     * 
+     * @param prefetchedGroups
+     *            the pending group descriptions by zone, added to
+     * @param zonesToPrefetch
+     *            the zones whose groups have not been requested yet, in chain order, taken from
+     */
+    private void prefetchGroups(ExecutorService executor, Map<String, Future<Collection<NodeDescription>>> prefetchedGroups,
+            Deque<String> zonesToPrefetch, Map<String, UserRegistry> plugins, final boolean forceUpdate)
+    {
+        while (prefetchedGroups.size() < this.zonePrefetchThreads && !zonesToPrefetch.isEmpty())
+        {
+            String id = zonesToPrefetch.poll();
+            final UserRegistry plugin = plugins.get(id);
+            final String zoneId = AuthorityService.ZONE_AUTH_EXT_PREFIX + id;
+            prefetchedGroups.put(id, executor.submit(new Callable<Collection<NodeDescription>>()
+            {
+                public Collection<NodeDescription> call() throws Exception
+                {
+                    return AuthenticationUtil.runAsSystem(new RunAsWork<Collection<NodeDescription>>()
+                    {
+                        public Collection<NodeDescription> doWork() throws Exception
+                        {
+                            long lastModifiedMillis = forceUpdate ? -1 : getMostRecentUpdateTime(
+                                    ChainingUserRegistrySynchronizer.GROUP_LAST_MODIFIED_ATTRIBUTE, zoneId, true);
+                            Date lastModified = lastModifiedMillis == -1 ? null : new Date(lastModifiedMillis);
+                            // Copy the groups, so that the registry is queried now rather than when the zone's turn comes
+                            return new ArrayList<NodeDescription>(plugin.getGroups(lastModified));
+                        }
+                    });
+                }
+            }));
+        }
+    }
+
     /*
      * (non-Javadoc)
      * @see org.alfresco.repo.security.sync.UserRegistrySynchronizer#getPersonMappedProperties(java.lang.String)
@@ -934,9 +1078,13 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
      *            the set of all zone ids in the authentication chain. Helps us work out whether the zone information
      *            recorded against a user or group is invalid for the current authentication chain and whether the user
      *            or group needs to be 're-zoned'.
+     * @param prefetchedGroups
+     *            the groups of the zone, already being read from the user registry, or <code>null</code> to read them
+     *            now.
      */
     private void syncWithPlugin(final String zone, UserRegistry userRegistry, boolean forceUpdate,
-            boolean isFullSync, boolean splitTxns, final Set<String> visitedZoneIds, final Set<String> allZoneIds)
+            boolean isFullSync, boolean splitTxns, final Set<String> visitedZoneIds, final Set<String> allZoneIds,
+            Future<Collection<NodeDescription>> prefetchedGroups)
     {
         // Create a prefixed zone ID for use with the authority service
         final String zoneId = AuthorityService.ZONE_AUTH_EXT_PREFIX + zone;
@@ -990,7 +1138,7 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
         final BatchProcessor<NodeDescription> groupProcessor = new BatchProcessor<NodeDescription>(
                 SyncProcess.GROUP_ANALYSIS.getTitle(zone),
                 this.transactionService.getRetryingTransactionHelper(), 
-                userRegistry.getGroups(lastModified), 
+                prefetchedGroups == null ? userRegistry.getGroups(lastModified) : getPrefetchedGroups(prefetchedGroups), 
                 this.workerThreads, 
                 20, 
                 this.applicationEventPublisher,
@@ -1781,6 +1929,9 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
 
         final UserRegistry userRegistryFinalRef = userRegistry;
 
+        // The hashes of the users as they were last synchronized with this zone
+        final Map<String, String> personHashes = this.skipUnchangedPersons ? getPersonHashes(zoneId, splitTxns) : null;
+
         class PersonWorker extends BaseBatchProcessWorker<NodeDescription>
         {
             private long latestTime;
@@ -1838,9 +1989,20 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
 
                 // for invalid names will throw ConstraintException that will be catched by BatchProcessor$TxnCallback
                 nameChecker.evaluate(personName);
+                String personHash = personHashes == null ? null : getPersonHash(personProperties);
                 Set<String> zones = ChainingUserRegistrySynchronizer.this.authorityService
                         .getAuthorityZones(personName);
-                if (zones == null)
+                if (personHash != null && personHash.equals(personHashes.get(personName)) && zones != null
+                        && zones.contains(zoneId))
+                {
+                    // The person hasn't changed since it was last synchronized with this zone
+                    if (ChainingUserRegistrySynchronizer.logger.isDebugEnabled())
+                    {
+                        ChainingUserRegistrySynchronizer.logger.debug("Skipping unchanged user '" + personName + "'");
+                    }
+                    personHash = null;
+                }
+                else if (zones == null)
                 {
                     // The person did not exist at all
                     if (ChainingUserRegistrySynchronizer.logger.isDebugEnabled())
@@ -1902,6 +2064,12 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                     }
                 }
 
+                if (personHash != null)
+                {
+                    ChainingUserRegistrySynchronizer.this.attributeService.setAttribute(personHash,
+                            ChainingUserRegistrySynchronizer.PERSON_HASH_ATTRIBUTE_PATH, zoneId, personName);
+                }
+
                 // Maintain association deletions and creations in one shot (safe to do this with persons as we can't
                 // create cycles)
                 groupAnalyzer.maintainAssociationDeletions(personName);
@@ -1982,6 +2150,11 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                             ChainingUserRegistrySynchronizer.logger.debug("Deleting user '" + authority + "'");
                         }
                         ChainingUserRegistrySynchronizer.this.personService.deletePerson(authority);
+                        if (personHashes != null)
+                        {
+                            ChainingUserRegistrySynchronizer.this.attributeService.removeAttribute(
+                                    ChainingUserRegistrySynchronizer.PERSON_HASH_ATTRIBUTE_PATH, zoneId, authority);
+                        }
                         synchronized (this)
                         {
                             this.personProcessedCount++;
@@ -2082,6 +2255,70 @@ public class ChainingUserRegistrySynchronizer extends AbstractLifecycleBean
                 }, false, splitTxns);
     }
 
+    /**
+     * Reads the hashes of all users last synchronized with a zone in one query.
+     * 
+     * @param zoneId
+     *            the zone id
+     * @param splitTxns
+     *            split transactions, if true run this in a separate transaction
+     * @return the user hashes, by user name
+     */
+    private Map<String, String> getPersonHashes(final String zoneId, boolean splitTxns)
+    {
+        return this.transactionService.getRetryingTransactionHelper().doInTransaction(
+                new RetryingTransactionCallback<Map<String, String>>()
+                {
+                    public Map<String, String> execute() throws Throwable
+                    {
+                        final Map<String, String> personHashes = new HashMap<String, String>(1024);
+                        ChainingUserRegistrySynchronizer.this.attributeService.getAttributes(new AttributeQueryCallback()
+                        {
+                            public boolean handleAttribute(Long id, Serializable value, Serializable[] keys)
+                            {
+                                personHashes.put((String) keys[2], (String) value);
+                                return true;
+                            }
+                        }, ChainingUserRegistrySynchronizer.PERSON_HASH_ATTRIBUTE_PATH, zoneId);
+                        return personHashes;
+                    }
+                }, true, splitTxns);
+    }
+
+    /**
+     * Computes a hash of the properties of a user, as they will be written to the person node.
+     * 
+     * @param personProperties
+     *            the user properties
+     * @return a hex encoded MD5 digest of the sorted properties
+     */
+    private String getPersonHash(Map<QName, Serializable> personProperties)
+    {
+        MessageDigest digest;
+        try
+        {
+            // Used for change detection only
+            digest = MessageDigest.getInstance("MD5");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new AlfrescoRuntimeException("MD5 digest is not available", e);
+        }
+        Map<String, Serializable> sortedProperties = new TreeMap<String, Serializable>();
+        for (Map.Entry<QName, Serializable> entry : personProperties.entrySet())
+        {
+            sortedProperties.put(entry.getKey().toString(), entry.getValue());
+        }
+        for (Map.Entry<String, Serializable> entry : sortedProperties.entrySet())
+        {
+            digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '=');
+            digest.update(String.valueOf(entry.getValue()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return new String(Hex.encodeHex(digest.digest()));
+    }
+
     /**
      * Gets the default set of zones to set on a person or group belonging to the user registry with the given zone ID.
      * We add the default zone as well as the zone corresponding to the user registry so that the users and groups are
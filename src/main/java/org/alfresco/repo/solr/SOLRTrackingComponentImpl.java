@@ -69,6 +69,7 @@ import org.alfresco.service.cmr.dictionary.ModelDefinition;
 import org.alfresco.service.cmr.dictionary.PropertyDefinition;
 import org.alfresco.service.cmr.dictionary.TypeDefinition;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
+import org.alfresco.service.cmr.repository.CyclicChildRelationshipException;
 import org.alfresco.service.cmr.repository.InvalidNodeRefException;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeRef.Status;
@@ -102,6 +103,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
     private DictionaryService dictionaryService;
     private boolean enabled = true;
     private boolean cacheAncestors =true;
+    private boolean batchPathResolution = false;
     private TypeIndexFilter typeIndexFilter;
     private AspectIndexFilter aspectIndexFilter;
     private ShardRegistry shardRegistry;
@@ -130,6 +132,18 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         this.cacheAncestors = cacheAncestors;
     }
 
+    /**
+     * When <tt>true</tt>, the parent associations of a metadata batch and its ancestors are loaded with
+     * set-based queries, one level of the hierarchy at a time, and the paths and path names of shared
+     * ancestors are only resolved once per batch.
+     * 
+     * @param batchPathResolution <tt>true</tt> to resolve paths for the whole batch
+     */
+    public void setBatchPathResolution(boolean batchPathResolution)
+    {
+        this.batchPathResolution = batchPathResolution;
+    }
+
     public void setSolrDAO(SOLRDAO solrDAO)
     {
         this.solrDAO = solrDAO;
@@ -620,7 +634,11 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         
         // Pre-evaluate ancestors so we can bulk load them
         List<Long> ancestors;
-        if(cacheAncestors)
+        if(cacheAncestors && batchPathResolution)
+        {
+            ancestors = cacheAncestorsByLevel(nodeIds);
+        }
+        else if(cacheAncestors)
         {
             ancestors = cacheAncestors(nodeIds);
         }
@@ -691,6 +709,30 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         return new ArrayList<Long>(visited);
     }    
 
+    /**
+     * Visits ancestors a level at a time, loading the parent associations of each level in bulk
+     * @param nodeIds initial list of nodes to visit
+     * @return all visited nodes, in no particular order
+     */
+    private List<Long> cacheAncestorsByLevel(List<Long> nodeIds)
+    {
+        Set<Long> visited = new HashSet<Long>(nodeIds);
+        List<Long> level = new ArrayList<Long>(visited);
+        while (!level.isEmpty())
+        {
+            Set<Long> parentIds = nodeDAO.cacheParentAssocs(level);
+            level = new ArrayList<Long>(parentIds.size());
+            for (Long parentId : parentIds)
+            {
+                if (visited.add(parentId))
+                {
+                    level.add(parentId);
+                }
+            }
+        }
+        return new ArrayList<Long>(visited);
+    }
+
 
     protected Map<QName, Serializable> getProperties(Long nodeId)
     {
@@ -799,6 +841,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         boolean includeTxnId = (resultFilter == null ? true : resultFilter.getIncludeTxnId());
         
         List<Long> nodeIds = preCacheNodes(nodeMetaDataParameters);
+        BatchPathResolver pathResolver = batchPathResolution ? new BatchPathResolver() : null;
 
         for(Long nodeId : nodeIds)
         {
@@ -1042,7 +1085,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
 
             if (includePaths && !ignoreLargeMetadata)
             {
-                List<Path> directPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), false);
+                List<Path> directPaths = getPaths(new Pair<Long, NodeRef>(nodeId, status.getNodeRef()), pathResolver);
                 Collection<Pair<Path, QName>> paths = new ArrayList<Pair<Path, QName>>(directPaths.size() + categoryPaths.getPaths().size());
 
                 for (Path path : directPaths)
@@ -1055,7 +1098,7 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                 }
                 if(unversionedStatus !=  null)
                 {
-                    List<Path>  unversionedPaths = nodeDAO.getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), false);
+                    List<Path>  unversionedPaths = getPaths(new Pair<Long, NodeRef>(unversionedStatus.getDbId(), unversionedStatus.getNodeRef()), pathResolver);
                     for (Path path : unversionedPaths)
                     {
                         paths.add(new Pair<Path, QName>(path.getBaseNamePath(tenantService), null));
@@ -1082,14 +1125,13 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
                         }
                         ChildAssocElement pathChildAssocElement = (ChildAssocElement) pathElement;
                         NodeRef childNodeRef = pathChildAssocElement.getRef().getChildRef();
-                        Pair<Long, NodeRef> childNodePair = nodeDAO.getNodePair(childNodeRef);
-                        if (childNodePair == null)
+                        Pair<Boolean, String> childNodeNameInfo = getPathElementName(childNodeRef, pathResolver);
+                        if (!childNodeNameInfo.getFirst())
                         {
                             // Gone
                             break;
                         }
-                        Long childNodeId = childNodePair.getFirst();
-                        String childNodeName = (String) nodeDAO.getNodeProperty(childNodeId, ContentModel.PROP_NAME);
+                        String childNodeName = childNodeNameInfo.getSecond();
                         if (childNodeName == null)
                         {
                             // We have hit a non-name node, which acts as a root for cm:name
@@ -1120,6 +1162,185 @@ public class SOLRTrackingComponentImpl implements SOLRTrackingComponent
         }
     }
 
+    private List<Path> getPaths(Pair<Long, NodeRef> nodePair, BatchPathResolver pathResolver)
+    {
+        if (pathResolver != null)
+        {
+            return pathResolver.getPaths(nodePair);
+        }
+        return nodeDAO.getPaths(nodePair, false);
+    }
+
+    /**
+     * @return whether the node exists and, if so, its <b>cm:name</b> (which may be <tt>null</tt>)
+     */
+    private Pair<Boolean, String> getPathElementName(NodeRef nodeRef, BatchPathResolver pathResolver)
+    {
+        if (pathResolver != null)
+        {
+            return pathResolver.getName(nodeRef);
+        }
+        return loadPathElementName(nodeRef);
+    }
+
+    private Pair<Boolean, String> loadPathElementName(NodeRef nodeRef)
+    {
+        Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeRef);
+        if (nodePair == null)
+        {
+            return new Pair<Boolean, String>(Boolean.FALSE, null);
+        }
+        String name = (String) nodeDAO.getNodeProperty(nodePair.getFirst(), ContentModel.PROP_NAME);
+        return new Pair<Boolean, String>(Boolean.TRUE, name);
+    }
+
+    /**
+     * Resolves the paths of the nodes in one metadata batch, remembering the paths of every ancestor so that
+     * siblings and descendants in the same batch share the work.  The paths are the same as those given by
+     * {@link NodeDAO#getPaths(Pair, boolean)} for all (not only primary) parent associations.
+     */
+    private class BatchPathResolver
+    {
+        private final Map<Long, NodePaths> pathsByNodeId = new HashMap<Long, NodePaths>(1024);
+        private final Map<NodeRef, Pair<Boolean, String>> namesByNodeRef = new HashMap<NodeRef, Pair<Boolean, String>>(1024);
+        private final Set<Long> resolving = new HashSet<Long>();
+
+        private List<Path> getPaths(Pair<Long, NodeRef> nodePair)
+        {
+            NodePaths nodePaths = resolve(nodePair);
+            List<Path> paths = new ArrayList<Path>(nodePaths.paths.size() + 1);
+            if (nodePaths.rootElement != null)
+            {
+                Path rootPath = new Path();
+                rootPath.append(nodePaths.rootElement);
+                paths.add(rootPath);
+            }
+            paths.addAll(nodePaths.paths);
+            return paths;
+        }
+
+        private Pair<Boolean, String> getName(NodeRef nodeRef)
+        {
+            Pair<Boolean, String> name = namesByNodeRef.get(nodeRef);
+            if (name == null)
+            {
+                name = loadPathElementName(nodeRef);
+                namesByNodeRef.put(nodeRef, name);
+            }
+            return name;
+        }
+
+        private NodePaths resolve(Pair<Long, NodeRef> nodePair)
+        {
+            Long nodeId = nodePair.getFirst();
+            NodePaths nodePaths = pathsByNodeId.get(nodeId);
+            if (nodePaths != null)
+            {
+                return nodePaths;
+            }
+
+            nodePaths = new NodePaths();
+            if (nodeDAO.hasNodeAspect(nodeId, ContentModel.ASPECT_ROOT))
+            {
+                NodeRef storeRootNodeRef = nodeDAO.getRootNode(nodePair.getSecond().getStoreRef()).getSecond();
+                nodePaths.rootElement = new Path.ChildAssocElement(new ChildAssociationRef(null, null, null, storeRootNodeRef));
+                nodePaths.storeRootNodeRef = storeRootNodeRef;
+                nodePaths.isStoreRoot = ContentModel.TYPE_STOREROOT.equals(nodeDAO.getNodeType(nodeId));
+            }
+
+            final List<Pair<ChildAssociationRef, Pair<Long, NodeRef>>> parents = new ArrayList<Pair<ChildAssociationRef, Pair<Long, NodeRef>>>(2);
+            nodeDAO.getParentAssocs(nodeId, null, null, null, new ChildAssocRefQueryCallback()
+            {
+                @Override
+                public boolean preLoadNodes()
+                {
+                    return false;
+                }
+
+                @Override
+                public boolean orderResults()
+                {
+                    return false;
+                }
+
+                @Override
+                public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
+                {
+                    parents.add(new Pair<ChildAssociationRef, Pair<Long, NodeRef>>(childAssocPair.getSecond(), parentNodePair));
+                    return true;
+                }
+
+                @Override
+                public void done()
+                {
+                }
+            });
+
+            resolving.add(nodeId);
+            try
+            {
+                for (Pair<ChildAssociationRef, Pair<Long, NodeRef>> parent : parents)
+                {
+                    ChildAssociationRef assocRef = parent.getFirst();
+                    Pair<Long, NodeRef> parentNodePair = parent.getSecond();
+                    if (resolving.contains(parentNodePair.getFirst()))
+                    {
+                        throw new CyclicChildRelationshipException("Node has been pasted into its own tree.", assocRef);
+                    }
+                    NodePaths parentPaths = resolve(parentNodePair);
+
+                    if (parentPaths.rootElement != null)
+                    {
+                        // Mimic the association that would appear if the parent was directly below the store root
+                        ChildAssociationRef underRootAssocRef = new ChildAssociationRef(
+                                parentPaths.isStoreRoot ? ContentModel.ASSOC_CHILDREN : assocRef.getTypeQName(),
+                                parentPaths.storeRootNodeRef,
+                                assocRef.getQName(),
+                                assocRef.getChildRef());
+                        Path path = new Path();
+                        path.append(parentPaths.rootElement);
+                        path.append(new Path.ChildAssocElement(underRootAssocRef));
+                        nodePaths.paths.add(path);
+                    }
+
+                    // Sibling order is meaningless when building a path upwards
+                    ChildAssociationRef elementAssocRef = new ChildAssociationRef(
+                            assocRef.getTypeQName(),
+                            assocRef.getParentRef(),
+                            assocRef.getQName(),
+                            assocRef.getChildRef(),
+                            assocRef.isPrimary(),
+                            -1);
+                    for (Path parentPath : parentPaths.paths)
+                    {
+                        Path path = new Path();
+                        path.append(parentPath);
+                        path.append(new Path.ChildAssocElement(elementAssocRef));
+                        nodePaths.paths.add(path);
+                    }
+                }
+            }
+            finally
+            {
+                resolving.remove(nodeId);
+            }
+
+            pathsByNodeId.put(nodeId, nodePaths);
+            return nodePaths;
+        }
+    }
+
+    /**
+     * The paths to a node: the one-element path if the node is a root, followed by the paths through its parents.
+     */
+    private static class NodePaths
+    {
+        private Path.Element rootElement;
+        private NodeRef storeRootNodeRef;
+        private boolean isStoreRoot;
+        private final List<Path> paths = new ArrayList<Path>(2);
+    }
+
     private boolean isVersionNodeRef(NodeRef nodeRef)
     {
     	return nodeRef.getStoreRef().getProtocol().equals(VersionModel.STORE_PROTOCOL) || nodeRef.getStoreRef().getIdentifier().equals(Version2Model.STORE_ID);
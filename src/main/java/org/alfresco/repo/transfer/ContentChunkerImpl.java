@@ -25,17 +25,30 @@
  */
 package org.alfresco.repo.transfer;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.transfer.TransferException;
+import org.alfresco.util.TraceableThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * The Content Chunker Splits Content into "Chunks" of a given size.
+ * <p>
+ * With more than one thread, full chunks are handed to the handler on background threads and
+ * {@link #flush()} waits for all of them, so the handler must be thread safe.
  *
  * @author Mark
  */
@@ -58,48 +71,185 @@ public class ContentChunkerImpl implements ContentChunker
      */
     private Set<ContentData> buffer = new HashSet<ContentData>();
     
+    /**
+     * The total size of the buffered content
+     */
+    private long bufferedSize = 0;
+    
+    /**
+     * The number of chunks that may be processed at the same time
+     */
+    private int threads = 1;
+    
+    /**
+     * The threads processing chunks, created when the first chunk is sent
+     */
+    private ThreadPoolExecutor executor;
+    
+    /**
+     * Limits the number of chunks waiting for a thread
+     */
+    private Semaphore queuedChunks;
+    
+    /**
+     * The chunks sent to the executor that have not been checked yet
+     */
+    private List<Future<?>> sentChunks = new ArrayList<Future<?>>();
+    
     /**
      * 
      */
     public void addContent(ContentData data) throws TransferException
     {
         logger.debug("add content size:" + data.getSize());
-        buffer.add(data);
+        if (buffer.add(data))
+        {
+            bufferedSize += data.getSize();
+        }
         
         /**
          * work out whether the buffer has filled up and needs to be flushed
          */
-        Iterator<ContentData> iter = buffer.iterator();      
-        long totalContentSize = 0;
-        
-        while (iter.hasNext())
-        {
-            ContentData x = (ContentData)iter.next();
-            totalContentSize += x.getSize();
-        }
         if(logger.isDebugEnabled())
         {
-            logger.debug("elements " + buffer.size() + ", totalContentSize:" + totalContentSize);
+            logger.debug("elements " + buffer.size() + ", totalContentSize:" + bufferedSize);
         }
-        if(totalContentSize >= chunkSize)
+        if(bufferedSize >= chunkSize)
         {
-            flush();
+            sendChunk();
         }
     }
     
     /**
-     * 
+     * Send the remaining content data and wait until all the chunks have been processed.
      */
     public void flush() throws TransferException
     {
         logger.debug("flush number of contents:" + buffer.size());
-        if(buffer.size() > 0)
+        sendChunk();
+        if (executor != null)
         {
-            handler.processChunk(buffer);
+            try
+            {
+                waitForChunks(true);
+            }
+            finally
+            {
+                executor.shutdown();
+                executor = null;
+            }
         }
-        buffer.clear();
         logger.debug("buffer empty");
     }
+    
+    private void sendChunk() throws TransferException
+    {
+        if (buffer.size() > 0)
+        {
+            if (threads <= 1)
+            {
+                handler.processChunk(buffer);
+            }
+            else
+            {
+                // Report a failed chunk as soon as possible rather than carrying on with the rest
+                waitForChunks(false);
+                final Set<ContentData> chunk = new HashSet<ContentData>(buffer);
+                queuedChunks.acquireUninterruptibly();
+                try
+                {
+                    sentChunks.add(getExecutor().submit(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                handler.processChunk(chunk);
+                            }
+                            finally
+                            {
+                                queuedChunks.release();
+                            }
+                        }
+                    }));
+                }
+                catch (RuntimeException e)
+                {
+                    queuedChunks.release();
+                    throw e;
+                }
+            }
+        }
+        buffer.clear();
+        bufferedSize = 0;
+    }
+    
+    private ThreadPoolExecutor getExecutor()
+    {
+        if (executor == null)
+        {
+            TraceableThreadFactory threadFactory = new TraceableThreadFactory();
+            threadFactory.setNamePrefix("TransferContentChunker");
+            threadFactory.setThreadDaemon(true);
+            executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), threadFactory);
+            // Don't leave threads behind if the transfer fails before the final flush
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+    
+    /**
+     * Check the chunks that have been sent, rethrowing the first failure after cancelling the rest.
+     * 
+     * @param all <tt>true</tt> to wait for all the chunks, <tt>false</tt> to only check those that are done
+     */
+    private void waitForChunks(boolean all) throws TransferException
+    {
+        Iterator<Future<?>> iter = sentChunks.iterator();
+        while (iter.hasNext())
+        {
+            Future<?> chunk = iter.next();
+            if (!all && !chunk.isDone())
+            {
+                continue;
+            }
+            try
+            {
+                chunk.get();
+                iter.remove();
+            }
+            catch (ExecutionException e)
+            {
+                cancelChunks();
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                {
+                    throw (RuntimeException) cause;
+                }
+                throw new TransferException("Failed to send content chunk", cause);
+            }
+            catch (CancellationException e)
+            {
+                iter.remove();
+            }
+            catch (InterruptedException e)
+            {
+                cancelChunks();
+                Thread.currentThread().interrupt();
+                throw new TransferException("Interrupted while sending content chunks", e);
+            }
+        }
+    }
+    
+    private void cancelChunks()
+    {
+        for (Future<?> chunk : sentChunks)
+        {
+            chunk.cancel(false);
+        }
+        sentChunks.clear();
+    }
 
     public void setChunkSize(long chunkSize)
     {
@@ -111,6 +261,21 @@ public class ContentChunkerImpl implements ContentChunker
         return chunkSize;
     }
 
+    /**
+     * @param threads the number of chunks that may be processed at the same time (default: 1, on the calling thread)
+     * @since 7.0
+     */
+    public void setThreads(int threads)
+    {
+        this.threads = threads;
+        this.queuedChunks = new Semaphore(Math.max(threads, 1) * 2);
+    }
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
     public void setHandler(ContentChunkProcessor handler)
     {
         this.handler = handler;
@@ -51,6 +51,7 @@ public class ContentDataPart extends PartBase
     private ContentService contentService;
     private ContentData data;
     private String filename;
+    private String checksum;
 
     /**
      * ContentDataPart 
@@ -65,6 +66,19 @@ public class ContentDataPart extends PartBase
         this.filename = partName;
     }
 
+    /**
+     * ContentDataPart 
+     * @param contentService content service
+     * @param partName String
+     * @param data data
+     * @param checksum the checksum of the content, or <tt>null</tt> to send none
+     * @since 7.0
+     */
+    public ContentDataPart(ContentService contentService, String partName, ContentData data, String checksum) {
+        this(contentService, partName, data);
+        this.checksum = checksum;
+    }
+
     /**
      * Write the disposition header to the output stream
      * @param out The output stream
@@ -82,6 +96,21 @@ public class ContentDataPart extends PartBase
         }
     }
 
+    /**
+     * Write the transfer encoding header, followed by the checksum header if there is a checksum
+     * @param out The output stream
+     * @throws IOException If an IO problem occurs
+     */
+    @Override
+    protected void sendTransferEncodingHeader(OutputStream out) 
+    throws IOException {
+        super.sendTransferEncodingHeader(out);
+        if (checksum != null) {
+            out.write(CRLF_BYTES);
+            out.write(EncodingUtil.getAsciiBytes(TransferCommons.HEADER_CONTENT_CHECKSUM + ": " + checksum));
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.apache.commons.httpclient.methods.multipart.Part#lengthOfData()
      */
@@ -58,6 +58,7 @@ import org.alfresco.util.json.JsonSerializer;
 import org.apache.commons.httpclient.Credentials;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
@@ -108,6 +109,8 @@ public class HttpClientTransmitterImpl implements TransferTransmitter
 
     private NodeService nodeService;
     private boolean isAuthenticationPreemptive = false;
+    private boolean contentChecksums = false;
+    private int maxConnectionsPerHost = 0;
 
     private ProxyHost httpProxyHost;
     private ProxyHost httpsProxyHost;
@@ -142,6 +145,15 @@ public class HttpClientTransmitterImpl implements TransferTransmitter
     {
         PropertyCheck.mandatory(this, "contentService", contentService);
         httpClient.getParams().setAuthenticationPreemptive(isAuthenticationPreemptive);
+        HttpConnectionManager connectionManager = httpClient.getHttpConnectionManager();
+        if (maxConnectionsPerHost > 0 && connectionManager instanceof MultiThreadedHttpConnectionManager)
+        {
+            // Content chunks may be sent to the same target at the same time
+            connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+                    Math.max(maxConnectionsPerHost, connectionManager.getParams().getDefaultMaxConnectionsPerHost()));
+            connectionManager.getParams().setMaxTotalConnections(
+                    Math.max(maxConnectionsPerHost, connectionManager.getParams().getMaxTotalConnections()));
+        }
     }
     
     /**
@@ -173,6 +185,27 @@ public class HttpClientTransmitterImpl implements TransferTransmitter
     {
         this.isAuthenticationPreemptive = isAuthenticationPreemptive;
     }
+
+    /**
+     * Whether each content part is sent with a checksum that the target can check it against.
+     * This reads the content twice.
+     * @param contentChecksums boolean (default: false)
+     * @since 7.0
+     */
+    public void setContentChecksums(boolean contentChecksums)
+    {
+        this.contentChecksums = contentChecksums;
+    }
+
+    /**
+     * The number of connections allowed to a target, when using the default multi-threaded connection manager.
+     * @param maxConnectionsPerHost int (default: the connection manager's own limit)
+     * @since 7.0
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost)
+    {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
     
     /* (non-Javadoc)
      * @see org.alfresco.repo.transfer.Transmitter#verifyTarget(org.alfresco.service.cmr.transfer.TransferTarget)
@@ -660,7 +693,13 @@ public class HttpClientTransmitterImpl implements TransferTransmitter
                     String fileName = TransferCommons.URLToPartName(contentUrl);
                     log.debug("content partName: " + fileName);
 
-                    parts[index++] = new ContentDataPart(getContentService(), fileName, content);
+                    String checksum = null;
+                    if (contentChecksums)
+                    {
+                        checksum = TransferCommons.getContentChecksum(
+                                getContentService().getRawReader(contentUrl).getContentInputStream());
+                    }
+                    parts[index++] = new ContentDataPart(getContentService(), fileName, content, checksum);
                 }
 
                 MultipartRequestEntity requestEntity = new MultipartRequestEntity(parts, postContentRequest.getParams());
@@ -29,11 +29,15 @@ package org.alfresco.repo.transfer;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Serializable;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -170,6 +174,7 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
     private static final String MSG_ERROR_WHILE_ENDING_TRANSFER = "transfer_service.receiver.error_ending_transfer";
     private static final String MSG_ERROR_WHILE_STAGING_SNAPSHOT = "transfer_service.receiver.error_staging_snapshot";
     private static final String MSG_ERROR_WHILE_STAGING_CONTENT = "transfer_service.receiver.error_staging_content";
+    private static final String MSG_CONTENT_CHECKSUM_MISMATCH = "transfer_service.receiver.content_checksum_mismatch";
     private static final String MSG_NO_SNAPSHOT_RECEIVED = "transfer_service.receiver.no_snapshot_received";
     private static final String MSG_ERROR_WHILE_COMMITTING_TRANSFER = "transfer_service.receiver.error_committing_transfer";
     private static final String MSG_ERROR_WHILE_GENERATING_REQUISITE = "transfer_service.receiver.error_generating_requisite";
@@ -179,6 +184,8 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
     private static final String MSG_INCOMPATIBLE_VERSIONS = "transfer_service.incompatible_versions";
 
     private static final String SNAPSHOT_FILE_NAME = "snapshot.xml";
+    private static final String SNAPSHOT_SPOOL_FILE_NAME = "snapshot.spool";
+    private static final String STAGING_PART_SUFFIX = ".part";
 
     private NodeService nodeService;
     private SearchService searchService;
@@ -237,6 +244,11 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
      */
     private long lockTimeOut = 3600000;
 
+    /**
+     * Parse the snapshot once during commit and replay it to the later processors from a spool
+     */
+    private boolean singlePassCommit = false;
+
     public void init()
     {
         PropertyCheck.mandatory(this, "nodeService", nodeService);
@@ -797,21 +809,78 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
 
     public void saveContent(String transferId, String contentFileId, InputStream contentStream)
             throws TransferException
+    {
+        saveContent(transferId, contentFileId, contentStream, null);
+    }
+
+    @Override
+    public void saveContent(String transferId, String contentFileId, InputStream contentStream, String checksum)
+            throws TransferException
     {
         Lock lock = checkLock(transferId);
+        File partFile = null;
         try
         {
-            File stagedFile = new File(getStagingFolder(transferId), contentFileId);
-            if (stagedFile.createNewFile())
+            File stagingFolder = getStagingFolder(transferId);
+            File stagedFile = new File(stagingFolder, contentFileId);
+            if (!stagedFile.exists())
             {
-                FileCopyUtils.copy(contentStream, new BufferedOutputStream(new FileOutputStream(stagedFile)));
+                // Write to a temporary file first, so that a partly received file is never taken as staged
+                partFile = File.createTempFile(contentFileId, STAGING_PART_SUFFIX, stagingFolder);
+                MessageDigest digest = null;
+                if (checksum != null)
+                {
+                    digest = TransferCommons.newContentDigest();
+                    contentStream = new DigestInputStream(contentStream, digest);
+                }
+                FileCopyUtils.copy(contentStream, new BufferedOutputStream(new FileOutputStream(partFile)));
+                if (digest != null && !checksum.equals(TransferCommons.toContentChecksum(digest)))
+                {
+                    throw new TransferException(MSG_CONTENT_CHECKSUM_MISMATCH, new Object[]{transferId, contentFileId});
+                }
+                // The same content may have been staged concurrently
+                if (!partFile.renameTo(stagedFile) && !stagedFile.exists())
+                {
+                    throw new IOException("Failed to rename " + partFile + " to " + stagedFile);
+                }
             }
         }
+        catch (TransferException ex)
+        {
+            throw ex;
+        }
         catch (Exception ex)
         {
             throw new TransferException(MSG_ERROR_WHILE_STAGING_CONTENT, new Object[]{transferId, contentFileId}, ex);
         }
         finally
+        {
+            if (partFile != null && partFile.exists())
+            {
+                partFile.delete();
+            }
+            lock.enableLockTimeout();
+        }
+    }
+
+    @Override
+    public Set<String> getStagedContent(String transferId, Collection<String> contentFileIds) throws TransferException
+    {
+        Lock lock = checkLock(transferId);
+        try
+        {
+            File stagingFolder = getStagingFolder(transferId);
+            Set<String> staged = new HashSet<String>();
+            for (String contentFileId : contentFileIds)
+            {
+                if (new File(stagingFolder, contentFileId).exists())
+                {
+                    staged.add(contentFileId);
+                }
+            }
+            return staged;
+        }
+        finally
         {
             lock.enableLockTimeout();
         }
@@ -899,26 +968,41 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
                         {
                             log.debug("Processing manifest file:" + snapshotFile.getAbsolutePath());
                         }
-                        // We parse the file as many times as we have processors
-                        for (TransferManifestProcessor processor : commitProcessors)
+                        if (singlePassCommit && commitProcessors.size() > 1)
                         {
-                            XMLTransferManifestReader reader = new XMLTransferManifestReader(processor);
-
-                            //behaviourFilter.disableBehaviour(ContentModel.ASPECT_AUDITABLE);
-                            behaviourFilter.disableBehaviour();
-                            if (processor instanceof TransferSummaryAware)
-                            {
-                                summaryReports.add(((TransferSummaryAware) processor).getTransferSummaryReport());
-                            }
-                            try
+                            // We parse the file once and replay the spooled nodes to the remaining processors
+                            for (TransferManifestProcessor processor : commitProcessors)
                             {
-                                parser.parse(snapshotFile, reader);
+                                if (processor instanceof TransferSummaryAware)
+                                {
+                                    summaryReports.add(((TransferSummaryAware) processor).getTransferSummaryReport());
+                                }
                             }
-                            finally
+                            processSinglePass(transferId, parser, snapshotFile, commitProcessors);
+                        }
+                        else
+                        {
+                            // We parse the file as many times as we have processors
+                            for (TransferManifestProcessor processor : commitProcessors)
                             {
-                                behaviourFilter.enableBehaviour();
+                                XMLTransferManifestReader reader = new XMLTransferManifestReader(processor);
+
+                                //behaviourFilter.disableBehaviour(ContentModel.ASPECT_AUDITABLE);
+                                behaviourFilter.disableBehaviour();
+                                if (processor instanceof TransferSummaryAware)
+                                {
+                                    summaryReports.add(((TransferSummaryAware) processor).getTransferSummaryReport());
+                                }
+                                try
+                                {
+                                    parser.parse(snapshotFile, reader);
+                                }
+                                finally
+                                {
+                                    behaviourFilter.enableBehaviour();
+                                }
+                                parser.reset();
                             }
-                            parser.reset();
                         }
 
                         for (TransferSummaryReport transferSummaryReport : summaryReports)
@@ -1006,6 +1090,52 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
         return new File(getStagingFolder(transferId), SNAPSHOT_FILE_NAME);
     }
 
+    /**
+     * Parses the snapshot once for the first commit processor, spooling the nodes as they are parsed, and then
+     * replays the spool to each of the remaining processors in turn. Each processor still sees the whole
+     * manifest before the next one starts, as the later processors depend on all the nodes having been created.
+     */
+    private void processSinglePass(String transferId, SAXParser parser, File snapshotFile,
+            List<TransferManifestProcessor> commitProcessors) throws Exception
+    {
+        SpoolingManifestProcessor spool = new SpoolingManifestProcessor(commitProcessors.get(0),
+                new File(getStagingFolder(transferId), SNAPSHOT_SPOOL_FILE_NAME));
+        try
+        {
+            behaviourFilter.disableBehaviour();
+            try
+            {
+                parser.parse(snapshotFile, new XMLTransferManifestReader(spool));
+            }
+            finally
+            {
+                behaviourFilter.enableBehaviour();
+            }
+            parser.reset();
+
+            for (TransferManifestProcessor processor : commitProcessors.subList(1, commitProcessors.size()))
+            {
+                behaviourFilter.disableBehaviour();
+                try
+                {
+                    spool.replay(processor);
+                }
+                finally
+                {
+                    behaviourFilter.enableBehaviour();
+                }
+            }
+            if (log.isDebugEnabled())
+            {
+                log.debug("Committed " + spool.getNodeCount() + " manifest nodes in a single pass, transferId=" + transferId);
+            }
+        }
+        finally
+        {
+            spool.close();
+        }
+    }
+
     /**
      * @param searchService
      *            the searchService to set
@@ -1462,6 +1592,16 @@ public class RepoTransferReceiverImpl implements TransferReceiver,
         return lockRefreshTime;
     }
 
+    public void setSinglePassCommit(boolean singlePassCommit)
+    {
+        this.singlePassCommit = singlePassCommit;
+    }
+
+    public boolean isSinglePassCommit()
+    {
+        return singlePassCommit;
+    }
+
     /**
      * A Transfer Lock
      */
@@ -0,0 +1,246 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.transfer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.alfresco.repo.transfer.manifest.TransferManifestDeletedNode;
+import org.alfresco.repo.transfer.manifest.TransferManifestHeader;
+import org.alfresco.repo.transfer.manifest.TransferManifestNormalNode;
+import org.alfresco.repo.transfer.manifest.TransferManifestProcessor;
+import org.alfresco.service.cmr.transfer.TransferException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Manifest processor that passes a parsed manifest straight through to a delegate processor while writing
+ * each node to a spool file, so that the processors that need the complete manifest to have been handled
+ * by an earlier pass can be run from the spool without parsing the snapshot XML again.
+ * <p>
+ * Only the header is held in memory. Nodes are read back one at a time in manifest order and the object
+ * stream is reset every {@link #setResetInterval(int) resetInterval} nodes so that neither side of the
+ * spool holds on to the nodes it has already seen.
+ *
+ * @since 7.0
+ */
+public class SpoolingManifestProcessor implements TransferManifestProcessor
+{
+    private static final Log log = LogFactory.getLog(SpoolingManifestProcessor.class);
+
+    private static final String MSG_ERROR_SPOOLING_MANIFEST = "transfer_service.receiver.error_spooling_manifest";
+
+    private final TransferManifestProcessor delegate;
+    private final File spoolFile;
+    private int resetInterval = 1000;
+
+    private TransferManifestHeader header;
+    private ObjectOutputStream output;
+    private int nodeCount;
+    private boolean complete;
+
+    /**
+     * @param delegate the processor that receives the manifest as it is parsed
+     * @param spoolFile the file to spool the manifest nodes to, replaced if it already exists
+     */
+    public SpoolingManifestProcessor(TransferManifestProcessor delegate, File spoolFile)
+    {
+        this.delegate = delegate;
+        this.spoolFile = spoolFile;
+    }
+
+    /**
+     * @param resetInterval the number of nodes written between resets of the spool stream
+     */
+    public void setResetInterval(int resetInterval)
+    {
+        this.resetInterval = resetInterval;
+    }
+
+    public void startTransferManifest()
+    {
+        try
+        {
+            output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(spoolFile)));
+        }
+        catch (IOException e)
+        {
+            throw new TransferException(MSG_ERROR_SPOOLING_MANIFEST, new Object[]{spoolFile.getAbsolutePath()}, e);
+        }
+        nodeCount = 0;
+        complete = false;
+        delegate.startTransferManifest();
+    }
+
+    public void processTransferManifiestHeader(TransferManifestHeader header)
+    {
+        this.header = header;
+        delegate.processTransferManifiestHeader(header);
+    }
+
+    public void processTransferManifestNode(TransferManifestNormalNode node)
+    {
+        spool(node);
+        delegate.processTransferManifestNode(node);
+    }
+
+    public void processTransferManifestNode(TransferManifestDeletedNode node)
+    {
+        spool(node);
+        delegate.processTransferManifestNode(node);
+    }
+
+    public void endTransferManifest()
+    {
+        try
+        {
+            output.close();
+        }
+        catch (IOException e)
+        {
+            throw new TransferException(MSG_ERROR_SPOOLING_MANIFEST, new Object[]{spoolFile.getAbsolutePath()}, e);
+        }
+        finally
+        {
+            output = null;
+        }
+        complete = true;
+        if (log.isDebugEnabled())
+        {
+            log.debug("Spooled " + nodeCount + " manifest nodes to " + spoolFile.getAbsolutePath());
+        }
+        delegate.endTransferManifest();
+    }
+
+    /**
+     * Feeds the spooled manifest to another processor, calling it in the same order as the manifest reader
+     * would have.
+     *
+     * @param processor the processor to replay the manifest to
+     */
+    public void replay(TransferManifestProcessor processor)
+    {
+        if (!complete)
+        {
+            throw new IllegalStateException("The manifest has not been completely spooled: " + spoolFile.getAbsolutePath());
+        }
+        processor.startTransferManifest();
+        if (header != null)
+        {
+            processor.processTransferManifiestHeader(header);
+        }
+        ObjectInputStream input = null;
+        try
+        {
+            input = new ObjectInputStream(new BufferedInputStream(new FileInputStream(spoolFile)));
+            for (int i = 0; i < nodeCount; i++)
+            {
+                Object node = input.readObject();
+                if (node instanceof TransferManifestNormalNode)
+                {
+                    processor.processTransferManifestNode((TransferManifestNormalNode) node);
+                }
+                else
+                {
+                    processor.processTransferManifestNode((TransferManifestDeletedNode) node);
+                }
+            }
+        }
+        catch (IOException | ClassNotFoundException e)
+        {
+            throw new TransferException(MSG_ERROR_SPOOLING_MANIFEST, new Object[]{spoolFile.getAbsolutePath()}, e);
+        }
+        finally
+        {
+            if (input != null)
+            {
+                try
+                {
+                    input.close();
+                }
+                catch (IOException e)
+                {
+                    log.warn("Failed to close manifest spool " + spoolFile.getAbsolutePath(), e);
+                }
+            }
+        }
+        processor.endTransferManifest();
+    }
+
+    /**
+     * @return the number of nodes spooled so far
+     */
+    public int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Removes the spool file.
+     */
+    public void close()
+    {
+        if (output != null)
+        {
+            try
+            {
+                output.close();
+            }
+            catch (IOException e)
+            {
+                log.warn("Failed to close manifest spool " + spoolFile.getAbsolutePath(), e);
+            }
+            output = null;
+        }
+        if (spoolFile.exists() && !spoolFile.delete())
+        {
+            log.warn("Failed to delete manifest spool " + spoolFile.getAbsolutePath());
+        }
+    }
+
+    private void spool(Object node)
+    {
+        try
+        {
+            output.writeObject(node);
+            nodeCount++;
+            if (resetInterval > 0 && nodeCount % resetInterval == 0)
+            {
+                output.reset();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new TransferException(MSG_ERROR_SPOOLING_MANIFEST, new Object[]{spoolFile.getAbsolutePath()}, e);
+        }
+    }
+}
@@ -25,6 +25,12 @@
  */
 package org.alfresco.repo.transfer;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
 /**
  * A bucket for little odds and ends for the transfer service.
  *
@@ -88,6 +94,16 @@ public class TransferCommons
     public final static String PARAM_ROOT_FILE_TRANSFER = "rootFileTransfer";
 
 
+    /**
+     * The MIME part header that holds the checksum of a content part
+     */
+    public final static String HEADER_CONTENT_CHECKSUM = "Content-MD5";
+
+    /**
+     * The digest algorithm used for content checksums
+     */
+    public final static String CONTENT_CHECKSUM_ALGORITHM = "MD5";
+
     /**
      * Mapping between contentUrl and part name.
      *
@@ -98,4 +114,56 @@ public class TransferCommons
     {
         return contentUrl.substring(contentUrl.lastIndexOf('/')+1);
     }
+
+    /**
+     * @return a new digest for content checksums
+     * @since 7.0
+     */
+    public static MessageDigest newContentDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(CONTENT_CHECKSUM_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("Digest algorithm not available: " + CONTENT_CHECKSUM_ALGORITHM, e);
+        }
+    }
+
+    /**
+     * @param digest a digest created by {@link #newContentDigest()} that has seen all the content
+     * @return the checksum in the form sent in the {@link #HEADER_CONTENT_CHECKSUM} header
+     * @since 7.0
+     */
+    public static String toContentChecksum(MessageDigest digest)
+    {
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Read a stream to the end and work out its checksum. The stream is closed.
+     *
+     * @param contentStream the content
+     * @return the checksum in the form sent in the {@link #HEADER_CONTENT_CHECKSUM} header
+     * @since 7.0
+     */
+    public static String getContentChecksum(InputStream contentStream) throws IOException
+    {
+        MessageDigest digest = newContentDigest();
+        try
+        {
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = contentStream.read(buffer)) >= 0)
+            {
+                digest.update(buffer, 0, len);
+            }
+        }
+        finally
+        {
+            contentStream.close();
+        }
+        return toContentChecksum(digest);
+    }
 }
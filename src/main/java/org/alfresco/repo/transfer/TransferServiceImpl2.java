@@ -56,6 +56,8 @@ import javax.xml.parsers.SAXParserFactory;
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.repo.transfer.manifest.TransferManifestDeletedNode;
 import org.alfresco.repo.transfer.manifest.TransferManifestHeader;
@@ -176,6 +178,21 @@ public class TransferServiceImpl2 implements TransferService2
      */
     private long commitPollDelay = 2000;
     
+    /**
+     * The size of the content chunks sent to the target, in bytes.
+     */
+    private long contentChunkSize = 1000000;
+    
+    /**
+     * The number of content chunks sent at the same time.
+     */
+    private int contentThreads = 1;
+    
+    /**
+     * The number of times a failed content chunk is resent.
+     */
+    private int contentRetries = 0;
+    
     /**
      * Create a new in memory transfer target
      */
@@ -1039,7 +1056,10 @@ public class TransferServiceImpl2 implements TransferService2
          * 
          * Step 1: Create a chunker and wire it up to the transmitter
          */
-        final ContentChunker chunker = new ContentChunkerImpl();
+        final ContentChunkerImpl chunker = new ContentChunkerImpl();
+        chunker.setChunkSize(contentChunkSize);
+        chunker.setThreads(contentThreads);
+        final String runAsUser = AuthenticationUtil.getRunAsUser();
         final Long removeNodesRange = Long.valueOf(definition.getNodesToRemove() != null ? definition.getNodesToRemove().size() : 0);
         final Long nodesRange = Long.valueOf( definition.getNodes() != null ? definition.getNodes().size() : 0);
 
@@ -1047,16 +1067,34 @@ public class TransferServiceImpl2 implements TransferService2
         chunker.setHandler(
                 new ContentChunkProcessor(){
                 private long counter = 0;
-                public void processChunk(Set<ContentData> data)
+                public void processChunk(final Set<ContentData> data)
                 {
                     checkCancel(transfer.getTransferId());
                     logger.debug("send chunk to transmitter");
-                    for(ContentData file : data)
+                    // Chunks may be processed on several threads
+                    synchronized (eventProcessor)
                     {
-                        counter++;
-                        eventProcessor.sendContent(file, fRange, counter);
+                        for(ContentData file : data)
+                        {
+                            counter++;
+                            eventProcessor.sendContent(file, fRange, counter);
+                        }
+                    }
+                    if (runAsUser == null || runAsUser.equals(AuthenticationUtil.getRunAsUser()))
+                    {
+                        sendContentChunk(transfer, data);
+                    }
+                    else
+                    {
+                        AuthenticationUtil.runAs(new RunAsWork<Void>()
+                        {
+                            public Void doWork() throws Exception
+                            {
+                                sendContentChunk(transfer, data);
+                                return null;
+                            }
+                        }, runAsUser);
                     }
-                    transmitter.sendContent(transfer, data);
                 }
             }
         );
@@ -1115,6 +1153,53 @@ public class TransferServiceImpl2 implements TransferService2
         chunker.flush();
     }
 
+    /**
+     * Send a chunk of content, resending it on failure without the files the target has already staged.
+     * If the target can't say what it has staged the whole chunk is resent.
+     */
+    private void sendContentChunk(Transfer transfer, Set<ContentData> data)
+    {
+        Set<ContentData> remaining = data;
+        for (int retry = 0; ; retry++)
+        {
+            try
+            {
+                transmitter.sendContent(transfer, remaining);
+                return;
+            }
+            catch (TransferException e)
+            {
+                if (retry >= contentRetries || e instanceof TransferCancelledException)
+                {
+                    throw e;
+                }
+                checkCancel(transfer.getTransferId());
+
+                Map<String, ContentData> unstaged = new HashMap<String, ContentData>();
+                for (ContentData content : remaining)
+                {
+                    unstaged.put(TransferCommons.URLToPartName(content.getContentUrl()), content);
+                }
+                try
+                {
+                    Set<String> staged = transmitter.getStagedContent(transfer, new HashSet<String>(unstaged.keySet()));
+                    unstaged.keySet().removeAll(staged);
+                }
+                catch (TransferException se)
+                {
+                    logger.warn("Unable to get the staged content of the content chunk from the target, resending all of it", se);
+                }
+                remaining = new HashSet<ContentData>(unstaged.values());
+
+                logger.warn("Failed to send content chunk, resending " + remaining.size() + " of " + data.size() + " files: " + e.getMessage());
+                if (remaining.isEmpty())
+                {
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * CancelAsync
      */
@@ -1427,6 +1512,34 @@ public class TransferServiceImpl2 implements TransferService2
         this.commitPollDelay = commitPollDelay;
     }
 
+    /**
+     * @param contentChunkSize the size of the content chunks sent to the target, in bytes (default: 1000000)
+     * @since 7.0
+     */
+    public void setContentChunkSize(long contentChunkSize)
+    {
+        this.contentChunkSize = contentChunkSize;
+    }
+
+    /**
+     * @param contentThreads the number of content chunks sent at the same time (default: 1)
+     * @since 7.0
+     */
+    public void setContentThreads(int contentThreads)
+    {
+        this.contentThreads = contentThreads;
+    }
+
+    /**
+     * @param contentRetries the number of times a failed content chunk is resent, skipping the files that an
+     *            in-process target has already staged (default: 0)
+     * @since 7.0
+     */
+    public void setContentRetries(int contentRetries)
+    {
+        this.contentRetries = contentRetries;
+    }
+
     public void setDescriptorService(DescriptorService descriptorService)
     {
         this.descriptorService = descriptorService;
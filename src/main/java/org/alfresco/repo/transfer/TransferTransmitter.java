@@ -28,6 +28,8 @@ package org.alfresco.repo.transfer;
 
 import java.io.File;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.ContentData;
@@ -79,6 +81,21 @@ public interface TransferTransmitter
      */
     void sendContent(Transfer transfer, Set<ContentData> data);
     
+    /**
+     * Ask the target which content files it has already staged, so that a failed chunk can be resent without them.
+     * The default implementation reports none, so that everything is resent.
+     * 
+     * @param transfer the transfer object returned by an earlier call to begin
+     * @param contentIds the part names of the content files
+     * @return the part names of the content files that are staged on the target
+     * @throws TransferException if the target can't be asked
+     * @since 7.0
+     */
+    default Set<String> getStagedContent(Transfer transfer, Collection<String> contentIds)
+    {
+        return Collections.emptySet();
+    }
+    
     /**
      *
      * @param transfer the transfer object returned by an earlier call to begin
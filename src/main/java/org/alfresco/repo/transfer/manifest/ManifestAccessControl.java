@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.transfer.manifest;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -32,8 +33,10 @@ import java.util.List;
  * Data transfer object to represent the access control on a Manifest Node.
  *
  */
-public class ManifestAccessControl
+public class ManifestAccessControl implements Serializable
 {
+    private static final long serialVersionUID = 8630937521064851297L;
+
     private boolean isInherited;
     private List<ManifestPermission> permissions;
     
@@ -25,6 +25,7 @@
  */
 package org.alfresco.repo.transfer.manifest;
 
+import java.io.Serializable;
 
 /**
  * Represents the metadata required to transmit properties of type d:category which are used by categories and tags
@@ -32,8 +33,10 @@ package org.alfresco.repo.transfer.manifest;
  * @author mrogers
  *
  */
-public class ManifestCategory
+public class ManifestCategory implements Serializable
 {
+    private static final long serialVersionUID = 2748190365137748106L;
+
 	private String path;
 
 	public String getPath()
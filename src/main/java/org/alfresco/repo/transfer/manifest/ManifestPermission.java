@@ -25,13 +25,17 @@
  */
 package org.alfresco.repo.transfer.manifest;
 
+import java.io.Serializable;
+
 /**
  * Data transfer object for a permission of a Manifest Node
  * 
  * @author mrogers
  */
-public class ManifestPermission
+public class ManifestPermission implements Serializable
 {
+    private static final long serialVersionUID = -1984325670412953318L;
+
     private String authority;
     private String permission;
     private String status;
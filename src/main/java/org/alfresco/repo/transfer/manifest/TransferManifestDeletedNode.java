@@ -38,6 +38,8 @@ import org.alfresco.service.cmr.repository.Path;
  */
 public class TransferManifestDeletedNode implements TransferManifestNode
 {
+    private static final long serialVersionUID = 4375638401296547352L;
+
     private NodeRef nodeRef;   
     private ChildAssociationRef primaryParentAssoc;
     private String uuid;
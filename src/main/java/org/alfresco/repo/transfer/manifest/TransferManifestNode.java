@@ -25,6 +25,8 @@
  */
 package org.alfresco.repo.transfer.manifest;
 
+import java.io.Serializable;
+
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.Path;
@@ -39,7 +41,7 @@ import org.alfresco.service.cmr.repository.Path;
  *
  * @author Mark Rogers
  */
-public interface TransferManifestNode
+public interface TransferManifestNode extends Serializable
 {
     public NodeRef getNodeRef();
     public void setNodeRef(NodeRef nodeRef);
@@ -45,6 +45,8 @@ import org.alfresco.service.namespace.QName;
  */
 public class TransferManifestNormalNode implements TransferManifestNode
 {
+    private static final long serialVersionUID = -6257393849427683529L;
+
     private NodeRef nodeRef;
     private ChildAssociationRef primaryParentAssoc;
     private String uuid;
@@ -377,6 +377,19 @@ public interface FileFolderService
      */
     @Auditable(parameters = {"rootNodeRef", "pathElements", "mustExist"})
     public FileInfo resolveNamePath(NodeRef rootNodeRef, List<String> pathElements, boolean mustExist) throws FileNotFoundException;
+    
+    /**
+     * Resolve a file or folder name path from a given root node, returning the file or folder found at each level.
+     * The levels are looked up together where the database supports it.  Resolution stops at the first name that
+     * does not exist or that the current user does not have read permission on.
+     * 
+     * @param rootNodeRef the start point node - a cm:folder type or subtype, e.g. the Company Home's nodeRef
+     * @param pathElements a list of names in the path. Do not include the referenced rootNodeRef's path element.
+     * @return Returns the info of the file or folder at each level, which is shorter than the path if the path
+     *         could not be fully resolved
+     */
+    @Auditable(parameters = {"rootNodeRef", "pathElements"})
+    public List<FileInfo> resolveNamePathElements(NodeRef rootNodeRef, List<String> pathElements);
 
     /**
      * Get the file info (name, folder, etc) for the given node
@@ -29,6 +29,9 @@ package org.alfresco.service.cmr.transfer;
 import java.io.File;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 
 import org.alfresco.repo.transfer.TransferProgressMonitor;
 import org.alfresco.service.cmr.repository.NodeRef;
@@ -90,6 +93,33 @@ public interface TransferReceiver
      */
     void saveContent(String transferId, String contentId, InputStream contentStream) throws TransferException;
 
+    /**
+     * Save a content item, checking that it arrived intact
+     * @param transferId String
+     * @param contentId String
+     * @param contentStream InputStream
+     * @param checksum the checksum sent with the content, or <tt>null</tt> if there is none
+     * @throws TransferException if the content could not be saved or does not match the checksum
+     * @since 7.0
+     */
+    default void saveContent(String transferId, String contentId, InputStream contentStream, String checksum) throws TransferException
+    {
+        saveContent(transferId, contentId, contentStream);
+    }
+
+    /**
+     * Which of the content items have been saved completely?
+     * @param transferId String
+     * @param contentIds the content items to check
+     * @return the content items that have been saved
+     * @throws TransferException
+     * @since 7.0
+     */
+    default Set<String> getStagedContent(String transferId, Collection<String> contentIds) throws TransferException
+    {
+        return Collections.emptySet();
+    }
+
     /**
      * Write the requsite (the bits required to support the Manifest) to the output stream.
      * @param requsiteStream an open stream to receive the requisite
@@ -258,6 +258,15 @@ CREATE TABLE alf_node_aspects
     CONSTRAINT fk_alf_nasp_qn FOREIGN KEY (qname_id) REFERENCES alf_qname (id)
 ) ENGINE=InnoDB;
 
+CREATE TABLE alf_node_ancestor
+(
+    node_id BIGINT NOT NULL,
+    ancestor_id BIGINT NOT NULL,
+    depth INTEGER NOT NULL,
+    PRIMARY KEY (node_id, ancestor_id),
+    KEY idx_alf_nanc_anc (ancestor_id, node_id)
+) ENGINE=InnoDB;
+
 CREATE TABLE alf_node_assoc
 (
     id BIGINT NOT NULL AUTO_INCREMENT,
@@ -275,6 +275,15 @@ CREATE TABLE alf_node_aspects
 CREATE INDEX fk_alf_nasp_n ON alf_node_aspects (node_id);
 CREATE INDEX fk_alf_nasp_qn ON alf_node_aspects (qname_id);
 
+CREATE TABLE alf_node_ancestor
+(
+    node_id INT8 NOT NULL,
+    ancestor_id INT8 NOT NULL,
+    depth INT4 NOT NULL,
+    PRIMARY KEY (node_id, ancestor_id)
+);
+CREATE INDEX idx_alf_nanc_anc ON alf_node_ancestor (ancestor_id, node_id);
+
 CREATE SEQUENCE alf_node_assoc_seq START WITH 1 INCREMENT BY 1;
 CREATE TABLE alf_node_assoc
 (
@@ -0,0 +1,29 @@
+--
+-- Title:      Add alf_node_ancestor table
+-- Database:   PostgreSQL
+-- Since:      V7.0
+--
+-- Please contact support@alfresco.com if you need assistance with the upgrade.
+--
+
+-- The table is populated in the background when nodes.ancestorIndex.enabled=true
+CREATE TABLE alf_node_ancestor
+(
+    node_id INT8 NOT NULL,
+    ancestor_id INT8 NOT NULL,
+    depth INT4 NOT NULL,
+    PRIMARY KEY (node_id, ancestor_id)
+);
+CREATE INDEX idx_alf_nanc_anc ON alf_node_ancestor (ancestor_id, node_id);
+
+--
+-- Record script finish
+--
+DELETE FROM alf_applied_patch WHERE id = 'patch.db-V7.0-add-alf_node_ancestor-table';
+INSERT INTO alf_applied_patch
+  (id, description, fixes_from_schema, fixes_to_schema, applied_to_schema, target_schema, applied_on_date, applied_to_server, was_executed, succeeded, report)
+  VALUES
+  (
+    'patch.db-V7.0-add-alf_node_ancestor-table', 'Add alf_node_ancestor table',
+    0, 14001, -1, 14002, null, 'UNKNOWN', ${TRUE}, ${TRUE}, 'Script completed'
+  );
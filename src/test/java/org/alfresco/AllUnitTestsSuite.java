@@ -43,10 +43,13 @@ import org.junit.runners.Suite;
     org.alfresco.encryption.KeyStoreKeyProviderTest.class,
     org.alfresco.filesys.config.ServerConfigurationBeanTest.class,
     org.alfresco.filesys.repo.rules.ShuffleTest.class,
+    org.alfresco.repo.activities.feed.FeedTaskProcessorTest.class,
+    org.alfresco.repo.activities.feed.local.LocalFeedTaskProcessorTest.class,
     org.alfresco.repo.admin.Log4JHierarchyInitTest.class,
     org.alfresco.repo.attributes.PropTablesCleanupJobTest.class,
     org.alfresco.repo.cache.DefaultCacheFactoryTest.class,
     org.alfresco.repo.cache.DefaultSimpleCacheTest.class,
+    org.alfresco.repo.cache.TransactionalReadBufferTest.class,
     org.alfresco.repo.cache.lookup.EntityLookupCacheTest.class,
     org.alfresco.repo.calendar.CalendarHelpersTest.class,
     org.alfresco.repo.copy.CopyServiceImplUnitTest.class,
@@ -118,6 +121,7 @@ import org.junit.runners.Suite;
     org.alfresco.util.BeanExtenderUnitTest.class,
     org.alfresco.repo.search.impl.solr.SpellCheckDecisionManagerTest.class,
     org.alfresco.repo.search.impl.solr.SolrStoreMappingWrapperTest.class,
+    org.alfresco.repo.search.impl.querymodel.impl.db.DBQueryEngineTest.class,
     org.alfresco.repo.security.authentication.CompositePasswordEncoderTest.class,
     org.alfresco.repo.security.authentication.PasswordHashingTest.class,
     org.alfresco.traitextender.TraitExtenderIntegrationTest.class,
@@ -169,7 +173,9 @@ import org.junit.runners.Suite;
     org.alfresco.repo.content.caching.quota.UnlimitedQuotaStrategyTest.class,
     org.alfresco.repo.content.caching.CachingContentStoreTest.class,
     org.alfresco.repo.content.caching.ContentCacheImplTest.class,
+    org.alfresco.repo.content.caching.ContentCacheIndexTest.class,
     org.alfresco.repo.domain.propval.PropertyTypeConverterTest.class,
+    org.alfresco.repo.domain.node.SegmentedParentAssocsCacheTest.class,
     org.alfresco.repo.search.MLAnaysisModeExpansionTest.class,
     org.alfresco.repo.search.DocumentNavigatorTest.class,
     org.alfresco.util.NumericEncodingTest.class,
@@ -179,8 +185,10 @@ import org.junit.runners.Suite;
     org.alfresco.repo.security.authentication.AlfrescoSSLSocketFactoryTest.class,
     org.alfresco.repo.security.authentication.AuthorizationTest.class,
     org.alfresco.repo.security.permissions.impl.acegi.FilteringResultSetTest.class,
+    org.alfresco.repo.security.permissions.impl.AuthoritySetInternerTest.class,
     org.alfresco.repo.security.authentication.ChainingAuthenticationServiceTest.class,
     org.alfresco.repo.security.authentication.NameBasedUserNameGeneratorTest.class,
+    org.alfresco.repo.security.authority.AuthorityBridgeTableTest.class,
     org.alfresco.repo.version.common.VersionImplTest.class,
     org.alfresco.repo.version.common.VersionHistoryImplTest.class,
     org.alfresco.repo.version.common.versionlabel.SerialVersionLabelPolicyTest.class,
@@ -204,7 +212,9 @@ import org.junit.runners.Suite;
     org.alfresco.repo.rendition2.RenditionService2Test.class,
     org.alfresco.transform.client.registry.TransformServiceRegistryConfigTest.class,
 
-    org.alfresco.repo.event2.EventFilterTest.class
+    org.alfresco.repo.event2.EventFilterTest.class,
+    org.alfresco.repo.download.ZipDownloadExporterTest.class,
+    org.alfresco.repo.event2.BatchingEventPublisherTest.class
 })
 public class AllUnitTestsSuite
 {
@@ -0,0 +1,325 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.repo.activities.post.lookup.PostLookup;
+import org.alfresco.repo.admin.SysAdminParams;
+import org.alfresco.repo.domain.activities.ActivitiesDAO;
+import org.alfresco.repo.domain.activities.ActivityFeedEntity;
+import org.alfresco.repo.domain.activities.ActivityPostEntity;
+import org.alfresco.repo.domain.activities.FeedControlEntity;
+import org.alfresco.service.cmr.activities.FeedControl;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that generating the feeds of a post for all its recipients at once, with the feed controls selected in
+ * bulk and the entries inserted several at a time, gives the same feed entries as the per-user path.
+ *
+ * @since 7.0
+ */
+public class FeedTaskProcessorTest
+{
+    private static final String SITE = "site1";
+    private static final String DOC1 = "workspace://SpacesStore/doc1";
+    private static final String DOC2 = "workspace://SpacesStore/doc2";
+
+    private RepoCtx ctx;
+    private List<ActivityPostEntity> posts;
+
+    @Before
+    public void setUp()
+    {
+        ctx = new RepoCtx(mock(SysAdminParams.class), "/alfresco/service");
+        posts = Arrays.asList(
+                    createPost(1L, "erin", SITE, "documentlibrary", "{\"" + PostLookup.JSON_NODEREF + "\":\"" + DOC1 + "\",\"title\":\"doc1\"}"),
+                    createPost(2L, "erin", SITE, "blog", "{\"" + PostLookup.JSON_NODEREF + "\":\"" + DOC2 + "\",\"title\":\"doc2\"}"),
+                    createPost(3L, "Bob", null, "profile", "{\"title\":\"status\"}"));
+    }
+
+    @Test
+    public void testBulkFeedsMatchPerUserFeeds() throws Exception
+    {
+        TestFeedTaskProcessor perUser = new TestFeedTaskProcessor(false);
+        perUser.process(0, 1L, 3L, ctx);
+
+        TestFeedTaskProcessor bulk = new TestFeedTaskProcessor(true);
+        bulk.setFeedInsertBatchSize(2);
+        bulk.process(0, 1L, 3L, ctx);
+
+        assertEquals(perUser.getFeedEntries(), bulk.getFeedEntries());
+        assertEquals(perUser.getProcessedPosts(), bulk.getProcessedPosts());
+
+        // the per-user path selects the feed controls of each recipient on its own and inserts one entry at a time
+        assertEquals(0, perUser.bulkFeedControlSelects);
+        assertEquals(0, perUser.bulkInserts);
+        assertTrue(perUser.feedControlSelects > 1);
+
+        // feed controls are selected once per post that has recipients not seen before in the run
+        assertEquals(0, bulk.feedControlSelects);
+        assertEquals(2, bulk.bulkFeedControlSelects);
+        assertTrue(bulk.bulkInserts > 0);
+        assertEquals(0, bulk.singleInserts);
+    }
+
+    @Test
+    public void testFeedControlsAndReadPermissionsFilterRecipients() throws Exception
+    {
+        TestFeedTaskProcessor bulk = new TestFeedTaskProcessor(true);
+        bulk.setFeedInsertBatchSize(3);
+        bulk.process(0, 1L, 3L, ctx);
+
+        Set<String> entries = bulk.getFeedEntries();
+
+        // site members, the readable site feed, the poster and the follower that can read the site
+        assertTrue(entries.contains(entry("alice", 1L)));
+        assertTrue(entries.contains(entry("bob", 1L)));
+        assertTrue(entries.contains(entry("", 1L)));
+        assertTrue(entries.contains(entry("erin", 1L)));
+        assertTrue(entries.contains(entry("frank", 1L)));
+        // the follower that cannot read the site
+        assertFalse(entries.contains(entry("gina", 1L)));
+        // opted out of the site
+        assertFalse(entries.contains(entry("carol", 1L)));
+        assertFalse(entries.contains(entry("carol", 2L)));
+        // opted out of the document library, but not of the blog
+        assertFalse(entries.contains(entry("dave", 1L)));
+        assertTrue(entries.contains(entry("dave", 2L)));
+        // cannot read the node of the second post, nor can the site feed
+        assertFalse(entries.contains(entry("alice", 2L)));
+        assertFalse(entries.contains(entry("", 2L)));
+        // a post outside a site goes to the followers and the poster, user names in lower case
+        assertTrue(entries.contains(entry("alice", 3L)));
+        assertTrue(entries.contains(entry("bob", 3L)));
+
+        assertEquals(5 + 4 + 2, entries.size());
+        assertEquals(new HashSet<Long>(Arrays.asList(1L, 2L, 3L)), bulk.getProcessedPosts());
+    }
+
+    private static String entry(String feedUserId, long postId)
+    {
+        return feedUserId + "|" + postId;
+    }
+
+    private static ActivityPostEntity createPost(long id, String userId, String siteId, String appTool, String activityData)
+    {
+        ActivityPostEntity post = new ActivityPostEntity();
+        post.setId(id);
+        post.setUserId(userId);
+        post.setSiteNetwork(siteId);
+        post.setAppTool(appTool);
+        post.setActivityType("org.alfresco.test." + appTool);
+        post.setActivityData(activityData);
+        post.setPostDate(new Date(id * 1000L));
+        return post;
+    }
+
+    /**
+     * An in-memory feed task processor.  Unless bulk, it only has the per-user methods to work with.
+     */
+    private class TestFeedTaskProcessor extends FeedTaskProcessor
+    {
+        private final boolean bulk;
+        private final Map<String, List<FeedControlEntity>> feedControls = new HashMap<String, List<FeedControlEntity>>();
+        private final List<ActivityFeedEntity> feeds = new ArrayList<ActivityFeedEntity>();
+        private final Set<Long> processedPosts = new HashSet<Long>();
+
+        int feedControlSelects;
+        int bulkFeedControlSelects;
+        int singleInserts;
+        int bulkInserts;
+
+        TestFeedTaskProcessor(boolean bulk)
+        {
+            this.bulk = bulk;
+            addFeedControl("carol", new FeedControl(SITE, null));
+            addFeedControl("dave", new FeedControl(ActivitiesDAO.KEY_ACTIVITY_NULL_VALUE, "documentlibrary"));
+            addFeedControl("dave", new FeedControl("otherSite", null));
+        }
+
+        private void addFeedControl(String userId, FeedControl feedControl)
+        {
+            List<FeedControlEntity> userFeedControls = feedControls.get(userId);
+            if (userFeedControls == null)
+            {
+                userFeedControls = new ArrayList<FeedControlEntity>();
+                feedControls.put(userId, userFeedControls);
+            }
+            userFeedControls.add(new FeedControlEntity(userId, feedControl));
+        }
+
+        Set<String> getFeedEntries()
+        {
+            Set<String> entries = new HashSet<String>();
+            for (ActivityFeedEntity feed : feeds)
+            {
+                ActivityPostEntity post = posts.get((int) feed.getPostId() - 1);
+                assertEquals(post.getActivityData(), feed.getActivitySummary());
+                assertEquals(post.getSiteNetwork(), feed.getSiteNetwork());
+                assertEquals(post.getAppTool(), feed.getAppTool());
+                assertEquals(post.getActivityType(), feed.getActivityType());
+                assertEquals(post.getPostDate(), feed.getPostDate());
+                assertEquals(post.getUserId().toLowerCase(), feed.getPostUserId());
+                assertTrue("Duplicate feed entry " + feed, entries.add(entry(feed.getFeedUserId(), feed.getPostId())));
+            }
+            return entries;
+        }
+
+        Set<Long> getProcessedPosts()
+        {
+            return processedPosts;
+        }
+
+        @Override
+        public List<FeedControlEntity> selectUserFeedControls(String userId) throws SQLException
+        {
+            feedControlSelects++;
+            List<FeedControlEntity> userFeedControls = feedControls.get(userId);
+            return (userFeedControls == null) ? Collections.<FeedControlEntity>emptyList() : userFeedControls;
+        }
+
+        @Override
+        public List<FeedControlEntity> selectUserFeedControls(Collection<String> userIds) throws SQLException
+        {
+            if (!bulk)
+            {
+                return super.selectUserFeedControls(userIds);
+            }
+            bulkFeedControlSelects++;
+            List<FeedControlEntity> selected = new ArrayList<FeedControlEntity>();
+            for (String userId : userIds)
+            {
+                List<FeedControlEntity> userFeedControls = feedControls.get(userId);
+                if (userFeedControls != null)
+                {
+                    selected.addAll(userFeedControls);
+                }
+            }
+            return selected;
+        }
+
+        @Override
+        public long insertFeedEntry(ActivityFeedEntity feed) throws SQLException
+        {
+            singleInserts++;
+            feeds.add(feed);
+            return feeds.size();
+        }
+
+        @Override
+        public int insertFeedEntries(List<ActivityFeedEntity> feeds) throws SQLException
+        {
+            bulkInserts++;
+            this.feeds.addAll(feeds);
+            return feeds.size();
+        }
+
+        @Override
+        public List<ActivityPostEntity> selectPosts(ActivityPostEntity selector) throws SQLException
+        {
+            return posts;
+        }
+
+        @Override
+        public int updatePostStatus(long id, ActivityPostEntity.STATUS status) throws SQLException
+        {
+            if (status == ActivityPostEntity.STATUS.PROCESSED)
+            {
+                processedPosts.add(id);
+            }
+            return 1;
+        }
+
+        @Override
+        protected Set<String> getSiteMembers(RepoCtx ctx, String siteId, String tenantDomain) throws Exception
+        {
+            return new HashSet<String>(Arrays.asList("alice", "bob", "carol", "dave"));
+        }
+
+        @Override
+        protected Set<String> getFollowers(String userId, String tenantDomain) throws Exception
+        {
+            if (userId.equals("erin"))
+            {
+                return new HashSet<String>(Arrays.asList("frank", "gina"));
+            }
+            return new HashSet<String>(Arrays.asList("alice"));
+        }
+
+        @Override
+        protected boolean canReadSite(RepoCtx ctx, String siteIdIn, String connectedUser, String tenantDomain) throws Exception
+        {
+            return !connectedUser.equals("gina");
+        }
+
+        @Override
+        protected boolean canRead(RepoCtx ctx, String connectedUser, Map<String, Object> model) throws Exception
+        {
+            if (DOC2.equals(model.get(PostLookup.JSON_NODEREF)))
+            {
+                return !connectedUser.equals("alice") && !connectedUser.equals("");
+            }
+            return true;
+        }
+
+        @Override
+        public void startTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void commitTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void rollbackTransaction() throws SQLException
+        {
+        }
+
+        @Override
+        public void endTransaction() throws SQLException
+        {
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.activities.feed.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.activities.post.lookup.PostLookup;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.security.AccessPermission;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.service.cmr.security.AuthorityType;
+import org.alfresco.service.cmr.security.PermissionContext;
+import org.alfresco.service.cmr.security.PermissionService;
+import org.alfresco.service.namespace.QName;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the read permission checks of the local feed task processor, that are shared between the users and posts
+ * of a run of activity posts.
+ *
+ * @since 7.0
+ */
+public class LocalFeedTaskProcessorTest
+{
+    private static final Long ACL_ID = 10L;
+    private static final NodeRef NODE_1 = new NodeRef("workspace://SpacesStore/node1");
+    private static final NodeRef NODE_2 = new NodeRef("workspace://SpacesStore/node2");
+    private static final List<String> USERS = Arrays.asList("reader", "owner", "other");
+
+    private NodeService nodeService;
+    private PermissionService permissionService;
+    private LocalFeedTaskProcessor processor;
+    private Map<Object, Boolean> readCache;
+
+    @Before
+    public void setUp()
+    {
+        nodeService = mock(NodeService.class);
+        permissionService = mock(PermissionService.class);
+        for (NodeRef nodeRef : Arrays.asList(NODE_1, NODE_2))
+        {
+            when(nodeService.exists(nodeRef)).thenReturn(true);
+            when(nodeService.getNodeAclId(nodeRef)).thenReturn(ACL_ID);
+            when(nodeService.getType(nodeRef)).thenReturn(ContentModel.TYPE_CONTENT);
+            when(nodeService.getAspects(nodeRef)).thenReturn(Collections.<QName>emptySet());
+        }
+
+        // The ACL allows everyone, but the node check denies the owner
+        when(permissionService.hasPermission(anyLong(), any(PermissionContext.class), eq(PermissionService.READ))).thenReturn(AccessStatus.ALLOWED);
+        when(permissionService.hasPermission(any(NodeRef.class), eq(PermissionService.READ))).thenAnswer(invocation ->
+                    "owner".equals(AuthenticationUtil.getRunAsUser()) ? AccessStatus.DENIED : AccessStatus.ALLOWED);
+
+        processor = new LocalFeedTaskProcessor();
+        processor.setNodeService(nodeService);
+        processor.setPermissionService(permissionService);
+        processor.setUseRemoteCallbacks(false);
+
+        readCache = new HashMap<Object, Boolean>();
+    }
+
+    @Test
+    public void testAclCheckIsSharedBetweenNodes() throws Exception
+    {
+        setAclEntries(AuthorityType.GROUP, AuthorityType.EVERYONE);
+
+        assertEquals(new HashSet<String>(USERS), getReaders(NODE_1));
+        assertEquals(new HashSet<String>(USERS), getReaders(NODE_2));
+
+        // one ACL check per user for both nodes, and no node checks
+        verify(permissionService, times(USERS.size())).hasPermission(eq(ACL_ID), any(PermissionContext.class), eq(PermissionService.READ));
+        verify(permissionService, never()).hasPermission(any(NodeRef.class), eq(PermissionService.READ));
+    }
+
+    @Test
+    public void testDynamicAuthorityEntriesUseTheNodeCheck() throws Exception
+    {
+        // eg. a deny for the owner, that the ACL check cannot see
+        setAclEntries(AuthorityType.EVERYONE, AuthorityType.OWNER);
+
+        assertEquals(new HashSet<String>(Arrays.asList("reader", "other")), getReaders(NODE_1));
+        assertEquals(new HashSet<String>(Arrays.asList("reader", "other")), getReaders(NODE_2));
+
+        verify(permissionService, never()).hasPermission(anyLong(), any(PermissionContext.class), eq(PermissionService.READ));
+        verify(permissionService, times(2 * USERS.size())).hasPermission(any(NodeRef.class), eq(PermissionService.READ));
+        // the ACL entries are looked at once for the ACL
+        verify(permissionService, times(1)).getAllSetPermissions(any(NodeRef.class));
+    }
+
+    private void setAclEntries(AuthorityType... authorityTypes)
+    {
+        Set<AccessPermission> permissions = new HashSet<AccessPermission>();
+        for (AuthorityType authorityType : authorityTypes)
+        {
+            AccessPermission permission = mock(AccessPermission.class);
+            when(permission.getAuthorityType()).thenReturn(authorityType);
+            permissions.add(permission);
+        }
+        when(permissionService.getAllSetPermissions(any(NodeRef.class))).thenReturn(permissions);
+    }
+
+    private Set<String> getReaders(NodeRef nodeRef) throws Exception
+    {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put(PostLookup.JSON_NODEREF, nodeRef.toString());
+        return processor.getReaders(null, USERS, model, readCache);
+    }
+}
@@ -36,6 +36,7 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.audit.model.AuditApplication;
 import org.alfresco.repo.audit.model.AuditModelException;
 import org.alfresco.repo.audit.model.AuditModelRegistryImpl;
+import org.alfresco.repo.domain.audit.AuditDAO;
 import org.alfresco.repo.domain.schema.SchemaBootstrap;
 import org.alfresco.repo.node.NodeServicePolicies.OnCreateNodePolicy;
 import org.alfresco.repo.policy.JavaBehaviour;
@@ -473,6 +474,144 @@ public class AuditComponentTest extends TestCase
         
     }
     
+    /**
+     * Entries written behind the recording transaction must only appear once that transaction commits
+     */
+    public void testAudit_WriteBehind() throws Exception
+    {
+        final Long beforeTime = new Long(System.currentTimeMillis());
+        
+        AuditWriteBehindQueue writeBehindQueue = new AuditWriteBehindQueue();
+        writeBehindQueue.setAuditDAO((AuditDAO) ctx.getBean("auditDAO"));
+        writeBehindQueue.setTransactionService(transactionService);
+        writeBehindQueue.setEnabled(true);
+        writeBehindQueue.setBatchSize(10);
+        writeBehindQueue.afterPropertiesSet();
+        auditComponent.setAuditWriteBehindQueue(writeBehindQueue);
+        try
+        {
+            // A rolled back transaction does not queue anything
+            RetryingTransactionCallback<Void> rollbackCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    Map<String, Serializable> values = Collections.<String, Serializable>singletonMap(
+                            AuditApplication.buildPath("action-01", "params", "A"), "rolled back");
+                    Map<String, Serializable> adjustedValues = new HashMap<String, Serializable>(values);
+                    adjustedValues.put(AuditApplication.buildPath("context-node"), nodeRef);
+                    auditComponent.recordAuditValues(AuditApplication.buildPath("actions-test/actions"), adjustedValues);
+                    throw new IllegalStateException("Roll back");
+                }
+            };
+            try
+            {
+                transactionService.getRetryingTransactionHelper().doInTransaction(rollbackCallback);
+                fail("Transaction should have rolled back");
+            }
+            catch (IllegalStateException e)
+            {
+                // Expected
+            }
+            assertEquals(0, writeBehindQueue.getQueuedCount());
+            
+            // The committed values are returned straight away and written later
+            auditAction01("action-01");
+            for (int i = 0; i < 100 && writeBehindQueue.getWrittenCount() < 1; i++)
+            {
+                Thread.sleep(100L);
+            }
+            assertEquals(1, writeBehindQueue.getQueuedCount());
+            assertEquals(1, writeBehindQueue.getWrittenCount());
+            assertEquals(0, writeBehindQueue.getDroppedCount());
+            assertEquals(0, writeBehindQueue.getQueueDepth());
+        }
+        finally
+        {
+            auditComponent.setAuditWriteBehindQueue((AuditWriteBehindQueue) ctx.getBean("auditWriteBehindQueue"));
+            writeBehindQueue.destroy();
+        }
+        
+        final MutableInt rowCount = new MutableInt();
+        AuditQueryCallback callback = new AuditQueryCallback()
+        {
+            public boolean valuesRequired()
+            {
+                return false;
+            }
+            
+            public boolean handleAuditEntry(
+                    Long entryId, String applicationName, String user, long time, Map<String, Serializable> values)
+            {
+                rowCount.setValue(rowCount.intValue() + 1);
+                return true;
+            }
+            
+            public boolean handleAuditEntryError(Long entryId, String errorMsg, Throwable error)
+            {
+                throw new AlfrescoRuntimeException(errorMsg, error);
+            }
+        };
+        AuditQueryParameters params = new AuditQueryParameters();
+        params.setApplicationName(APPLICATION_ACTIONS_TEST);
+        params.setUser(user);
+        params.setFromTime(beforeTime);
+        auditComponent.auditQuery(callback, params, Integer.MAX_VALUE);
+        assertEquals("Expected only the committed entry", 1, rowCount.intValue());
+    }
+    
+    /**
+     * Entries recorded from a read-only transaction used to be written in a new transaction of their own, so they
+     * must still be written behind when the read-only transaction rolls back
+     */
+    public void testAudit_WriteBehindFromReadOnlyTransaction() throws Exception
+    {
+        AuditWriteBehindQueue writeBehindQueue = new AuditWriteBehindQueue();
+        writeBehindQueue.setAuditDAO((AuditDAO) ctx.getBean("auditDAO"));
+        writeBehindQueue.setTransactionService(transactionService);
+        writeBehindQueue.setEnabled(true);
+        writeBehindQueue.setBatchSize(10);
+        writeBehindQueue.afterPropertiesSet();
+        auditComponent.setAuditWriteBehindQueue(writeBehindQueue);
+        try
+        {
+            RetryingTransactionCallback<Void> readOnlyCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    Map<String, Serializable> values = Collections.<String, Serializable>singletonMap(
+                            AuditApplication.buildPath("action-01", "params", "A"), "read-only");
+                    Map<String, Serializable> adjustedValues = new HashMap<String, Serializable>(values);
+                    adjustedValues.put(AuditApplication.buildPath("context-node"), nodeRef);
+                    auditComponent.recordAuditValues(AuditApplication.buildPath("actions-test/actions"), adjustedValues);
+                    // Queued before the transaction ends
+                    assertEquals(1, writeBehindQueue.getQueuedCount());
+                    throw new IllegalStateException("Roll back");
+                }
+            };
+            try
+            {
+                transactionService.getRetryingTransactionHelper().doInTransaction(readOnlyCallback, true, false);
+                fail("Transaction should have rolled back");
+            }
+            catch (IllegalStateException e)
+            {
+                // Expected
+            }
+            for (int i = 0; i < 100 && writeBehindQueue.getWrittenCount() < 1; i++)
+            {
+                Thread.sleep(100L);
+            }
+            assertEquals(1, writeBehindQueue.getQueuedCount());
+            assertEquals(1, writeBehindQueue.getWrittenCount());
+            assertEquals(0, writeBehindQueue.getDroppedCount());
+        }
+        finally
+        {
+            auditComponent.setAuditWriteBehindQueue((AuditWriteBehindQueue) ctx.getBean("auditWriteBehindQueue"));
+            writeBehindQueue.destroy();
+        }
+    }
+    
     /**
      * Test disabling of audit using audit paths
      */
@@ -0,0 +1,143 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.alfresco.repo.batch.BatchProcessor.BatchProcessWorkerAdaptor;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.service.transaction.TransactionService;
+import org.alfresco.util.ApplicationContextHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+
+/**
+ * Integration tests for the work-stealing mode of the {@link BatchProcessor}.
+ * 
+ * @since 7.0
+ */
+public class BatchProcessorTest
+{
+    private ApplicationContext ctx;
+    private RetryingTransactionHelper txnHelper;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ctx = ApplicationContextHelper.getApplicationContext();
+        txnHelper = new RetryingTransactionHelper();
+        txnHelper.setTransactionService(ctx.getBean("TransactionService", TransactionService.class));
+        txnHelper.setMaxRetries(1);
+        txnHelper.setMinRetryWaitMs(1);
+        txnHelper.setMaxRetryWaitMs(10);
+        txnHelper.setRetryWaitIncrementMs(1);
+    }
+
+    private static List<Integer> entries(int count)
+    {
+        List<Integer> entries = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++)
+        {
+            entries.add(i);
+        }
+        return entries;
+    }
+
+    private BatchProcessor<Integer> newBatchProcessor(List<Integer> entries, int batchSize)
+    {
+        BatchProcessor<Integer> batchProcessor = new BatchProcessor<Integer>(
+                "BatchProcessorTest", txnHelper, entries, 4, batchSize, null, null, 100);
+        batchProcessor.setWorkStealing(true);
+        return batchProcessor;
+    }
+
+    @Test
+    public void testWorkStealingProcessesAllEntries()
+    {
+        final Set<Integer> processed = ConcurrentHashMap.newKeySet();
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(entries(1000), 10);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                processed.add(entry);
+            }
+        }, true);
+
+        assertEquals(1000, processed.size());
+        assertEquals(1000, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(0, batchProcessor.getTotalErrors());
+        assertTrue(batchProcessor.getThroughput() > 0.0);
+        assertTrue(batchProcessor.getAverageBatchDuration() >= 0L);
+    }
+
+    @Test
+    public void testFailingEntryIsIsolated()
+    {
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(entries(100), 20);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                if (entry == 42)
+                {
+                    throw new ConcurrencyFailureException("Entry 42 always fails");
+                }
+            }
+        }, true);
+
+        // Only the failing entry is reported, the other entries in its batch are committed after splitting
+        assertEquals(99, batchProcessor.getSuccessfullyProcessedEntries());
+        assertEquals(1, batchProcessor.getTotalErrors());
+        assertEquals("42", batchProcessor.getLastErrorEntryId());
+    }
+
+    @Test
+    public void testBatchSizeAdaptsToDuration()
+    {
+        BatchProcessor<Integer> batchProcessor = newBatchProcessor(entries(200), 20);
+        batchProcessor.setTargetBatchDurationMs(1L);
+        batchProcessor.process(new BatchProcessWorkerAdaptor<Integer>()
+        {
+            public void process(Integer entry) throws Throwable
+            {
+                Thread.sleep(2L);
+            }
+        }, true);
+
+        assertEquals(200, batchProcessor.getSuccessfullyProcessedEntries());
+        assertTrue("Batch size should shrink towards the target duration: " + batchProcessor.getCurrentBatchSize(),
+                batchProcessor.getCurrentBatchSize() < 20);
+    }
+}
@@ -70,6 +70,7 @@ import java.util.zip.GZIPInputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -224,6 +225,71 @@ public class BulkImportTest extends AbstractBulkImportTests
                 });
     }
 
+    @Test
+    public void testCopyImportPipelined() throws Throwable
+    {
+        txn = transactionService.getUserTransaction();
+        txn.begin();
+
+        NodeRef folderNode = topLevelFolder.getNodeRef();
+
+        boolean pipelineEnabled = bulkImporter.isPipelineEnabled();
+        bulkImporter.setPipelineEnabled(true);
+        try
+        {
+            NodeImporter nodeImporter = streamingNodeImporterFactory.getNodeImporter(ResourceUtils.getFile("classpath:bulkimport"));
+            BulkImportParameters bulkImportParameters = new BulkImportParameters();
+            bulkImportParameters.setTarget(folderNode);
+            bulkImportParameters.setReplaceExisting(true);
+            bulkImportParameters.setDisableRulesService(true);
+            bulkImportParameters.setBatchSize(5);
+            bulkImporter.bulkImport(bulkImportParameters, nodeImporter);
+        }
+        catch(Throwable e)
+        {
+            fail(e.getMessage());
+        }
+        finally
+        {
+            bulkImporter.setPipelineEnabled(pipelineEnabled);
+        }
+
+        System.out.println(bulkImporter.getStatus());
+        BulkImportStatusImpl status = (BulkImportStatusImpl)bulkImporter.getStatus();
+        assertEquals(false, status.inProgress());
+        assertNull(status.getLastException());
+        assertTrue(status.isPipelined());
+        assertTrue(status.getNumberOfDirectoriesWalked() > 1);
+        assertTrue(status.getNumberOfItemsWritten() > 0);
+        assertTrue(status.getNumberOfItemsLoaded() >= status.getNumberOfItemsWritten());
+
+        checkFiles(folderNode, null, 2, 9,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1"),
+                    new ExpectedFolder("folder2")
+                });
+
+        List<FileInfo> folders = getFolders(folderNode, "folder1");
+        assertEquals("", 1, folders.size());
+        folders = getFolders(folders.get(0).getNodeRef(), "folder1.1");
+        assertEquals("", 1, folders.size());
+        checkFiles(folders.get(0).getNodeRef(), null, 2, 12,
+                new ExpectedFile[]
+                {
+                    new ExpectedFile("quick.txt", MimetypeMap.MIMETYPE_TEXT_PLAIN, "The quick brown fox jumps over the lazy dog"),
+                },
+                new ExpectedFolder[]
+                {
+                    new ExpectedFolder("folder1.1.1"),
+                    new ExpectedFolder("folder1.1.2")
+                });
+    }
+
     protected Rule createCopyRule(NodeRef targetNode, boolean isAppliedToChildren)
     {
         Rule rule = new Rule();
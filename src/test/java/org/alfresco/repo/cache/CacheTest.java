@@ -471,6 +471,87 @@ public class CacheTest extends TestCase
         }
     }
     
+    /**
+     * Reads the same keys through the transactional cache in read-only and read-write transactions.
+     * Read-only transactions buffer the reads without creating cache buckets.
+     */
+    public void testReadOnlyTxnReadPerformance() throws Exception
+    {
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        int count = 400;
+        for (int i = 0; i < count; i++)
+        {
+            transactionalCache.put(Integer.toString(i), Integer.valueOf(i));
+        }
+        for (int run = 0; run < 5; run++)
+        {
+            long[] times = new long[2];
+            for (int readOnly = 0; readOnly < 2; readOnly++)
+            {
+                long start = System.nanoTime();
+                for (int txnCount = 0; txnCount < 100; txnCount++)
+                {
+                    UserTransaction txn = transactionService.getUserTransaction(readOnly == 1);
+                    txn.begin();
+                    // Each key is read repeatedly, as is typical when a page of nodes is rendered
+                    for (int reads = 0; reads < 3; reads++)
+                    {
+                        for (int i = 0; i < count; i++)
+                        {
+                            transactionalCache.get(Integer.toString(i));
+                        }
+                    }
+                    txn.commit();
+                }
+                times[readOnly] = System.nanoTime() - start;
+            }
+            // report
+            System.out.println("Cache read performance test: \n" +
+                    "   count:      " + count + "\n" +
+                    "   read-write: " + times[0]/((long)count * 300) + " ns\\count \n" + 
+                    "   read-only:  " + times[1]/((long)count * 300) + " ns\\count"); 
+        }
+    }
+    
+    /**
+     * Values buffered by a read-only transaction must not hide later updates or removals in the same transaction.
+     */
+    public void testReadOnlyTxnReadBuffer() throws Throwable
+    {
+        transactionalCache.put("A", "AAA");
+        transactionalCache.put("B", "BBB");
+        
+        TransactionService transactionService = serviceRegistry.getTransactionService();
+        UserTransaction txn = transactionService.getUserTransaction(true);
+        try
+        {
+            txn.begin();
+            assertEquals("AAA", transactionalCache.get("A"));
+            assertEquals("BBB", transactionalCache.get("B"));
+            assertNull(transactionalCache.get("C"));
+            
+            // The buffered read must be superseded by an update
+            transactionalCache.put("A", "aaa");
+            assertEquals("aaa", transactionalCache.get("A"));
+            // ... and by a removal
+            transactionalCache.remove("B");
+            assertNull(transactionalCache.get("B"));
+            // ... and by a value that was missing when first read
+            transactionalCache.put("C", "CCC");
+            assertEquals("CCC", transactionalCache.get("C"));
+            
+            txn.commit();
+        }
+        catch (Throwable e)
+        {
+            try { txn.rollback(); } catch (Throwable ee) {}
+            throw e;
+        }
+        assertEquals("aaa", transactionalCache.get("A"));
+        assertNull(transactionalCache.get("B"));
+        assertEquals("CCC", transactionalCache.get("C"));
+    }
+    
     /**
      * Time how long it takes to create and complete a whole lot of transactions
      */
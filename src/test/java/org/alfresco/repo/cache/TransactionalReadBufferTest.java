@@ -0,0 +1,121 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for the {@link TransactionalReadBuffer} class.
+ * 
+ * @since 7.0
+ */
+public class TransactionalReadBufferTest
+{
+    @Test
+    public void canBufferValuesAndNulls()
+    {
+        TransactionalReadBuffer buffer = new TransactionalReadBuffer(10);
+        
+        assertSame(TransactionalReadBuffer.NOT_FOUND, buffer.get("A"));
+        assertTrue(buffer.put("A", "AAA"));
+        assertTrue(buffer.put("B", null));
+        
+        assertEquals(2, buffer.size());
+        assertEquals("AAA", buffer.get("A"));
+        assertNull(buffer.get("B"));
+        assertSame(TransactionalReadBuffer.NOT_FOUND, buffer.get("C"));
+        
+        // Replace a value
+        assertTrue(buffer.put("A", "aaa"));
+        assertEquals(2, buffer.size());
+        assertEquals("aaa", buffer.get("A"));
+    }
+
+    @Test
+    public void stopsBufferingWhenFull()
+    {
+        TransactionalReadBuffer buffer = new TransactionalReadBuffer(3);
+        
+        assertTrue(buffer.put(1L, "1"));
+        assertTrue(buffer.put(2L, "2"));
+        assertTrue(buffer.put(3L, "3"));
+        assertFalse(buffer.put(4L, "4"));
+        // Existing keys can still be updated
+        assertTrue(buffer.put(3L, "three"));
+        
+        assertEquals(3, buffer.size());
+        assertSame(TransactionalReadBuffer.NOT_FOUND, buffer.get(4L));
+        assertEquals("three", buffer.get(3L));
+        
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertSame(TransactionalReadBuffer.NOT_FOUND, buffer.get(1L));
+        assertTrue(buffer.put(4L, "4"));
+    }
+
+    @Test
+    public void matchesHashMapForRandomOperations()
+    {
+        // Colliding keys exercise the probing and removal shifts
+        Random random = new Random(42L);
+        TransactionalReadBuffer buffer = new TransactionalReadBuffer(1000);
+        Map<Long, String> expected = new HashMap<Long, String>();
+        for (int i = 0; i < 20000; i++)
+        {
+            Long key = Long.valueOf(random.nextInt(200) * 64L);
+            if (random.nextInt(3) == 0)
+            {
+                buffer.remove(key);
+                expected.remove(key);
+            }
+            else
+            {
+                String value = Integer.toString(i);
+                buffer.put(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), buffer.size());
+        }
+        for (long key = 0; key < 200 * 64L; key += 64L)
+        {
+            Object value = buffer.get(key);
+            if (expected.containsKey(key))
+            {
+                assertEquals(expected.get(key), value);
+            }
+            else
+            {
+                assertSame(TransactionalReadBuffer.NOT_FOUND, value);
+            }
+        }
+    }
+}
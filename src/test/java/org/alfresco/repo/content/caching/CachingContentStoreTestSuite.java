@@ -53,6 +53,7 @@ import org.junit.runners.Suite;
     //CachingContentStoreSpringTest.class,
     CachingContentStoreTest.class,
     ContentCacheImplTest.class,
+    ContentCacheIndexTest.class,
     FullTest.class
 })
 public class CachingContentStoreTestSuite
@@ -0,0 +1,271 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.content.caching;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.alfresco.repo.cache.DefaultSimpleCache;
+import org.alfresco.repo.content.caching.ContentCacheIndex.EvictionPolicy;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentWriter;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ContentCacheIndex} and its use by {@link ContentCacheImpl}.
+ * 
+ * @since 7.0
+ */
+public class ContentCacheIndexTest
+{
+    private ContentCacheIndex index;
+    private File cacheRoot;
+    
+    @Before
+    public void setUp() throws Exception
+    {
+        index = new ContentCacheIndex();
+        cacheRoot = new File(TempFileProvider.getTempDir(), GUID.generate());
+        cacheRoot.mkdirs();
+    }
+    
+    @Test
+    public void tracksTotalSize()
+    {
+        index.put("store://a", "/cache/a.bin", 10L);
+        index.put("store://b", "/cache/b.bin", 20L);
+        assertEquals(30L, index.getTotalSize());
+        
+        // Replacing an entry adjusts the total
+        index.put("store://a", "/cache/a2.bin", 5L);
+        assertEquals(25L, index.getTotalSize());
+        assertEquals("/cache/a2.bin", index.getPath("store://a"));
+        
+        index.removeByPath("/cache/b.bin");
+        assertEquals(5L, index.getTotalSize());
+        assertNull(index.getPath("store://b"));
+        
+        // Stale path of a replaced entry is ignored
+        index.removeByPath("/cache/a.bin");
+        assertEquals(1, index.size());
+        
+        assertEquals("/cache/a2.bin", index.remove("store://a"));
+        assertEquals(0L, index.getTotalSize());
+    }
+    
+    @Test
+    public void selectsLeastRecentlyUsedFirst() throws Exception
+    {
+        index.put("store://old", "/cache/old.bin", 10L);
+        Thread.sleep(5);
+        index.put("store://new", "/cache/new.bin", 10L);
+        Thread.sleep(5);
+        index.touch("store://old");
+        
+        assertEquals(Arrays.asList("store://new"), index.selectForEviction(5L, EvictionPolicy.LRU));
+        assertEquals(Arrays.asList("store://new", "store://old"), index.selectForEviction(15L, EvictionPolicy.LRU));
+        assertTrue(index.selectForEviction(0L, EvictionPolicy.LRU).isEmpty());
+    }
+    
+    @Test
+    public void selectsLeastFrequentlyUsedFirst() throws Exception
+    {
+        index.put("store://popular", "/cache/popular.bin", 10L);
+        index.put("store://rare", "/cache/rare.bin", 10L);
+        index.touch("store://popular");
+        index.touch("store://popular");
+        
+        List<String> selected = index.selectForEviction(10L, EvictionPolicy.LFU);
+        assertEquals(Arrays.asList("store://rare"), selected);
+    }
+    
+    @Test
+    public void selectsOnlyAsManyAsNeeded() throws Exception
+    {
+        // Added in reverse order of use, so the scan keeps finding better candidates
+        for (int i = 99; i >= 0; i--)
+        {
+            index.put("store://" + i, "/cache/" + i + ".bin", 10L);
+            for (int touch = 0; touch < i; touch++)
+            {
+                index.touch("store://" + i);
+            }
+        }
+        
+        assertEquals(Arrays.asList("store://0", "store://1", "store://2", "store://3"),
+                index.selectForEviction(35L, EvictionPolicy.LFU));
+        assertEquals(100, index.selectForEviction(10000L, EvictionPolicy.LFU).size());
+    }
+    
+    @Test
+    public void snapshotRoundTrip() throws Exception
+    {
+        index.put("store://a", "/cache/a.bin", 10L);
+        index.put("store://\u00e9", "/cache/\u00e9.bin", 20L);
+        index.touch("store://a");
+        File file = new File(cacheRoot, "index.bin");
+        index.save(file);
+        
+        ContentCacheIndex loaded = new ContentCacheIndex();
+        assertTrue(loaded.load(file));
+        assertEquals(2, loaded.size());
+        assertEquals(30L, loaded.getTotalSize());
+        assertEquals("/cache/\u00e9.bin", loaded.getPath("store://\u00e9"));
+        // Access counts survive: "a" was used twice, so the other entry goes first
+        assertEquals(Arrays.asList("store://\u00e9"), loaded.selectForEviction(1L, EvictionPolicy.LFU));
+    }
+    
+    @Test
+    public void missingOrCorruptSnapshotIsIgnored() throws Exception
+    {
+        File file = new File(cacheRoot, "index.bin");
+        assertFalse(index.load(file));
+        
+        FileUtils.writeStringToFile(file, "not an index", "UTF-8");
+        assertFalse(index.load(file));
+        assertEquals(0, index.size());
+    }
+    
+    @Test
+    public void cacheIsWarmAfterRestartAndEvictsWithoutWalking()
+    {
+        ContentCacheImpl cache = newCache();
+        ContentWriter writer = cache.getWriter("store://one");
+        writer.putContent("Content one");
+        writer = cache.getWriter("store://two");
+        writer.putContent("Content two, which is longer");
+        File fileTwo = new File(cache.getCacheFilePath("store://two"));
+        cache.shutdown();
+        
+        // Fresh lookup table, as after a restart
+        ContentCacheImpl restarted = newCache();
+        assertTrue(restarted.contains("store://one"));
+        ContentReader reader = restarted.getReader("store://one");
+        assertEquals("Content one", reader.getContentString());
+        assertEquals(2, restarted.getIndex().size());
+        
+        long freed = restarted.evict(1L, EvictionPolicy.LFU);
+        assertTrue(freed > 0L);
+        assertFalse(fileTwo.exists());
+        assertFalse(restarted.contains("store://two"));
+        assertTrue(restarted.contains("store://one"));
+        assertEquals(1, restarted.getIndex().size());
+    }
+    
+    @Test
+    public void snapshotSurvivesUncleanShutdown()
+    {
+        ContentCacheImpl cache = newCache();
+        cache.getWriter("store://saved").putContent("Saved by the cleaner");
+        cache.saveIndex();
+        cache.getWriter("store://unsaved").putContent("Written after the last save");
+        
+        // No shutdown, as after a crash
+        ContentCacheImpl restarted = newCache();
+        assertTrue(restarted.contains("store://saved"));
+        assertFalse(restarted.contains("store://unsaved"));
+        assertEquals(1, restarted.getIndex().size());
+        
+        // The snapshot is kept, so a second crash still warm starts
+        ContentCacheImpl restartedAgain = newCache();
+        assertTrue(restartedAgain.contains("store://saved"));
+    }
+    
+    @Test
+    public void evictionSkipsContentInUse() throws Exception
+    {
+        final String inUseUrl = "store://in-use";
+        String idleUrl = "store://idle";
+        for (int i = 0; CachingContentStore.lockFor(idleUrl) == CachingContentStore.lockFor(inUseUrl); i++)
+        {
+            idleUrl = "store://idle" + i;
+        }
+        ContentCacheImpl cache = newCache();
+        cache.getWriter(inUseUrl).putContent("Being read");
+        cache.getWriter(idleUrl).putContent("Not in use");
+        File inUseFile = new File(cache.getCacheFilePath(inUseUrl));
+        File idleFile = new File(cache.getCacheFilePath(idleUrl));
+        
+        // Hold the store's lock for one URL on another thread, as a reader caching it would
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() ->
+        {
+            CachingContentStore.lockFor(inUseUrl).writeLock().lock();
+            try
+            {
+                locked.countDown();
+                release.await();
+            }
+            catch (InterruptedException e)
+            {
+                // Release the lock
+            }
+            finally
+            {
+                CachingContentStore.lockFor(inUseUrl).writeLock().unlock();
+            }
+        });
+        holder.start();
+        try
+        {
+            locked.await();
+            cache.evict(Long.MAX_VALUE, EvictionPolicy.LRU);
+        }
+        finally
+        {
+            release.countDown();
+            holder.join();
+        }
+        
+        assertTrue(inUseFile.exists());
+        assertTrue(cache.contains(inUseUrl));
+        assertFalse(idleFile.exists());
+        assertFalse(cache.contains(idleUrl));
+        assertEquals(1, cache.getIndex().size());
+    }
+    
+    private ContentCacheImpl newCache()
+    {
+        ContentCacheImpl cache = new ContentCacheImpl();
+        cache.setMemoryStore(new DefaultSimpleCache<Key, String>());
+        cache.setCacheRoot(cacheRoot);
+        cache.setIndexEnabled(true);
+        cache.init();
+        return cache;
+    }
+}
@@ -25,6 +25,13 @@
  */
 package org.alfresco.repo.content.cleanup;
 
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -34,6 +41,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.TestCase;
 
@@ -50,6 +58,7 @@ import org.alfresco.repo.node.ContentPropertyRestrictionInterceptor;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.dictionary.DictionaryService;
 import org.alfresco.service.cmr.repository.ContentData;
 import org.alfresco.service.cmr.repository.ContentIOException;
@@ -65,6 +74,8 @@ import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
 import org.alfresco.util.GUID;
 import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.springframework.context.ApplicationContext;
 
 /**
@@ -111,7 +122,7 @@ public class ContentStoreCleanerTest extends TestCase
         listeners.add(listener);
         listeners.add(new DummyUnsupportiveCleanerListener());
         // initialise record of deleted URLs
-        deletedUrls = new ArrayList<String>(5);
+        deletedUrls = Collections.synchronizedList(new ArrayList<String>(5));
         
         // Construct the test cleaners
         eagerCleaner = (EagerContentStoreCleaner) ctx.getBean("eagerContentStoreCleaner");
@@ -394,6 +405,194 @@ public class ContentStoreCleanerTest extends TestCase
         assertTrue("Content listener was not called", deletedUrls.contains(reader.getContentUrl()));
     }
     
+    /**
+     * Delete the binaries on several threads, in small batches, recording the progress as we go
+     */
+    public void testParallelRemovalWithCheckpoint() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        AttributeService attributeService = (AttributeService) ctx.getBean("attributeService");
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        RetryingTransactionCallback<List<String>> testCallback = new RetryingTransactionCallback<List<String>>()
+        {
+            public List<String> execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                List<String> contentUrls = new ArrayList<String>(10);
+                for (int i = 0; i < 10; i++)
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                    properties.put(ContentModel.PROP_NAME, (Serializable)("test-" + i + ".txt"));
+                    NodeRef contentNodeRef = nodeService.createNode(
+                            rootNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT,
+                            properties).getChildRef();
+                    ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                    writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                    writer.putContent("CONTENT " + i);
+                    contentUrls.add(writer.getContentUrl());
+                    
+                    // Delete the node, bypassing archive
+                    nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(contentNodeRef);
+                }
+                return contentUrls;
+            }
+        };
+        List<String> contentUrls = transactionService.getRetryingTransactionHelper().doInTransaction(testCallback);
+        checkForExistence(new HashSet<String>(contentUrls), true);
+        
+        // fire the cleaner
+        cleaner.setAttributeService(attributeService);
+        cleaner.setProtectDays(0);
+        cleaner.setBatchSize(3);
+        cleaner.setThreadCount(4);
+        eagerCleaner.setMaxConcurrentDeletesPerStore(2);
+        try
+        {
+            cleaner.execute();
+        }
+        finally
+        {
+            eagerCleaner.setMaxConcurrentDeletesPerStore(0);
+        }
+        
+        checkForExistence(new HashSet<String>(contentUrls), false);
+        assertTrue("Content listener was not called", deletedUrls.containsAll(contentUrls));
+        // A completed run starts again from the beginning
+        RetryingTransactionCallback<Serializable> getCheckpointCallback = new RetryingTransactionCallback<Serializable>()
+        {
+            public Serializable execute() throws Throwable
+            {
+                return attributeService.getAttribute(".contentStoreCleaner", "nextOrphanId");
+            }
+        };
+        assertNull("Checkpoint not cleared", transactionService.getRetryingTransactionHelper().doInTransaction(getCheckpointCallback, true));
+    }
+    
+    /**
+     * Stop a run after its first batch and check that the next run resumes from the recorded checkpoint
+     */
+    public void testResumeFromCheckpoint() throws Exception
+    {
+        eagerCleaner.setEagerOrphanCleanup(false);
+        final AttributeService attributeService = (AttributeService) ctx.getBean("attributeService");
+        
+        final StoreRef storeRef = nodeService.createStore("test", getName() + "-" + GUID.generate());
+        RetryingTransactionCallback<List<String>> testCallback = new RetryingTransactionCallback<List<String>>()
+        {
+            public List<String> execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                List<String> contentUrls = new ArrayList<String>(9);
+                for (int i = 0; i < 9; i++)
+                {
+                    Map<QName, Serializable> properties = new HashMap<QName, Serializable>(13);
+                    properties.put(ContentModel.PROP_NAME, (Serializable)("test-" + i + ".txt"));
+                    NodeRef contentNodeRef = nodeService.createNode(
+                            rootNodeRef,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.ASSOC_CHILDREN,
+                            ContentModel.TYPE_CONTENT,
+                            properties).getChildRef();
+                    ContentWriter writer = contentService.getWriter(contentNodeRef, ContentModel.PROP_CONTENT, true);
+                    writer.setMimetype(MimetypeMap.MIMETYPE_TEXT_PLAIN);
+                    writer.putContent("CONTENT " + i);
+                    contentUrls.add(writer.getContentUrl());
+                    
+                    // Delete the node, bypassing archive
+                    nodeService.addAspect(contentNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(contentNodeRef);
+                }
+                return contentUrls;
+            }
+        };
+        List<String> contentUrls = transactionService.getRetryingTransactionHelper().doInTransaction(testCallback);
+        checkForExistence(new HashSet<String>(contentUrls), true);
+        
+        // Record the orphans read by each run and fail the read of the second batch of the first run
+        final List<Long> minIds = new ArrayList<Long>();
+        final TreeMap<Long, String> firstRunUrls = new TreeMap<Long, String>();
+        final TreeMap<Long, String> secondRunUrls = new TreeMap<Long, String>();
+        final AtomicReference<Map<Long, String>> runUrls = new AtomicReference<Map<Long, String>>(firstRunUrls);
+        ContentDataDAO stoppingContentDataDAO = mock(ContentDataDAO.class, delegatesTo(contentDataDAO));
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                final ContentUrlHandler handler = invocation.getArgument(0);
+                Long maxOrphanTimeExclusive = invocation.getArgument(1);
+                Long minIdInclusive = invocation.getArgument(2);
+                Integer maxResults = invocation.getArgument(3);
+                if (runUrls.get() == firstRunUrls && minIds.size() == 1)
+                {
+                    minIds.add(minIdInclusive);
+                    throw new RuntimeException("Stopping the cleanup after the first batch");
+                }
+                minIds.add(minIdInclusive);
+                ContentUrlHandler recordingHandler = new ContentUrlHandler()
+                {
+                    @Override
+                    public void handle(Long id, String contentUrl, Long orphanTime)
+                    {
+                        runUrls.get().put(id, contentUrl);
+                        handler.handle(id, contentUrl, orphanTime);
+                    }
+                };
+                contentDataDAO.getContentUrlsOrphaned(recordingHandler, maxOrphanTimeExclusive, minIdInclusive, maxResults);
+                return null;
+            }
+        }).when(stoppingContentDataDAO).getContentUrlsOrphaned(any(ContentUrlHandler.class), anyLong(), anyLong(), anyInt());
+        
+        cleaner.setContentDataDAO(stoppingContentDataDAO);
+        cleaner.setAttributeService(attributeService);
+        cleaner.setProtectDays(0);
+        cleaner.setBatchSize(3);
+        try
+        {
+            cleaner.execute();
+            fail("The first run should have been stopped");
+        }
+        catch (RuntimeException e)
+        {
+            // Expected
+        }
+        
+        // The first batch was committed with its checkpoint
+        assertEquals(3, firstRunUrls.size());
+        final Long checkpoint = firstRunUrls.lastKey() + 1L;
+        RetryingTransactionCallback<Serializable> getCheckpointCallback = new RetryingTransactionCallback<Serializable>()
+        {
+            public Serializable execute() throws Throwable
+            {
+                return attributeService.getAttribute(".contentStoreCleaner", "nextOrphanId");
+            }
+        };
+        assertEquals(checkpoint, transactionService.getRetryingTransactionHelper().doInTransaction(getCheckpointCallback, true));
+        
+        // The next run carries on from the checkpoint and does not see the first batch again
+        minIds.clear();
+        runUrls.set(secondRunUrls);
+        cleaner.execute();
+        assertEquals("Run did not resume from the checkpoint", checkpoint, minIds.get(0));
+        for (Long id : secondRunUrls.keySet())
+        {
+            assertTrue("Orphan reprocessed: " + id, id >= checkpoint);
+        }
+        for (String contentUrl : firstRunUrls.values())
+        {
+            assertFalse("Orphan reprocessed: " + contentUrl, secondRunUrls.containsValue(contentUrl));
+        }
+        checkForExistence(new HashSet<String>(contentUrls), false);
+        assertTrue("Content listener was not called", deletedUrls.containsAll(contentUrls));
+        assertEquals("Content deleted more than once", new HashSet<String>(deletedUrls).size(), deletedUrls.size());
+        assertNull("Checkpoint not cleared", transactionService.getRetryingTransactionHelper().doInTransaction(getCheckpointCallback, true));
+    }
+    
     /**
      * Test forced and immediate shredding of content
      * <p/>
@@ -27,9 +27,12 @@ package org.alfresco.repo.domain.node;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -39,17 +42,25 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.cache.SimpleCache;
 import org.alfresco.repo.cache.TransactionalCache;
 import org.alfresco.repo.cache.TransactionalCache.ValueHolder;
+import org.alfresco.repo.domain.node.NodeDAO.ChildAssocRefQueryCallback;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
 import org.alfresco.service.cmr.dictionary.DataTypeDefinition;
+import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.test_category.OwnJVMTestsCategory;
 import org.alfresco.util.ApplicationContextHelper;
+import org.alfresco.util.GUID;
 import org.alfresco.util.Pair;
 import org.alfresco.util.testing.category.DBTests;
 import org.alfresco.util.testing.category.LuceneTests;
@@ -337,6 +348,614 @@ public class NodeDAOTest extends TestCase
         txnHelper.doInTransaction(callback, true);
     }
     
+    public void testReadAheadSiblings() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        final String suffix = GUID.generate();
+        // A folder holding a page of children
+        final Long parentNodeId = AuthenticationUtil.runAsSystem(new RunAsWork<Long>()
+        {
+            public Long doWork() throws Exception
+            {
+                return txnHelper.doInTransaction(new RetryingTransactionCallback<Long>()
+                {
+                    public Long execute() throws Throwable
+                    {
+                        NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                        NodeRef parentNodeRef = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                                QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "readAhead-" + suffix),
+                                ContentModel.TYPE_FOLDER).getChildRef();
+                        for (int i = 0; i < 5; i++)
+                        {
+                            createFolder(nodeService, parentNodeRef, "child-" + i + "-" + suffix);
+                        }
+                        return nodeDAO.getNodePair(parentNodeRef).getFirst();
+                    }
+                });
+            }
+        });
+        
+        nodeDAOImpl.setReadAheadEnabled(true);
+        try
+        {
+            // The whole page is read ahead on the first visit
+            checkReadAhead(parentNodeId, 5, 1, 4);
+            // Only as many siblings as may be held are registered
+            nodeDAOImpl.setReadAheadMaxRegistered(3);
+            checkReadAhead(parentNodeId, 3, 1, 2);
+            nodeDAOImpl.setReadAheadMaxRegistered(1000);
+            // The page is registered a window at a time and a single child left over is not registered
+            nodeDAOImpl.setReadAheadWindowSize(2);
+            checkReadAhead(parentNodeId, 4, 2, 2);
+        }
+        finally
+        {
+            nodeDAOImpl.setReadAheadEnabled(false);
+            nodeDAOImpl.setReadAheadMaxRegistered(1000);
+            nodeDAOImpl.setReadAheadWindowSize(100);
+        }
+    }
+    
+    /**
+     * List the children of a node without pre-loading them, visit each of them and check the read-ahead counts
+     */
+    private void checkReadAhead(final Long parentNodeId, int registered, int misses, int hits)
+    {
+        NodeReadAheadStatistics statistics = ((AbstractNodeDAOImpl) nodeDAO).getReadAheadStatistics();
+        long registeredBefore = statistics.getRegisteredCount();
+        long hitsBefore = statistics.getHitCount();
+        long missesBefore = statistics.getMissCount();
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                final List<NodeRef> childNodeRefs = new ArrayList<NodeRef>(5);
+                nodeDAO.getChildAssocs(parentNodeId, null, ContentModel.ASSOC_CONTAINS, null, null, null, new ChildAssocRefQueryCallback()
+                {
+                    public boolean preLoadNodes()
+                    {
+                        return false;
+                    }
+                    
+                    public boolean orderResults()
+                    {
+                        return true;
+                    }
+                    
+                    public boolean handle(
+                            Pair<Long, ChildAssociationRef> childAssocPair,
+                            Pair<Long, NodeRef> parentNodePair,
+                            Pair<Long, NodeRef> childNodePair)
+                    {
+                        childNodeRefs.add(childNodePair.getSecond());
+                        return true;
+                    }
+                    
+                    public void done()
+                    {
+                    }
+                });
+                assertEquals(5, childNodeRefs.size());
+                for (NodeRef nodeRef : childNodeRefs)
+                {
+                    assertNotNull(nodeDAO.getNodePair(nodeRef));
+                }
+                // Each sibling is only counted once
+                nodeDAO.getNodePair(childNodeRefs.get(0));
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+        assertEquals(registered, statistics.getRegisteredCount() - registeredBefore);
+        assertEquals(misses, statistics.getMissCount() - missesBefore);
+        assertEquals(hits, statistics.getHitCount() - hitsBefore);
+    }
+    
+    public void testCacheParentAssocs() throws Throwable
+    {
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                Long rootNodeId = nodeDAO.getRootNode(storeRef).getFirst();
+                NodeIdCollector children = new NodeIdCollector(false);
+                nodeDAO.getChildAssocs(rootNodeId, null, null, null, null, null, children);
+                List<Long> childIds = new ArrayList<Long>(children.nodeIds);
+                assertFalse("Expected children of the store root.", childIds.isEmpty());
+                
+                nodeDAO.clear();
+                Set<Long> parentIds = nodeDAO.cacheParentAssocs(childIds);
+                assertTrue("Store root should be a parent: " + parentIds, parentIds.contains(rootNodeId));
+                
+                // The cached parents agree with the individual lookups
+                NodeIdCollector parents = new NodeIdCollector(true);
+                for (Long childId : childIds)
+                {
+                    nodeDAO.getParentAssocs(childId, null, null, null, parents);
+                }
+                assertEquals(parents.nodeIds, parentIds);
+                assertEquals(parentIds, nodeDAO.cacheParentAssocs(childIds));
+                
+                // The store root has no parents
+                assertTrue(nodeDAO.cacheParentAssocs(Collections.singletonList(rootNodeId)).isEmpty());
+                return null;
+            }
+        };
+        txnHelper.doInTransaction(callback, true);
+    }
+    
+    public void testAncestorIndexPaths() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        nodeDAOImpl.setAncestorIndexEnabled(true);
+        try
+        {
+            nodeDAO.buildAncestorIndex();
+            // A node moved between folders after the index was built
+            final Pair<Long, NodeRef> movedNodePair = doInSystemTransaction(new RetryingTransactionCallback<Pair<Long, NodeRef>>()
+            {
+                public Pair<Long, NodeRef> execute() throws Throwable
+                {
+                    NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                    NodeRef folderA = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                            QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "ancestorsA-" + GUID.generate()),
+                            ContentModel.TYPE_FOLDER).getChildRef();
+                    NodeRef folderB = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                            QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "ancestorsB-" + GUID.generate()),
+                            ContentModel.TYPE_FOLDER).getChildRef();
+                    NodeRef child = nodeService.createNode(folderA, ContentModel.ASSOC_CONTAINS,
+                            QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "child"),
+                            ContentModel.TYPE_FOLDER).getChildRef();
+                    nodeService.moveNode(child, folderB, ContentModel.ASSOC_CONTAINS,
+                            QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "moved"));
+                    return nodeDAO.getNodePair(child);
+                }
+            });
+            
+            RetryingTransactionCallback<Void> checkCallback = new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    List<Pair<Long, NodeRef>> nodePairs = new ArrayList<Pair<Long, NodeRef>>();
+                    nodePairs.add(movedNodePair);
+                    Long rootNodeId = nodeDAO.getRootNode(storeRef).getFirst();
+                    NodeIdCollector children = new NodeIdCollector(false);
+                    nodeDAO.getChildAssocs(rootNodeId, null, null, null, null, null, children);
+                    for (Long childId : children.nodeIds)
+                    {
+                        nodePairs.add(nodeDAO.getNodePair(childId));
+                    }
+                    for (Pair<Long, NodeRef> nodePair : nodePairs)
+                    {
+                        nodeDAOImpl.setAncestorIndexEnabled(true);
+                        Path indexedPath = nodeDAO.getPaths(nodePair, true).get(0);
+                        nodeDAOImpl.setAncestorIndexEnabled(false);
+                        Path walkedPath = nodeDAO.getPaths(nodePair, true).get(0);
+                        assertEquals("Indexed path differs for " + nodePair, walkedPath, indexedPath);
+                    }
+                    assertTrue(nodeDAO.getPaths(movedNodePair, true).get(0).toString().contains("moved"));
+                    return null;
+                }
+            };
+            txnHelper.doInTransaction(checkCallback, true);
+            // The path of the moved node was read from the index rather than walked
+            assertTrue("Moved node not indexed", isFullyIndexed(movedNodePair.getFirst()));
+        }
+        finally
+        {
+            nodeDAOImpl.setAncestorIndexEnabled(false);
+        }
+    }
+    
+    /**
+     * A move of more than one batch is re-indexed in the background after commit
+     */
+    public void testAncestorIndexBatchedMove() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        nodeDAOImpl.setAncestorIndexEnabled(true);
+        nodeDAOImpl.setAncestorIndexBatchSize(2);
+        try
+        {
+            nodeDAO.buildAncestorIndex();
+            List<NodeRef> nodeRefs = createAncestorIndexFolders(5);
+            NodeRef subtreeNodeRef = nodeRefs.get(2);
+            final List<Long> subtreeNodeIds = getNodeIds(nodeRefs.subList(2, nodeRefs.size()));
+            waitForFullyIndexed(subtreeNodeIds);
+            
+            // The subtree and its five children are six nodes, so three batches
+            moveAncestorIndexNode(subtreeNodeRef, nodeRefs.get(1));
+            waitForFullyIndexed(subtreeNodeIds);
+            assertEquals(nodeRefs.get(1), getPrimaryParent(subtreeNodeRef));
+        }
+        finally
+        {
+            nodeDAOImpl.setAncestorIndexEnabled(false);
+            nodeDAOImpl.setAncestorIndexBatchSize(1000);
+        }
+    }
+    
+    /**
+     * A second move while the first is still being re-indexed must not leave rows for the first new parent behind
+     */
+    public void testAncestorIndexMoveDuringReindex() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        nodeDAOImpl.setAncestorIndexEnabled(true);
+        nodeDAOImpl.setAncestorIndexBatchSize(2);
+        try
+        {
+            nodeDAO.buildAncestorIndex();
+            List<NodeRef> nodeRefs = createAncestorIndexFolders(5);
+            NodeRef subtreeNodeRef = nodeRefs.get(2);
+            final List<Long> subtreeNodeIds = getNodeIds(nodeRefs.subList(2, nodeRefs.size()));
+            waitForFullyIndexed(subtreeNodeIds);
+            
+            // Move back and forth without waiting for the background batches
+            moveAncestorIndexNode(subtreeNodeRef, nodeRefs.get(1));
+            moveAncestorIndexNode(subtreeNodeRef, nodeRefs.get(0));
+            moveAncestorIndexNode(subtreeNodeRef, nodeRefs.get(1));
+            waitForFullyIndexed(subtreeNodeIds);
+            assertEquals(nodeRefs.get(1), getPrimaryParent(subtreeNodeRef));
+        }
+        finally
+        {
+            nodeDAOImpl.setAncestorIndexEnabled(false);
+            nodeDAOImpl.setAncestorIndexBatchSize(1000);
+        }
+    }
+    
+    public void testAncestorIndexDelete() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        nodeDAOImpl.setAncestorIndexEnabled(true);
+        try
+        {
+            nodeDAO.buildAncestorIndex();
+            List<NodeRef> nodeRefs = createAncestorIndexFolders(2);
+            final NodeRef subtreeNodeRef = nodeRefs.get(2);
+            final List<Long> subtreeNodeIds = getNodeIds(nodeRefs.subList(2, nodeRefs.size()));
+            waitForFullyIndexed(subtreeNodeIds);
+            
+            // Delete outright rather than archive
+            doInSystemTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    nodeService.addAspect(subtreeNodeRef, ContentModel.ASPECT_TEMPORARY, null);
+                    nodeService.deleteNode(subtreeNodeRef);
+                    return null;
+                }
+            });
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (Long nodeId : subtreeNodeIds)
+                    {
+                        assertTrue("Deleted node still indexed: " + nodeId, nodeDAOImpl.selectNodeAncestorIds(nodeId).isEmpty());
+                    }
+                    return null;
+                }
+            }, true);
+        }
+        finally
+        {
+            nodeDAOImpl.setAncestorIndexEnabled(false);
+        }
+    }
+    
+    /**
+     * Moving to another store replaces the nodes, so the old nodes leave the index and the new ones join it
+     */
+    public void testAncestorIndexCrossStoreMove() throws Throwable
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        nodeDAOImpl.setAncestorIndexEnabled(true);
+        try
+        {
+            nodeDAO.buildAncestorIndex();
+            List<NodeRef> nodeRefs = createAncestorIndexFolders(2);
+            final List<NodeRef> subtreeNodeRefs = nodeRefs.subList(2, nodeRefs.size());
+            final List<Long> oldNodeIds = getNodeIds(subtreeNodeRefs);
+            waitForFullyIndexed(oldNodeIds);
+            
+            final List<NodeRef> movedNodeRefs = doInSystemTransaction(new RetryingTransactionCallback<List<NodeRef>>()
+            {
+                public List<NodeRef> execute() throws Throwable
+                {
+                    StoreRef otherStoreRef = nodeService.createStore(StoreRef.PROTOCOL_WORKSPACE, "ancestors-" + GUID.generate());
+                    nodeService.moveNode(subtreeNodeRefs.get(0), nodeService.getRootNode(otherStoreRef),
+                            ContentModel.ASSOC_CHILDREN, QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "moved"));
+                    List<NodeRef> movedNodeRefs = new ArrayList<NodeRef>();
+                    for (NodeRef nodeRef : subtreeNodeRefs)
+                    {
+                        movedNodeRefs.add(new NodeRef(otherStoreRef, nodeRef.getId()));
+                    }
+                    return movedNodeRefs;
+                }
+            });
+            List<Long> movedNodeIds = getNodeIds(movedNodeRefs);
+            for (Long nodeId : movedNodeIds)
+            {
+                assertTrue("Moved node not indexed: " + nodeId, isFullyIndexed(nodeId));
+            }
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                public Void execute() throws Throwable
+                {
+                    for (Long nodeId : oldNodeIds)
+                    {
+                        assertTrue("Replaced node still indexed: " + nodeId, nodeDAOImpl.selectNodeAncestorIds(nodeId).isEmpty());
+                    }
+                    return null;
+                }
+            }, true);
+        }
+        finally
+        {
+            nodeDAOImpl.setAncestorIndexEnabled(false);
+        }
+    }
+    
+    private <R> R doInSystemTransaction(final RetryingTransactionCallback<R> callback)
+    {
+        return AuthenticationUtil.runAsSystem(new RunAsWork<R>()
+        {
+            public R doWork() throws Exception
+            {
+                return txnHelper.doInTransaction(callback);
+            }
+        });
+    }
+    
+    /**
+     * Create folders A and B below the store root, and a subtree below A with the given number of children
+     * 
+     * @return          A, B, the top of the subtree and then its children
+     */
+    private List<NodeRef> createAncestorIndexFolders(final int childCount)
+    {
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        final String suffix = GUID.generate();
+        return doInSystemTransaction(new RetryingTransactionCallback<List<NodeRef>>()
+        {
+            public List<NodeRef> execute() throws Throwable
+            {
+                List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                nodeRefs.add(createFolder(nodeService, rootNodeRef, "ancestorsA-" + suffix));
+                nodeRefs.add(createFolder(nodeService, rootNodeRef, "ancestorsB-" + suffix));
+                NodeRef subtreeNodeRef = createFolder(nodeService, nodeRefs.get(0), "subtree-" + suffix);
+                nodeRefs.add(subtreeNodeRef);
+                for (int i = 0; i < childCount; i++)
+                {
+                    nodeRefs.add(createFolder(nodeService, subtreeNodeRef, "child-" + i + "-" + suffix));
+                }
+                return nodeRefs;
+            }
+        });
+    }
+    
+    private void moveAncestorIndexNode(final NodeRef nodeRef, final NodeRef parentNodeRef)
+    {
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        doInSystemTransaction(new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                nodeService.moveNode(nodeRef, parentNodeRef, ContentModel.ASSOC_CONTAINS,
+                        nodeService.getPrimaryParent(nodeRef).getQName());
+                return null;
+            }
+        });
+    }
+    
+    private NodeRef getPrimaryParent(final NodeRef nodeRef)
+    {
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        return doInSystemTransaction(new RetryingTransactionCallback<NodeRef>()
+        {
+            public NodeRef execute() throws Throwable
+            {
+                return nodeService.getPrimaryParent(nodeRef).getParentRef();
+            }
+        });
+    }
+    
+    private List<Long> getNodeIds(final List<NodeRef> nodeRefs)
+    {
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<List<Long>>()
+        {
+            public List<Long> execute() throws Throwable
+            {
+                List<Long> nodeIds = new ArrayList<Long>(nodeRefs.size());
+                for (NodeRef nodeRef : nodeRefs)
+                {
+                    nodeIds.add(nodeDAO.getNodePair(nodeRef).getFirst());
+                }
+                return nodeIds;
+            }
+        }, true);
+    }
+    
+    /**
+     * Wait for the background re-indexing of a move to finish
+     */
+    private void waitForFullyIndexed(List<Long> nodeIds) throws InterruptedException
+    {
+        for (Long nodeId : nodeIds)
+        {
+            long timeout = System.currentTimeMillis() + 20000L;
+            while (!isFullyIndexed(nodeId))
+            {
+                assertTrue("Node not re-indexed in time: " + nodeId, System.currentTimeMillis() < timeout);
+                Thread.sleep(100L);
+            }
+        }
+    }
+    
+    /**
+     * @return          <tt>true</tt> if the primary path of the node is read from the ancestor index, the index holds
+     *                  exactly one row per element of the path and the path matches the one found by walking
+     */
+    private boolean isFullyIndexed(final Long nodeId)
+    {
+        final AbstractNodeDAOImpl nodeDAOImpl = (AbstractNodeDAOImpl) nodeDAO;
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<Boolean>()
+        {
+            public Boolean execute() throws Throwable
+            {
+                Pair<Long, NodeRef> nodePair = nodeDAO.getNodePair(nodeId);
+                List<Path> indexedPaths = new ArrayList<Path>(1);
+                nodeDAOImpl.setAncestorIndexEnabled(true);
+                if (!nodeDAOImpl.prependIndexedPrimaryPath(nodePair, indexedPaths))
+                {
+                    return false;
+                }
+                nodeDAOImpl.setAncestorIndexEnabled(false);
+                try
+                {
+                    Path walkedPath = nodeDAO.getPaths(nodePair, true).get(0);
+                    return walkedPath.equals(indexedPaths.get(0))
+                            && nodeDAOImpl.selectNodeAncestorIds(nodeId).size() == walkedPath.size();
+                }
+                finally
+                {
+                    nodeDAOImpl.setAncestorIndexEnabled(true);
+                }
+            }
+        }, true);
+    }
+    
+    public void testChildAssocsByNames() throws Throwable
+    {
+        final NodeService nodeService = (NodeService) ctx.getBean("NodeService");
+        final StoreRef storeRef = new StoreRef(StoreRef.PROTOCOL_WORKSPACE, "SpacesStore");
+        final String suffix = GUID.generate();
+        final RetryingTransactionCallback<Void> callback = new RetryingTransactionCallback<Void>()
+        {
+            public Void execute() throws Throwable
+            {
+                NodeRef rootNodeRef = nodeService.getRootNode(storeRef);
+                NodeRef topNodeRef = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                        QName.createQName(NamespaceService.APP_MODEL_1_0_URI, "names-" + suffix),
+                        ContentModel.TYPE_FOLDER).getChildRef();
+                NodeRef aNodeRef = createFolder(nodeService, topNodeRef, "a-" + suffix);
+                NodeRef bNodeRef = createFolder(nodeService, aNodeRef, "b-" + suffix);
+                NodeRef cNodeRef = createFolder(nodeService, topNodeRef, "c-" + suffix);
+                Long topNodeId = nodeDAO.getNodePair(topNodeRef).getFirst();
+                
+                // Several names at once, matched without regard to case
+                Map<String, Pair<Long, ChildAssociationRef>> assocs = nodeDAO.getChildAssocsByNames(
+                        topNodeId, ContentModel.ASSOC_CONTAINS,
+                        Arrays.asList("A-" + suffix, "c-" + suffix, "missing-" + suffix));
+                assertEquals(2, assocs.size());
+                assertEquals(aNodeRef, assocs.get("A-" + suffix).getSecond().getChildRef());
+                assertEquals(cNodeRef, assocs.get("c-" + suffix).getSecond().getChildRef());
+                // Again, from the cache
+                assertEquals(assocs, nodeDAO.getChildAssocsByNames(
+                        topNodeId, ContentModel.ASSOC_CONTAINS,
+                        Arrays.asList("A-" + suffix, "c-" + suffix, "missing-" + suffix)));
+                
+                // The node service orders the children as the query does, with nothing cached and then from the cache
+                for (int i = 0; i < 2; i++)
+                {
+                    if (i == 0)
+                    {
+                        nodeDAO.clear();
+                    }
+                    List<ChildAssociationRef> children = nodeService.getChildrenByName(topNodeRef, ContentModel.ASSOC_CONTAINS,
+                            Arrays.asList("c-" + suffix, "a-" + suffix, "b-" + suffix));
+                    assertEquals(2, children.size());
+                    assertEquals(aNodeRef, children.get(0).getChildRef());
+                    assertEquals(cNodeRef, children.get(1).getChildRef());
+                }
+                // Only direct children are found
+                assertEquals(bNodeRef, nodeService.getChildrenByName(aNodeRef, ContentModel.ASSOC_CONTAINS,
+                        Collections.singletonList("b-" + suffix)).get(0).getChildRef());
+                
+                // Whole paths, with nothing cached and then with the first level cached
+                for (int i = 0; i < 2; i++)
+                {
+                    if (i == 0)
+                    {
+                        nodeDAO.clear();
+                    }
+                    else
+                    {
+                        nodeDAO.getChildAssoc(topNodeId, ContentModel.ASSOC_CONTAINS, "a-" + suffix);
+                    }
+                    List<Pair<Long, ChildAssociationRef>> path = nodeDAO.getChildAssocsByNamePath(
+                            topNodeId, ContentModel.ASSOC_CONTAINS, Arrays.asList("a-" + suffix, "b-" + suffix));
+                    assertEquals(2, path.size());
+                    assertEquals(aNodeRef, path.get(0).getSecond().getChildRef());
+                    assertEquals(bNodeRef, path.get(1).getSecond().getChildRef());
+                }
+                // Stops at the first missing name
+                List<Pair<Long, ChildAssociationRef>> path = nodeDAO.getChildAssocsByNamePath(
+                        topNodeId, ContentModel.ASSOC_CONTAINS, Arrays.asList("a-" + suffix, "c-" + suffix, "b-" + suffix));
+                assertEquals(1, path.size());
+                assertEquals(aNodeRef, path.get(0).getSecond().getChildRef());
+                return null;
+            }
+        };
+        AuthenticationUtil.runAsSystem(new RunAsWork<Void>()
+        {
+            public Void doWork() throws Exception
+            {
+                return txnHelper.doInTransaction(callback);
+            }
+        });
+    }
+    
+    private static NodeRef createFolder(NodeService nodeService, NodeRef parentNodeRef, String name)
+    {
+        Map<QName, Serializable> properties = Collections.<QName, Serializable>singletonMap(ContentModel.PROP_NAME, name);
+        return nodeService.createNode(parentNodeRef, ContentModel.ASSOC_CONTAINS,
+                QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, name),
+                ContentModel.TYPE_FOLDER, properties).getChildRef();
+    }
+    
+    private static class NodeIdCollector implements ChildAssocRefQueryCallback
+    {
+        private final boolean collectParents;
+        private final Set<Long> nodeIds = new HashSet<Long>();
+        
+        private NodeIdCollector(boolean collectParents)
+        {
+            this.collectParents = collectParents;
+        }
+        
+        public boolean preLoadNodes()
+        {
+            return false;
+        }
+        
+        public boolean orderResults()
+        {
+            return false;
+        }
+        
+        public boolean handle(Pair<Long, ChildAssociationRef> childAssocPair, Pair<Long, NodeRef> parentNodePair, Pair<Long, NodeRef> childNodePair)
+        {
+            nodeIds.add(collectParents ? parentNodePair.getFirst() : childNodePair.getFirst());
+            return true;
+        }
+        
+        public void done()
+        {
+        }
+    }
+    
     /**
      * Ensure that the {@link NodeEntity} values cached as root nodes are valid instances.
      * <p/>
@@ -0,0 +1,176 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.domain.node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link SegmentedParentAssocsCache}
+ * 
+ * @since 7.0
+ */
+public class SegmentedParentAssocsCacheTest
+{
+    private static final String TXN_1 = "txn-1";
+    private static final String TXN_2 = "txn-2";
+
+    private static ParentAssocsInfo parents(long childNodeId, int parentCount)
+    {
+        NodeEntity childNode = new NodeEntity();
+        childNode.setId(childNodeId);
+        List<ChildAssocEntity> assocs = new ArrayList<ChildAssocEntity>(parentCount);
+        for (int i = 0; i < parentCount; i++)
+        {
+            NodeEntity parentNode = new NodeEntity();
+            parentNode.setId(childNodeId * 100 + i);
+            ChildAssocEntity assoc = new ChildAssocEntity();
+            assoc.setId(childNodeId * 100 + i);
+            assoc.setParentNode(parentNode);
+            assoc.setChildNode(childNode);
+            assoc.setPrimary(i == 0);
+            assocs.add(assoc);
+        }
+        return new ParentAssocsInfo(false, false, assocs);
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(100, 8, 4);
+        ParentAssocsInfo value = parents(1L, 1);
+        assertNull(cache.get(1L, TXN_1));
+        cache.put(1L, TXN_1, value);
+        assertSame(value, cache.get(1L, TXN_1));
+        assertNull(cache.get(1L, TXN_2));
+        assertNull(cache.get(2L, TXN_1));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getParentCount());
+
+        ParentAssocsInfo replacement = parents(1L, 3);
+        cache.put(1L, TXN_1, replacement);
+        assertSame(replacement, cache.get(1L, TXN_1));
+        assertEquals(1, cache.size());
+        assertEquals(3, cache.getParentCount());
+
+        assertSame(replacement, cache.remove(1L, TXN_1));
+        assertNull(cache.remove(1L, TXN_1));
+        assertNull(cache.get(1L, TXN_1));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getParentCount());
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testVersionsAreSeparateEntries()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(100, 8, 1);
+        ParentAssocsInfo version1 = parents(1L, 1);
+        ParentAssocsInfo version2 = parents(1L, 2);
+        cache.put(1L, TXN_1, version1);
+        cache.put(1L, TXN_2, version2);
+        assertSame(version1, cache.get(1L, TXN_1));
+        assertSame(version2, cache.get(1L, TXN_2));
+
+        cache.remove(1L, TXN_1);
+        assertNull(cache.get(1L, TXN_1));
+        assertSame(version2, cache.get(1L, TXN_2));
+    }
+
+    @Test
+    public void testEvictsOldestUnreadEntry()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(3, 8, 1);
+        cache.put(1L, TXN_1, parents(1L, 1));
+        cache.put(2L, TXN_1, parents(2L, 1));
+        cache.put(3L, TXN_1, parents(3L, 1));
+        // Reading the oldest entry gives it a second chance
+        assertNotNull(cache.get(1L, TXN_1));
+        cache.put(4L, TXN_1, parents(4L, 1));
+
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get(1L, TXN_1));
+        assertNull(cache.get(2L, TXN_1));
+        assertNotNull(cache.get(3L, TXN_1));
+        assertNotNull(cache.get(4L, TXN_1));
+    }
+
+    @Test
+    public void testEvictsOnParentLimit()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(10, 2, 1);
+        for (long nodeId = 1L; nodeId <= 5L; nodeId++)
+        {
+            cache.put(nodeId, TXN_1, parents(nodeId, 4));
+        }
+        // 10 entries with 2 parents each allow 20 parents, i.e. 5 of these entries
+        assertEquals(5, cache.size());
+        assertEquals(20, cache.getParentCount());
+
+        cache.put(6L, TXN_1, parents(6L, 4));
+        assertEquals(5, cache.size());
+        assertEquals(20, cache.getParentCount());
+        assertNull(cache.get(1L, TXN_1));
+        assertNotNull(cache.get(6L, TXN_1));
+    }
+
+    @Test
+    public void testChurnAndClear()
+    {
+        SegmentedParentAssocsCache cache = new SegmentedParentAssocsCache(1000, 8, 16);
+        for (long nodeId = 1L; nodeId <= 20000L; nodeId++)
+        {
+            cache.put(nodeId, TXN_1, parents(nodeId, 1));
+            if (nodeId % 3 == 0)
+            {
+                cache.remove(nodeId - 1, TXN_1);
+            }
+            cache.get(nodeId / 2, TXN_1);
+        }
+        // Each of the 16 segments holds up to 63 entries
+        int size = cache.size();
+        assertEquals(size, cache.getParentCount());
+        assertEquals(true, size > 0 && size <= 16 * 63);
+        assertNotNull(cache.get(20000L, TXN_1));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getParentCount());
+        assertNull(cache.get(20000L, TXN_1));
+        cache.put(20000L, TXN_1, parents(20000L, 1));
+        assertNotNull(cache.get(20000L, TXN_1));
+    }
+}
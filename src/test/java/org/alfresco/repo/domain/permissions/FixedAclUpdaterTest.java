@@ -25,15 +25,25 @@
  */
 package org.alfresco.repo.domain.permissions;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.domain.node.NodeDAO;
 import org.alfresco.repo.domain.node.NodeDAO.NodeRefQueryCallback;
 import org.alfresco.repo.model.Repository;
+import org.alfresco.repo.policy.JavaBehaviour;
+import org.alfresco.repo.policy.PolicyComponent;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
+import org.alfresco.repo.security.permissions.PermissionServicePolicies.OnInheritPermissionsDisabled;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.PermissionsDaoComponent;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -70,9 +80,12 @@ public class FixedAclUpdaterTest extends TestCase
     private FixedAclUpdater fixedAclUpdater;
     private NodeRef folderNodeRef;
     private PermissionsDaoComponent permissionsDaoComponent;
-    private PermissionService permissionService;
+    private PermissionServiceSPI permissionService;
     private NodeDAO nodeDAO;
 
+    private static ProcessedNodeRecorder processedNodeRecorder;
+    private static volatile List<Pair<NodeRef, String>> processedNodes;
+
     @Override
     public void setUp() throws Exception
     {
@@ -83,9 +96,18 @@ public class FixedAclUpdaterTest extends TestCase
         repository = (Repository) ctx.getBean("repositoryHelper");
         fixedAclUpdater = (FixedAclUpdater) ctx.getBean("fixedAclUpdater");
         permissionsDaoComponent = (PermissionsDaoComponent) ctx.getBean("admPermissionsDaoComponent");
-        permissionService = (PermissionService) ctx.getBean("permissionService");
+        permissionService = (PermissionServiceSPI) ctx.getBean("permissionService");
         nodeDAO = (NodeDAO) ctx.getBean("nodeDAO");
 
+        if (processedNodeRecorder == null)
+        {
+            // bound once, as behaviours cannot be unbound from the shared context
+            processedNodeRecorder = new ProcessedNodeRecorder();
+            PolicyComponent policyComponent = (PolicyComponent) ctx.getBean("policyComponent");
+            policyComponent.bindClassBehaviour(OnInheritPermissionsDisabled.QNAME, ContentModel.TYPE_BASE,
+                    new JavaBehaviour(processedNodeRecorder, "onInheritPermissionsDisabled"));
+        }
+
         AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getSystemUserName());
 
         NodeRef home = repository.getCompanyHome();
@@ -226,6 +248,173 @@ public class FixedAclUpdaterTest extends TestCase
         }, false, true);
     }
 
+    @Test
+    public void testGroupedSubtreesAndPrioritisedNodes()
+    {
+        fixedAclUpdater.setGroupSubtrees(true);
+        fixedAclUpdater.setPrioritiseReadNodes(true);
+        // a single worker processes the work in the order it is handed out
+        fixedAclUpdater.setNumThreads(1);
+        processedNodes = Collections.synchronizedList(new ArrayList<Pair<NodeRef, String>>());
+        try
+        {
+            // leave pending nodes behind without starting the updater when the transaction commits
+            txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    AlfrescoTransactionSupport.bindResource(FixedAclUpdater.FIXED_ACL_ASYNC_CALL_KEY, true);
+                    permissionsDaoComponent.setInheritParentPermissions(folderNodeRef, false);
+
+                    Boolean asyncCallRequired = (Boolean) AlfrescoTransactionSupport.getResource(FixedAclUpdater.FIXED_ACL_ASYNC_REQUIRED_KEY);
+                    assertTrue("asyncCallRequired should be true", asyncCallRequired);
+                    return null;
+                }
+            }, false, true);
+            final List<NodeRef> pendingNodeRefs = getNodesWithPendingFixedAclAspect();
+            assertFalse("Expected pending nodes", pendingNodeRefs.isEmpty());
+
+            // a pending folder holding a pending child that was created before it, so that the child comes first by id
+            final NodeRef[] subtree = txnHelper.doInTransaction(new RetryingTransactionCallback<NodeRef[]>()
+            {
+                @Override
+                public NodeRef[] execute() throws Throwable
+                {
+                    NodeRef child = createFile(fileFolderService, folderNodeRef, "CHILD", ContentModel.TYPE_FOLDER);
+                    NodeRef parent = createFile(fileFolderService, folderNodeRef, "PARENT", ContentModel.TYPE_FOLDER);
+                    fileFolderService.move(child, parent, null);
+                    // processing either node again leaves its ACLs as they are
+                    Long inheritFrom = nodeDAO.getNodeAclId(nodeDAO.getNodePair(folderNodeRef).getFirst());
+                    addPendingFixedAclAspect(parent, inheritFrom);
+                    addPendingFixedAclAspect(child, inheritFrom);
+                    return new NodeRef[] { parent, child };
+                }
+            }, false, true);
+
+            // a permission check on the last pending node asks for it to be processed first
+            final NodeRef prioritisedNodeRef = pendingNodeRefs.get(pendingNodeRefs.size() - 1);
+            assertEquals(0, fixedAclUpdater.getPrioritisedNodeCount());
+            AuthenticationUtil.runAs(new RunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    return txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+                    {
+                        @Override
+                        public Void execute() throws Throwable
+                        {
+                            permissionService.hasPermissions(Collections.singletonList(prioritisedNodeRef), PermissionService.READ);
+                            return null;
+                        }
+                    }, true, true);
+                }
+            }, AuthenticationUtil.getAdminUserName());
+            assertEquals("The permission check did not prioritise the node", 1, fixedAclUpdater.getPrioritisedNodeCount());
+
+            long processedBefore = fixedAclUpdater.getTotalProcessedNodeCount();
+            int count = 0;
+            do
+            {
+                count = fixedAclUpdater.execute();
+            }
+            while(count > 0);
+
+            assertEquals("Not all nodes were processed", 0, getNodesCountWithPendingFixedAclAspect());
+            assertEquals(0, fixedAclUpdater.getPrioritisedNodeCount());
+            assertTrue("Processed nodes were not counted", fixedAclUpdater.getTotalProcessedNodeCount() > processedBefore);
+            assertFalse(fixedAclUpdater.isRunning());
+            assertEquals(0, fixedAclUpdater.getEstimatedSecondsRemaining());
+
+            List<NodeRef> processedOrder = new ArrayList<>();
+            Map<NodeRef, String> processedTxns = new HashMap<>();
+            synchronized (processedNodes)
+            {
+                for (Pair<NodeRef, String> processed : processedNodes)
+                {
+                    processedOrder.add(processed.getFirst());
+                    processedTxns.put(processed.getFirst(), processed.getSecond());
+                }
+            }
+            assertEquals("The prioritised node was not processed first", prioritisedNodeRef, processedOrder.get(0));
+            for (NodeRef pendingNodeRef : pendingNodeRefs)
+            {
+                assertTrue("Pending node was not processed: " + pendingNodeRef, processedOrder.contains(pendingNodeRef));
+            }
+
+            // grouped, the parent is processed ahead of its child and with it, although the child comes first by id
+            int parentIndex = processedOrder.indexOf(subtree[0]);
+            int childIndex = processedOrder.indexOf(subtree[1]);
+            assertTrue("The parent was not processed", parentIndex >= 0);
+            assertEquals("The child was not processed with its parent", parentIndex + 1, childIndex);
+            assertEquals(processedTxns.get(subtree[0]), processedTxns.get(subtree[1]));
+        }
+        finally
+        {
+            processedNodes = null;
+            fixedAclUpdater.setGroupSubtrees(false);
+            fixedAclUpdater.setPrioritiseReadNodes(false);
+            fixedAclUpdater.setNumThreads(4);
+        }
+    }
+
+    /**
+     * Get the nodes with ASPECT_PENDING_FIX_ACL in the order of their ids
+     */
+    private List<NodeRef> getNodesWithPendingFixedAclAspect()
+    {
+        return txnHelper.doInTransaction(new RetryingTransactionCallback<List<NodeRef>>()
+        {
+            @Override
+            public List<NodeRef> execute() throws Throwable
+            {
+                final Set<QName> aspects = new HashSet<>(1);
+                aspects.add(ContentModel.ASPECT_PENDING_FIX_ACL);
+                final List<NodeRef> nodeRefs = new ArrayList<>();
+                nodeDAO.getNodesWithAspects(aspects, 1L, null, new NodeRefQueryCallback()
+                {
+                    @Override
+                    public boolean handle(Pair<Long, NodeRef> nodePair)
+                    {
+                        nodeRefs.add(nodePair.getSecond());
+                        return true;
+                    }
+                });
+                return nodeRefs;
+            }
+        }, false, true);
+    }
+
+    /**
+     * Mark a node as pending, replacing the shared ACL it already has
+     */
+    private void addPendingFixedAclAspect(NodeRef nodeRef, Long inheritFrom)
+    {
+        Long nodeId = nodeDAO.getNodePair(nodeRef).getFirst();
+        nodeDAO.addNodeAspects(nodeId, Collections.singleton(ContentModel.ASPECT_PENDING_FIX_ACL));
+        Map<QName, Serializable> pendingAclProperties = new HashMap<>();
+        pendingAclProperties.put(ContentModel.PROP_SHARED_ACL_TO_REPLACE, nodeDAO.getNodeAclId(nodeId));
+        pendingAclProperties.put(ContentModel.PROP_INHERIT_FROM_ACL, inheritFrom);
+        nodeDAO.addNodeProperties(nodeId, pendingAclProperties);
+    }
+
+    /**
+     * Records the nodes processed by the {@link FixedAclUpdater}, with their transaction, while a test listens
+     */
+    public static class ProcessedNodeRecorder implements OnInheritPermissionsDisabled
+    {
+        @Override
+        public void onInheritPermissionsDisabled(NodeRef nodeRef, boolean async)
+        {
+            List<Pair<NodeRef, String>> processed = processedNodes;
+            if (processed != null)
+            {
+                processed.add(new Pair<>(nodeRef, AlfrescoTransactionSupport.getTransactionId()));
+            }
+        }
+    }
+
     private static class GetNodesCountWithAspectCallback implements NodeRefQueryCallback
     {
         int nodesNumber = 0;
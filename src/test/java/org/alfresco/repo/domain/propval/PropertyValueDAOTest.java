@@ -423,6 +423,39 @@ public class PropertyValueDAOTest
         assertEquals("Incorrect type persisted for an empty HashMap.", HashMap.class, emptyHashMapPairRetrievedByID.getSecond().getClass());
     }
     
+    @Test
+    public void testPropertyValues_Bulk() throws Exception
+    {
+        final String existing = "Existing-" + GUID.generate();
+        final String missing = "Missing-" + GUID.generate();
+        final Pair<Long, Serializable> existingPair = txnHelper.doInTransaction(()
+                -> propertyValueDAO.getOrCreatePropertyValue(existing), false);
+        
+        final List<Serializable> values = Arrays.<Serializable>asList(
+                existing, missing, null, new Long(42L), new Date(), missing, Boolean.TRUE, new MLText("text"));
+        List<Long> ids = txnHelper.doInTransaction(() -> propertyValueDAO.getOrCreatePropertyValues(values), false);
+        
+        assertEquals(values.size(), ids.size());
+        assertEquals("Existing value not found", existingPair.getFirst(), ids.get(0));
+        assertEquals("Duplicate value created twice", ids.get(1), ids.get(5));
+        for (int i = 0; i < values.size(); i++)
+        {
+            final Long id = ids.get(i);
+            assertNotNull(id);
+            Pair<Long, Serializable> pair = txnHelper.doInTransaction(() -> propertyValueDAO.getPropertyValueById(id), false);
+            assertEquals(values.get(i), pair.getSecond());
+        }
+        
+        // Everything exists now
+        List<Long> idsCheck = txnHelper.doInTransaction(() -> propertyValueDAO.getOrCreatePropertyValues(values), false);
+        assertEquals(ids, idsCheck);
+        
+        // Without the cache the values must be found by the bulk select rather than created again
+        ((AbstractPropertyValueDAOImpl) propertyValueDAO).clearCaches();
+        idsCheck = txnHelper.doInTransaction(() -> propertyValueDAO.getOrCreatePropertyValues(values), false);
+        assertEquals("Values not found by the bulk select", ids, idsCheck);
+    }
+    
     @Test
     public void testPropertyValue_Null() throws Exception
     {
@@ -0,0 +1,192 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.download;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+
+import org.alfresco.model.ContentModel;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.coci.CheckOutCheckInService;
+import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
+import org.alfresco.service.cmr.repository.ContentService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.namespace.QName;
+import org.alfresco.util.GUID;
+import org.alfresco.util.TempFileProvider;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link ZipDownloadExporter} entry ordering, content prefetch and stored mimetypes.
+ * 
+ * @since 7.0
+ */
+public class ZipDownloadExporterTest
+{
+    private NodeService nodeService;
+    private RetryingTransactionHelper transactionHelper;
+    private CheckOutCheckInService checkOutCheckInService;
+    private ContentService contentService;
+    private ExecutorService executor;
+    private List<File> files = new ArrayList<File>();
+    
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp()
+    {
+        nodeService = mock(NodeService.class);
+        checkOutCheckInService = mock(CheckOutCheckInService.class);
+        contentService = mock(ContentService.class);
+        transactionHelper = mock(RetryingTransactionHelper.class);
+        // Not cancelled
+        when(transactionHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean())).thenReturn(Boolean.FALSE);
+        executor = Executors.newFixedThreadPool(2);
+    }
+    
+    @After
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        for (File file : files)
+        {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void writesEntriesInOrder() throws Exception
+    {
+        checkArchive(0);
+    }
+    
+    @Test
+    public void writesEntriesInOrderWithPrefetch() throws Exception
+    {
+        checkArchive(2);
+    }
+    
+    private void checkArchive(int prefetchCount) throws Exception
+    {
+        File zipFile = TempFileProvider.createTempFile("ZipDownloadExporterTest", ".zip");
+        files.add(zipFile);
+        ZipDownloadExporter exporter = new ZipDownloadExporter(zipFile, checkOutCheckInService, nodeService,
+                transactionHelper, mock(DownloadStatusUpdateService.class), mock(DownloadStorage.class),
+                newNode("download", ContentModel.TYPE_CONTENT), 0L, 3L);
+        exporter.setStoredMimetypes(Collections.singleton("image/jpeg"));
+        exporter.setContentPrefetch(executor, prefetchCount, contentService);
+        
+        // Larger than the content that is prefetched in memory
+        char[] large = new char[1536 * 1024];
+        Arrays.fill(large, 'x');
+        
+        NodeRef folder = newNode("Folder", ContentModel.TYPE_FOLDER);
+        exporter.start(null);
+        exporter.startNode(folder);
+        addContent(exporter, "a.txt", "text/plain", "Some text that deflates well well well well well");
+        addContent(exporter, "b.jpg", "image/jpeg", "Not really a JPEG");
+        addContent(exporter, "c.txt", "text/plain", "More text");
+        addContent(exporter, "d.txt", "text/plain", new String(large));
+        exporter.endNode(folder);
+        exporter.end();
+        
+        assertEquals(4L, exporter.getFilesAdded());
+        ZipFile zip = new ZipFile(zipFile);
+        try
+        {
+            List<String> names = new ArrayList<String>();
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements())
+            {
+                names.add(entries.nextElement().getName());
+            }
+            assertEquals("[Folder/, Folder/a.txt, Folder/b.jpg, Folder/c.txt, Folder/d.txt]", names.toString());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("Folder/a.txt").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("Folder/b.jpg").getMethod());
+            try (InputStream in = zip.getInputStream(zip.getEntry("Folder/b.jpg")))
+            {
+                assertEquals("Not really a JPEG", IOUtils.toString(in, "UTF-8"));
+            }
+            try (InputStream in = zip.getInputStream(zip.getEntry("Folder/a.txt")))
+            {
+                assertEquals("Some text that deflates well well well well well", IOUtils.toString(in, "UTF-8"));
+            }
+            try (InputStream in = zip.getInputStream(zip.getEntry("Folder/d.txt")))
+            {
+                assertEquals(new String(large), IOUtils.toString(in, "UTF-8"));
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+    
+    private void addContent(ZipDownloadExporter exporter, String name, String mimetype, String text) throws Exception
+    {
+        byte[] bytes = text.getBytes("UTF-8");
+        NodeRef nodeRef = newNode(name, ContentModel.TYPE_CONTENT);
+        exporter.startNode(nodeRef);
+        ContentData contentData = new ContentData("store://" + GUID.generate(), mimetype, bytes.length, "UTF-8");
+        // Prefetch reads the content through its own reader, on the pool
+        ContentReader reader = mock(ContentReader.class);
+        when(reader.getContentInputStream()).thenReturn(new ByteArrayInputStream(bytes));
+        when(contentService.getReader(nodeRef, ContentModel.PROP_CONTENT)).thenReturn(reader);
+        exporter.content(nodeRef, ContentModel.PROP_CONTENT, new ByteArrayInputStream(bytes), contentData, 0);
+        exporter.endNode(nodeRef);
+    }
+    
+    private NodeRef newNode(String name, QName type)
+    {
+        NodeRef nodeRef = new NodeRef(StoreRef.STORE_REF_WORKSPACE_SPACESSTORE, GUID.generate());
+        when(nodeService.getProperty(nodeRef, ContentModel.PROP_NAME)).thenReturn(name);
+        when(nodeService.getType(nodeRef)).thenReturn(type);
+        return nodeRef;
+    }
+}
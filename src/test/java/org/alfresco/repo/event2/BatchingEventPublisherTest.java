@@ -0,0 +1,221 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.event2;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.alfresco.repo.event.databind.ObjectMapperFactory;
+import org.alfresco.repo.event.v1.model.EventData;
+import org.alfresco.repo.event.v1.model.NodeResource;
+import org.alfresco.repo.event.v1.model.RepoEvent;
+import org.alfresco.repo.transaction.RetryingTransactionHelper;
+import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.transaction.TransactionService;
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests the {@link BatchingEventPublisher} against an in-memory Camel endpoint.
+ *
+ * @since 7.0
+ */
+public class BatchingEventPublisherTest
+{
+    private static final String ENDPOINT = "direct:repoEvent2Test";
+    private static final int NODE_COUNT = 20;
+    private static final int EVENTS_PER_NODE = 50;
+    private static final String FAILING_NODE = "failing-node";
+
+    private final ObjectMapper objectMapper = ObjectMapperFactory.createInstance();
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private CamelContext camelContext;
+    private Event2MessageProducer producer;
+    private TransactionService transactionService;
+    private BatchingEventPublisher publisher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        camelContext = new DefaultCamelContext();
+        camelContext.addRoutes(new RouteBuilder()
+        {
+            @Override
+            public void configure()
+            {
+                from(ENDPOINT).process(exchange -> {
+                    String body = exchange.getIn().getBody(String.class);
+                    if (body.contains(FAILING_NODE))
+                    {
+                        throw new IllegalStateException("Refusing " + body);
+                    }
+                    received.add(body);
+                });
+            }
+        });
+        camelContext.start();
+
+        producer = new Event2MessageProducer();
+        producer.setProducer(camelContext.createProducerTemplate());
+        producer.setEndpoint(ENDPOINT);
+        producer.setObjectMapper(objectMapper);
+        producer.afterPropertiesSet();
+
+        // Run the batches without a real transaction
+        RetryingTransactionHelper txnHelper = mock(RetryingTransactionHelper.class);
+        when(txnHelper.doInTransaction(any(RetryingTransactionCallback.class), anyBoolean(), anyBoolean()))
+                    .thenAnswer(invocation -> ((RetryingTransactionCallback<Object>) invocation.getArgument(0)).execute());
+        transactionService = mock(TransactionService.class);
+        when(transactionService.getRetryingTransactionHelper()).thenReturn(txnHelper);
+
+        publisher = createPublisher(64, 10, 5);
+    }
+
+    private BatchingEventPublisher createPublisher(int queueCapacity, int batchSize, long lingerMs)
+    {
+        BatchingEventPublisher publisher = new BatchingEventPublisher();
+        publisher.setEvent2MessageProducer(producer);
+        publisher.setTransactionService(transactionService);
+        publisher.setEnabled(true);
+        publisher.setQueueCapacity(queueCapacity);
+        publisher.setBatchSize(batchSize);
+        publisher.setLingerMs(lingerMs);
+        publisher.afterPropertiesSet();
+        return publisher;
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        publisher.destroy();
+        camelContext.stop();
+    }
+
+    @Test
+    public void testEventsArePublishedInOrderPerNode() throws Exception
+    {
+        // Interleave the events of several nodes; the small queue forces the caller to wait
+        for (int i = 0; i < EVENTS_PER_NODE; i++)
+        {
+            for (int node = 0; node < NODE_COUNT; node++)
+            {
+                publisher.publish(createEvent("node-" + node, i));
+            }
+        }
+        waitForSentEvents(NODE_COUNT * EVENTS_PER_NODE);
+
+        Map<String, Integer> lastSequenceByNode = new HashMap<>();
+        for (String json : received)
+        {
+            JsonNode event = objectMapper.readTree(json);
+            String nodeId = event.path("data").path("resource").path("id").asText();
+            int sequence = Integer.parseInt(event.path("id").asText().substring(nodeId.length() + 1));
+            Integer last = lastSequenceByNode.put(nodeId, sequence);
+            assertEquals("Out of order event for " + nodeId, (last == null) ? 0 : last + 1, sequence);
+        }
+        assertEquals(NODE_COUNT, lastSequenceByNode.size());
+        assertEquals(NODE_COUNT * EVENTS_PER_NODE, publisher.getPublishedCount());
+        assertEquals(0, publisher.getFailedCount());
+        assertEquals(0, publisher.getQueueDepth());
+        assertTrue("Events were not batched: " + publisher.getBatchCount(),
+                    publisher.getBatchCount() < NODE_COUNT * EVENTS_PER_NODE);
+    }
+
+    @Test
+    public void testOnlyUnsentEventsOfABatchAreCountedAsFailed() throws Exception
+    {
+        publisher.destroy();
+        // One batch of five, given long enough to fill
+        publisher = createPublisher(64, 5, 5000);
+
+        publisher.publish(createEvent("node-0", 0));
+        publisher.publish(createEvent("node-0", 1));
+        publisher.publish(createEvent(FAILING_NODE, 0));
+        publisher.publish(createEvent("node-0", 2));
+        publisher.publish(createEvent("node-0", 3));
+        waitForSentEvents(5);
+
+        assertEquals(2, publisher.getPublishedCount());
+        assertEquals(3, publisher.getFailedCount());
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void testEventsPublishedAfterShutdownAreSentDirectly() throws Exception
+    {
+        publisher.publish(createEvent("node-0", 0));
+        publisher.destroy();
+        assertEquals(1, publisher.getPublishedCount());
+
+        publisher.publish(createEvent("node-0", 1));
+        assertEquals(2, publisher.getPublishedCount());
+        assertEquals(2, received.size());
+        assertEquals(0, publisher.getQueueDepth());
+    }
+
+    /**
+     * Waits for the publisher to account for the events, as they are counted after they have been sent.
+     */
+    private void waitForSentEvents(long expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (publisher.getPublishedCount() + publisher.getFailedCount() < expected
+                    && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, publisher.getPublishedCount() + publisher.getFailedCount());
+    }
+
+    private RepoEvent<NodeResource> createEvent(String nodeId, int sequence)
+    {
+        NodeResource resource = NodeResource.builder().setId(nodeId).build();
+        return RepoEvent.<NodeResource>builder()
+                    .setId(nodeId + "-" + sequence)
+                    .setType(EventType.NODE_UPDATED.getType())
+                    .setData(EventData.<NodeResource>builder().setResource(resource).build())
+                    .build();
+    }
+}
@@ -30,6 +30,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -995,6 +996,23 @@ public class FileFolderServiceImplTest extends TestCase
         assertEquals("Path not resolved to correct node", fileInfo.getNodeRef(), fileInfoCheck.getNodeRef());
     }
 
+    public void testResolveNamePathElements() throws Exception
+    {
+        FileInfo folderInfo = getByName(NAME_L0_FOLDER_A, true);
+        FileInfo fileInfo = getByName(NAME_L1_FILE_A, false);
+
+        List<FileInfo> pathInfos = fileFolderService.resolveNamePathElements(
+                workingRootNodeRef, Arrays.asList(NAME_L0_FOLDER_A, NAME_L1_FILE_A));
+        assertEquals("Path not fully resolved", 2, pathInfos.size());
+        assertEquals("Incorrect folder", folderInfo.getNodeRef(), pathInfos.get(0).getNodeRef());
+        assertEquals("Incorrect file", fileInfo.getNodeRef(), pathInfos.get(1).getNodeRef());
+        // stops at the first missing name
+        pathInfos = fileFolderService.resolveNamePathElements(
+                workingRootNodeRef, Arrays.asList(NAME_L0_FOLDER_A, "aaaaaaa", NAME_L1_FILE_A));
+        assertEquals("Resolution should stop at the missing name", 1, pathInfos.size());
+        assertEquals("Incorrect folder", folderInfo.getNodeRef(), pathInfos.get(0).getNodeRef());
+    }
+
     public void testGetReaderWriter() throws Exception
     {
         // testing a failure
@@ -0,0 +1,293 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.search.impl.querymodel.impl.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.alfresco.repo.admin.patch.OptionalPatchApplicationCheckBootstrapBean;
+import org.alfresco.repo.domain.node.Node;
+import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.node.NodeEntity;
+import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.search.impl.querymodel.FunctionEvaluationContext;
+import org.alfresco.repo.search.impl.querymodel.QueryOptions;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
+import org.alfresco.repo.tenant.TenantService;
+import org.alfresco.service.cmr.repository.NodeRef;
+import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.search.ResultSet;
+import org.alfresco.service.cmr.search.SearchParameters;
+import org.alfresco.service.cmr.security.AccessStatus;
+import org.alfresco.util.Pair;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+
+/**
+ * Tests how {@link DBQueryEngine} fills a page with readable nodes when permission filtering is enabled. Odd node
+ * ids have an ACL that grants read, even node ids have an ACL that does not and are denied when checked one at a time.
+ *
+ * @since 7.0
+ */
+public class DBQueryEngineTest
+{
+    private static final String SELECT_BY_DYNAMIC_QUERY = "alfresco.metadata.query.select_byDynamicQuery";
+    private static final StoreRef STORE_REF = StoreRef.STORE_REF_WORKSPACE_SPACESSTORE;
+    private static final Long READABLE_ACL_ID = 1L;
+    private static final Long UNREADABLE_ACL_ID = 2L;
+
+    private SqlSessionTemplate template;
+    private NodeDAO nodeDAO;
+    private PermissionServiceSPI permissionService;
+    private DBQueryEngine queryEngine;
+    private DBQuery dbQuery;
+
+    /** The node id of each row the query returns, in node id order */
+    private List<Long> rows;
+    /** The parameters of each chunk that was selected */
+    private List<Long> afterNodeIds;
+    private List<Integer> offsets;
+
+    @Before
+    public void setUp()
+    {
+        template = mock(SqlSessionTemplate.class);
+        nodeDAO = mock(NodeDAO.class);
+        permissionService = mock(PermissionServiceSPI.class);
+        TenantService tenantService = mock(TenantService.class);
+        OptionalPatchApplicationCheckBootstrapBean metadataIndexCheck2 = mock(OptionalPatchApplicationCheckBootstrapBean.class);
+
+        when(tenantService.getName(any(StoreRef.class))).thenAnswer(returnsFirstArg());
+        when(tenantService.getBaseName(any(NodeRef.class))).thenAnswer(returnsFirstArg());
+        when(nodeDAO.getStore(STORE_REF)).thenReturn(new Pair<Long, StoreRef>(1L, STORE_REF));
+        when(nodeDAO.getNodePair(anyLong())).thenAnswer(invocation ->
+                    new Pair<Long, NodeRef>(invocation.getArgument(0), nodeRef(invocation.getArgument(0))));
+        when(nodeDAO.getNodeAclId(anyLong())).thenAnswer(invocation ->
+                    ((Long) invocation.getArgument(0)) % 2 == 1 ? READABLE_ACL_ID : UNREADABLE_ACL_ID);
+        when(metadataIndexCheck2.getPatchApplied()).thenReturn(true);
+        when(permissionService.hasAclReadPermission(READABLE_ACL_ID)).thenReturn(AccessStatus.ALLOWED);
+        when(permissionService.hasAclReadPermission(UNREADABLE_ACL_ID)).thenReturn(AccessStatus.DENIED);
+        when(permissionService.hasReadPermission(any(NodeRef.class))).thenReturn(AccessStatus.DENIED);
+
+        rows = new ArrayList<Long>();
+        afterNodeIds = new ArrayList<Long>();
+        offsets = new ArrayList<Integer>();
+        when(template.selectList(eq(SELECT_BY_DYNAMIC_QUERY), any())).thenAnswer(invocation -> selectChunk());
+
+        queryEngine = new DBQueryEngine();
+        queryEngine.setSqlSessionTemplate(template);
+        queryEngine.setNodeDAO(nodeDAO);
+        queryEngine.setQnameDAO(mock(QNameDAO.class));
+        queryEngine.setNodeService(mock(NodeService.class));
+        queryEngine.setTenantService(tenantService);
+        queryEngine.setMetadataIndexCheck2(metadataIndexCheck2);
+        queryEngine.setPermissionService(permissionService);
+        queryEngine.setUsePermissionFiltering(true);
+
+        dbQuery = spy(new DBQuery(null, null, null, null));
+        doNothing().when(dbQuery).prepare(any(), any(), any(), any(), any(), any(), any(), any(), anyBoolean());
+        doReturn(Collections.emptyList()).when(dbQuery).getJoins();
+
+        AuthenticationUtil.setFullyAuthenticatedUser("DBQueryEngineTest");
+    }
+
+    @After
+    public void tearDown()
+    {
+        AuthenticationUtil.clearCurrentSecurityContext();
+    }
+
+    @Test
+    public void testChunksStopOnceThePageIsFull()
+    {
+        addRows(1, 20, 1);
+        queryEngine.setPermissionCheckChunkSize(4);
+
+        ResultSet results = executeQuery(0, 2);
+
+        assertPage(results, 1L, 3L);
+        assertTrue(results.hasMore());
+        // The look-ahead node 5 is found in the second chunk and the third is never selected
+        assertEquals(Arrays.asList(null, 4L), afterNodeIds);
+        // One check per ACL, and single node checks only for the nodes before the look-ahead node
+        verify(permissionService, times(1)).hasAclReadPermission(READABLE_ACL_ID);
+        verify(permissionService, times(1)).hasAclReadPermission(UNREADABLE_ACL_ID);
+        verify(permissionService, times(2)).hasReadPermission(any(NodeRef.class));
+        verify(permissionService, never()).hasReadPermission(nodeRef(6L));
+    }
+
+    @Test
+    public void testShortFinalPage()
+    {
+        addRows(1, 6, 1);
+        queryEngine.setPermissionCheckChunkSize(4);
+
+        ResultSet results = executeQuery(2, 5);
+
+        assertPage(results, 5L);
+        assertFalse(results.hasMore());
+        // The second chunk is short so there is nothing left to select
+        assertEquals(Arrays.asList(null, 4L), afterNodeIds);
+    }
+
+    @Test
+    public void testPageFilledFromLaterChunks()
+    {
+        addRows(1, 12, 1);
+        queryEngine.setPermissionCheckChunkSize(2);
+
+        ResultSet results = executeQuery(1, 2);
+
+        assertPage(results, 3L, 5L);
+        assertTrue(results.hasMore());
+        assertEquals(Arrays.asList(null, 2L, 4L, 6L), afterNodeIds);
+    }
+
+    @Test
+    public void testDuplicateRowsOfJoinedQueriesAreSuppressed()
+    {
+        // Every node matches two rows, and chunks of three rows split the rows of the even nodes
+        addRows(1, 20, 2);
+        doReturn(Collections.singletonList(mock(DBQueryBuilderJoinCommand.class))).when(dbQuery).getJoins();
+        queryEngine.setPermissionCheckChunkSize(3);
+
+        ResultSet results = executeQuery(0, 4);
+
+        assertPage(results, 1L, 3L, 5L, 7L);
+        assertTrue(results.hasMore());
+        assertEquals(Arrays.asList(null, 2L, 4L, 6L, 8L), afterNodeIds);
+        for (long nodeId = 2; nodeId <= 8; nodeId += 2)
+        {
+            verify(permissionService, times(1)).hasReadPermission(nodeRef(nodeId));
+        }
+    }
+
+    @Test
+    public void testOrderedQueryChunksUseAnOffset()
+    {
+        addRows(1, 12, 1);
+        doReturn(true).when(dbQuery).getHasOrderBy();
+        doReturn(true).when(dbQuery).getHasPredicatePartsOrder();
+        queryEngine.setPermissionCheckChunkSize(4);
+
+        ResultSet results = executeQuery(0, 3);
+
+        assertPage(results, 1L, 3L, 5L);
+        assertTrue(results.hasMore());
+        assertEquals(Arrays.asList(0, 4), offsets);
+        assertEquals(Arrays.asList(null, null), afterNodeIds);
+    }
+
+    private ResultSet executeQuery(int skipCount, int maxItems)
+    {
+        SearchParameters searchParameters = new SearchParameters();
+        searchParameters.addStore(STORE_REF);
+        searchParameters.setSkipCount(skipCount);
+        searchParameters.setMaxItems(maxItems);
+        QueryOptions options = mock(QueryOptions.class);
+        when(options.getStores()).thenReturn(Collections.singletonList(STORE_REF));
+        when(options.getAsSearchParmeters()).thenReturn(searchParameters);
+
+        return queryEngine.executeQuery(dbQuery, options, mock(FunctionEvaluationContext.class)).getResults().values().iterator().next();
+    }
+
+    private void addRows(long firstNodeId, long lastNodeId, int rowsPerNode)
+    {
+        for (long nodeId = firstNodeId; nodeId <= lastNodeId; nodeId++)
+        {
+            for (int i = 0; i < rowsPerNode; i++)
+            {
+                rows.add(nodeId);
+            }
+        }
+    }
+
+    private List<Node> selectChunk()
+    {
+        Long afterNodeId = dbQuery.getAfterNodeId();
+        afterNodeIds.add(afterNodeId);
+        offsets.add(dbQuery.getOffset());
+        int skip = dbQuery.getOffset();
+        List<Node> nodes = new ArrayList<Node>();
+        for (Long nodeId : rows)
+        {
+            if (afterNodeId != null && nodeId <= afterNodeId)
+            {
+                continue;
+            }
+            if (skip > 0)
+            {
+                skip--;
+                continue;
+            }
+            if (nodes.size() >= dbQuery.getLimit())
+            {
+                break;
+            }
+            NodeEntity node = new NodeEntity();
+            node.setId(nodeId);
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private void assertPage(ResultSet results, Long... nodeIds)
+    {
+        assertEquals(nodeIds.length, results.length());
+        for (int i = 0; i < nodeIds.length; i++)
+        {
+            assertEquals(nodeRef(nodeIds[i]), results.getNodeRef(i));
+        }
+    }
+
+    private static NodeRef nodeRef(Long nodeId)
+    {
+        return new NodeRef(STORE_REF, "node-" + nodeId);
+    }
+}
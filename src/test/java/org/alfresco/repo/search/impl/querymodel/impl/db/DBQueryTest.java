@@ -28,6 +28,7 @@ package org.alfresco.repo.search.impl.querymodel.impl.db;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
@@ -50,8 +51,11 @@ import org.alfresco.repo.dictionary.DictionaryListener;
 import org.alfresco.repo.dictionary.DictionaryNamespaceComponent;
 import org.alfresco.repo.dictionary.M2Model;
 import org.alfresco.repo.dictionary.NamespaceDAO;
+import org.alfresco.repo.management.subsystems.ApplicationContextFactory;
 import org.alfresco.repo.node.BaseNodeServiceTest;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
+import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authentication.AuthenticationUtil.RunAsWork;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.service.ServiceRegistry;
@@ -71,6 +75,7 @@ import org.alfresco.service.cmr.search.ResultSet;
 import org.alfresco.service.cmr.search.ResultSetRow;
 import org.alfresco.service.cmr.search.SearchParameters;
 import org.alfresco.service.cmr.search.SearchService;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.cmr.search.LimitBy;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
@@ -921,6 +926,84 @@ public class DBQueryTest  implements DictionaryListener
                 results.getNumberFound(), numFolders);
     }
 
+    /**
+     * Test that paged queries are filled with readable nodes when only some of the matching nodes can be read.
+     * The folders are selected in node id order (n1, n2, n5, n6, n12, n13) and only n2, n6 and n13 are readable.
+     */
+    @Test
+    public void testAftsPagingSkipsUnreadableNodes()
+    {
+        final String user = "DBQueryTest_" + System.currentTimeMillis();
+        PermissionService permissionService = serviceRegistry.getPermissionService();
+        permissionService.setInheritParentPermissions(n1, false);
+        permissionService.setInheritParentPermissions(n2, false);
+        permissionService.setPermission(n2, user, PermissionService.READ, true);
+        permissionService.setPermission(n6, user, PermissionService.READ, true);
+        permissionService.setPermission(n13, user, PermissionService.READ, true);
+
+        ApplicationContextFactory search = (ApplicationContextFactory) ctx.getBean("Search");
+        DBQueryEngine queryEngine = (DBQueryEngine) search.getApplicationContext().getBean("search.dbQueryEngineImpl");
+        queryEngine.setUsePagingQuery(true);
+        try
+        {
+            AuthenticationUtil.runAs(new RunAsWork<Void>()
+            {
+                @Override
+                public Void doWork() throws Exception
+                {
+                    // A limit on the selected rows alone would only find n2 in the first three rows
+                    assertPage("=TYPE:\"cm:folder\"", 0, 2, new NodeRef[] { n2, n6 }, true);
+                    assertPage("=TYPE:\"cm:folder\"", 0, 3, new NodeRef[] { n2, n6, n13 }, false);
+                    assertPage("=TYPE:\"cm:folder\"", 1, 1, new NodeRef[] { n6 }, true);
+                    assertPage("=TYPE:\"cm:folder\"", 2, 2, new NodeRef[] { n13 }, false);
+                    assertPage("=TYPE:\"cm:folder\"", 3, 2, new NodeRef[] {}, false);
+                    return null;
+                }
+            }, user);
+
+            // The system user still gets every folder
+            assertPage("=TYPE:\"cm:folder\"", 0, 3, new NodeRef[] { n1, n2, n5 }, true);
+            assertPage("=TYPE:\"cm:folder\"", 4, 3, new NodeRef[] { n12, n13 }, false);
+        }
+        finally
+        {
+            queryEngine.setUsePagingQuery(false);
+        }
+    }
+
+    private void assertPage(String query, int skipCount, int maxItems, NodeRef[] expected, boolean hasMore)
+    {
+        SearchParameters sp = new SearchParameters();
+        sp.setLanguage(SearchService.LANGUAGE_FTS_ALFRESCO);
+        sp.setQueryConsistency(QueryConsistency.TRANSACTIONAL);
+        sp.setQuery(query);
+        sp.addStore(rootNodeRef.getStoreRef());
+        sp.setSkipCount(skipCount);
+        sp.setMaxItems(maxItems);
+        ResultSet results = serviceRegistry.getSearchService().query(sp);
+        try
+        {
+            String page = "skipCount=" + skipCount + ", maxItems=" + maxItems;
+            assertEquals(page, expected.length, results.length());
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertEquals(page, expected[i], results.getNodeRef(i));
+            }
+            if (hasMore)
+            {
+                assertTrue(page, results.hasMore());
+            }
+            else
+            {
+                assertFalse(page, results.hasMore());
+            }
+        }
+        finally
+        {
+            results.close();
+        }
+    }
+
     /**
      * This method performs a query with a selected searchService.
      *
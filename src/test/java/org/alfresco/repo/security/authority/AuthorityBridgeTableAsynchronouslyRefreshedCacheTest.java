@@ -31,15 +31,23 @@ import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.alfresco.error.AlfrescoRuntimeException;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
+import org.alfresco.repo.security.authority.AuthorityBridgeTable.Change;
 import org.alfresco.repo.tenant.TenantAdminService;
 import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.AlfrescoTransactionSupport;
@@ -255,6 +263,219 @@ public class AuthorityBridgeTableAsynchronouslyRefreshedCacheTest extends TestCa
         }
     }
     
+    /**
+     * Membership changes are collected per transaction, queued after commit and applied to the table in a batch
+     */
+    public void testIncrementalChanges() throws Exception
+    {
+        final String personName = "bridgeUser" + GUID.generate();
+        final AtomicInteger batches = new AtomicInteger();
+        authorityBridgeTableCache.registerChangeListener(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                batches.incrementAndGet();
+            }
+        });
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        authorityBridgeTableCache.setIncremental(true);
+        authorityBridgeTableCache.setCoalesceWindowMs(1000L);
+        try
+        {
+            // A contains B, which contains the person
+            final String[] groups = doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<String[]>()
+            {
+                @Override
+                public String[] execute() throws Throwable
+                {
+                    personService.getPerson(personName, true);
+                    String groupA = authorityService.createAuthority(AuthorityType.GROUP, "bridgeA" + GUID.generate());
+                    String groupB = authorityService.createAuthority(AuthorityType.GROUP, "bridgeB" + GUID.generate());
+                    authorityService.addAuthority(groupA, groupB);
+                    authorityService.addAuthority(groupB, personName);
+                    assertFalse("Uncommitted changes are not in the table", authorityBridgeTableCache.isUpToDate());
+                    return new String[] {groupA, groupB};
+                }
+            });
+            assertFalse("Committed changes wait for the coalesce window", authorityBridgeTableCache.isUpToDate());
+            waitForUpToDate();
+            assertEquals(new HashSet<String>(Arrays.asList(groups)), authorityBridgeTableCache.get().getAncestors(personName));
+            int batchCount = batches.get();
+            assertTrue(batchCount > 0);
+            
+            doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    authorityService.removeAuthority(groups[0], groups[1]);
+                    return null;
+                }
+            });
+            assertFalse(authorityBridgeTableCache.isUpToDate());
+            waitForUpToDate();
+            assertEquals(Collections.singleton(groups[1]), authorityBridgeTableCache.get().getAncestors(personName));
+            assertEquals(batchCount + 1, batches.get());
+            
+            doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    authorityService.deleteAuthority(groups[1]);
+                    return null;
+                }
+            });
+            assertFalse(authorityBridgeTableCache.isUpToDate());
+            waitForUpToDate();
+            assertTrue(authorityBridgeTableCache.get().getAncestors(personName).isEmpty());
+            assertEquals(batchCount + 2, batches.get());
+        }
+        finally
+        {
+            authorityBridgeTableCache.setIncremental(false);
+            authorityBridgeTableCache.setCoalesceWindowMs(500L);
+            authorityBridgeTableCache.refresh();
+        }
+    }
+    
+    /**
+     * A transaction sees its own changes once forced in, before they are committed
+     */
+    public void testIncrementalForceInChangesForThisUncommittedTransaction() throws Exception
+    {
+        final String personName = "bridgeUser" + GUID.generate();
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        authorityBridgeTableCache.setIncremental(true);
+        try
+        {
+            final String group = doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<String>()
+            {
+                @Override
+                public String execute() throws Throwable
+                {
+                    personService.getPerson(personName, true);
+                    String group = authorityService.createAuthority(AuthorityType.GROUP, "bridge" + GUID.generate());
+                    authorityService.addAuthority(group, personName);
+                    assertFalse(authorityBridgeTableCache.get().getAncestors(personName).contains(group));
+                    authorityBridgeTableCache.forceInChangesForThisUncommittedTransaction();
+                    assertTrue(authorityBridgeTableCache.get().getAncestors(personName).contains(group));
+                    return group;
+                }
+            });
+            waitForUpToDate();
+            assertTrue(authorityBridgeTableCache.get().getAncestors(personName).contains(group));
+        }
+        finally
+        {
+            authorityBridgeTableCache.setIncremental(false);
+            authorityBridgeTableCache.refresh();
+        }
+    }
+    
+    /**
+     * Changes applied while a build is reading the links are replayed onto the table it builds
+     */
+    public void testIncrementalChangesReplayedOntoBuild() throws Exception
+    {
+        final CountDownLatch building = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        AuthorityBridgeDAO authorityBridgeDAOMock = mock(AuthorityBridgeDAO.class);
+        when(authorityBridgeDAOMock.getAuthorityBridgeLinks()).thenAnswer(new Answer<List<AuthorityBridgeLink>>()
+        {
+            public List<AuthorityBridgeLink> answer(InvocationOnMock invocation) throws Throwable
+            {
+                building.countDown();
+                release.await();
+                // The build's transaction started before the change was committed
+                return Collections.singletonList(createAuthorityBridgeLink("A", "B"));
+            }
+        });
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        final AuthorityBridgeTableAsynchronouslyRefreshedCache cache = newIncrementalCache(authorityBridgeDAOMock);
+        final String tenantId = tenantService.getCurrentUserDomain();
+        
+        Thread builder = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                cache.buildCache(tenantId);
+            }
+        });
+        builder.start();
+        try
+        {
+            building.await();
+            cache.queueChanges(tenantId, Collections.singletonList(Change.linkAdded("B", "C")));
+            cache.applyChanges(tenantId);
+        }
+        finally
+        {
+            release.countDown();
+            builder.join();
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("A", "B")), cache.get().getAncestors("C"));
+    }
+    
+    /**
+     * Changes committed before there is a table to apply them to force a rebuild rather than being dropped
+     */
+    public void testIncrementalChangesWithoutTableRebuild() throws Exception
+    {
+        final List<String> refreshed = new ArrayList<String>();
+        AuthorityBridgeTableAsynchronouslyRefreshedCache cache = new AuthorityBridgeTableAsynchronouslyRefreshedCache()
+        {
+            @Override
+            public void refresh(String tenantId)
+            {
+                refreshed.add(tenantId);
+            }
+        };
+        configureIncrementalCache(cache, mock(AuthorityBridgeDAO.class));
+        AuthenticationUtil.setFullyAuthenticatedUser(AuthenticationUtil.getAdminUserName());
+        String tenantId = tenantService.getCurrentUserDomain();
+        
+        cache.queueChanges(tenantId, Collections.singletonList(Change.linkAdded("A", "B")));
+        cache.applyChanges(tenantId);
+        assertEquals(Collections.singletonList(tenantId), refreshed);
+    }
+    
+    private AuthorityBridgeTableAsynchronouslyRefreshedCache newIncrementalCache(AuthorityBridgeDAO authorityBridgeDAO)
+    {
+        AuthorityBridgeTableAsynchronouslyRefreshedCache cache = new AuthorityBridgeTableAsynchronouslyRefreshedCache();
+        configureIncrementalCache(cache, authorityBridgeDAO);
+        return cache;
+    }
+    
+    private void configureIncrementalCache(AuthorityBridgeTableAsynchronouslyRefreshedCache cache, AuthorityBridgeDAO authorityBridgeDAO)
+    {
+        cache.setAuthorityBridgeDAO(authorityBridgeDAO);
+        cache.setAuthorityDAO(mock(AuthorityDAO.class));
+        cache.setTenantAdminService(tenantAdminService);
+        cache.setTenantService(tenantService);
+        cache.setRetryingTransactionHelper(transactionService.getRetryingTransactionHelper());
+        cache.setIncremental(true);
+        // Changes are applied explicitly by the tests
+        cache.setCoalesceWindowMs(TimeUnit.HOURS.toMillis(1));
+    }
+    
+    private <R> R doInTransaction(RetryingTransactionHelper.RetryingTransactionCallback<R> callback)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(callback, false, true);
+    }
+    
+    private void waitForUpToDate() throws InterruptedException
+    {
+        long timeout = System.currentTimeMillis() + 20000L;
+        while (!authorityBridgeTableCache.isUpToDate())
+        {
+            assertTrue("Authority bridge table not updated in time", System.currentTimeMillis() < timeout);
+            Thread.sleep(100L);
+        }
+    }
+    
     private AuthorityBridgeLink createAuthorityBridgeLink(String parentName, String childName)
     {
         AuthorityBridgeLink link = new AuthorityBridgeLink();
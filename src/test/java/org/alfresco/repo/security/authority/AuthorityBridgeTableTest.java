@@ -0,0 +1,219 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.authority;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.alfresco.repo.security.authority.AuthorityBridgeTable.Change;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AuthorityBridgeTable}
+ * 
+ * @since 7.0
+ */
+public class AuthorityBridgeTableTest
+{
+    private static AuthorityBridgeLink link(String parentName, String childName)
+    {
+        AuthorityBridgeLink link = new AuthorityBridgeLink();
+        link.setParentName(parentName);
+        link.setChildName(childName);
+        return link;
+    }
+
+    private static Set<String> set(String... names)
+    {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    /**
+     * A -> B -> C -> D with E -> C
+     */
+    private static AuthorityBridgeTable chain()
+    {
+        return AuthorityBridgeTable.build(Arrays.asList(
+                link("A", "B"), link("B", "C"), link("C", "D"), link("E", "C"), link("A", "B")));
+    }
+
+    @Test
+    public void testBuild()
+    {
+        AuthorityBridgeTable table = chain();
+        assertEquals(5, table.size());
+        assertEquals("Duplicate links are ignored", 4, table.getLinkCount());
+        assertEquals(set(), table.getAncestors("A"));
+        assertEquals(set("A"), table.getAncestors("B"));
+        assertEquals(set("A", "B", "E"), table.getAncestors("C"));
+        assertEquals(set("A", "B", "C", "E"), table.getAncestors("D"));
+        assertEquals(set(), table.getAncestors("unknown"));
+        assertTrue(table.getAncestors("D").contains("E"));
+    }
+
+    @Test
+    public void testAddLink()
+    {
+        AuthorityBridgeTable table = chain();
+        AuthorityBridgeTable changed = table.withChanges(Arrays.asList(Change.linkAdded("X", "B"), Change.linkAdded("Y", "Z")));
+        assertEquals(set("A", "X"), changed.getAncestors("B"));
+        assertEquals(set("A", "B", "C", "E", "X"), changed.getAncestors("D"));
+        assertEquals(set("Y"), changed.getAncestors("Z"));
+        assertEquals(6, changed.getLinkCount());
+        // The original table is unchanged
+        assertEquals(set("A", "B", "C", "E"), table.getAncestors("D"));
+        assertEquals(4, table.getLinkCount());
+    }
+
+    @Test
+    public void testRemoveLink()
+    {
+        AuthorityBridgeTable table = chain();
+        AuthorityBridgeTable changed = table.withChanges(Collections.singletonList(Change.linkRemoved("B", "C")));
+        assertEquals(set("A"), changed.getAncestors("B"));
+        assertEquals(set("E"), changed.getAncestors("C"));
+        assertEquals(set("C", "E"), changed.getAncestors("D"));
+        assertEquals(3, changed.getLinkCount());
+        assertEquals(set("A", "B", "C", "E"), table.getAncestors("D"));
+    }
+
+    @Test
+    public void testRemoveOneOfTwoPaths()
+    {
+        // A -> B -> D and A -> C -> D: removing B -> D keeps A as an ancestor of D
+        AuthorityBridgeTable table = AuthorityBridgeTable.build(Arrays.asList(
+                link("A", "B"), link("A", "C"), link("B", "D"), link("C", "D")));
+        AuthorityBridgeTable changed = table.withChanges(Collections.singletonList(Change.linkRemoved("B", "D")));
+        assertEquals(set("A", "C"), changed.getAncestors("D"));
+    }
+
+    @Test
+    public void testAuthorityDeleted()
+    {
+        AuthorityBridgeTable changed = chain().withChanges(Collections.singletonList(Change.authorityDeleted("C")));
+        assertEquals(set(), changed.getAncestors("C"));
+        assertEquals(set(), changed.getAncestors("D"));
+        assertEquals(set("A"), changed.getAncestors("B"));
+        assertEquals(1, changed.getLinkCount());
+    }
+
+    @Test
+    public void testChangesAreIdempotent()
+    {
+        AuthorityBridgeTable table = chain();
+        AuthorityBridgeTable changed = table.withChanges(Arrays.asList(
+                Change.linkAdded("A", "B"), Change.linkRemoved("X", "Y"), Change.authorityDeleted("unknown")));
+        assertEquals(table.getLinkCount(), changed.getLinkCount());
+        assertEquals(table.getAncestors("D"), changed.getAncestors("D"));
+        assertSame(table, table.withChanges(Collections.<Change> emptyList()));
+    }
+
+    @Test
+    public void testCycles()
+    {
+        try
+        {
+            AuthorityBridgeTable.build(Arrays.asList(link("A", "B"), link("B", "C"), link("C", "A")));
+            fail("Cycle not detected in build");
+        }
+        catch (ConcurrentModificationException e)
+        {
+            // Expected
+        }
+        try
+        {
+            chain().withChanges(Collections.singletonList(Change.linkAdded("D", "A")));
+            fail("Cycle not detected in change");
+        }
+        catch (ConcurrentModificationException e)
+        {
+            // Expected
+        }
+        try
+        {
+            chain().withChanges(Collections.singletonList(Change.linkAdded("A", "A")));
+            fail("Self link not detected in change");
+        }
+        catch (ConcurrentModificationException e)
+        {
+            // Expected
+        }
+    }
+
+    /**
+     * Random changes applied incrementally must give the same table as a full build of the resulting links
+     */
+    @Test
+    public void testChangesMatchFullBuild()
+    {
+        Random random = new Random(42);
+        List<AuthorityBridgeLink> links = new ArrayList<AuthorityBridgeLink>();
+        Set<String> linkKeys = new HashSet<String>();
+        AuthorityBridgeTable table = AuthorityBridgeTable.EMPTY_TABLE;
+        for (int i = 0; i < 500; i++)
+        {
+            // Only link lower to higher numbered groups so that there are no cycles
+            int parent = random.nextInt(40);
+            int child = parent + 1 + random.nextInt(10);
+            String parentName = "G" + parent;
+            String childName = "G" + child;
+            List<Change> changes;
+            if (random.nextInt(3) == 0 && !links.isEmpty())
+            {
+                AuthorityBridgeLink removed = links.remove(random.nextInt(links.size()));
+                linkKeys.remove(removed.getParentName() + "/" + removed.getChildName());
+                changes = Collections.singletonList(Change.linkRemoved(removed.getParentName(), removed.getChildName()));
+            }
+            else
+            {
+                if (linkKeys.add(parentName + "/" + childName))
+                {
+                    links.add(link(parentName, childName));
+                }
+                changes = Collections.singletonList(Change.linkAdded(parentName, childName));
+            }
+            table = table.withChanges(changes);
+        }
+        AuthorityBridgeTable expected = AuthorityBridgeTable.build(links);
+        assertEquals(expected.getLinkCount(), table.getLinkCount());
+        for (int i = 0; i < 50; i++)
+        {
+            String name = "G" + i;
+            assertEquals(name, expected.getAncestors(name), table.getAncestors(name));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * #%L
+ * Alfresco Repository
+ * %%
+ * Copyright (C) 2005 - 2020 Alfresco Software Limited
+ * %%
+ * This file is part of the Alfresco software. 
+ * If the software was purchased under a paid Alfresco license, the terms of 
+ * the paid license agreement will prevail.  Otherwise, the software is 
+ * provided under the following open source license terms:
+ * 
+ * Alfresco is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Alfresco is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Alfresco. If not, see <http://www.gnu.org/licenses/>.
+ * #L%
+ */
+package org.alfresco.repo.security.permissions.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for {@link AuthoritySetInterner}
+ * 
+ * @since 7.0
+ */
+public class AuthoritySetInternerTest
+{
+    private static final String[] GRANTED = new String[] { "ROLE_AUTHENTICATED" };
+
+    private AuthoritySetInterner interner;
+
+    private static Set<String> set(String... names)
+    {
+        return new TreeSet<String>(Arrays.asList(names));
+    }
+
+    @Before
+    public void setUp()
+    {
+        interner = new AuthoritySetInterner();
+        interner.setEnabled(true);
+    }
+
+    @Test
+    public void testIntern()
+    {
+        InternedAuthoritySet one = interner.intern(set("andy", "GROUP_A", "GROUP_B"));
+        InternedAuthoritySet two = interner.intern(Arrays.asList("GROUP_B", "andy", "GROUP_A", "andy"));
+        InternedAuthoritySet three = interner.intern(set("andy", "GROUP_A"));
+        assertSame(one, two);
+        assertNotEquals(one.getId(), three.getId());
+        assertEquals(3, one.size());
+        assertTrue(one.contains("GROUP_B"));
+        assertFalse(three.contains("GROUP_B"));
+        assertFalse(one.contains("GROUP_C"));
+        assertFalse(one.contains(null));
+        assertEquals(set("andy", "GROUP_A", "GROUP_B"), one);
+        assertEquals(one, set("andy", "GROUP_A", "GROUP_B"));
+        assertEquals(set("andy", "GROUP_A", "GROUP_B"), new HashSet<String>(one));
+    }
+
+    @Test
+    public void testUnion()
+    {
+        InternedAuthoritySet base = interner.intern(set("andy", "GROUP_A"));
+        assertSame(base, interner.union(base, Collections.<String> emptySet()));
+        assertSame(base, interner.union(base, set("GROUP_A")));
+        InternedAuthoritySet withOwner = interner.union(base, set("ROLE_OWNER"));
+        assertEquals(set("andy", "GROUP_A", "ROLE_OWNER"), withOwner);
+        assertSame(withOwner, interner.intern(set("andy", "GROUP_A", "ROLE_OWNER")));
+        assertEquals(2, base.size());
+    }
+
+    @Test
+    public void testUserAuthorities()
+    {
+        Set<String> containing = Collections.unmodifiableSet(set("GROUP_A"));
+        assertNull(interner.getUserAuthorities("andy", containing, GRANTED));
+        InternedAuthoritySet put = interner.putUserAuthorities("andy", containing, GRANTED, set("andy", "GROUP_A", "ROLE_AUTHENTICATED"));
+        assertSame(put, interner.getUserAuthorities("andy", containing, GRANTED));
+        // An equal copy of the containing authorities is accepted
+        assertSame(put, interner.getUserAuthorities("andy", set("GROUP_A"), GRANTED));
+        // Changed membership or granted authorities are not
+        assertNull(interner.getUserAuthorities("andy", set("GROUP_A", "GROUP_B"), GRANTED));
+        assertNull(interner.getUserAuthorities("andy", containing, new String[0]));
+        assertNull(interner.getUserAuthorities("bob", containing, GRANTED));
+    }
+
+    @Test
+    public void testStartAgainAfterMaxSets()
+    {
+        interner.setMaxSets(2);
+        InternedAuthoritySet first = interner.intern(set("GROUP_A"));
+        interner.putUserAuthorities("andy", set("GROUP_A"), GRANTED, first);
+        interner.intern(set("GROUP_B"));
+        interner.intern(set("GROUP_C"));
+        // Sets handed out before starting again are still usable
+        assertTrue(first.contains("GROUP_A"));
+        assertEquals(set("GROUP_A"), first);
+        assertEquals(set("GROUP_A", "GROUP_D"), interner.union(first, set("GROUP_D")));
+        assertNull(interner.getUserAuthorities("andy", set("GROUP_A"), GRANTED));
+        InternedAuthoritySet again = interner.intern(set("GROUP_A"));
+        assertNotEquals(first.getId(), again.getId());
+        assertEquals(first, again);
+    }
+
+    @Test
+    public void testAclResults()
+    {
+        interner.setMaxAclResults(2);
+        interner.putAclResult("one", true);
+        interner.putAclResult("two", false);
+        assertEquals(Boolean.TRUE, interner.getAclResult("one"));
+        assertEquals(Boolean.FALSE, interner.getAclResult("two"));
+        interner.putAclResult("three", true);
+        assertNull(interner.getAclResult("one"));
+        assertEquals(Boolean.TRUE, interner.getAclResult("three"));
+    }
+}
@@ -29,6 +29,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -153,6 +154,137 @@ public class PermissionServiceTest extends AbstractPermissionTest
         assertTrue(publicServiceAccessService.hasAccess("PermissionService", "getAuthorisations") ==  AccessStatus.DENIED);
     }
     
+    public void testAclReadPermission()
+    {
+        personService.getPerson("andy");
+        runAs("admin");
+
+        NodeRef readable = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}readable"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(readable, false);
+        permissionService.setPermission(readable, "andy", PermissionService.READ, true);
+
+        NodeRef owned = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}owned"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(owned, false);
+        serviceRegistry.getOwnableService().setOwner(owned, "andy");
+
+        Long readableAclId = nodeService.getNodeAclId(readable);
+        Long ownedAclId = nodeService.getNodeAclId(owned);
+
+        runAs("andy");
+        assertEquals(AccessStatus.ALLOWED, permissionService.hasAclReadPermission(readableAclId));
+        // The ACL alone does not grant read to the owner so the node itself has to be checked
+        assertEquals(AccessStatus.DENIED, permissionService.hasAclReadPermission(ownedAclId));
+        assertEquals(AccessStatus.ALLOWED, permissionService.hasReadPermission(owned));
+        assertEquals(AccessStatus.UNDETERMINED, permissionService.hasAclReadPermission(null));
+
+        runAs("admin");
+        assertEquals(AccessStatus.ALLOWED, permissionService.hasAclReadPermission(ownedAclId));
+    }
+
+    public void testHasPermissions()
+    {
+        personService.getPerson("andy");
+        runAs("admin");
+
+        NodeRef folder = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}folder"), ContentModel.TYPE_FOLDER).getChildRef();
+        permissionService.setInheritParentPermissions(folder, false);
+        permissionService.setPermission(folder, "andy", PermissionService.READ, true);
+
+        // Children share the inherited ACL of the folder
+        List<NodeRef> nodeRefs = new ArrayList<NodeRef>();
+        for (int i = 0; i < 5; i++)
+        {
+            nodeRefs.add(nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}child" + i), ContentModel.TYPE_CONTENT).getChildRef());
+        }
+        NodeRef denied = nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}denied"), ContentModel.TYPE_CONTENT).getChildRef();
+        permissionService.setInheritParentPermissions(denied, false);
+        nodeRefs.add(2, denied);
+        NodeRef owned = nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}owned"), ContentModel.TYPE_CONTENT).getChildRef();
+        permissionService.setInheritParentPermissions(owned, false);
+        serviceRegistry.getOwnableService().setOwner(owned, "andy");
+        nodeRefs.add(owned);
+        nodeRefs.add(null);
+
+        runAs("andy");
+        BitSet allowed = permissionService.hasPermissions(nodeRefs, PermissionService.READ);
+        for (int i = 0; i < nodeRefs.size(); i++)
+        {
+            AccessStatus expected = permissionService.hasPermission(nodeRefs.get(i), PermissionService.READ);
+            assertEquals("Node " + i, expected != AccessStatus.DENIED, allowed.get(i));
+        }
+        assertFalse(allowed.get(2));
+        assertTrue(allowed.get(nodeRefs.size() - 2));
+        assertEquals(nodeRefs.size() - 1, allowed.cardinality());
+
+        allowed = permissionService.hasPermissions(nodeRefs, PermissionService.WRITE);
+        assertEquals("Only the owner and the null node should be writable", 2, allowed.cardinality());
+    }
+
+    public void testInternedAuthoritySets()
+    {
+        AuthoritySetInterner interner = (AuthoritySetInterner) applicationContext.getBean("authoritySetInterner");
+        boolean wasEnabled = interner.isEnabled();
+        interner.setEnabled(true);
+        try
+        {
+            personService.getPerson("andy");
+            runAs("admin");
+
+            NodeRef folder = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}folder"), ContentModel.TYPE_FOLDER).getChildRef();
+            permissionService.setInheritParentPermissions(folder, false);
+            permissionService.setPermission(folder, "andy", PermissionService.READ, true);
+            // Both children share the inherited ACL of the folder
+            NodeRef one = nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}one"), ContentModel.TYPE_FOLDER).getChildRef();
+            NodeRef two = nodeService.createNode(folder, ContentModel.ASSOC_CONTAINS, QName.createQName("{namespace}two"), ContentModel.TYPE_FOLDER).getChildRef();
+            NodeRef restricted = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}restricted"), ContentModel.TYPE_FOLDER).getChildRef();
+            permissionService.setInheritParentPermissions(restricted, false);
+            NodeRef owned = nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN, QName.createQName("{namespace}owned"), ContentModel.TYPE_FOLDER).getChildRef();
+            permissionService.setInheritParentPermissions(owned, false);
+            serviceRegistry.getOwnableService().setOwner(owned, "andy");
+
+            // The second node reuses the evaluation of the shared ACL
+            runAs("andy");
+            assertEquals(AccessStatus.ALLOWED, permissionService.hasPermission(one, PermissionService.READ));
+            long hits = interner.getAclResultHits();
+            assertEquals(AccessStatus.ALLOWED, permissionService.hasPermission(two, PermissionService.READ));
+            assertEquals(hits + 1, interner.getAclResultHits());
+
+            // A changed ACL is evaluated afresh
+            assertEquals(AccessStatus.DENIED, permissionService.hasPermission(restricted, PermissionService.READ));
+            runAs("admin");
+            permissionService.setPermission(restricted, "andy", PermissionService.READ, true);
+            runAs("andy");
+            assertEquals(AccessStatus.ALLOWED, permissionService.hasPermission(restricted, PermissionService.READ));
+            runAs("admin");
+            permissionService.deletePermission(restricted, "andy", PermissionService.READ);
+            runAs("andy");
+            assertEquals(AccessStatus.DENIED, permissionService.hasPermission(restricted, PermissionService.READ));
+
+            // Dynamic authorities are unioned into an interned set for the node only
+            Authentication auth = AuthenticationUtil.getRunAsAuthentication();
+            PermissionReference write = permissionServiceImpl.getPermissionReference(PermissionService.WRITE);
+            Set<String> ownedAuthorisations = permissionServiceImpl.getAuthorisations(auth, owned, write);
+            assertTrue(ownedAuthorisations instanceof InternedAuthoritySet);
+            assertTrue(ownedAuthorisations.contains(PermissionService.OWNER_AUTHORITY));
+            assertTrue(ownedAuthorisations.contains("andy"));
+            assertSame(ownedAuthorisations, permissionServiceImpl.getAuthorisations(auth, owned, write));
+            assertFalse(permissionServiceImpl.getAuthorisations(auth, one, write).contains(PermissionService.OWNER_AUTHORITY));
+            assertEquals(AccessStatus.ALLOWED, permissionService.hasPermission(owned, PermissionService.WRITE));
+            assertEquals(AccessStatus.DENIED, permissionService.hasPermission(one, PermissionService.WRITE));
+
+            // The core authorisations handed to extensions remain a mutable copy
+            Set<String> core = permissionServiceImpl.getCoreAuthorisations(auth);
+            assertFalse(core instanceof InternedAuthoritySet);
+            core.add("GROUP_EXTENSION");
+            assertFalse(permissionService.getAuthorisations().contains(PermissionService.OWNER_AUTHORITY));
+            assertFalse(permissionService.getAuthorisations().contains("GROUP_EXTENSION"));
+        }
+        finally
+        {
+            interner.setEnabled(wasEnabled);
+        }
+    }
+
     public void testAnyDenyDeniesAndRead()
     {
         personService.getPerson("andy");
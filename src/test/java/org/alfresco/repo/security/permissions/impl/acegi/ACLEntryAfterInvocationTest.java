@@ -25,8 +25,10 @@
  */
 package org.alfresco.repo.security.permissions.impl.acegi;
 
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -42,6 +44,8 @@ import org.alfresco.model.ContentModel;
 import org.alfresco.repo.search.results.ChildAssocRefResultSet;
 import org.alfresco.repo.security.authentication.AuthenticationUtil;
 import org.alfresco.repo.security.permissions.PermissionCheckCollection.PermissionCheckCollectionMixin;
+import org.alfresco.repo.security.permissions.PermissionCheckedCollection;
+import org.alfresco.repo.security.permissions.PermissionServiceSPI;
 import org.alfresco.repo.security.permissions.impl.AbstractPermissionTest;
 import org.alfresco.repo.security.permissions.impl.SimplePermissionEntry;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
@@ -650,6 +654,55 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
     }
     
     
+    public void testBulkChecksStopAtCutOffs() throws Exception
+    {
+        runAs(AuthenticationUtil.getAdminUserName());
+
+        List<NodeRef> nodeRefList = new ArrayList<NodeRef>(40);
+        for (int i = 0; i < 40; i++)
+        {
+            nodeRefList.add(nodeService.createNode(rootNodeRef, ContentModel.ASSOC_CHILDREN,
+                    QName.createQName("{namespace}bulk" + i), ContentModel.TYPE_FOLDER).getChildRef());
+        }
+        permissionService.setPermission(new SimplePermissionEntry(rootNodeRef, getPermission(PermissionService.READ), "andy", AccessStatus.ALLOWED));
+
+        runAs("andy");
+
+        Object o = new ClassWithMethods();
+        Method methodCollection = o.getClass().getMethod("echoCollection", new Class[] { Collection.class });
+
+        AdvisorAdapterRegistry advisorAdapterRegistry = GlobalAdvisorAdapterRegistry.getInstance();
+
+        // Cut off by count: no window checks more values than allowed
+        CheckCounter counter = new CheckCounter(permissionService, 0);
+        ProxyFactory proxyFactory = new ProxyFactory();
+        proxyFactory.addAdvisor(advisorAdapterRegistry.wrap(new Interceptor("AFTER_ACL_NODE.sys:base.Read", counter.getProxy(), 8)));
+        proxyFactory.setTargetSource(new SingletonTargetSource(o));
+        Object proxy = proxyFactory.getProxy();
+
+        Collection<?> answerCollection = (Collection<?>) methodCollection.invoke(
+                proxy, new Object[] { PermissionCheckCollectionMixin.create(new ArrayList<NodeRef>(nodeRefList), 40, 0, 10) });
+        assertEquals(10, answerCollection.size());
+        assertTrue(((PermissionCheckedCollection<?>) answerCollection).isCutOff());
+        assertEquals(30, ((PermissionCheckedCollection<?>) answerCollection).sizeUnchecked());
+        assertEquals("Values were checked beyond the cut-off", 10, counter.getChecked());
+        assertTrue("Values were not checked together", counter.getMaxWindow() > 1);
+
+        // Cut off by time: each value takes 10ms to check, so the time runs out long before a window of 20 is full
+        counter = new CheckCounter(permissionService, 10);
+        proxyFactory = new ProxyFactory();
+        proxyFactory.addAdvisor(advisorAdapterRegistry.wrap(new Interceptor("AFTER_ACL_NODE.sys:base.Read", counter.getProxy(), 20)));
+        proxyFactory.setTargetSource(new SingletonTargetSource(o));
+        proxy = proxyFactory.getProxy();
+
+        answerCollection = (Collection<?>) methodCollection.invoke(
+                proxy, new Object[] { PermissionCheckCollectionMixin.create(new ArrayList<NodeRef>(nodeRefList), 40, 100, 0) });
+        assertTrue(((PermissionCheckedCollection<?>) answerCollection).isCutOff());
+        assertTrue(answerCollection.size() > 0);
+        assertEquals(40 - answerCollection.size(), ((PermissionCheckedCollection<?>) answerCollection).sizeUnchecked());
+        assertTrue("Values were checked well past the time-based cut-off: " + counter.getChecked(), counter.getChecked() < 20);
+    }
+
     public void testResultSetFilterForNullParentOnly() throws Exception
     {
         runAs(AuthenticationUtil.getAdminUserName());
@@ -1015,9 +1068,78 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
 
     }
 
+    /**
+     * Counts the values whose permissions are checked, taking a fixed time for each of them
+     */
+    private static class CheckCounter implements InvocationHandler
+    {
+        private final PermissionServiceSPI permissionService;
+        private final long millisPerCheck;
+        private int checked = 0;
+        private int maxWindow = 0;
+
+        CheckCounter(PermissionServiceSPI permissionService, long millisPerCheck)
+        {
+            this.permissionService = permissionService;
+            this.millisPerCheck = millisPerCheck;
+        }
+
+        PermissionServiceSPI getProxy()
+        {
+            return (PermissionServiceSPI) Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[] { PermissionServiceSPI.class }, this);
+        }
+
+        int getChecked()
+        {
+            return checked;
+        }
+
+        int getMaxWindow()
+        {
+            return maxWindow;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            int window = 0;
+            if (method.getName().equals("hasPermissions"))
+            {
+                window = ((List<?>) args[0]).size();
+            }
+            else if (method.getName().equals("hasPermission"))
+            {
+                window = 1;
+            }
+            checked += window;
+            maxWindow = Math.max(maxWindow, window);
+            if (window > 0 && millisPerCheck > 0)
+            {
+                Thread.sleep(millisPerCheck * window);
+            }
+            try
+            {
+                return method.invoke(permissionService, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                throw e.getCause();
+            }
+        }
+    }
+
     public class Interceptor implements MethodInterceptor
     {
         ConfigAttributeDefinition cad = new ConfigAttributeDefinition();
+        PermissionServiceSPI checkingPermissionService = permissionService;
+        int bulkPermissionCheckSize = 0;
+
+        Interceptor(final String config, PermissionServiceSPI checkingPermissionService, int bulkPermissionCheckSize)
+        {
+            this(config);
+            this.checkingPermissionService = checkingPermissionService;
+            this.bulkPermissionCheckSize = bulkPermissionCheckSize;
+        }
 
         Interceptor(final String config)
         {
@@ -1041,9 +1163,10 @@ public class ACLEntryAfterInvocationTest extends AbstractPermissionTest
         {
             ACLEntryAfterInvocationProvider after = new ACLEntryAfterInvocationProvider();
             after.setNamespacePrefixResolver(namespacePrefixResolver);
-            after.setPermissionService(permissionService);
+            after.setPermissionService(checkingPermissionService);
             after.setNodeService(nodeService);
             after.setUnfilteredFor(Collections.singleton("{ns}ln"));
+            after.setBulkPermissionCheckSize(bulkPermissionCheckSize);
             after.afterPropertiesSet();
 
             Object returnObject = invocation.proceed();
@@ -48,6 +48,7 @@ import org.alfresco.repo.security.sync.ldap.LDAPUserRegistry.PersonCollection;
 import org.alfresco.repo.security.sync.ldap_ad.LDAPADUserAccountStatusInterpreter;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
+import org.alfresco.service.cmr.attributes.AttributeService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
 import org.alfresco.service.cmr.repository.datatype.DefaultTypeConverter;
@@ -441,6 +442,92 @@ public class ChainingUserRegistrySynchronizerTest extends TestCase
         tearDownTestUsersAndGroups();
     }
 
+    /**
+     * Tests a forced update with unchanged users skipped and the groups of later zones prefetched. Changed users must
+     * still be updated and unchanged users must be left in place.
+     * 
+     * @throws Exception
+     *             the exception
+     */
+    public void testForcedUpdateSkippingUnchangedPersons() throws Exception
+    {
+        ChainingUserRegistrySynchronizer chainingSynchronizer = (ChainingUserRegistrySynchronizer) this.synchronizer;
+        chainingSynchronizer.setSkipUnchangedPersons(true);
+        chainingSynchronizer.setZonePrefetchThreads(2);
+        try
+        {
+            setUpTestUsersAndGroups();
+            // Edit U2 locally: as it is unchanged in the registry the forced synchronization must leave it alone
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+
+                public Object execute() throws Throwable
+                {
+                    NodeRef personRef = ChainingUserRegistrySynchronizerTest.this.personService.getPerson("U2", false);
+                    ChainingUserRegistrySynchronizerTest.this.nodeService.setProperty(personRef,
+                            ContentModel.PROP_EMAIL, "U2-local@alfresco.com");
+                    return null;
+                }
+            }, false, true);
+            this.applicationContextManager.setUserRegistries(new MockUserRegistry("Z0", new NodeDescription[]
+            {
+                newPerson("U6")
+            }, new NodeDescription[]
+            {
+                newGroup("G1")
+            }), new MockUserRegistry("Z1", new NodeDescription[]
+            {
+                newPerson("U1", "changedemail@alfresco.com"), newPerson("U2"), newPerson("U7")
+            }, new NodeDescription[]
+            {
+                newGroup("G2", "U1", "G3"), newGroup("G3", "U2", "G4", "G5"), newGroup("G4"), newGroup("G5")
+            }), new MockUserRegistry("Z2", new NodeDescription[]
+            {
+                newPerson("U1"), newPerson("U3"), newPerson("U4"), newPerson("U5")
+            }, new NodeDescription[]
+            {
+                newGroup("G2", "U1", "U3", "U4"), newGroup("G6", "U3", "U4", "G7"), newGroup("G7", "U5")
+            }));
+            this.synchronizer.synchronize(true, true);
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+
+                public Object execute() throws Throwable
+                {
+                    assertExists("Z0", "U6");
+                    assertExists("Z1", "U1");
+                    assertEmailEquals("U1", "changedemail@alfresco.com");
+                    assertExists("Z1", "U2");
+                    // U2 was skipped so the local edit survives
+                    assertEmailEquals("U2", "U2-local@alfresco.com");
+                    assertExists("Z1", "U7");
+                    assertExists("Z1", "G3", "U2", "G4", "G5");
+                    assertExists("Z2", "U3");
+                    assertExists("Z2", "G6", "U3", "U4", "G7");
+                    return null;
+                }
+            }, false, true);
+            tearDownTestUsersAndGroups();
+        }
+        finally
+        {
+            chainingSynchronizer.setSkipUnchangedPersons(false);
+            chainingSynchronizer.setZonePrefetchThreads(0);
+            // Remove the stored hashes so that they cannot cause users to be skipped by other tests
+            final AttributeService attributeService = (AttributeService) ChainingUserRegistrySynchronizerTest.context
+                    .getBean("attributeService");
+            this.retryingTransactionHelper.doInTransaction(new RetryingTransactionCallback<Object>()
+            {
+
+                public Object execute() throws Throwable
+                {
+                    attributeService.removeAttributes(ChainingUserRegistrySynchronizer.PERSON_HASH_ATTRIBUTE_PATH);
+                    return null;
+                }
+            }, false, true);
+        }
+    }
+
     private class MockLDAPUserRegistry extends LDAPUserRegistry implements IMockUserRegistry
     {
         MockUserRegistry mockUserRegistry;
@@ -42,11 +42,16 @@ import org.alfresco.repo.dictionary.M2Property;
 import org.alfresco.repo.dictionary.M2Type;
 import org.alfresco.repo.domain.node.Node;
 import org.alfresco.repo.domain.node.NodeDAO;
+import org.alfresco.repo.domain.permissions.AclDAO;
 import org.alfresco.repo.domain.qname.QNameDAO;
+import org.alfresco.repo.domain.solr.SOLRDAO;
 import org.alfresco.repo.node.db.DbNodeServiceImpl;
+import org.alfresco.repo.search.AspectIndexFilter;
+import org.alfresco.repo.search.TypeIndexFilter;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
 import org.alfresco.repo.solr.SOLRTrackingComponent.NodeMetaDataQueryCallback;
 import org.alfresco.repo.solr.SOLRTrackingComponent.NodeQueryCallback;
+import org.alfresco.repo.tenant.TenantService;
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
 import org.alfresco.repo.transaction.RetryingTransactionHelper.RetryingTransactionCallback;
 import org.alfresco.service.ServiceRegistry;
@@ -56,11 +61,15 @@ import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
+import org.alfresco.service.cmr.repository.Path;
 import org.alfresco.service.cmr.repository.StoreRef;
+import org.alfresco.service.cmr.security.OwnableService;
+import org.alfresco.service.cmr.security.PermissionService;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
 import org.alfresco.service.transaction.TransactionService;
 import org.alfresco.util.BaseSpringTest;
+import org.alfresco.util.Pair;
 import org.alfresco.util.PropertyMap;
 import org.alfresco.util.testing.category.PerformanceTests;
 import org.apache.commons.logging.Log;
@@ -487,6 +496,125 @@ public class SOLRTrackingComponentTest extends BaseSpringTest
         getNodeMetaData(nodeMetaDataParams, filter, st);
     }
 
+    /**
+     * Batched path resolution must give the same paths as resolving each node on its own. The hierarchy is
+     * deep and the deepest folder has a second parent, so that nodes have several paths with shared ancestors.
+     * The time taken by each variant over a cold cache is logged.
+     */
+    @Test
+    public void testNodeMetaDataDeepHierarchy() throws Exception
+    {
+        final int depth = 25;
+        final int filesPerFolder = 10;
+        final List<Long> nodeIds = txnHelper.doInTransaction(new RetryingTransactionCallback<List<Long>>()
+        {
+            @Override
+            public List<Long> execute() throws Throwable
+            {
+                List<Long> ids = new ArrayList<Long>(depth * (filesPerFolder + 1));
+                NodeRef topFolder = null;
+                NodeRef folder = rootNodeRef;
+                for (int level = 0; level < depth; level++)
+                {
+                    folder = fileFolderService.create(folder, "Level" + level, ContentModel.TYPE_FOLDER).getNodeRef();
+                    ids.add(nodeDAO.getNodePair(folder).getFirst());
+                    if (topFolder == null)
+                    {
+                        topFolder = folder;
+                    }
+                    for (int i = 0; i < filesPerFolder; i++)
+                    {
+                        NodeRef file = fileFolderService.create(folder, "File" + i, ContentModel.TYPE_CONTENT).getNodeRef();
+                        ids.add(nodeDAO.getNodePair(file).getFirst());
+                    }
+                }
+                nodeService.addChild(topFolder, folder, ContentModel.ASSOC_CONTAINS,
+                        QName.createQName(NamespaceService.CONTENT_MODEL_1_0_URI, "secondary"));
+                return ids;
+            }
+        });
+
+        NodeMetaDataParameters params = new NodeMetaDataParameters();
+        params.setNodeIds(nodeIds);
+        Map<Long, NodeMetaData> expected = getNodeMetaData(newTrackingComponent(false), params);
+        Map<Long, NodeMetaData> actual = getNodeMetaData(newTrackingComponent(true), params);
+
+        assertEquals(nodeIds.size(), actual.size());
+        for (Long nodeId : nodeIds)
+        {
+            NodeMetaData expectedMetaData = expected.get(nodeId);
+            NodeMetaData actualMetaData = actual.get(nodeId);
+            assertEquals("Incorrect paths for node " + nodeId,
+                    new ArrayList<Pair<Path, QName>>(expectedMetaData.getPaths()), new ArrayList<Pair<Path, QName>>(actualMetaData.getPaths()));
+            assertEquals("Incorrect name paths for node " + nodeId,
+                    expectedMetaData.getNamePaths().toString(), actualMetaData.getNamePaths().toString());
+            assertEquals("Incorrect parent associations for node " + nodeId,
+                    expectedMetaData.getParentAssocs(), actualMetaData.getParentAssocs());
+        }
+        // The deepest folder is reachable through both of its parents
+        Long deepestFolderId = nodeIds.get(nodeIds.size() - filesPerFolder - 1);
+        assertEquals(2, actual.get(deepestFolderId).getPaths().size());
+    }
+
+    private SOLRTrackingComponentImpl newTrackingComponent(boolean batchPathResolution)
+    {
+        TypeIndexFilter typeIndexFilter = new TypeIndexFilter();
+        typeIndexFilter.setDictionaryService(dictionaryService);
+        typeIndexFilter.setNamespaceService(namespaceService);
+        typeIndexFilter.init();
+        AspectIndexFilter aspectIndexFilter = new AspectIndexFilter();
+        aspectIndexFilter.setDictionaryService(dictionaryService);
+        aspectIndexFilter.setNamespaceService(namespaceService);
+        aspectIndexFilter.init();
+
+        SOLRTrackingComponentImpl component = new SOLRTrackingComponentImpl();
+        component.setPermissionService((PermissionService) applicationContext.getBean("permissionService"));
+        component.setOwnableService((OwnableService) applicationContext.getBean("ownableService"));
+        component.setTenantService((TenantService) applicationContext.getBean("tenantService"));
+        component.setSolrDAO((SOLRDAO) applicationContext.getBean("solrDAO"));
+        component.setAclDAO((AclDAO) applicationContext.getBean("aclDAO"));
+        component.setDictionaryService(dictionaryService);
+        component.setDictionaryDAO(dictionaryDAO);
+        component.setNamespaceService(namespaceService);
+        component.setNodeDAO(nodeDAO);
+        component.setQnameDAO(qnameDAO);
+        component.setTypeIndexFilter(typeIndexFilter);
+        component.setAspectIndexFilter(aspectIndexFilter);
+        component.setBatchPathResolution(batchPathResolution);
+        component.init();
+        return component;
+    }
+
+    private Map<Long, NodeMetaData> getNodeMetaData(final SOLRTrackingComponent component, final NodeMetaDataParameters params)
+    {
+        final Map<Long, NodeMetaData> results = new HashMap<Long, NodeMetaData>();
+        nodeDAO.clear();
+
+        long startTime = System.currentTimeMillis();
+        txnHelper.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                results.clear();
+                component.getNodesMetadata(params, null, new NodeMetaDataQueryCallback()
+                {
+                    @Override
+                    public boolean handleNodeMetaData(NodeMetaData nodeMetaData)
+                    {
+                        results.put(nodeMetaData.getNodeId(), nodeMetaData);
+                        return true;
+                    }
+                });
+                return null;
+            }
+        }, true, true);
+        long endTime = System.currentTimeMillis();
+
+        logger.debug("Got " + results.size() + " node metadatas in " + (endTime - startTime) + " ms with " + component);
+        return results;
+    }
+
     @Test
     public void testNodeMetaDataNullPropertyValue() throws Exception
     {
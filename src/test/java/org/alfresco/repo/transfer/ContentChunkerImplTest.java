@@ -25,10 +25,12 @@
  */
 package org.alfresco.repo.transfer;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.transfer.TransferException;
 
 import junit.framework.TestCase;
 
@@ -107,4 +109,82 @@ public class ContentChunkerImplTest extends TestCase
         assertEquals("size 100 not written", processedContent.size(), 100);
                
     }
+    
+    public void testParallelChunks() throws Exception
+    {
+        ContentChunkerImpl chunker = new ContentChunkerImpl();
+        chunker.setThreads(4);
+        chunker.setChunkSize(10);
+        
+        final Set<ContentData> processedContent = Collections.synchronizedSet(new HashSet<ContentData>());
+        chunker.setHandler(
+                new ContentChunkProcessor(){
+                public void processChunk(Set<ContentData> data)
+                {
+                    try
+                    {
+                        Thread.sleep(5);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    processedContent.addAll(data);
+                }
+            }
+        );
+        
+        for(int i = 0; i < 100 ; i++)
+        {
+            chunker.addContent(new ContentData("url" + i, null, 3, null));
+        }
+        
+        /**
+         * flush should wait for all the chunks
+         */
+        chunker.flush();
+        assertEquals("size 100 not written", 100, processedContent.size());
+        
+        /**
+         * the chunker can be used again after a flush
+         */
+        chunker.addContent(new ContentData("url100", null, 3, null));
+        chunker.flush();
+        assertEquals("size 101 not written", 101, processedContent.size());
+    }
+    
+    public void testParallelChunkFailure() throws Exception
+    {
+        ContentChunkerImpl chunker = new ContentChunkerImpl();
+        chunker.setThreads(2);
+        chunker.setChunkSize(10);
+        chunker.setHandler(
+                new ContentChunkProcessor(){
+                public void processChunk(Set<ContentData> data)
+                {
+                    for (ContentData content : data)
+                    {
+                        if ("url7".equals(content.getContentUrl()))
+                        {
+                            throw new TransferException("test failure");
+                        }
+                    }
+                }
+            }
+        );
+        
+        try
+        {
+            for(int i = 0; i < 20 ; i++)
+            {
+                chunker.addContent(new ContentData("url" + i, null, 3, null));
+            }
+            chunker.flush();
+            fail("The failed chunk was not reported");
+        }
+        catch (TransferException e)
+        {
+            assertEquals("test failure", e.getMsgId());
+        }
+    }
 }
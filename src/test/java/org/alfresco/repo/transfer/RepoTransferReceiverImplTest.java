@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -53,13 +54,17 @@ import org.alfresco.repo.transfer.manifest.TransferManifestDeletedNode;
 import org.alfresco.repo.transfer.manifest.TransferManifestHeader;
 import org.alfresco.repo.transfer.manifest.TransferManifestNode;
 import org.alfresco.repo.transfer.manifest.TransferManifestNormalNode;
+import org.alfresco.repo.transfer.manifest.TransferManifestProcessor;
+import org.alfresco.repo.transfer.manifest.XMLTransferManifestReader;
 import org.alfresco.repo.transfer.manifest.XMLTransferManifestWriter;
+import org.alfresco.repo.transfer.requisite.TransferRequsiteWriter;
 import org.alfresco.service.cmr.action.ActionService;
 import org.alfresco.service.cmr.model.FileFolderService;
 import org.alfresco.service.cmr.model.FileInfo;
 import org.alfresco.service.cmr.repository.AssociationRef;
 import org.alfresco.service.cmr.repository.ChildAssociationRef;
 import org.alfresco.service.cmr.repository.ContentData;
+import org.alfresco.service.cmr.repository.ContentReader;
 import org.alfresco.service.cmr.repository.ContentService;
 import org.alfresco.service.cmr.repository.NodeRef;
 import org.alfresco.service.cmr.repository.NodeService;
@@ -69,6 +74,7 @@ import org.alfresco.service.cmr.search.SearchService;
 import org.alfresco.service.cmr.security.MutableAuthenticationService;
 import org.alfresco.service.cmr.transfer.TransferException;
 import org.alfresco.service.cmr.transfer.TransferProgress;
+import org.alfresco.service.cmr.transfer.TransferReceiver;
 import org.alfresco.service.cmr.transfer.TransferServicePolicies;
 import org.alfresco.service.namespace.NamespaceService;
 import org.alfresco.service.namespace.QName;
@@ -396,6 +402,37 @@ public class RepoTransferReceiverImplTest extends BaseAlfrescoSpringTest
         }
     }
 
+    @Test
+    public void testSaveContentWithChecksum() throws Exception
+    {
+        log.info("start testSaveContentWithChecksum");
+        String transferId = receiver.start("1234", true, receiver.getVersion());
+        try
+        {
+            String checksum = TransferCommons.getContentChecksum(new ByteArrayInputStream(dummyContentBytes));
+            receiver.saveContent(transferId, "goodcontent", new ByteArrayInputStream(dummyContentBytes), checksum);
+            try
+            {
+                receiver.saveContent(transferId, "badcontent", new ByteArrayInputStream(dummyContentBytes, 1, dummyContentBytes.length - 1), checksum);
+                fail("Content that does not match its checksum was staged");
+            }
+            catch (TransferException expected)
+            {
+                // expected
+            }
+
+            File stagingFolder = receiver.getStagingFolder(transferId);
+            assertTrue(new File(stagingFolder, "goodcontent").exists());
+            assertFalse(new File(stagingFolder, "badcontent").exists());
+            assertEquals(Collections.singleton("goodcontent"),
+                    receiver.getStagedContent(transferId, Arrays.asList("goodcontent", "badcontent", "missingcontent")));
+        }
+        finally
+        {
+            receiver.end(transferId);
+        }
+    }
+
     @Test
     public void testSaveSnapshot() throws Exception
     {
@@ -527,6 +564,14 @@ public class RepoTransferReceiverImplTest extends BaseAlfrescoSpringTest
      */
     @Test
     public void testMoreComplexCommit() throws Exception
+    {
+        doMoreComplexCommit(null);
+    }
+
+    /**
+     * @param afterCommit checks to run once the transfer has been committed but before it is ended, or <tt>null</tt>
+     */
+    private void doMoreComplexCommit(Runnable afterCommit) throws Exception
     {
         log.info("start testMoreComplexCommit");
         final RetryingTransactionHelper tran = transactionService.getRetryingTransactionHelper();
@@ -635,6 +680,10 @@ public class RepoTransferReceiverImplTest extends BaseAlfrescoSpringTest
         {
             tran.doInTransaction(doPrepareCB, false, true);
             tran.doInTransaction(doCommitCB, false, true);
+            if (afterCommit != null)
+            {
+                afterCommit.run();
+            }
         }
         finally
         {
@@ -663,6 +712,267 @@ public class RepoTransferReceiverImplTest extends BaseAlfrescoSpringTest
         };
         tran.doInTransaction(validateCB, false, true);
     }
+
+    /**
+     * Test the more complex commit with the snapshot parsed once and replayed to the later processors
+     * from a spool, as the peer association is only created by the secondary processor.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSinglePassCommit() throws Exception
+    {
+        final MonitoringManifestProcessorFactory processorFactory = new MonitoringManifestProcessorFactory(
+                (ManifestProcessorFactory) this.applicationContext.getBean("transferManifestProcessorFactory"));
+        boolean singlePassCommit = receiver.isSinglePassCommit();
+        receiver.setSinglePassCommit(true);
+        receiver.setManifestProcessorFactory(processorFactory);
+        try
+        {
+            doMoreComplexCommit(new Runnable()
+            {
+                public void run()
+                {
+                    processorFactory.assertSinglePass();
+                }
+            });
+        }
+        finally
+        {
+            receiver.setSinglePassCommit(singlePassCommit);
+            receiver.setManifestProcessorFactory(processorFactory.delegate);
+        }
+    }
+
+    /**
+     * Test that content properties survive the spool: the replayed processors see the same content data as the
+     * processor fed by the parser and the content itself is written.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testSinglePassCommitWithContent() throws Exception
+    {
+        log.info("start testSinglePassCommitWithContent");
+        final RetryingTransactionHelper tran = transactionService.getRetryingTransactionHelper();
+        final MonitoringManifestProcessorFactory processorFactory = new MonitoringManifestProcessorFactory(
+                (ManifestProcessorFactory) this.applicationContext.getBean("transferManifestProcessorFactory"));
+        
+        final List<TransferManifestNode> nodes = tran.doInTransaction(new RetryingTransactionCallback<List<TransferManifestNode>>()
+        {
+            @Override
+            public List<TransferManifestNode> execute() throws Throwable
+            {
+                List<TransferManifestNode> nodes = new ArrayList<TransferManifestNode>();
+                nodes.add(createFolderNode());
+                for (int i = 0; i < 3; i++)
+                {
+                    nodes.add(createContentNode());
+                }
+                return nodes;
+            }
+        }, false, true);
+        
+        boolean singlePassCommit = receiver.isSinglePassCommit();
+        receiver.setSinglePassCommit(true);
+        receiver.setManifestProcessorFactory(processorFactory);
+        final String[] transferId = new String[1];
+        try
+        {
+            tran.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    transferId[0] = receiver.start("1234", true, receiver.getVersion());
+                    String snapshot = createSnapshot(nodes);
+                    receiver.saveSnapshot(transferId[0], new ByteArrayInputStream(snapshot.getBytes("UTF-8")));
+                    for (TransferManifestNode node : nodes)
+                    {
+                        receiver.saveContent(transferId[0], node.getUuid(), new ByteArrayInputStream(dummyContentBytes));
+                    }
+                    return null;
+                }
+            }, false, true);
+            tran.doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    receiver.commit(transferId[0]);
+                    return null;
+                }
+            }, false, true);
+            processorFactory.assertSinglePass();
+        }
+        finally
+        {
+            receiver.setSinglePassCommit(singlePassCommit);
+            receiver.setManifestProcessorFactory(processorFactory.delegate);
+            if (transferId[0] != null)
+            {
+                tran.doInTransaction(new RetryingTransactionCallback<Void>()
+                {
+                    @Override
+                    public Void execute() throws Throwable
+                    {
+                        receiver.end(transferId[0]);
+                        return null;
+                    }
+                }, false, true);
+            }
+        }
+        
+        for (TransferManifestNode node : nodes)
+        {
+            Serializable content = ((TransferManifestNormalNode) node).getProperties().get(ContentModel.PROP_CONTENT);
+            for (MonitoringManifestProcessor processor : processorFactory.processors)
+            {
+                assertEquals("Content data not passed on to " + processor.delegate.getClass().getSimpleName(),
+                        content, processor.nodeProperties.get(node.getUuid()).get(ContentModel.PROP_CONTENT));
+            }
+        }
+        tran.doInTransaction(new RetryingTransactionCallback<Void>()
+        {
+            @Override
+            public Void execute() throws Throwable
+            {
+                for (TransferManifestNode node : nodes)
+                {
+                    assertTrue(nodeService.exists(node.getNodeRef()));
+                    if (ContentModel.TYPE_CONTENT.equals(((TransferManifestNormalNode) node).getType()))
+                    {
+                        ContentReader reader = contentService.getReader(node.getNodeRef(), ContentModel.PROP_CONTENT);
+                        assertNotNull("Content not written for " + node.getNodeRef(), reader);
+                        assertEquals(dummyContent, reader.getContentString());
+                    }
+                }
+                return null;
+            }
+        }, false, true);
+    }
+
+    /**
+     * Wraps the commit processors of a transfer in {@link MonitoringManifestProcessor}s.
+     */
+    private class MonitoringManifestProcessorFactory implements ManifestProcessorFactory
+    {
+        private final ManifestProcessorFactory delegate;
+        private final List<MonitoringManifestProcessor> processors = new ArrayList<MonitoringManifestProcessor>();
+        private File spoolFile;
+        private File snapshotFile;
+        
+        private MonitoringManifestProcessorFactory(ManifestProcessorFactory delegate)
+        {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public TransferManifestProcessor getRequsiteProcessor(TransferReceiver receiver, String transferId, TransferRequsiteWriter out)
+        {
+            return delegate.getRequsiteProcessor(receiver, transferId, out);
+        }
+        
+        @Override
+        public List<TransferManifestProcessor> getCommitProcessors(TransferReceiver receiver, String transferId)
+        {
+            File stagingFolder = receiver.getStagingFolder(transferId);
+            spoolFile = new File(stagingFolder, "snapshot.spool");
+            snapshotFile = new File(stagingFolder, "snapshot.xml");
+            processors.clear();
+            List<TransferManifestProcessor> commitProcessors = new ArrayList<TransferManifestProcessor>();
+            for (TransferManifestProcessor processor : delegate.getCommitProcessors(receiver, transferId))
+            {
+                MonitoringManifestProcessor monitor = new MonitoringManifestProcessor(processor, spoolFile);
+                processors.add(monitor);
+                commitProcessors.add(monitor);
+            }
+            return commitProcessors;
+        }
+        
+        /**
+         * Checks that the snapshot was parsed for the first processor only, that the others were fed from the spool
+         * and that the spool has been removed.
+         */
+        private void assertSinglePass()
+        {
+            assertTrue("Expected several commit processors", processors.size() > 1);
+            assertTrue("Snapshot not parsed for the first processor", processors.get(0).parsed);
+            for (MonitoringManifestProcessor processor : processors.subList(1, processors.size()))
+            {
+                assertFalse("Snapshot parsed again", processor.parsed);
+                assertTrue("Processor not fed from the spool", processor.fromSpool);
+                assertEquals("Processor not given the whole manifest",
+                        processors.get(0).nodeProperties.keySet(), processor.nodeProperties.keySet());
+            }
+            assertTrue("Staging folder already removed", snapshotFile.exists());
+            assertFalse("Spool not removed", spoolFile.exists());
+        }
+    }
+
+    /**
+     * Passes a manifest on to a processor, recording how it was fed and the node properties it was given.
+     */
+    private static class MonitoringManifestProcessor implements TransferManifestProcessor
+    {
+        private final TransferManifestProcessor delegate;
+        private final File spoolFile;
+        private boolean parsed;
+        private boolean fromSpool;
+        private final Map<String, Map<QName, Serializable>> nodeProperties = new HashMap<String, Map<QName, Serializable>>();
+        
+        private MonitoringManifestProcessor(TransferManifestProcessor delegate, File spoolFile)
+        {
+            this.delegate = delegate;
+            this.spoolFile = spoolFile;
+        }
+        
+        @Override
+        public void startTransferManifest()
+        {
+            // The spool is written as the snapshot is parsed, so only replayed processors find it complete
+            for (StackTraceElement element : new Throwable().getStackTrace())
+            {
+                if (element.getClassName().equals(XMLTransferManifestReader.class.getName()))
+                {
+                    parsed = true;
+                }
+                else if (element.getClassName().equals(SpoolingManifestProcessor.class.getName())
+                        && element.getMethodName().equals("replay"))
+                {
+                    fromSpool = spoolFile.exists();
+                }
+            }
+            delegate.startTransferManifest();
+        }
+        
+        @Override
+        public void processTransferManifiestHeader(TransferManifestHeader header)
+        {
+            delegate.processTransferManifiestHeader(header);
+        }
+        
+        @Override
+        public void processTransferManifestNode(TransferManifestNormalNode node)
+        {
+            // Copy the properties before the processor can change them
+            nodeProperties.put(node.getUuid(), new HashMap<QName, Serializable>(node.getProperties()));
+            delegate.processTransferManifestNode(node);
+        }
+        
+        @Override
+        public void processTransferManifestNode(TransferManifestDeletedNode node)
+        {
+            nodeProperties.put(node.getUuid(), Collections.<QName, Serializable>emptyMap());
+            delegate.processTransferManifestNode(node);
+        }
+        
+        @Override
+        public void endTransferManifest()
+        {
+            delegate.endTransferManifest();
+        }
+    }
     
     /**
      * Test Node Delete And Restore
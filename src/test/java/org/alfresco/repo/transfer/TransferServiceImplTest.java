@@ -35,6 +35,7 @@ import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -42,6 +43,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.alfresco.model.ContentModel;
 import org.alfresco.repo.model.Repository;
 import org.alfresco.repo.security.authentication.AuthenticationComponent;
@@ -2658,6 +2660,131 @@ public class TransferServiceImplTest extends BaseAlfrescoSpringTest
         }
     } // test repeat update content
 
+    /**
+     * Test sending content chunks in parallel, where the connection is lost part way through a chunk.
+     * The chunk is resent without the file that the receiver had already staged.
+     */
+    @Test
+    public void testParallelResumableContent() throws Exception
+    {
+        final int FILE_COUNT = 10;
+        final List<Set<ContentData>> sentChunks = Collections.synchronizedList(new ArrayList<Set<ContentData>>());
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final ContentData[] stagedBeforeFailure = new ContentData[1];
+
+        /**
+         *  For unit test 
+         *  - replace the HTTP transport with an in-process transport that fails once
+         *  - replace the node factory with one that will map node refs, paths etc.
+         */
+        TransferTransmitter transmitter = new UnitTestInProcessTransmitterImpl(receiver, contentService, transactionService)
+        {
+            @Override
+            public void sendContent(Transfer transfer, Set<ContentData> data)
+            {
+                sentChunks.add(new HashSet<ContentData>(data));
+                if (data.size() > 1 && failed.compareAndSet(false, true))
+                {
+                    stagedBeforeFailure[0] = data.iterator().next();
+                    super.sendContent(transfer, Collections.singleton(stagedBeforeFailure[0]));
+                    throw new TransferException("Connection lost");
+                }
+                super.sendContent(transfer, data);
+            }
+        };
+        transferServiceImpl.setTransmitter(transmitter);
+        final UnitTestTransferManifestNodeFactory testNodeFactory = new UnitTestTransferManifestNodeFactory(this.transferManifestNodeFactory); 
+        transferServiceImpl.setTransferManifestNodeFactory(testNodeFactory); 
+        final List<Pair<Path, Path>> pathMap = testNodeFactory.getPathMap();
+        // Map company_home/guest_home to company_home so tranferred nodes and moved "up" one level.
+        pathMap.add(new Pair<Path, Path>(PathHelper.stringToPath(GUEST_HOME_XPATH_QUERY), PathHelper.stringToPath(COMPANY_HOME_XPATH_QUERY)));
+        
+        DescriptorService mockedDescriptorService = getMockDescriptorService(REPO_ID_A);
+        transferServiceImpl.setDescriptorService(mockedDescriptorService);
+
+        // 6 byte files, so a chunk holds 4 of them
+        transferServiceImpl.setContentChunkSize(20);
+        transferServiceImpl.setContentThreads(3);
+        transferServiceImpl.setContentRetries(1);
+        
+        final String targetName = "testParallelResumableContent";
+        try
+        {
+            final Set<NodeRef> contentNodeRefs = transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Set<NodeRef>>()
+            {
+                @Override
+                public Set<NodeRef> execute() throws Throwable
+                {
+                    NodeRef guestHome = repositoryHelper.getGuestHome();
+                    Set<NodeRef> nodes = new HashSet<NodeRef>();
+                    for (int i = 0; i < FILE_COUNT; i++)
+                    {
+                        String name = GUID.generate();
+                        ChildAssociationRef child = nodeService.createNode(guestHome, ContentModel.ASSOC_CONTAINS, QName.createQName(name), ContentModel.TYPE_CONTENT);
+                        nodeService.setProperty(child.getChildRef(), ContentModel.PROP_NAME, name);
+                        ContentWriter writer = contentService.getWriter(child.getChildRef(), ContentModel.PROP_CONTENT, true);
+                        writer.setEncoding("UTF-8");
+                        writer.putContent("file" + (10 + i));
+                        nodes.add(child.getChildRef());
+                    }
+                    if(!transferService.targetExists(targetName))
+                    {
+                        createTransferTarget(targetName);
+                    }
+                    transferService.enableTransferTarget(targetName, true);
+                    return nodes;
+                }
+            }, false, true);
+
+            transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    TransferDefinition definition = new TransferDefinition();
+                    definition.setNodes(contentNodeRefs);
+                    transferService.transfer(targetName, definition);
+                    return null;
+                }
+            });
+
+            assertTrue("The transmitter did not fail", failed.get());
+            int sentCount = 0;
+            for (Set<ContentData> chunk : sentChunks)
+            {
+                if (chunk.contains(stagedBeforeFailure[0]))
+                {
+                    sentCount++;
+                }
+            }
+            assertEquals("Staged content was resent", 1, sentCount);
+
+            transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionCallback<Void>()
+            {
+                @Override
+                public Void execute() throws Throwable
+                {
+                    for (NodeRef contentNodeRef : contentNodeRefs)
+                    {
+                        NodeRef destNodeRef = testNodeFactory.getMappedNodeRef(contentNodeRef);
+                        ContentReader reader = contentService.getReader(destNodeRef, ContentModel.PROP_CONTENT);
+                        assertNotNull("content reader is null", reader);
+                        assertEquals("Content is wrong",
+                                contentService.getReader(contentNodeRef, ContentModel.PROP_CONTENT).getContentString(),
+                                reader.getContentString());
+                    }
+                    return null;
+                }
+            });
+        }
+        finally
+        {
+            transferServiceImpl.setContentChunkSize(1000000);
+            transferServiceImpl.setContentThreads(1);
+            transferServiceImpl.setContentRetries(0);
+        }
+    }
+
     /**
      * Test the transfer method with regard to replacing a node.  ALF-5109
      * 
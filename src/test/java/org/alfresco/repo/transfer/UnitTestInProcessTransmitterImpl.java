@@ -32,6 +32,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Set;
 
 import org.alfresco.repo.transaction.RetryingTransactionHelper;
@@ -63,6 +64,7 @@ public class UnitTestInProcessTransmitterImpl implements TransferTransmitter
     
     private ContentService contentService;
     private TransactionService transactionService;
+    private boolean contentChecksums = false;
     
     public UnitTestInProcessTransmitterImpl(TransferReceiver receiver, ContentService contentService, TransactionService transactionService)
     {
@@ -140,14 +142,31 @@ public class UnitTestInProcessTransmitterImpl implements TransferTransmitter
                     String contentUrl = content.getContentUrl();
                     String fileName = TransferCommons.URLToPartName(contentUrl);
 
+                    String checksum = null;
+                    if (contentChecksums)
+                    {
+                        checksum = TransferCommons.getContentChecksum(getContentService().getRawReader(contentUrl).getContentInputStream());
+                    }
                     InputStream contentStream = getContentService().getRawReader(contentUrl).getContentInputStream();
-                    receiver.saveContent(transferId, fileName, contentStream);
+                    receiver.saveContent(transferId, fileName, contentStream, checksum);
                 }
                 return null;
             }
         }, false, true);
     }
 
+    @Override
+    public Set<String> getStagedContent(final Transfer transfer, final Collection<String> contentIds)
+    {
+        return transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Set<String>>()
+        {
+            public Set<String> execute() throws Throwable
+            {
+                return receiver.getStagedContent(transfer.getTransferId(), contentIds);
+            }
+        }, false, true);
+    }
+
     public void sendManifest(final Transfer transfer, final File manifest, final OutputStream result) throws TransferException
     {
         transactionService.getRetryingTransactionHelper().doInTransaction(new RetryingTransactionHelper.RetryingTransactionCallback<Void>()
@@ -211,6 +230,14 @@ public class UnitTestInProcessTransmitterImpl implements TransferTransmitter
         return receiver;
     }
 
+    /**
+     * Whether each content file is sent with a checksum, as for {@link HttpClientTransmitterImpl#setContentChecksums(boolean)}.
+     */
+    public void setContentChecksums(boolean contentChecksums)
+    {
+        this.contentChecksums = contentChecksums;
+    }
+
     private ContentService getContentService()
     {
         return contentService;